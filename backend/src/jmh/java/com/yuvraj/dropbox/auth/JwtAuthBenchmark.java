@@ -0,0 +1,50 @@
+package com.yuvraj.dropbox.auth;
+
+import io.jsonwebtoken.Jwts;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request cost of authenticating a file request.
+ *
+ * {@code freshParserTwice} is what every request used to pay: the filter and the controller each built a
+ * parser and verified the HMAC. {@code sharedParser} is one verification with the reused parser (a cache
+ * miss), {@code cached} is the steady state for a client reusing its token.
+ *
+ * <pre>
+ * mvn -Pbench compile exec:exec -Dbench.args="JwtAuth -f 1"
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class JwtAuthBenchmark {
+
+    private String token;
+
+    @Setup
+    public void setup() {
+        token = JwtUtil.generateToken(UUID.randomUUID().toString());
+        JwtUtil.validateTokenAndGetUUID(token);
+    }
+
+    @Benchmark
+    public String freshParserTwice() {
+        Jwts.parserBuilder().setSigningKey(JwtUtil.signingKey()).build().parseClaimsJws(token);
+        return Jwts.parserBuilder().setSigningKey(JwtUtil.signingKey()).build().parseClaimsJws(token).getBody().getSubject();
+    }
+
+    @Benchmark
+    public String sharedParser() {
+        return JwtUtil.parse(token).getSubject();
+    }
+
+    @Benchmark
+    public String cached() {
+        return JwtUtil.validateTokenAndGetUUID(token);
+    }
+}
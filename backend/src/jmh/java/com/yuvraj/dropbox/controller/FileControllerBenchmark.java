@@ -0,0 +1,111 @@
+package com.yuvraj.dropbox.controller;
+
+import com.yuvraj.dropbox.storage.LocalStorageBackend;
+import com.yuvraj.dropbox.storage.StorageBackend;
+import com.yuvraj.dropbox.storage.StorageBackend.StorageEntry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The request-independent work behind the file endpoints: turning storage entries into response DTOs (once per
+ * listed item), resolving a request path to a storage key (every request) and streaming a folder as a ZIP.
+ * JWT validation is covered by {@code JwtAuthBenchmark}.
+ *
+ * <pre>
+ * mvn -Pbench compile exec:exec -Dbench.args="FileControllerBenchmark -f 1"
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class FileControllerBenchmark {
+
+    private static final String USER_ROOT = UUID.randomUUID().toString();
+
+    private final List<StorageEntry> entries = List.of(
+            new StorageEntry(USER_ROOT + "/docs/2024/report-final.pdf", false, 1_482_113, 1_700_000_000_000L, "\"16a501-5f1c\""),
+            new StorageEntry(USER_ROOT + "/docs/2024", true, 0, 1_700_000_000_000L, null),
+            new StorageEntry(USER_ROOT + "/photos/IMG_0001.jpg", false, 3_201_554, 1_690_000_000_000L, "\"30da12-5e0b\""));
+
+    @Benchmark
+    public void buildFileInfo(Blackhole bh) {
+        for (StorageEntry entry : entries) bh.consume(FileController.buildFileInfo(USER_ROOT, entry));
+    }
+
+    @Benchmark
+    public String resolveKeyShallow() {
+        return FileController.resolveKey(USER_ROOT, "notes.txt");
+    }
+
+    @Benchmark
+    public String resolveKeyNested() {
+        return FileController.resolveKey(USER_ROOT, "projects/2024/q3/drafts/./design\\notes/v2/notes.txt");
+    }
+
+    /** Streams a folder of mixed text and already-compressed files to a discarding sink. */
+    @State(Scope.Benchmark)
+    public static class ZipState {
+        @Param({"200"})
+        int files;
+
+        @Param({"65536"})
+        int fileSize;
+
+        Path dir;
+        StorageBackend storage;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            dir = Files.createTempDirectory("zip-bench");
+            storage = new LocalStorageBackend(dir);
+            Random random = new Random(42);
+            byte[] text = logLines(fileSize, random);
+            byte[] noise = new byte[fileSize];
+            random.nextBytes(noise);
+            for (int i = 0; i < files; i++) {
+                // half deflate, half go in stored (as .jpg)
+                String name = i % 2 == 0 ? "log-" + i + ".log" : "photo-" + i + ".jpg";
+                byte[] content = i % 2 == 0 ? text : noise;
+                storage.write(USER_ROOT + "/zip/sub-" + (i % 10) + "/" + name, new ByteArrayInputStream(content), content.length);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            try (Stream<Path> walk = Files.walk(dir)) {
+                for (Path p : walk.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+            }
+        }
+
+        private static byte[] logLines(int size, Random random) {
+            StringBuilder sb = new StringBuilder(size + 100);
+            while (sb.length() < size) {
+                sb.append("2024-05-01T12:00:").append(random.nextInt(60))
+                        .append(" INFO request handled in ").append(random.nextInt(500)).append(" ms\n");
+            }
+            return sb.substring(0, size).getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void zipDirectory(ZipState state) throws IOException {
+        FileController.zipDirectory(state.storage, USER_ROOT + "/zip", "zip", OutputStream.nullOutputStream());
+    }
+}
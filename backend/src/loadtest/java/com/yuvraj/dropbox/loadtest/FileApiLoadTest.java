@@ -0,0 +1,405 @@
+package com.yuvraj.dropbox.loadtest;
+
+import com.yuvraj.dropbox.DropboxApplication;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Closed-loop throughput and latency of the main file endpoints: listing a large folder, uploads, full and
+ * ranged downloads, folder ZIPs and recursive deletes; and, when asked for, of the auth endpoints (scenarios
+ * login and register). Each scenario runs {@code concurrency} clients that send their next request as soon as
+ * the previous one answers, for a warmup period and then a measured one.
+ *
+ * Without {@code --base} it boots the application in this JVM on a throwaway directory (extra properties via
+ * {@code --app-args "--a=b --c=d"}), so before/after numbers for a change come from the same command:
+ * <pre>
+ * mvn -Pbench compile exec:exec -Dbench.main=com.yuvraj.dropbox.loadtest.FileApiLoadTest \
+ *     -Dbench.args="--seconds 20 --concurrency 16 --scenarios list,download,range,zip --label baseline"
+ * </pre>
+ * Login and register throughput against a durable database: {@code --scenarios login,register --app-args
+ * "--spring.profiles.active=durable --dropbox.db.dir=/tmp/dropbox-db"}; both are bound by the password hash,
+ * so add {@code --dropbox.auth.password.cost=<n>} and {@code --dropbox.auth.password.threads=<n>} to compare settings.
+ *
+ * Sendfile against buffered downloads: scenario {@code sendfile} downloads one file of each size in
+ * {@code --sendfile-sizes} (default 1 MB, 100 MB and 2 GB, generated as they are uploaded, so none is held in
+ * memory), and {@code --sendfile both} runs the scenarios on two in-process servers, with
+ * dropbox.download.sendfile.enabled true and false, printing both results:
+ * <pre>
+ * mvn -Pbench compile exec:exec -Dbench.main=com.yuvraj.dropbox.loadtest.FileApiLoadTest \
+ *     -Dbench.args="--scenarios sendfile --sendfile both --concurrency 4 --seconds 30"
+ * </pre>
+ * The 2 GB file needs about 4 GB of free disk under java.io.tmpdir while it is uploaded.
+ *
+ * Prints one JSON object (an array of two with {@code --sendfile both}): the configuration and, per scenario, ops, errors, throughput, p50/p99/p99.9/max
+ * latency in milliseconds and response bytes.
+ */
+public class FileApiLoadTest {
+
+    private static final int RANGE_SIZE = 64 * 1024;
+    private static final String SENDFILE_SIZES = "1048576,104857600,2147483648";
+    private static final int LIST_BATCH = 500;
+    // each upload client cycles over this many names so a long run doesn't fill the disk
+    private static final int UPLOAD_NAMES = 16;
+
+    private final LoadClient client;
+    private final Map<String, String> opts;
+    private final int seconds;
+    private final int warmupSeconds;
+    private final int concurrency;
+    private final long fileSize;
+
+    /** One request of a scenario; returns the response bytes. */
+    interface Operation {
+        /** Untimed work before each request (e.g. creating what it deletes). */
+        default void prepare(int worker, long seq) throws Exception {
+        }
+
+        long run(int worker, long seq) throws Exception;
+    }
+
+    FileApiLoadTest(String base, Map<String, String> opts) {
+        this.client = new LoadClient(base);
+        this.opts = opts;
+        this.seconds = intOpt("seconds", 15);
+        this.warmupSeconds = intOpt("warmup-seconds", 5);
+        this.concurrency = intOpt("concurrency", 16);
+        this.fileSize = longOpt("file-size", 1048576);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = LoadClient.parseArgs(args);
+        String sendfile = opts.get("sendfile");
+        if ("both".equals(sendfile)) {
+            if (opts.containsKey("base")) throw new IllegalArgumentException("--sendfile both needs the in-process server (no --base)");
+            List<Map<String, Object>> runs = new ArrayList<>();
+            for (String enabled : List.of("true", "false")) runs.add(runOnce(opts, enabled));
+            System.out.println(LoadClient.JSON.writeValueAsString(runs));
+        } else {
+            System.out.println(LoadClient.JSON.writeValueAsString(runOnce(opts, sendfile)));
+        }
+    }
+
+    // One run of the scenarios; sendfile is "true", "false" or null (as configured)
+    private static Map<String, Object> runOnce(Map<String, String> opts, String sendfile) throws Exception {
+        String base = opts.get("base");
+        Path dir = null;
+        ConfigurableApplicationContext app = null;
+        if (base == null) {
+            String extra = opts.getOrDefault("app-args", "");
+            if (sendfile != null) extra += " --dropbox.download.sendfile.enabled=" + sendfile;
+            dir = Files.createTempDirectory("dropbox-load");
+            app = SpringApplication.run(DropboxApplication.class, appArgs(dir, extra));
+            base = "http://localhost:" + app.getEnvironment().getProperty("local.server.port");
+        }
+        try {
+            Map<String, Object> result = new FileApiLoadTest(base, opts).run();
+            if (sendfile != null) result.put("sendfile", Boolean.parseBoolean(sendfile));
+            return result;
+        } finally {
+            if (app != null) app.close();
+            if (dir != null) deleteTree(dir);
+        }
+    }
+
+    private static String[] appArgs(Path dir, String extra) {
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--dropbox.upload.dir=" + dir.resolve("files"),
+                "--dropbox.thumbnails.cache-dir=" + dir.resolve("thumbnails"),
+                "--dropbox.search.index-dir=" + dir.resolve("search"),
+                "--dropbox.quota.default-bytes=" + Long.MAX_VALUE / 2,
+                "--spring.servlet.multipart.max-file-size=-1",
+                "--spring.servlet.multipart.max-request-size=-1",
+                "--spring.jpa.show-sql=false",
+                "--logging.level.root=WARN"));
+        // one user drives all the load; pass --dropbox.ratelimit.enabled=true to measure with the limits on
+        if (!extra.contains("--dropbox.ratelimit.enabled")) args.add("--dropbox.ratelimit.enabled=false");
+        if (!extra.isBlank()) args.addAll(Arrays.asList(extra.trim().split("\\s+")));
+        return args.toArray(String[]::new);
+    }
+
+    Map<String, Object> run() throws Exception {
+        client.login();
+        List<String> scenarios = Arrays.asList(opts.getOrDefault("scenarios", "list,upload,download,range,zip,delete").split(","));
+
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("seconds", seconds);
+        config.put("warmupSeconds", warmupSeconds);
+        config.put("concurrency", concurrency);
+        config.put("fileSize", fileSize);
+        config.put("sendfileSizes", opts.getOrDefault("sendfile-sizes", SENDFILE_SIZES));
+        config.put("listSize", intOpt("list-size", 10000));
+        config.put("zipFiles", intOpt("zip-files", 200));
+        config.put("zipFileSize", intOpt("zip-file-size", 65536));
+        config.put("deleteFiles", intOpt("delete-files", 50));
+        config.put("processors", Runtime.getRuntime().availableProcessors());
+
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (String scenario : scenarios) {
+            results.addAll(switch (scenario.trim()) {
+                case "list" -> List.of(list());
+                case "upload" -> List.of(upload());
+                case "download" -> List.of(download());
+                case "sendfile" -> sendfile();
+                case "range" -> List.of(range());
+                case "zip" -> List.of(zip());
+                case "delete" -> List.of(delete());
+                case "login" -> List.of(login());
+                case "register" -> List.of(register());
+                default -> throw new IllegalArgumentException("Unknown scenario " + scenario);
+            });
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("label", opts.getOrDefault("label", ""));
+        result.put("config", config);
+        result.put("scenarios", results);
+        return result;
+    }
+
+    /* ------------------ scenarios ------------------ */
+
+    private Map<String, Object> list() throws Exception {
+        int listSize = intOpt("list-size", 10000);
+        for (int from = 0; from < listSize; from += LIST_BATCH) {
+            Map<String, InputStream> files = new LinkedHashMap<>();
+            for (int i = from; i < Math.min(from + LIST_BATCH, listSize); i++) {
+                files.put("file-" + i + ".txt", new ByteArrayInputStream(("file " + i).getBytes(StandardCharsets.UTF_8)));
+            }
+            client.send(client.multipartUpload("list", files));
+        }
+        return measure("list", (worker, seq) -> drain(client.get("/files/list/list").build(), 200));
+    }
+
+    private Map<String, Object> upload() throws Exception {
+        return measure("upload", (worker, seq) -> {
+            client.send(client.multipartUpload("uploads", "w" + worker + "-" + seq % UPLOAD_NAMES + ".bin",
+                    LoadClient.generated(fileSize)));
+            return fileSize;
+        });
+    }
+
+    private Map<String, Object> download() throws Exception {
+        uploadPayload();
+        return measure("download", (worker, seq) -> drain(client.get("/files/download/payload.bin").build(), 200));
+    }
+
+    // one measured download scenario per size, named sendfile-<bytes>
+    private List<Map<String, Object>> sendfile() throws Exception {
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (String size : opts.getOrDefault("sendfile-sizes", SENDFILE_SIZES).split(",")) {
+            long bytes = Long.parseLong(size.trim());
+            String name = "sendfile-" + bytes + ".bin";
+            client.send(client.multipartUpload("", name, LoadClient.generated(bytes)));
+            results.add(measure("sendfile-" + bytes, (worker, seq) -> drain(client.get("/files/download/" + name).build(), 200)));
+            client.send(client.request("/files/delete/" + name).DELETE().build());
+        }
+        return results;
+    }
+
+    private Map<String, Object> range() throws Exception {
+        uploadPayload();
+        return measure("range", (worker, seq) -> {
+            long start = ThreadLocalRandom.current().nextLong(Math.max(1, fileSize - RANGE_SIZE));
+            HttpRequest request = client.get("/files/download/payload.bin")
+                    .header("Range", "bytes=" + start + "-" + (start + RANGE_SIZE - 1))
+                    .build();
+            return drain(request, 206);
+        });
+    }
+
+    private Map<String, Object> zip() throws Exception {
+        int files = intOpt("zip-files", 200);
+        int size = intOpt("zip-file-size", 65536);
+        // half compressible text, half random bytes, spread over a few subfolders
+        byte[] text = textBytes(size);
+        byte[] noise = randomBytes(size);
+        for (int i = 0; i < files; i++) {
+            boolean even = i % 2 == 0;
+            client.send(client.multipartUpload("zip/sub-" + i % 10, (even ? "log-" : "photo-") + i + (even ? ".log" : ".jpg"),
+                    new ByteArrayInputStream(even ? text : noise)));
+        }
+        return measure("zip", (worker, seq) -> drain(client.get("/files/download/zip").build(), 200));
+    }
+
+    private Map<String, Object> delete() throws Exception {
+        int files = intOpt("delete-files", 50);
+        return measure("delete", new Operation() {
+            @Override
+            public void prepare(int worker, long seq) throws Exception {
+                Map<String, InputStream> content = new LinkedHashMap<>();
+                for (int i = 0; i < files; i++) {
+                    content.put("f-" + i + ".txt", new ByteArrayInputStream(("file " + i).getBytes(StandardCharsets.UTF_8)));
+                }
+                client.send(client.multipartUpload("delete/w" + worker + "-" + seq + "/sub", content));
+            }
+
+            @Override
+            public long run(int worker, long seq) throws Exception {
+                return drain(client.request("/files/delete/delete/w" + worker + "-" + seq).DELETE().build(), 200);
+            }
+        });
+    }
+
+    // one account per client, logged into over and over
+    private Map<String, Object> login() throws Exception {
+        String prefix = "login-" + UUID.randomUUID() + "-";
+        for (int w = 0; w < concurrency; w++) client.send(client.credentials("/auth/register", prefix + w));
+        return measure("login", (worker, seq) -> drain(client.credentials("/auth/login", prefix + worker), 200));
+    }
+
+    // a new account per request; every fourth one races the other clients for a shared name, and exactly one may win
+    private Map<String, Object> register() throws Exception {
+        String prefix = "register-" + UUID.randomUUID() + "-";
+        AtomicLong conflicts = new AtomicLong();
+        Map<String, Object> result = measure("register", (worker, seq) -> {
+            if (seq % 4 != 0) return drain(client.credentials("/auth/register", prefix + worker + "-" + seq), 200);
+            HttpResponse<String> resp = client.http().send(client.credentials("/auth/register", prefix + "shared-" + seq),
+                    HttpResponse.BodyHandlers.ofString());
+            if (resp.statusCode() == 409) {
+                conflicts.incrementAndGet();
+            } else if (resp.statusCode() != 200) {
+                throw new IOException("POST /auth/register: HTTP " + resp.statusCode());
+            }
+            return resp.body().length();
+        });
+        result.put("conflicts", conflicts.get());
+        return result;
+    }
+
+    private void uploadPayload() throws Exception {
+        client.send(client.multipartUpload("", "payload.bin", LoadClient.generated(fileSize)));
+    }
+
+    /* ------------------ measurement ------------------ */
+
+    private Map<String, Object> measure(String name, Operation op) throws Exception {
+        long warmupEnd = System.nanoTime() + Duration.ofSeconds(warmupSeconds).toNanos();
+        long end = warmupEnd + Duration.ofSeconds(seconds).toNanos();
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        List<Future<long[]>> workers = new ArrayList<>();
+        List<List<Long>> latencies = new ArrayList<>();
+        for (int w = 0; w < concurrency; w++) {
+            int worker = w;
+            List<Long> own = new ArrayList<>();
+            latencies.add(own);
+            // {ops, errors, bytes} counted after warmup
+            workers.add(pool.submit(() -> {
+                long[] counts = new long[3];
+                for (long seq = 0; System.nanoTime() < end; seq++) {
+                    op.prepare(worker, seq);
+                    long start = System.nanoTime();
+                    boolean measured = start >= warmupEnd;
+                    try {
+                        long bytes = op.run(worker, seq);
+                        if (measured) {
+                            own.add(System.nanoTime() - start);
+                            counts[0]++;
+                            counts[2] += bytes;
+                        }
+                    } catch (IOException e) {
+                        if (measured) counts[1]++;
+                    }
+                }
+                return counts;
+            }));
+        }
+        long ops = 0, errors = 0, bytes = 0;
+        for (Future<long[]> worker : workers) {
+            long[] counts = worker.get();
+            ops += counts[0];
+            errors += counts[1];
+            bytes += counts[2];
+        }
+        pool.shutdown();
+
+        List<Long> sorted = new ArrayList<>();
+        latencies.forEach(sorted::addAll);
+        Collections.sort(sorted);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("name", name);
+        result.put("ops", ops);
+        result.put("errors", errors);
+        result.put("seconds", seconds);
+        result.put("throughputOpsPerSec", Math.round(ops * 10.0 / seconds) / 10.0);
+        result.put("p50Ms", millis(LoadClient.percentile(sorted, 0.50)));
+        result.put("p99Ms", millis(LoadClient.percentile(sorted, 0.99)));
+        result.put("p999Ms", millis(LoadClient.percentile(sorted, 0.999)));
+        result.put("maxMs", millis(sorted.isEmpty() ? null : sorted.get(sorted.size() - 1)));
+        result.put("bytes", bytes);
+        return result;
+    }
+
+    /** Send, read the whole body and return its length; any other status than {@code expected} is an error. */
+    private long drain(HttpRequest request, int expected) throws IOException, InterruptedException {
+        HttpResponse<InputStream> resp = client.http().send(request, HttpResponse.BodyHandlers.ofInputStream());
+        long total = 0;
+        try (InputStream in = resp.body()) {
+            byte[] buf = new byte[64 * 1024];
+            for (int n; (n = in.read(buf)) != -1; ) total += n;
+        }
+        if (resp.statusCode() != expected) {
+            throw new IOException(request.method() + " " + request.uri().getPath() + ": HTTP " + resp.statusCode());
+        }
+        return total;
+    }
+
+    private static Double millis(Long nanos) {
+        return nanos == null ? null : Math.round(nanos / 1_000.0) / 1_000.0;
+    }
+
+    private int intOpt(String name, int defaultValue) {
+        return Integer.parseInt(opts.getOrDefault(name, String.valueOf(defaultValue)));
+    }
+
+    private long longOpt(String name, long defaultValue) {
+        return Long.parseLong(opts.getOrDefault(name, String.valueOf(defaultValue)));
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] textBytes(int size) {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder(size + 100);
+        while (sb.length() < size) {
+            sb.append("2024-05-01T12:00:").append(random.nextInt(60))
+                    .append(" INFO request handled in ").append(random.nextInt(500)).append(" ms\n");
+        }
+        return sb.substring(0, size).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            for (Path p : walk.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+        }
+    }
+}
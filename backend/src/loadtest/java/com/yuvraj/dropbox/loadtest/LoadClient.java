@@ -0,0 +1,150 @@
+package com.yuvraj.dropbox.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A throwaway user on a running server and the requests the load tests send as it. One instance is shared by
+ * all client threads.
+ */
+class LoadClient {
+
+    static final ObjectMapper JSON = new ObjectMapper();
+
+    private final HttpClient http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    private final String base;
+    private String token;
+
+    LoadClient(String base) {
+        this.base = base;
+    }
+
+    HttpClient http() {
+        return http;
+    }
+
+    /** Register a fresh user and log in as it. */
+    void login() throws Exception {
+        String username = "load-" + UUID.randomUUID();
+        send(credentials("/auth/register", username));
+        HttpResponse<String> resp = http.send(credentials("/auth/login", username), HttpResponse.BodyHandlers.ofString());
+        JsonNode body = JSON.readTree(resp.body());
+        token = body.path("token").asText();
+        if (token.isEmpty()) throw new IllegalStateException("Login failed: " + resp.body());
+    }
+
+    /** POST of {@code username}'s credentials (every load-test user has the same password) to /auth/register or /auth/login. */
+    HttpRequest credentials(String path, String username) throws IOException {
+        String body = JSON.writeValueAsString(Map.of("username", username, "password", "secret", "email", username + "@example.com"));
+        return HttpRequest.newBuilder(URI.create(base + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+    }
+
+    HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create(base + path)).header("Authorization", "Bearer " + token);
+    }
+
+    HttpRequest.Builder get(String path) {
+        return request(path).GET();
+    }
+
+    HttpRequest multipartUpload(String folder, String fileName, InputStream content) {
+        Map<String, InputStream> files = new LinkedHashMap<>();
+        files.put(fileName, content);
+        return multipartUpload(folder, files);
+    }
+
+    /** One POST /files/upload carrying every file in {@code files} (name to content). */
+    HttpRequest multipartUpload(String folder, Map<String, InputStream> files) {
+        String boundary = "----load" + UUID.randomUUID().toString().replace("-", "");
+        List<InputStream> parts = new ArrayList<>();
+        for (Map.Entry<String, InputStream> file : files.entrySet()) {
+            parts.add(new ByteArrayInputStream(("--" + boundary + "\r\n"
+                    + "Content-Disposition: form-data; name=\"file\"; filename=\"" + file.getKey() + "\"\r\n"
+                    + "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.UTF_8)));
+            parts.add(file.getValue());
+            parts.add(new ByteArrayInputStream("\r\n".getBytes(StandardCharsets.UTF_8)));
+        }
+        parts.add(new ByteArrayInputStream(("--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8)));
+        InputStream body = new SequenceInputStream(Collections.enumeration(parts));
+        return request("/files/upload" + (folder.isEmpty() ? "" : "/" + folder))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofInputStream(() -> body))
+                .build();
+    }
+
+    /** Send and fail unless the response is 2xx. */
+    HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<String> resp = http.send(request, HttpResponse.BodyHandlers.ofString());
+        if (resp.statusCode() / 100 != 2) {
+            throw new IOException(request.method() + " " + request.uri().getPath() + ": HTTP " + resp.statusCode() + " " + resp.body());
+        }
+        return resp;
+    }
+
+    /** {@code size} pseudo-random (incompressible) bytes, produced as they are read, so any size fits. */
+    static InputStream generated(long size) {
+        return new InputStream() {
+            private long remaining = size;
+            private long state = 0x9E3779B97F4A7C15L;
+
+            @Override
+            public int read() {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (remaining <= 0) return -1;
+                int n = (int) Math.min(len, remaining);
+                for (int i = 0; i < n; i++) {
+                    // xorshift64
+                    state ^= state << 13;
+                    state ^= state >>> 7;
+                    state ^= state << 17;
+                    b[off + i] = (byte) state;
+                }
+                remaining -= n;
+                return n;
+            }
+        };
+    }
+
+    static Long percentile(List<Long> sorted, double p) {
+        if (sorted.isEmpty()) return null;
+        int index = (int) Math.ceil(p * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1)));
+    }
+
+    static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> opts = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) throw new IllegalArgumentException("Expected --option value, got " + args[i]);
+            opts.put(args[i].substring(2), args[i + 1]);
+        }
+        return opts;
+    }
+}
@@ -0,0 +1,180 @@
+package com.yuvraj.dropbox.loadtest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thousands of slow clients against a running server, while a probe measures how long a plain folder
+ * listing takes. Run it once against a server started with {@code spring.threads.virtual.enabled=false}
+ * and once with {@code =true}; with platform threads the listing latency climbs (or times out) once the
+ * slow clients hold every Tomcat worker, with virtual threads it should stay flat. All clients are one user,
+ * so start the server with {@code dropbox.ratelimit.enabled=false} too.
+ *
+ * <pre>
+ * mvn -Pbench compile exec:exec -Dbench.main=com.yuvraj.dropbox.loadtest.SlowClientsLoadTest \
+ *     -Dbench.args="--base http://localhost:8080 --downloads 2000 --uploads 500 --seconds 60 --label virtual"
+ * </pre>
+ *
+ * Prints one JSON object with the probe's latency percentiles and the slow clients' progress.
+ */
+public class SlowClientsLoadTest {
+
+    // Each slow client moves CHUNK bytes every PAUSE, i.e. ~80 KB/s
+    private static final int CHUNK = 4096;
+    private static final long PAUSE_MS = 50;
+
+    private final LoadClient client;
+
+    private final AtomicLong downloadsDone = new AtomicLong();
+    private final AtomicLong uploadsDone = new AtomicLong();
+    private final AtomicLong bytesDown = new AtomicLong();
+    private final AtomicLong bytesUp = new AtomicLong();
+    private final AtomicLong clientErrors = new AtomicLong();
+
+    SlowClientsLoadTest(String base) {
+        this.client = new LoadClient(base);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = LoadClient.parseArgs(args);
+        SlowClientsLoadTest test = new SlowClientsLoadTest(opts.getOrDefault("base", "http://localhost:8080"));
+        Map<String, Object> result = test.run(
+                Integer.parseInt(opts.getOrDefault("downloads", "2000")),
+                Integer.parseInt(opts.getOrDefault("uploads", "500")),
+                Integer.parseInt(opts.getOrDefault("seconds", "60")),
+                Integer.parseInt(opts.getOrDefault("file-size", "1048576")));
+        result.put("label", opts.getOrDefault("label", ""));
+        System.out.println(LoadClient.JSON.writeValueAsString(result));
+    }
+
+    Map<String, Object> run(int downloads, int uploads, int seconds, int fileSize) throws Exception {
+        client.login();
+        client.send(client.multipartUpload("", "payload.bin", new ByteArrayInputStream(new byte[fileSize])));
+
+        long deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+        List<Long> probeMillis = Collections.synchronizedList(new ArrayList<>());
+        AtomicLong probeErrors = new AtomicLong();
+
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < downloads; i++) {
+                clients.submit(() -> loop(deadline, this::slowDownload));
+            }
+            for (int i = 0; i < uploads; i++) {
+                int n = i;
+                clients.submit(() -> loop(deadline, () -> slowUpload(n)));
+            }
+            clients.submit(() -> {
+                while (System.nanoTime() < deadline) {
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<Void> resp = client.http().send(
+                                client.get("/files/list").timeout(Duration.ofSeconds(30)).build(),
+                                HttpResponse.BodyHandlers.discarding());
+                        if (resp.statusCode() != 200) probeErrors.incrementAndGet();
+                        else probeMillis.add((System.nanoTime() - start) / 1_000_000);
+                    } catch (IOException e) {
+                        probeErrors.incrementAndGet();
+                    }
+                    Thread.sleep(100);
+                }
+                return null;
+            });
+            clients.shutdown();
+        }
+
+        List<Long> sorted = new ArrayList<>(probeMillis);
+        Collections.sort(sorted);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("slowDownloadClients", downloads);
+        result.put("slowUploadClients", uploads);
+        result.put("seconds", seconds);
+        result.put("listProbes", sorted.size());
+        result.put("listErrors", probeErrors.get());
+        result.put("listP50Ms", LoadClient.percentile(sorted, 0.50));
+        result.put("listP99Ms", LoadClient.percentile(sorted, 0.99));
+        result.put("listP999Ms", LoadClient.percentile(sorted, 0.999));
+        result.put("listMaxMs", sorted.isEmpty() ? null : sorted.get(sorted.size() - 1));
+        result.put("downloadsCompleted", downloadsDone.get());
+        result.put("uploadsCompleted", uploadsDone.get());
+        result.put("bytesDown", bytesDown.get());
+        result.put("bytesUp", bytesUp.get());
+        result.put("clientErrors", clientErrors.get());
+        return result;
+    }
+
+    /* ------------------ clients ------------------ */
+
+    private interface Step {
+        void run() throws Exception;
+    }
+
+    private Void loop(long deadline, Step step) {
+        while (System.nanoTime() < deadline) {
+            try {
+                step.run();
+            } catch (InterruptedException e) {
+                return null;
+            } catch (Exception e) {
+                clientErrors.incrementAndGet();
+            }
+        }
+        return null;
+    }
+
+    private void slowDownload() throws Exception {
+        HttpResponse<InputStream> resp = client.http().send(client.get("/files/download/payload.bin").build(),
+                HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream in = resp.body()) {
+            byte[] buf = new byte[CHUNK];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                bytesDown.addAndGet(n);
+                Thread.sleep(PAUSE_MS);
+            }
+        }
+        if (resp.statusCode() != 200) throw new IOException("download: HTTP " + resp.statusCode());
+        downloadsDone.incrementAndGet();
+    }
+
+    private void slowUpload(int n) throws Exception {
+        String name = "slow-" + n + "-" + UUID.randomUUID() + ".bin";
+        InputStream slowBody = new InputStream() {
+            private int remaining = 64 * 1024;
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0];
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (remaining == 0) return -1;
+                try {
+                    Thread.sleep(PAUSE_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+                int n = Math.min(Math.min(len, CHUNK), remaining);
+                remaining -= n;
+                bytesUp.addAndGet(n);
+                return n;
+            }
+        };
+        client.send(client.multipartUpload("uploads", name, slowBody));
+        uploadsDone.incrementAndGet();
+    }
+}
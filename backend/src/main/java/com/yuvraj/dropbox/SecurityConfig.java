@@ -1,18 +1,25 @@
 package com.yuvraj.dropbox;
 
+import jakarta.servlet.DispatcherType;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.web.SecurityFilterChain;
+import com.yuvraj.dropbox.metrics.FileMetrics;
 import com.yuvraj.dropbox.security.JwtAccessDeniedHandler;
 import com.yuvraj.dropbox.security.JwtAuthenticationEntryPoint;
 import com.yuvraj.dropbox.security.JwtAuthenticationFilter;
+import com.yuvraj.dropbox.security.RateLimitFilter;
+import com.yuvraj.dropbox.security.UploadQuotaFilter;
+import com.yuvraj.dropbox.service.QuotaService;
+import com.yuvraj.dropbox.service.RateLimitService;
 
 @Configuration
 public class SecurityConfig {
 
     @Bean
-    public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain filterChain(HttpSecurity http, QuotaService quotaService, RateLimitService rateLimits,
+                                           FileMetrics metrics) throws Exception {
 
         http
             .csrf(csrf -> csrf.disable())
@@ -23,12 +30,17 @@ public class SecurityConfig {
             );
 
         http.authorizeHttpRequests(auth -> auth
+                // streamed downloads finish on an ASYNC dispatch; the request was already authorized
+                .dispatcherTypeMatchers(DispatcherType.ASYNC, DispatcherType.ERROR).permitAll()
                 .requestMatchers("/h2-console/**").permitAll()
                 .requestMatchers("/auth/**").permitAll()
                 .anyRequest().authenticated()
         );
 
-        http.addFilterBefore(new JwtAuthenticationFilter(), org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter.class);
+        http.addFilterBefore(new JwtAuthenticationFilter(metrics), org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter.class);
+        // both need the authenticated user, and must run before the multipart body is parsed
+        http.addFilterAfter(new RateLimitFilter(rateLimits), JwtAuthenticationFilter.class);
+        http.addFilterAfter(new UploadQuotaFilter(quotaService), RateLimitFilter.class);
 
         return http.build();
     }
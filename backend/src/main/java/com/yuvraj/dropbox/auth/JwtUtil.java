@@ -1,10 +1,14 @@
 package com.yuvraj.dropbox.auth;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
 
 import java.security.Key;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 public class JwtUtil {
 
@@ -12,6 +16,35 @@ public class JwtUtil {
     private static final Key KEY = Keys.hmacShaKeyFor(SECRET_KEY.getBytes());
     private static final long EXPIRY_MILLIS = 3600_000; // 1 hour
 
+    // Parsers are immutable and thread-safe; build it once instead of per request
+    private static final JwtParser PARSER = Jwts.parserBuilder()
+            .setSigningKey(KEY) // modern parser
+            .build();
+
+    // A token that passed signature and expiry checks, and when it stops being valid
+    private record ValidatedToken(String uuid, long expiresAt) {}
+
+    // token -> validated subject; each entry is dropped when its token expires, so a hit is always still valid
+    private static final Cache<String, ValidatedToken> VALIDATED = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfter(new Expiry<String, ValidatedToken>() {
+                @Override
+                public long expireAfterCreate(String token, ValidatedToken value, long currentTime) {
+                    return TimeUnit.MILLISECONDS.toNanos(Math.max(0, value.expiresAt() - System.currentTimeMillis()));
+                }
+
+                @Override
+                public long expireAfterUpdate(String token, ValidatedToken value, long currentTime, long currentDuration) {
+                    return currentDuration;
+                }
+
+                @Override
+                public long expireAfterRead(String token, ValidatedToken value, long currentTime, long currentDuration) {
+                    return currentDuration;
+                }
+            })
+            .build();
+
     public static String generateToken(String uuid) {
         long now = System.currentTimeMillis();
         return Jwts.builder()
@@ -22,17 +55,32 @@ public class JwtUtil {
                 .compact();
     }
 
+    /**
+     * Subject of a valid token; throws a {@link JwtException} otherwise. Tokens seen before are answered
+     * from a bounded cache, skipping the parse and HMAC check.
+     */
     public static String validateTokenAndGetUUID(String token) {
-        Jws<Claims> claimsJws = Jwts.parserBuilder()
-                .setSigningKey(KEY) // modern parser
-                .build()
-                .parseClaimsJws(token);
+        ValidatedToken cached = VALIDATED.getIfPresent(token);
+        if (cached != null && cached.expiresAt() > System.currentTimeMillis()) {
+            return cached.uuid();
+        }
+        Claims claims = parse(token);
+        if (claims.getExpiration() != null) {
+            VALIDATED.put(token, new ValidatedToken(claims.getSubject(), claims.getExpiration().getTime()));
+        }
+        return claims.getSubject();
+    }
 
-        return claimsJws.getBody().getSubject();
+    // Full signature and expiry check, no cache
+    static Claims parse(String token) {
+        return PARSER.parseClaimsJws(token).getBody();
     }
+
+    static Key signingKey() {
+        return KEY;
+    }
+
     public static long getExpirySeconds() {
         return EXPIRY_MILLIS/1000; // match token expiry
     }
 }
-
-
@@ -2,67 +2,83 @@ package com.yuvraj.dropbox.controller;
 
 import com.yuvraj.dropbox.auth.JwtUtil;
 import com.yuvraj.dropbox.model.User;
-import com.yuvraj.dropbox.repository.UserRepository;
 import com.yuvraj.dropbox.dto.LoginRequest;
+import com.yuvraj.dropbox.dto.RefreshRequest;
 import com.yuvraj.dropbox.dto.RegisterRequest;
 import com.yuvraj.dropbox.dto.AuthResponse;
+import com.yuvraj.dropbox.service.RefreshTokenService;
+import com.yuvraj.dropbox.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.*;
 
-import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
+// register and login hash passwords; they return futures, so no request thread waits for the hash
 @RestController
 @RequestMapping("/auth")
 public class AuthController {
 
     @Autowired
-    private UserRepository userRepository;
+    private UserService userService;
 
-    @Value("${dropbox.upload.dir}")
-    private String uploadDir;
+    @Autowired
+    private RefreshTokenService refreshTokens;
 
     @PostMapping("/register")
-    public Map<String, String> register(@RequestBody RegisterRequest request) throws Exception {
-        if (userRepository.findByUsername(request.getUsername()) != null)
-            throw new RuntimeException("Username already exists");
+    public CompletableFuture<Map<String, String>> register(@RequestBody RegisterRequest request) {
+        // creates the user's folder too
+        return userService.register(request.getUsername(), request.getPassword(), request.getEmail())
+                .thenApply(user -> {
+                    Map<String, String> response = new HashMap<>();
+                    response.put("uuid", user.getUuid());
+                    response.put("username", user.getUsername());
+                    return response;
+                });
+    }
 
-        User user = new User();  // default constructor
-        user.setUsername(request.getUsername());
-        user.setPassword(request.getPassword());
-        user.setEmail(request.getEmail());
-        userRepository.save(user);
+    @PostMapping("/login")
+    public CompletableFuture<AuthResponse> login(@RequestBody LoginRequest loginRequest) {
+        return userService.authenticate(loginRequest.getUsername(), loginRequest.getPassword())
+                .thenApply(user -> respond(user.uuid(), user.username(), refreshTokens.issue(user.uuid())));
+    }
 
-        // Create folder
-        File userFolder = new File(uploadDir, user.getUuid());
-        if (!userFolder.exists()) userFolder.mkdirs();
+    /**
+     * A new access token (and refresh token) for a refresh token from login or an earlier refresh; no password.
+     * POST /auth/refresh  {"refreshToken": "..."}
+     */
+    @PostMapping("/refresh")
+    public AuthResponse refresh(@RequestBody RefreshRequest request) {
+        RefreshTokenService.Issued issued = refreshTokens.rotate(request.getRefreshToken());
+        User user = userService.get(issued.uuid());
+        return respond(user.getUuid(), user.getUsername(), issued);
+    }
 
-        Map<String, String> response = new HashMap<>();
-        response.put("uuid", user.getUuid());
-        response.put("username", user.getUsername());
+    /**
+     * Revoke a refresh token and every token refreshed from the same login. Access tokens run out on their own.
+     * POST /auth/logout  {"refreshToken": "..."}
+     */
+    @PostMapping("/logout")
+    public Map<String, Object> logout(@RequestBody RefreshRequest request) {
+        refreshTokens.revoke(request.getRefreshToken());
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
         return response;
     }
 
-    @PostMapping("/login")
-    public AuthResponse login(@RequestBody LoginRequest loginRequest) {
-        User user = userRepository.findByUsername(loginRequest.getUsername());
-        if (user == null || !user.getPassword().equals(loginRequest.getPassword())) {
-            throw new RuntimeException("Invalid username or password");
-        }
-
+    private static AuthResponse respond(String uuid, String username, RefreshTokenService.Issued refresh) {
         // Generate token with expiry
-        String token = JwtUtil.generateToken(user.getUuid());
+        String token = JwtUtil.generateToken(uuid);
         long expirySeconds = JwtUtil.getExpirySeconds(); // make this configurable
 
         AuthResponse response = new AuthResponse();
         response.setToken(token);
-        response.setUuid(user.getUuid());
-        response.setUsername(user.getUsername());
+        response.setUuid(uuid);
+        response.setUsername(username);
         response.setExpiresIn(expirySeconds); // in seconds
+        response.setRefreshToken(refresh.token());
+        response.setRefreshExpiresIn(refresh.expiresInSeconds());
         return response;
     }
-
-
 }
@@ -1,32 +1,73 @@
 package com.yuvraj.dropbox.controller;
 
-import com.yuvraj.dropbox.auth.JwtUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.yuvraj.dropbox.dto.BatchOperation;
+import com.yuvraj.dropbox.dto.BatchRequest;
+import com.yuvraj.dropbox.dto.ChangesPage;
+import com.yuvraj.dropbox.dto.ChunkedUploadRequest;
+import com.yuvraj.dropbox.dto.FileVersionInfo;
+import com.yuvraj.dropbox.dto.PurgeJobInfo;
+import com.yuvraj.dropbox.dto.SearchResults;
+import com.yuvraj.dropbox.dto.TrashItemInfo;
+import com.yuvraj.dropbox.dto.UploadSessionInfo;
+import com.yuvraj.dropbox.dto.UsageInfo;
+import com.yuvraj.dropbox.metrics.FileMetrics;
+import com.yuvraj.dropbox.model.FileVersion;
+import com.yuvraj.dropbox.model.TrashItem;
+import com.yuvraj.dropbox.service.BatchService;
+import com.yuvraj.dropbox.service.ChangeJournalService;
+import com.yuvraj.dropbox.service.ChunkedUploadService;
+import com.yuvraj.dropbox.service.DeltaUploadService;
+import com.yuvraj.dropbox.service.FileDownloadService;
+import com.yuvraj.dropbox.service.FileListingService;
+import com.yuvraj.dropbox.service.QuotaService;
+import com.yuvraj.dropbox.service.RateLimitService;
+import com.yuvraj.dropbox.service.SearchService;
+import com.yuvraj.dropbox.service.ThumbnailService;
+import com.yuvraj.dropbox.service.TreeService;
+import com.yuvraj.dropbox.service.TrashService;
+import com.yuvraj.dropbox.service.VersionService;
+import com.yuvraj.dropbox.storage.StorageBackend;
+import com.yuvraj.dropbox.storage.StorageBackend.StorageEntry;
+import io.micrometer.common.KeyValues;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.AntPathMatcher;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.WebAsyncUtils;
 import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.server.ResponseStatusException;
 
 import jakarta.servlet.http.HttpServletRequest;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 
-import java.io.FileOutputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.net.URI;
-import java.net.URLDecoder;
-import java.nio.file.*;
-import java.time.Instant;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.Callable;
 import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 @RestController
 @RequestMapping("/files")
@@ -34,8 +75,55 @@ public class FileController {
 
     private static final Logger log = LoggerFactory.getLogger(FileController.class);
 
-    @Value("${dropbox.upload.dir}")
-    private String uploadDir;
+    @Autowired
+    private StorageBackend storage;
+
+    @Autowired
+    private FileDownloadService downloadService;
+
+    @Autowired
+    private ChunkedUploadService chunkedUploadService;
+
+    @Autowired
+    private FileListingService listingService;
+
+    @Autowired
+    private TrashService trashService;
+
+    @Autowired
+    private ThumbnailService thumbnailService;
+
+    @Autowired
+    private QuotaService quotaService;
+
+    @Autowired
+    private ChangeJournalService changeJournal;
+
+    @Autowired
+    private DeltaUploadService deltaUploadService;
+
+    @Autowired
+    private TreeService treeService;
+
+    @Autowired
+    private SearchService searchService;
+
+    @Autowired
+    private BatchService batchService;
+
+    @Autowired
+    private FileMetrics metrics;
+
+    @Autowired
+    private RateLimitService rateLimits;
+
+    @Autowired
+    private VersionService versionService;
+
+    private final Cache<String, Boolean> verifiedUserRoots = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(Duration.ofMinutes(10))
+            .build();
 
     // DTO returned to frontend
     public static class FileInfo {
@@ -72,50 +160,61 @@ public class FileController {
         return new AntPathMatcher().extractPathWithinPattern(bestMatchPattern, pathWithinHandler);
     }
 
-    // Resolve and sanitize a path within the user's folder (prevents path traversal)
-    private Path resolvePathWithinUser(Path userFolder, String relative) {
-        Path resolved = (relative == null || relative.isBlank())
-                ? userFolder
-                : userFolder.resolve(relative);
-        resolved = resolved.normalize();
-        if (!resolved.startsWith(userFolder)) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid path (path traversal)");
+    // Resolve and sanitize a path within the user's folder to a storage key (prevents path traversal)
+    static String resolveKey(String userRoot, String relative) {
+        if (relative == null || relative.isBlank()) return userRoot;
+        StringBuilder key = new StringBuilder(userRoot);
+        for (String segment : relative.replace('\\', '/').split("/")) {
+            if (segment.isEmpty() || segment.equals(".")) continue;
+            if (segment.equals("..")) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid path (path traversal)");
+            }
+            key.append('/').append(segment);
         }
-        return resolved;
+        return key.toString();
+    }
+
+    static String relativeTo(String userRoot, String key) {
+        return key.length() > userRoot.length() ? key.substring(userRoot.length() + 1) : "";
+    }
+
+    // Build DTO from a storage entry
+    static FileInfo buildFileInfo(String userRoot, StorageEntry entry) {
+        return new FileInfo(entry.name(),
+                entry.directory() ? "folder" : "file",
+                relativeTo(userRoot, entry.key()),
+                entry.directory() ? null : entry.size(),
+                entry.lastModified());
+    }
+
+    // Timed instance entry to resolveKey for request handling
+    private String resolve(String userRoot, String relative) {
+        return metrics.resolvePath(() -> resolveKey(userRoot, relative));
     }
 
-    // Build DTO from a file system path
-    private FileInfo buildFileInfo(Path userFolder, Path p) {
+    private Optional<StorageEntry> stat(String key) {
         try {
-            boolean isDir = Files.isDirectory(p);
-            String rel = userFolder.relativize(p).toString().replace('\\','/');
-            Long size = isDir ? null : Files.size(p);
-            Long last = Files.getLastModifiedTime(p).toMillis();
-            return new FileInfo(p.getFileName().toString(),
-                    isDir ? "folder" : "file",
-                    rel,
-                    size,
-                    last);
+            return metrics.observe("dropbox.storage.stat", () -> storage.stat(key));
         } catch (IOException e) {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to read file metadata", e);
         }
     }
 
-    // Read JWT and return user folder Path
-    private Path getUserFolder(HttpServletRequest request) {
-        String authHeader = request.getHeader("Authorization");
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+    // The authenticated user's root key; the JWT was already validated by JwtAuthenticationFilter
+    private String getUserRoot(HttpServletRequest request) {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth == null || !(auth.getPrincipal() instanceof UserDetails principal)) {
             throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Missing or invalid Authorization header");
         }
-        String token = authHeader.substring(7);
-        String uuid = JwtUtil.validateTokenAndGetUUID(token);
-        if (uuid == null) throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid token");
-
-        Path userFolder = Paths.get(uploadDir).resolve(uuid).normalize();
-        if (!Files.exists(userFolder) || !Files.isDirectory(userFolder)) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User folder missing");
+        String uuid = principal.getUsername();
+        // The folder is created at registration and never removed, so one check per user is enough
+        if (verifiedUserRoots.getIfPresent(uuid) == null) {
+            if (!stat(uuid).map(StorageEntry::directory).orElse(false)) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User folder missing");
+            }
+            verifiedUserRoots.put(uuid, Boolean.TRUE);
         }
-        return userFolder;
+        return uuid;
     }
 
     /* ------------------ endpoints ------------------ */
@@ -124,30 +223,41 @@ public class FileController {
      * List files and folders at the given (nested) path inside the user's folder.
      * GET /files/list
      * GET /files/list/** (e.g. /files/list/folder1/folder2)
+     * Optional: sort=name|size|mtime, order=asc|desc, fields=name,type,path,size,lastModified.
+     * Pass limit (max 1000) and/or cursor to get one page: {"items": [...], "nextCursor": "..."}.
      */
     @GetMapping({"/list", "/list/**"})
-    public List<FileInfo> listFiles(HttpServletRequest request) {
-        Path userFolder = getUserFolder(request);
+    public ResponseEntity<StreamingResponseBody> listFiles(HttpServletRequest request,
+                                                           @RequestParam(required = false) Integer limit,
+                                                           @RequestParam(required = false) String cursor,
+                                                           @RequestParam(required = false) String sort,
+                                                           @RequestParam(required = false) String order,
+                                                           @RequestParam(required = false) String fields) {
+        String userRoot = getUserRoot(request);
         String rel = extractRelativePath(request);
-        Path target = resolvePathWithinUser(userFolder, rel);
-
-        if (!Files.exists(target)) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Path not found");
-        }
+        String key = resolve(userRoot, rel);
 
-        if (Files.isRegularFile(target)) {
-            // If target is a file, return info for that single file
-            return Collections.singletonList(buildFileInfo(userFolder, target));
-        }
+        StorageEntry target = stat(key)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Path not found"));
+        return listingService.list(userRoot, target, limit, cursor, sort, order, fields);
+    }
 
-        // target is a directory -> list top-level children
-        try (Stream<Path> stream = Files.list(target)) {
-            return stream
-                    .sorted(Comparator.comparing(Path::getFileName))
-                    .map(p -> buildFileInfo(userFolder, p))
-                    .collect(Collectors.toList());
-        } catch (IOException e) {
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to list directory", e);
+    /**
+     * The subtree at a path, streamed as nested JSON down to {@code depth} levels (default 1, max 20).
+     * Folders include their total size and file/folder counts.
+     * GET /files/tree
+     * GET /files/tree/**?depth=3
+     */
+    @GetMapping({"/tree", "/tree/**"})
+    public ResponseEntity<StreamingResponseBody> tree(HttpServletRequest request,
+                                                      @RequestParam(defaultValue = "1") int depth) {
+        String userRoot = getUserRoot(request);
+        String key = resolve(userRoot, extractRelativePath(request));
+        StorageEntry target = stat(key)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Path not found"));
+        // the walk happens before the body is streamed
+        try (RateLimitService.Permit ignored = rateLimits.acquireExpensive("tree walks")) {
+            return treeService.tree(userRoot, target, depth);
         }
     }
 
@@ -157,29 +267,32 @@ public class FileController {
      */
     @PostMapping({"/mkdir", "/mkdir/**"})
     public FileInfo makeDirectory(HttpServletRequest request) {
-        Path userFolder = getUserFolder(request);
+        String userRoot = getUserRoot(request);
         String rel = extractRelativePath(request);
         if (rel == null || rel.isBlank()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Missing folder name");
         }
 
-        // Normalize to prevent "../" path traversal
-        Path targetDir = userFolder.resolve(rel).normalize();
-
-        if (!targetDir.startsWith(userFolder)) {
+        String key = resolve(userRoot, rel);
+        if (key.equals(userRoot)) {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Invalid path");
         }
 
-        if (Files.exists(targetDir)) {
+        if (stat(key).isPresent()) {
             throw new ResponseStatusException(HttpStatus.CONFLICT, "Folder already exists");
         }
 
+        int created = quotaService.missingFolders(userRoot, key);
         try {
-            Files.createDirectories(targetDir);
-            return buildFileInfo(userFolder, targetDir);
+            storage.mkdirs(key);
         } catch (IOException e) {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to create directory", e);
         }
+        quotaService.recordAdded(userRoot, 0, created);
+        StorageEntry folder = stat(key)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to create directory"));
+        changeJournal.recordMkdir(userRoot, folder);
+        return buildFileInfo(userRoot, folder);
     }
 
     /**
@@ -187,148 +300,620 @@ public class FileController {
      * POST /files/upload
      * POST /files/upload/**  (e.g. /files/upload/folder1/folder2)
      * Form field name: "file" (supports multiple)
+     * 409 if a file exists, unless ?overwrite=true: then it is replaced and its previous content kept as a version.
      */
     @PostMapping({"/upload", "/upload/**"})
-    public List<FileInfo> uploadFiles(HttpServletRequest request, @RequestParam("file") MultipartFile[] files) {
+    public List<FileInfo> uploadFiles(HttpServletRequest request, @RequestParam("file") MultipartFile[] files,
+                                      @RequestParam(defaultValue = "false") boolean overwrite) {
         if (files == null || files.length == 0) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "No file provided");
         }
-        Path userFolder = getUserFolder(request);
+        String userRoot = getUserRoot(request);
         String rel = extractRelativePath(request);
-        Path dir = resolvePathWithinUser(userFolder, rel);
+        String dir = resolve(userRoot, rel);
+        // UploadQuotaFilter already turned away requests whose Content-Length can't fit, and each file claims its
+        // bytes before it is written; this just refuses a batch that can't fit before any of it is stored
+        if (!overwrite) {
+            quotaService.checkQuota(userRoot, Arrays.stream(files).mapToLong(MultipartFile::getSize).sum());
+        }
+        int createdFolders = quotaService.missingFolders(userRoot, dir);
         try {
-            Files.createDirectories(dir);
+            storage.mkdirs(dir);
         } catch (IOException e) {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to create upload directory", e);
         }
+        quotaService.recordAdded(userRoot, 0, createdFolders);
+        return metrics.upload("multipart", () -> storeUploads(userRoot, dir, files, overwrite));
+    }
+
+    private List<FileInfo> storeUploads(String userRoot, String dir, MultipartFile[] files, boolean overwrite) {
         List<FileInfo> uploaded = new ArrayList<>();
         for (MultipartFile mf : files) {
             String original = mf.getOriginalFilename();
             if (original == null || original.isBlank()) {
                 throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Missing file name");
             }
-            Path target = dir.resolve(original).normalize();
-            if (!target.startsWith(userFolder)) {
+            String key = resolve(dir, original);
+            if (key.equals(dir)) {
                 throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid file name");
             }
-            if (Files.exists(target)) {
+            Optional<StorageEntry> existing = stat(key);
+            if (existing.isPresent() && (!overwrite || existing.get().directory())) {
                 throw new ResponseStatusException(HttpStatus.CONFLICT, "File already exists");
             }
-            try {
-                Files.copy(mf.getInputStream(), target);
-                uploaded.add(buildFileInfo(userFolder, target));
+            long replacedSize = existing.map(StorageEntry::size).orElse(0L);
+            long addedBytes = mf.getSize() - replacedSize;
+            int addedFiles = existing.isPresent() ? 0 : 1;
+            quotaService.claim(userRoot, addedBytes, addedFiles);
+            VersionService.Snapshot previous = existing.isPresent() ? versionService.snapshot(userRoot, existing.get()) : null;
+            StorageEntry stored;
+            try (InputStream in = mf.getInputStream()) {
+                stored = storage.write(key, rateLimits.throttleUpload(userRoot, in), mf.getSize());
             } catch (IOException e) {
+                versionService.discard(previous);
+                quotaService.recordAdded(userRoot, -addedBytes, -addedFiles);
                 throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to save file: " + original, e);
+            } catch (RuntimeException e) {
+                versionService.discard(previous);
+                quotaService.recordAdded(userRoot, -addedBytes, -addedFiles);
+                throw e;
             }
+            versionService.keep(previous);
+            metrics.recordBytes(FileMetrics.IN, userRoot, stored.size());
+            changeJournal.recordUpload(userRoot, stored);
+            thumbnailService.generateAsync(stored);
+            uploaded.add(buildFileInfo(userRoot, stored));
         }
         return uploaded;
     }
 
+    /* ------------------ chunked / resumable upload ------------------ */
+
+    /**
+     * Start a resumable upload.
+     * POST /files/uploads  {"path": "folder/big.bin", "size": 123456789, "partSize": 8388608}
+     * Then PUT each part to /files/uploads/{uploadId}/parts/{n} (in parallel if you like) and commit.
+     */
+    @PostMapping("/uploads")
+    public UploadSessionInfo startChunkedUpload(HttpServletRequest request, @RequestBody ChunkedUploadRequest body) {
+        String userRoot = getUserRoot(request);
+        if (body.getPath() == null || body.getPath().isBlank()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Missing file path");
+        }
+        String key = resolve(userRoot, body.getPath());
+        if (key.equals(userRoot)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid file name");
+        }
+        // reserves body.getSize() against the quota until the upload is committed, aborted or expires
+        ChunkedUploadService.UploadSession session =
+                chunkedUploadService.create(userRoot, key, body.getSize(), body.getPartSize());
+        return chunkedUploadService.describe(session);
+    }
+
+    /**
+     * Upload one part (1-based) as the raw request body.
+     * PUT /files/uploads/{uploadId}/parts/{partNumber}
+     */
+    @PutMapping("/uploads/{uploadId}/parts/{partNumber}")
+    public Map<String, Object> uploadPart(HttpServletRequest request,
+                                          @PathVariable String uploadId,
+                                          @PathVariable int partNumber) throws IOException {
+        String userRoot = getUserRoot(request);
+        ChunkedUploadService.UploadSession session = chunkedUploadService.get(userRoot, uploadId);
+        long written = metrics.upload("part", () ->
+                chunkedUploadService.writePart(session, partNumber,
+                        rateLimits.throttleUpload(userRoot, request.getInputStream()), request.getContentLengthLong()));
+        metrics.recordBytes(FileMetrics.IN, userRoot, written);
+        Map<String, Object> resp = new HashMap<>();
+        resp.put("uploadId", uploadId);
+        resp.put("part", partNumber);
+        resp.put("size", written);
+        return resp;
+    }
+
+    /**
+     * Which parts have been received so far (used to resume).
+     * GET /files/uploads/{uploadId}
+     */
+    @GetMapping("/uploads/{uploadId}")
+    public UploadSessionInfo getChunkedUpload(HttpServletRequest request, @PathVariable String uploadId) {
+        String userRoot = getUserRoot(request);
+        return chunkedUploadService.describe(chunkedUploadService.get(userRoot, uploadId));
+    }
+
+    /**
+     * Complete the upload once every part is in; the file appears atomically.
+     * POST /files/uploads/{uploadId}/commit
+     */
+    @PostMapping("/uploads/{uploadId}/commit")
+    public FileInfo commitChunkedUpload(HttpServletRequest request, @PathVariable String uploadId) {
+        String userRoot = getUserRoot(request);
+        ChunkedUploadService.UploadSession session = chunkedUploadService.get(userRoot, uploadId);
+        String parent = session.getKey().substring(0, session.getKey().lastIndexOf('/'));
+        int createdFolders = quotaService.missingFolders(userRoot, parent);
+        // the bytes were reserved when the session started; commit counts them
+        StorageEntry stored = chunkedUploadService.commit(session);
+        quotaService.recordAdded(userRoot, 0, 1 + createdFolders);
+        changeJournal.recordUpload(userRoot, stored);
+        thumbnailService.generateAsync(stored);
+        return buildFileInfo(userRoot, stored);
+    }
+
+    /**
+     * Abandon an upload and free its staging space.
+     * DELETE /files/uploads/{uploadId}
+     */
+    @DeleteMapping("/uploads/{uploadId}")
+    public Map<String, Object> abortChunkedUpload(HttpServletRequest request, @PathVariable String uploadId) {
+        String userRoot = getUserRoot(request);
+        chunkedUploadService.abort(chunkedUploadService.get(userRoot, uploadId));
+        Map<String, Object> resp = new HashMap<>();
+        resp.put("aborted", uploadId);
+        resp.put("success", true);
+        return resp;
+    }
+
+    /* ------------------ delta (rsync-style) updates ------------------ */
+
+    /**
+     * Block signatures of a file, to compute a delta against (format in DeltaUploadService).
+     * GET /files/signature/**?blockSize=65536  (blockSize optional, defaults to about sqrt(size); raised for very large files)
+     */
+    @GetMapping("/signature/**")
+    public ResponseEntity<StreamingResponseBody> fileSignature(HttpServletRequest request,
+                                                               @RequestParam(required = false) Integer blockSize) {
+        String userRoot = getUserRoot(request);
+        StorageEntry entry = stat(resolve(userRoot, extractRelativePath(request)))
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "File not found"));
+        if (entry.directory()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Not a file");
+        }
+        int size = blockSize != null ? blockSize : DeltaUploadService.defaultBlockSize(entry.size());
+        if (size < DeltaUploadService.MIN_BLOCK_SIZE || size > DeltaUploadService.MAX_BLOCK_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "blockSize must be between "
+                    + DeltaUploadService.MIN_BLOCK_SIZE + " and " + DeltaUploadService.MAX_BLOCK_SIZE);
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(entry.etag())
+                .body(out -> deltaUploadService.writeSignature(entry, size, out));
+    }
+
+    /**
+     * Replace an existing file using a delta against its current version: only changed blocks are uploaded.
+     * The version it replaces is kept (see /files/versions).
+     * POST /files/delta/**?size=<new size in bytes>
+     * Headers: If-Match: <etag of the version the signatures came from>; body: delta instructions (binary).
+     * 412 if the file changed since; the new version replaces the old one atomically.
+     */
+    @PostMapping("/delta/**")
+    public FileInfo applyDelta(HttpServletRequest request, @RequestParam(required = false) Long size) throws IOException {
+        String userRoot = getUserRoot(request);
+        StorageEntry base = stat(resolve(userRoot, extractRelativePath(request)))
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "File not found"));
+        if (base.directory()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Not a file");
+        }
+        if (size == null || size < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Missing or invalid size");
+        }
+        String ifMatch = request.getHeader(HttpHeaders.IF_MATCH);
+        if (ifMatch == null) {
+            throw new ResponseStatusException(HttpStatus.PRECONDITION_REQUIRED, "If-Match with the base version's ETag is required");
+        }
+        if (base.etag() == null || Arrays.stream(ifMatch.split(",")).map(String::trim).noneMatch(base.etag()::equals)) {
+            throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, "File changed since the signatures were taken");
+        }
+        quotaService.claim(userRoot, size - base.size(), 0);
+        // copied blocks come from a snapshot, so a concurrent overwrite can't leave a mix of two versions
+        VersionService.Snapshot previous = versionService.pin(userRoot, base);
+        StorageEntry updated;
+        try {
+            // the snapshot is of the base only if the file is still that version after it was taken
+            String etag = stat(base.key()).map(StorageEntry::etag).orElse(null);
+            if (!base.etag().equals(etag)) {
+                throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, "File changed since the signatures were taken");
+            }
+            updated = metrics.upload("delta", () -> deltaUploadService.apply(base, previous.key(),
+                    rateLimits.throttleUpload(userRoot, request.getInputStream()), size));
+        } catch (IOException | RuntimeException e) {
+            versionService.discard(previous);
+            quotaService.recordAdded(userRoot, base.size() - size, 0);
+            throw e;
+        }
+        versionService.keep(previous);
+        // only the delta crossed the wire
+        metrics.recordBytes(FileMetrics.IN, userRoot, request.getContentLengthLong());
+        changeJournal.recordUpload(userRoot, updated);
+        thumbnailService.generateAsync(updated);
+        return buildFileInfo(userRoot, updated);
+    }
+
     /**
      * Download a file at nested path:
      * GET /files/download/**  (e.g. /files/download/folder1/file.txt)
+     * Folders are streamed as a ZIP while they are walked (no temp file).
+     * Files support Range (206, multipart/byteranges), ETag / Last-Modified and conditional GET (304).
      */
     @GetMapping("/download/**")
-    public ResponseEntity<Resource> downloadFile(HttpServletRequest request) throws Exception {
-        Path userFolder = getUserFolder(request);
+    public ResponseEntity<StreamingResponseBody> downloadFile(HttpServletRequest request) throws Exception {
+        String userRoot = getUserRoot(request);
         String restOfPath = request.getRequestURI().split("/download/")[1];
         restOfPath = java.net.URLDecoder.decode(restOfPath, java.nio.charset.StandardCharsets.UTF_8);
-        Path filePath = userFolder.resolve(restOfPath).normalize();
-        if (!Files.exists(filePath)) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "File not found");
-        }
-        Resource resource;
-        String filename;
-        String contentType = "application/octet-stream";
-        String disposition = "attachment";
-        if (Files.isDirectory(filePath)) {
-            Path zipPath = Files.createTempFile("download-", ".zip");
-            try (FileOutputStream fos = new FileOutputStream(zipPath.toFile());
-                java.util.zip.ZipOutputStream zos = new java.util.zip.ZipOutputStream(fos)) {
-                zipDirectory(filePath, filePath.getFileName().toString(), zos);
-            }
-            resource = new UrlResource(zipPath.toUri());
-            filename = filePath.getFileName().toString() + ".zip";
+        String key = resolve(userRoot, restOfPath);
+        StorageEntry entry = stat(key)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "File not found"));
+        if (entry.directory()) {
+            String rootName = key.equals(userRoot) ? "files" : entry.name();
+            // held until the archive is written, or until the async request ends without the body having run
+            // (executor full, client gone, timeout); closing twice is harmless
+            RateLimitService.Permit permit = rateLimits.acquireExpensive("folder downloads");
+            WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(permit, new CallableProcessingInterceptor() {
+                @Override
+                public <T> Object handleTimeout(NativeWebRequest webRequest, Callable<T> task) {
+                    permit.close();
+                    return RESULT_NONE;
+                }
+
+                @Override
+                public <T> Object handleError(NativeWebRequest webRequest, Callable<T> task, Throwable t) {
+                    permit.close();
+                    return RESULT_NONE;
+                }
+
+                @Override
+                public <T> void afterCompletion(NativeWebRequest webRequest, Callable<T> task) {
+                    permit.close();
+                }
+            });
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + rootName + ".zip\"")
+                    .header(HttpHeaders.CONTENT_TYPE, "application/zip")
+                    .header(HttpHeaders.CACHE_CONTROL, "no-cache, no-store, must-revalidate")
+                    .header(HttpHeaders.PRAGMA, "no-cache")
+                    .header(HttpHeaders.EXPIRES, "0")
+                    .body(metrics.download(userRoot, "dropbox.zip", KeyValues.empty(), out -> {
+                        try (permit) {
+                            zipDirectory(storage, key, rootName, rateLimits.throttleDownload(userRoot, out));
+                        }
+                    }));
+        }
+
+        String filename = entry.name();
+        String contentType = MediaTypeFactory.getMediaType(filename).map(MediaType::toString).orElse(null);
+        String disposition;
+        String forceDownload = request.getParameter("download");
+        if ("true".equalsIgnoreCase(forceDownload)) {
+            disposition = "attachment";
+        } else if (contentType != null && (contentType.equals("application/pdf") || contentType.startsWith("image/"))) {
+            disposition = "inline";
         } else {
-            resource = new UrlResource(filePath.toUri());
-            filename = filePath.getFileName().toString();
-            try {
-                contentType = Files.probeContentType(filePath);
-            } catch (IOException ignored) {}
-            String forceDownload = request.getParameter("download");
-            if ("true".equalsIgnoreCase(forceDownload)) {
-                disposition = "attachment";
-            } else if (contentType != null && (contentType.equals("application/pdf") || contentType.startsWith("image/"))) {
-                disposition = "inline";
-            } else {
-                disposition = "attachment";
-            }
+            disposition = "attachment";
         }
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, disposition + "; filename=\"" + filename + "\"")
-                .header(HttpHeaders.CONTENT_TYPE, contentType != null ? contentType : "application/octet-stream")
-                .header(HttpHeaders.CACHE_CONTROL, "no-cache, no-store, must-revalidate")
-                .header(HttpHeaders.PRAGMA, "no-cache")
-                .header(HttpHeaders.EXPIRES, "0")
-                .body(resource);
-    }
-
-    // Helper method to zip folder recursively
-    private void zipDirectory(Path folder, String parentFolder, java.util.zip.ZipOutputStream zos) throws Exception {
-        Files.walk(folder).forEach(path -> {
-            try {
-                String entryName = parentFolder + "/" + folder.relativize(path).toString();
-                if (Files.isDirectory(path)) return; // skip directories in zip entry
-                zos.putNextEntry(new java.util.zip.ZipEntry(entryName));
-                Files.copy(path, zos);
-                zos.closeEntry();
-            } catch (Exception e) {
-                throw new RuntimeException("Error zipping folder", e);
-            }
-        });
+        // Range, If-Range, If-None-Match / If-Modified-Since and ETag handling
+        return downloadService.serveFile(userRoot, request, entry,
+                contentType != null ? contentType : "application/octet-stream",
+                disposition + "; filename=\"" + filename + "\"");
     }
 
+    /**
+     * JPEG thumbnail of an image or PDF (first page) at a fixed size: small (128px), medium (256px) or large (1024px).
+     * GET /files/thumb/**?size=medium  (e.g. /files/thumb/photos/cat.png)
+     * 415 for other file types; 503 with Retry-After while the thumbnail workers are saturated.
+     */
+    @GetMapping("/thumb/**")
+    public ResponseEntity<byte[]> thumbnail(HttpServletRequest request,
+                                            @RequestParam(defaultValue = "medium") String size) {
+        String userRoot = getUserRoot(request);
+        String key = resolve(userRoot, extractRelativePath(request));
+        StorageEntry entry = stat(key)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "File not found"));
+        if (entry.directory()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Folders have no thumbnail");
+        }
+        ThumbnailService.Size thumbSize = ThumbnailService.Size.parse(size);
+        String etag = thumbnailService.etag(entry, thumbSize);
+        CacheControl cacheControl = CacheControl.noCache().cachePrivate();
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && (ifNoneMatch.equals("*") || ifNoneMatch.contains(etag))) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(cacheControl).build();
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.IMAGE_JPEG)
+                .eTag(etag)
+                .cacheControl(cacheControl)
+                .body(thumbnailService.get(entry, thumbSize));
+    }
 
+    // Extensions whose content is already compressed; deflating them again only burns CPU
+    private static final Set<String> PRECOMPRESSED_EXTENSIONS = Set.of(
+            "jpg", "jpeg", "png", "gif", "webp", "heic", "avif",
+            "mp4", "m4v", "mov", "mkv", "webm", "avi",
+            "mp3", "m4a", "aac", "ogg", "opus", "flac",
+            "zip", "gz", "tgz", "bz2", "xz", "zst", "7z", "rar",
+            "docx", "xlsx", "pptx", "odt", "ods", "odp", "jar", "apk");
+
+    private static boolean isPrecompressed(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && PRECOMPRESSED_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
 
+    // Helper method to zip folder recursively, writing each entry to the response as the walk reaches it.
+    // Already-compressed files go in at level 0 (stored deflate blocks), so no CRC pre-pass is needed.
+    // A client disconnect surfaces as an IOException from the output stream, which aborts the walk.
+    static void zipDirectory(StorageBackend storage, String folderKey, String parentFolder, OutputStream out)
+            throws IOException {
+        ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(out, 64 * 1024));
+        try (Stream<StorageEntry> walk = storage.walk(folderKey)) {
+            Iterator<StorageEntry> it = walk.iterator();
+            while (it.hasNext()) {
+                StorageEntry file = it.next();
+                if (file.directory()) continue;
+                String entryName = parentFolder + "/" + relativeTo(folderKey, file.key());
+                InputStream in;
+                try {
+                    in = storage.read(file.key(), 0, Long.MAX_VALUE);
+                } catch (IOException e) {
+                    // Entry vanished or became unreadable mid-walk; skip it rather than truncating the archive
+                    log.warn("Skipping {} while zipping: {}", file.key(), e.toString());
+                    continue;
+                }
+                try (in) {
+                    ZipEntry entry = new ZipEntry(entryName);
+                    entry.setTime(file.lastModified());
+                    zos.setLevel(isPrecompressed(file.name()) ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+                    zos.putNextEntry(entry);
+                    in.transferTo(zos);
+                    zos.closeEntry();
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        // finish() writes the central directory; the servlet stream itself is closed by Spring
+        zos.finish();
+        zos.flush();
+    }
 
     /**
-     * Delete a file or folder (recursively) at nested path.
+     * Delete a file or folder (recursively) at nested path. It goes to the trash (a single rename) and can be
+     * restored until it is purged.
      * DELETE /files/delete/**  (e.g. /files/delete/folder1/file.txt  OR /files/delete/folder1/subfolder)
      */
     @DeleteMapping({"/delete", "/delete/**"})
     public Map<String, Object> delete(HttpServletRequest request) {
-        Path userFolder = getUserFolder(request);
+        String userRoot = getUserRoot(request);
         String rel = extractRelativePath(request);
         if (rel == null || rel.isBlank()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Missing required fields");
         }
         rel = java.net.URLDecoder.decode(rel, java.nio.charset.StandardCharsets.UTF_8);
-        Path target = resolvePathWithinUser(userFolder, rel);
-        if (!Files.exists(target)) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "File or folder not found");
+        String key = resolve(userRoot, rel);
+        if (key.equals(userRoot)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid path");
         }
-        try {
-            if (Files.isDirectory(target)) {
-                try (Stream<Path> walk = Files.walk(target)) {
-                    walk.sorted(Comparator.reverseOrder())
-                        .forEach(p -> {
-                            try { Files.deleteIfExists(p); }
-                            catch (IOException ex) { throw new RuntimeException(ex); }
-                        });
-                }
-            } else {
-                Files.delete(target);
-            }
-        } catch (RuntimeException ex) {
-            Throwable cause = ex.getCause();
-            if (cause instanceof ResponseStatusException) throw (ResponseStatusException) cause;
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to delete", ex);
-        } catch (IOException e) {
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to delete", e);
+        StorageEntry entry = stat(key)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "File or folder not found"));
+        // a single rename, after a walk below a folder to take its size off the quota
+        TrashItem item;
+        try (RateLimitService.Permit ignored = entry.directory()
+                ? rateLimits.acquireExpensive("folder deletes") : null) {
+            item = metrics.observe("dropbox.delete", KeyValues.of("type", entry.directory() ? "folder" : "file"),
+                    () -> trashService.moveToTrash(userRoot, key, entry));
         }
+        changeJournal.recordDelete(userRoot, key, entry.directory());
         Map<String,Object> resp = new HashMap<>();
         resp.put("deleted", rel);
+        resp.put("trashId", item.getId());
         resp.put("success", true);
         return resp;
     }
+
+    /**
+     * Several moves, copies, renames and deletes in one request. They run in parallel, except that operations
+     * on overlapping paths run in the order given; moves are renames, deletes go to the trash. Each result is
+     * streamed as soon as its operation finishes (in completion order; "index" says which one it was):
+     * {"results": [{"index": 0, "op": "move", "path": "a.txt", "to": "docs/a.txt", "status": 200}, ...],
+     *  "succeeded": 3, "failed": 1}
+     * POST /files/batch  {"operations": [{"op": "move", "path": "a.txt", "to": "docs/a.txt"},
+     *                                    {"op": "copy", "path": "docs", "to": "docs-backup"},
+     *                                    {"op": "rename", "path": "b.txt", "name": "c.txt"},
+     *                                    {"op": "delete", "path": "old"}]}
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<StreamingResponseBody> batch(HttpServletRequest request, @RequestBody BatchRequest body) {
+        String userRoot = getUserRoot(request);
+        List<BatchOperation> operations = body.getOperations();
+        if (operations == null || operations.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "No operations");
+        }
+        if (operations.size() > BatchService.MAX_OPERATIONS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "At most " + BatchService.MAX_OPERATIONS + " operations per batch");
+        }
+        // the whole batch is rejected before anything runs if any operation is malformed
+        List<BatchService.Operation> resolved = new ArrayList<>(operations.size());
+        for (int i = 0; i < operations.size(); i++) {
+            resolved.add(resolveOperation(userRoot, i, operations.get(i)));
+        }
+        return batchService.run(userRoot, resolved);
+    }
+
+    private BatchService.Operation resolveOperation(String userRoot, int index, BatchOperation operation) {
+        String where = "operations[" + index + "]: ";
+        BatchService.Op op = BatchService.Op.parse(operation.getOp())
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        where + "op must be move, copy, rename or delete"));
+        if (operation.getPath() == null || operation.getPath().isBlank()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, where + "missing path");
+        }
+        String from = resolve(userRoot, operation.getPath());
+        if (from.equals(userRoot)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, where + "invalid path");
+        }
+        String to = switch (op) {
+            case DELETE -> null;
+            case MOVE, COPY -> {
+                if (operation.getTo() == null || operation.getTo().isBlank()) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, where + "missing destination");
+                }
+                String key = resolve(userRoot, operation.getTo());
+                if (key.equals(userRoot)) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, where + "invalid destination");
+                }
+                yield key;
+            }
+            case RENAME -> {
+                String name = operation.getName();
+                if (name == null || name.isBlank() || name.contains("/") || name.contains("\\")
+                        || name.equals(".") || name.equals("..")) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, where + "invalid name");
+                }
+                yield from.substring(0, from.lastIndexOf('/') + 1) + name;
+            }
+        };
+        return new BatchService.Operation(index, op, from, to);
+    }
+
+    /* ------------------ delta sync ------------------ */
+
+    /**
+     * Cursor at the current end of the change journal. To bootstrap a sync client: take this cursor, list the
+     * tree, then follow /files/changes from the cursor.
+     * GET /files/changes/latest
+     */
+    @GetMapping("/changes/latest")
+    public Map<String, Object> latestChangeCursor(HttpServletRequest request) {
+        Map<String, Object> resp = new HashMap<>();
+        resp.put("cursor", changeJournal.latestCursor(getUserRoot(request)));
+        return resp;
+    }
+
+    /**
+     * Uploads, mkdirs, deletes, restores, moves and copies since the cursor, oldest first: {"changes": [...], "cursor": "...", "hasMore": false}.
+     * With nothing new the request long-polls for up to {@code wait} seconds (default 30, max 120, 0 = don't wait).
+     * GET /files/changes?cursor=...&limit=500&wait=30
+     * 410 when the cursor is older than the journal's retention; bootstrap again.
+     */
+    @GetMapping("/changes")
+    public DeferredResult<ChangesPage> changes(HttpServletRequest request,
+                                               @RequestParam(required = false) String cursor,
+                                               @RequestParam(required = false) Integer limit,
+                                               @RequestParam(defaultValue = "30") int wait) {
+        return changeJournal.poll(getUserRoot(request), cursor, limit, wait);
+    }
+
+    /**
+     * Files and folders whose name, folder path or text matches every word of {@code q}, best match first.
+     * GET /files/search?q=report&limit=20&offset=0
+     */
+    @GetMapping("/search")
+    public SearchResults search(HttpServletRequest request,
+                                @RequestParam(required = false) String q,
+                                @RequestParam(required = false) Integer limit,
+                                @RequestParam(required = false) Integer offset) {
+        if (q == null || q.isBlank()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Missing search query");
+        }
+        return searchService.search(getUserRoot(request), q, limit, offset);
+    }
+
+    /**
+     * Storage used against the quota; a single row read, no walk.
+     * GET /files/usage
+     */
+    @GetMapping("/usage")
+    public UsageInfo usage(HttpServletRequest request) {
+        return quotaService.usage(getUserRoot(request));
+    }
+
+    /* ------------------ versions ------------------ */
+
+    /**
+     * Earlier versions of a file, most recently replaced first.
+     * GET /files/versions?path=folder/file.txt
+     */
+    @GetMapping("/versions")
+    public List<FileVersionInfo> listVersions(HttpServletRequest request, @RequestParam(required = false) String path) {
+        if (path == null || path.isBlank()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Missing required fields");
+        }
+        String userRoot = getUserRoot(request);
+        String key = resolve(userRoot, path);
+        if (key.equals(userRoot)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Not a file");
+        }
+        return versionService.list(userRoot, key.substring(userRoot.length() + 1));
+    }
+
+    /**
+     * Download an earlier version; Range and conditional GET work as for /files/download.
+     * GET /files/versions/{id}
+     */
+    @GetMapping("/versions/{id}")
+    public ResponseEntity<StreamingResponseBody> downloadVersion(HttpServletRequest request, @PathVariable String id) throws Exception {
+        String userRoot = getUserRoot(request);
+        FileVersion version = versionService.get(userRoot, id);
+        StorageEntry content = versionService.content(version);
+        String filename = version.getPath().substring(version.getPath().lastIndexOf('/') + 1);
+        String contentType = MediaTypeFactory.getMediaType(filename).map(MediaType::toString).orElse("application/octet-stream");
+        return downloadService.serveFile(userRoot, request, content, contentType, "attachment; filename=\"" + filename + "\"");
+    }
+
+    /**
+     * Make an earlier version current again; what is there now becomes a version itself.
+     * POST /files/versions/{id}/restore
+     */
+    @PostMapping("/versions/{id}/restore")
+    public FileInfo restoreVersion(HttpServletRequest request, @PathVariable String id) {
+        String userRoot = getUserRoot(request);
+        StorageEntry restored = versionService.restore(userRoot, id);
+        changeJournal.recordUpload(userRoot, restored);
+        thumbnailService.generateAsync(restored);
+        return buildFileInfo(userRoot, restored);
+    }
+
+    /* ------------------ trash ------------------ */
+
+    /**
+     * Items in the trash, most recently deleted first.
+     * GET /files/trash
+     */
+    @GetMapping("/trash")
+    public List<TrashItemInfo> listTrash(HttpServletRequest request) {
+        return trashService.list(getUserRoot(request));
+    }
+
+    /**
+     * Put an item back where it was deleted from (409 if something else is there now).
+     * POST /files/trash/{id}/restore
+     */
+    @PostMapping("/trash/{id}/restore")
+    public FileInfo restoreFromTrash(HttpServletRequest request, @PathVariable String id) {
+        String userRoot = getUserRoot(request);
+        String key = trashService.restore(userRoot, id);
+        StorageEntry restored = stat(key)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to restore"));
+        changeJournal.recordRestore(userRoot, restored);
+        return buildFileInfo(userRoot, restored);
+    }
+
+    /**
+     * Permanently delete one item, or empty the whole trash. Runs in the background; poll the returned job.
+     * DELETE /files/trash/{id}
+     * DELETE /files/trash
+     */
+    @DeleteMapping({"/trash", "/trash/{id}"})
+    public PurgeJobInfo purgeTrash(HttpServletRequest request, @PathVariable(required = false) String id) {
+        return trashService.purge(getUserRoot(request), id);
+    }
+
+    /**
+     * Progress of a purge job.
+     * GET /files/trash/jobs/{jobId}
+     */
+    @GetMapping("/trash/jobs/{jobId}")
+    public PurgeJobInfo purgeJobStatus(HttpServletRequest request, @PathVariable String jobId) {
+        return trashService.jobStatus(getUserRoot(request), jobId);
+    }
 }
@@ -5,6 +5,8 @@ public class AuthResponse {
     private String uuid;
     private String username;
     private long expiresIn;
+    private String refreshToken;   // exchange at POST /auth/refresh for a new token; replaced on every use
+    private long refreshExpiresIn; // seconds
 
     // getters and setters
     public String getToken() { return token; }
@@ -15,4 +17,8 @@ public class AuthResponse {
     public void setUsername(String username) { this.username = username; }
     public long getExpiresIn() { return expiresIn; }
     public void setExpiresIn(long expiresIn) { this.expiresIn = expiresIn; }
+    public String getRefreshToken() { return refreshToken; }
+    public void setRefreshToken(String refreshToken) { this.refreshToken = refreshToken; }
+    public long getRefreshExpiresIn() { return refreshExpiresIn; }
+    public void setRefreshExpiresIn(long refreshExpiresIn) { this.refreshExpiresIn = refreshExpiresIn; }
 }
@@ -0,0 +1,27 @@
+package com.yuvraj.dropbox.dto;
+
+public class BatchItemResult {
+    private int index;        // position of the operation in the request
+    private String op;
+    private String path;
+    private String to;        // resulting path of a move, copy or rename
+    private int status;       // HTTP status the operation would have had on its own
+    private String error;     // null on success
+    private String trashId;   // delete: id to restore it from the trash
+
+    // getters and setters
+    public int getIndex() { return index; }
+    public void setIndex(int index) { this.index = index; }
+    public String getOp() { return op; }
+    public void setOp(String op) { this.op = op; }
+    public String getPath() { return path; }
+    public void setPath(String path) { this.path = path; }
+    public String getTo() { return to; }
+    public void setTo(String to) { this.to = to; }
+    public int getStatus() { return status; }
+    public void setStatus(int status) { this.status = status; }
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+    public String getTrashId() { return trashId; }
+    public void setTrashId(String trashId) { this.trashId = trashId; }
+}
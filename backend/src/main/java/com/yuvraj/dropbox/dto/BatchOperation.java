@@ -0,0 +1,18 @@
+package com.yuvraj.dropbox.dto;
+
+public class BatchOperation {
+    private String op;     // "move", "copy", "rename" or "delete"
+    private String path;   // file or folder inside the user's folder
+    private String to;     // move/copy: destination path (must not exist yet)
+    private String name;   // rename: new name in the same folder
+
+    // getters and setters
+    public String getOp() { return op; }
+    public void setOp(String op) { this.op = op; }
+    public String getPath() { return path; }
+    public void setPath(String path) { this.path = path; }
+    public String getTo() { return to; }
+    public void setTo(String to) { this.to = to; }
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+}
@@ -0,0 +1,11 @@
+package com.yuvraj.dropbox.dto;
+
+import java.util.List;
+
+public class BatchRequest {
+    private List<BatchOperation> operations;
+
+    // getters and setters
+    public List<BatchOperation> getOperations() { return operations; }
+    public void setOperations(List<BatchOperation> operations) { this.operations = operations; }
+}
@@ -0,0 +1,24 @@
+package com.yuvraj.dropbox.dto;
+
+public class ChangeEventInfo {
+    private String event;         // "upload", "mkdir", "delete" or "restore"
+    private String path;          // relative path inside user's folder
+    private String type;          // "file" or "folder"
+    private Long size;            // bytes, null for folders and deletes
+    private Long lastModified;    // epoch millis, null for deletes
+    private long timestamp;       // when the change happened, epoch millis
+
+    // getters and setters
+    public String getEvent() { return event; }
+    public void setEvent(String event) { this.event = event; }
+    public String getPath() { return path; }
+    public void setPath(String path) { this.path = path; }
+    public String getType() { return type; }
+    public void setType(String type) { this.type = type; }
+    public Long getSize() { return size; }
+    public void setSize(Long size) { this.size = size; }
+    public Long getLastModified() { return lastModified; }
+    public void setLastModified(Long lastModified) { this.lastModified = lastModified; }
+    public long getTimestamp() { return timestamp; }
+    public void setTimestamp(long timestamp) { this.timestamp = timestamp; }
+}
@@ -0,0 +1,17 @@
+package com.yuvraj.dropbox.dto;
+
+import java.util.List;
+
+public class ChangesPage {
+    private List<ChangeEventInfo> changes;  // oldest first
+    private String cursor;                  // pass back to get what happens next
+    private boolean hasMore;                // more changes are waiting; ask again right away
+
+    // getters and setters
+    public List<ChangeEventInfo> getChanges() { return changes; }
+    public void setChanges(List<ChangeEventInfo> changes) { this.changes = changes; }
+    public String getCursor() { return cursor; }
+    public void setCursor(String cursor) { this.cursor = cursor; }
+    public boolean isHasMore() { return hasMore; }
+    public void setHasMore(boolean hasMore) { this.hasMore = hasMore; }
+}
@@ -0,0 +1,15 @@
+package com.yuvraj.dropbox.dto;
+
+public class ChunkedUploadRequest {
+    private String path;     // target file path inside the user's folder, e.g. "videos/big.mp4"
+    private long size;       // total file size in bytes
+    private Long partSize;   // optional, server default when null
+
+    // getters and setters
+    public String getPath() { return path; }
+    public void setPath(String path) { this.path = path; }
+    public long getSize() { return size; }
+    public void setSize(long size) { this.size = size; }
+    public Long getPartSize() { return partSize; }
+    public void setPartSize(Long partSize) { this.partSize = partSize; }
+}
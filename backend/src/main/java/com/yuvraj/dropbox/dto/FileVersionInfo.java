@@ -0,0 +1,24 @@
+package com.yuvraj.dropbox.dto;
+
+public class FileVersionInfo {
+    private String id;
+    private String path;         // the file it is a version of
+    private long size;           // bytes
+    private long lastModified;   // epoch millis, when this revision was written
+    private long replacedAt;     // epoch millis, when a newer revision replaced it
+    private long expiresAt;      // epoch millis, when retention removes it at the latest
+
+    // getters and setters
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    public String getPath() { return path; }
+    public void setPath(String path) { this.path = path; }
+    public long getSize() { return size; }
+    public void setSize(long size) { this.size = size; }
+    public long getLastModified() { return lastModified; }
+    public void setLastModified(long lastModified) { this.lastModified = lastModified; }
+    public long getReplacedAt() { return replacedAt; }
+    public void setReplacedAt(long replacedAt) { this.replacedAt = replacedAt; }
+    public long getExpiresAt() { return expiresAt; }
+    public void setExpiresAt(long expiresAt) { this.expiresAt = expiresAt; }
+}
@@ -0,0 +1,33 @@
+package com.yuvraj.dropbox.dto;
+
+public class PurgeJobInfo {
+    private String jobId;
+    private String status;        // QUEUED, RUNNING, DONE or FAILED
+    private int items;            // trash items in this job
+    private int itemsPurged;
+    private long filesDeleted;
+    private long bytesDeleted;
+    private Long startedAt;       // epoch millis
+    private Long finishedAt;
+    private String error;
+
+    // getters and setters
+    public String getJobId() { return jobId; }
+    public void setJobId(String jobId) { this.jobId = jobId; }
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+    public int getItems() { return items; }
+    public void setItems(int items) { this.items = items; }
+    public int getItemsPurged() { return itemsPurged; }
+    public void setItemsPurged(int itemsPurged) { this.itemsPurged = itemsPurged; }
+    public long getFilesDeleted() { return filesDeleted; }
+    public void setFilesDeleted(long filesDeleted) { this.filesDeleted = filesDeleted; }
+    public long getBytesDeleted() { return bytesDeleted; }
+    public void setBytesDeleted(long bytesDeleted) { this.bytesDeleted = bytesDeleted; }
+    public Long getStartedAt() { return startedAt; }
+    public void setStartedAt(Long startedAt) { this.startedAt = startedAt; }
+    public Long getFinishedAt() { return finishedAt; }
+    public void setFinishedAt(Long finishedAt) { this.finishedAt = finishedAt; }
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+}
@@ -0,0 +1,9 @@
+package com.yuvraj.dropbox.dto;
+
+public class RefreshRequest {
+    private String refreshToken;
+
+    // getters and setters
+    public String getRefreshToken() { return refreshToken; }
+    public void setRefreshToken(String refreshToken) { this.refreshToken = refreshToken; }
+}
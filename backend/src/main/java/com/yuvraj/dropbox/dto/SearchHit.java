@@ -0,0 +1,24 @@
+package com.yuvraj.dropbox.dto;
+
+public class SearchHit {
+    private String name;
+    private String type;          // "file" or "folder"
+    private String path;          // relative path inside user's folder
+    private Long size;            // bytes, null for folders
+    private long lastModified;    // epoch millis
+    private float score;
+
+    // getters and setters
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+    public String getType() { return type; }
+    public void setType(String type) { this.type = type; }
+    public String getPath() { return path; }
+    public void setPath(String path) { this.path = path; }
+    public Long getSize() { return size; }
+    public void setSize(Long size) { this.size = size; }
+    public long getLastModified() { return lastModified; }
+    public void setLastModified(long lastModified) { this.lastModified = lastModified; }
+    public float getScore() { return score; }
+    public void setScore(float score) { this.score = score; }
+}
@@ -0,0 +1,20 @@
+package com.yuvraj.dropbox.dto;
+
+import java.util.List;
+
+public class SearchResults {
+    private List<SearchHit> items;   // best match first
+    private long total;              // matches overall (a lower bound when totalIsExact is false)
+    private boolean totalIsExact;
+    private Integer nextOffset;      // null on the last page
+
+    // getters and setters
+    public List<SearchHit> getItems() { return items; }
+    public void setItems(List<SearchHit> items) { this.items = items; }
+    public long getTotal() { return total; }
+    public void setTotal(long total) { this.total = total; }
+    public boolean isTotalIsExact() { return totalIsExact; }
+    public void setTotalIsExact(boolean totalIsExact) { this.totalIsExact = totalIsExact; }
+    public Integer getNextOffset() { return nextOffset; }
+    public void setNextOffset(Integer nextOffset) { this.nextOffset = nextOffset; }
+}
@@ -0,0 +1,30 @@
+package com.yuvraj.dropbox.dto;
+
+public class TrashItemInfo {
+    private String id;
+    private String name;
+    private String type;          // "file" or "folder"
+    private String originalPath;  // where it is restored to
+    private Long size;            // bytes, null for folders
+    private long deletedAt;       // epoch millis
+    private long purgeAt;         // epoch millis, when retention removes it for good
+    private boolean purging;
+
+    // getters and setters
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+    public String getType() { return type; }
+    public void setType(String type) { this.type = type; }
+    public String getOriginalPath() { return originalPath; }
+    public void setOriginalPath(String originalPath) { this.originalPath = originalPath; }
+    public Long getSize() { return size; }
+    public void setSize(Long size) { this.size = size; }
+    public long getDeletedAt() { return deletedAt; }
+    public void setDeletedAt(long deletedAt) { this.deletedAt = deletedAt; }
+    public long getPurgeAt() { return purgeAt; }
+    public void setPurgeAt(long purgeAt) { this.purgeAt = purgeAt; }
+    public boolean isPurging() { return purging; }
+    public void setPurging(boolean purging) { this.purging = purging; }
+}
@@ -0,0 +1,29 @@
+package com.yuvraj.dropbox.dto;
+
+import java.util.List;
+
+public class UploadSessionInfo {
+    private String uploadId;
+    private String path;
+    private long size;
+    private long partSize;
+    private int partCount;        // parts are numbered 1..partCount
+    private List<Integer> receivedParts;
+    private long expiresAt;       // epoch millis
+
+    // getters and setters
+    public String getUploadId() { return uploadId; }
+    public void setUploadId(String uploadId) { this.uploadId = uploadId; }
+    public String getPath() { return path; }
+    public void setPath(String path) { this.path = path; }
+    public long getSize() { return size; }
+    public void setSize(long size) { this.size = size; }
+    public long getPartSize() { return partSize; }
+    public void setPartSize(long partSize) { this.partSize = partSize; }
+    public int getPartCount() { return partCount; }
+    public void setPartCount(int partCount) { this.partCount = partCount; }
+    public List<Integer> getReceivedParts() { return receivedParts; }
+    public void setReceivedParts(List<Integer> receivedParts) { this.receivedParts = receivedParts; }
+    public long getExpiresAt() { return expiresAt; }
+    public void setExpiresAt(long expiresAt) { this.expiresAt = expiresAt; }
+}
@@ -0,0 +1,18 @@
+package com.yuvraj.dropbox.dto;
+
+public class UsageInfo {
+    private long usedBytes;
+    private long fileCount;       // files and folders
+    private long quotaBytes;
+    private long availableBytes;  // never negative, even when over quota
+
+    // getters and setters
+    public long getUsedBytes() { return usedBytes; }
+    public void setUsedBytes(long usedBytes) { this.usedBytes = usedBytes; }
+    public long getFileCount() { return fileCount; }
+    public void setFileCount(long fileCount) { this.fileCount = fileCount; }
+    public long getQuotaBytes() { return quotaBytes; }
+    public void setQuotaBytes(long quotaBytes) { this.quotaBytes = quotaBytes; }
+    public long getAvailableBytes() { return availableBytes; }
+    public void setAvailableBytes(long availableBytes) { this.availableBytes = availableBytes; }
+}
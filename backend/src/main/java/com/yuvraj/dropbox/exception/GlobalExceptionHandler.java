@@ -1,8 +1,10 @@
 package com.yuvraj.dropbox.exception;
 
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.time.LocalDateTime;
 import java.util.HashMap;
@@ -11,7 +13,21 @@ import java.util.Map;
 @RestControllerAdvice
 public class GlobalExceptionHandler {
 
-    // Handle all RuntimeExceptions
+    // Keep the status of ResponseStatusException (404, 409, ...) instead of turning it into a 400
+    @ExceptionHandler(ResponseStatusException.class)
+    public ResponseEntity<Object> handleResponseStatusException(ResponseStatusException ex) {
+        ResponseEntity<Object> response = buildResponse(HttpStatus.valueOf(ex.getStatusCode().value()), ex.getReason());
+        if (ex.getHeaders().isEmpty()) return response;
+        return ResponseEntity.status(response.getStatusCode()).headers(ex.getHeaders()).body(response.getBody());
+    }
+
+    // Every thread of the task executor is busy writing a streamed body; the client should retry shortly
+    @ExceptionHandler(TaskRejectedException.class)
+    public ResponseEntity<Object> handleTaskRejectedException(TaskRejectedException ex) {
+        return handleResponseStatusException(new RetryLaterException(HttpStatus.SERVICE_UNAVAILABLE, "Server is busy", 1));
+    }
+
+        // Handle all RuntimeExceptions
     @ExceptionHandler(RuntimeException.class)
     public ResponseEntity<Object> handleRuntimeException(RuntimeException ex) {
         return buildResponse(HttpStatus.BAD_REQUEST, ex.getMessage());
@@ -0,0 +1,169 @@
+package com.yuvraj.dropbox.metrics;
+
+import io.micrometer.common.KeyValues;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Timings of the phases inside file requests, bytes moved and transfers in flight. Whole requests are already
+ * timed per endpoint by Spring's http.server.requests; this breaks them down.
+ *
+ * Phases that touch storage (stat, upload, download, zip, delete) are observations: each one is a timer and,
+ * with tracing on, a child span of the request. JWT checks and path resolution take well under a microsecond,
+ * so they only get a timer; a span would cost more than the work.
+ */
+@Component
+public class FileMetrics {
+
+    public static final String IN = "in";
+    public static final String OUT = "out";
+
+    // per-user byte counters; MetricsConfig caps how many distinct users get one
+    static final String USER_BYTES = "dropbox.user.bytes";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ObservationRegistry observationRegistry;
+
+    private final AtomicInteger uploadsInFlight = new AtomicInteger();
+    private final AtomicInteger downloadsInFlight = new AtomicInteger();
+
+    private Timer jwtValid;
+    private Timer jwtInvalid;
+    private Timer pathResolve;
+    private DistributionSummary bytesIn;
+    private DistributionSummary bytesOut;
+
+    /** Work run as one phase; may throw the caller's checked exception. */
+    @FunctionalInterface
+    public interface Phase<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("dropbox.uploads.inflight", uploadsInFlight, AtomicInteger::get)
+                .description("Uploads being written to storage").register(meterRegistry);
+        Gauge.builder("dropbox.downloads.inflight", downloadsInFlight, AtomicInteger::get)
+                .description("Streamed downloads and ZIPs being sent").register(meterRegistry);
+        jwtValid = Timer.builder("dropbox.auth.jwt").tag("outcome", "valid").register(meterRegistry);
+        jwtInvalid = Timer.builder("dropbox.auth.jwt").tag("outcome", "invalid").register(meterRegistry);
+        pathResolve = Timer.builder("dropbox.path.resolve").register(meterRegistry);
+        bytesIn = transferSize(IN);
+        bytesOut = transferSize(OUT);
+    }
+
+    private DistributionSummary transferSize(String direction) {
+        return DistributionSummary.builder("dropbox.transfer.bytes").baseUnit("bytes").tag("direction", direction)
+                .minimumExpectedValue(1024.0).maximumExpectedValue(64.0 * 1024 * 1024 * 1024)
+                .description("Bytes per upload or download").register(meterRegistry);
+    }
+
+    public void recordJwt(long nanos, boolean valid) {
+        (valid ? jwtValid : jwtInvalid).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public String resolvePath(Supplier<String> resolve) {
+        return pathResolve.record(resolve);
+    }
+
+    /** Run {@code work} as an observation named {@code name} (a timer, and a span when tracing is on). */
+    public <T, E extends Exception> T observe(String name, KeyValues tags, Phase<T, E> work) throws E {
+        return observe(Observation.createNotStarted(name, observationRegistry).lowCardinalityKeyValues(tags), work);
+    }
+
+    public <T, E extends Exception> T observe(String name, Phase<T, E> work) throws E {
+        return observe(name, KeyValues.empty(), work);
+    }
+
+    private static <T, E extends Exception> T observe(Observation observation, Phase<T, E> work) throws E {
+        observation.start();
+        try (Observation.Scope ignored = observation.openScope()) {
+            return work.run();
+        } catch (Exception | Error e) {
+            observation.error(e);
+            throw e;
+        } finally {
+            observation.stop();
+        }
+    }
+
+    /** An upload of the given kind (multipart, part, delta), counted as in flight while it runs. */
+    public <T, E extends Exception> T upload(String kind, Phase<T, E> work) throws E {
+        uploadsInFlight.incrementAndGet();
+        try {
+            return observe("dropbox.upload", KeyValues.of("kind", kind), work);
+        } finally {
+            uploadsInFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Wrap a streamed response body: in flight while it is written, timed as {@code name} (a child of the
+     * request's span even though it runs on another thread), and the bytes actually sent counted for the user.
+     */
+    public StreamingResponseBody download(String userRoot, String name, KeyValues tags, StreamingResponseBody body) {
+        Observation parent = observationRegistry.getCurrentObservation();
+        return out -> {
+            CountingOutputStream counting = new CountingOutputStream(out);
+            Observation observation = Observation.createNotStarted(name, observationRegistry)
+                    .lowCardinalityKeyValues(tags)
+                    .parentObservation(parent);
+            downloadsInFlight.incrementAndGet();
+            try {
+                observe(observation, () -> {
+                    body.writeTo(counting);
+                    return null;
+                });
+            } finally {
+                downloadsInFlight.decrementAndGet();
+                recordBytes(OUT, userRoot, counting.count);
+            }
+        };
+    }
+
+    public void recordBytes(String direction, String userRoot, long bytes) {
+        if (bytes <= 0) return;
+        (IN.equals(direction) ? bytesIn : bytesOut).record(bytes);
+        Counter.builder(USER_BYTES).baseUnit("bytes").tag("direction", direction).tag("user", userRoot)
+                .register(meterRegistry).increment(bytes);
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
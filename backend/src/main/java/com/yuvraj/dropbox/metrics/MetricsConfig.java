@@ -0,0 +1,17 @@
+package com.yuvraj.dropbox.metrics;
+
+import io.micrometer.core.instrument.config.MeterFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MetricsConfig {
+
+    // Per-user counters are one time series per user; past this many users new ones are dropped instead of
+    // growing the registry (and every scrape) without bound
+    @Bean
+    public MeterFilter perUserMetricsLimit(@Value("${dropbox.metrics.per-user.max-users:1000}") int maxUsers) {
+        return MeterFilter.maximumAllowableTags(FileMetrics.USER_BYTES, "user", maxUsers, MeterFilter.deny());
+    }
+}
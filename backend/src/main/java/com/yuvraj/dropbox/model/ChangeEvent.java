@@ -0,0 +1,66 @@
+package com.yuvraj.dropbox.model;
+
+import jakarta.persistence.*;
+
+/**
+ * One entry of a user's change journal. Append-only: rows are never updated, only pruned once they are older
+ * than the retention period. The id doubles as the journal position that sync cursors point at.
+ */
+@Entity
+@Table(name = "change_event", indexes = {
+        @Index(name = "ix_change_event_owner", columnList = "owner_uuid, id"),
+        @Index(name = "ix_change_event_created_at", columnList = "created_at")
+})
+public class ChangeEvent {
+
+    // a move is a DELETE of the old path followed by a MOVE at the new one
+    public enum Type { UPLOAD, MKDIR, DELETE, RESTORE, MOVE, COPY }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "owner_uuid", nullable = false, length = 36)
+    private String owner;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Type type;
+
+    // relative to the user's folder
+    @Column(nullable = false, length = 1280)
+    private String path;
+
+    private boolean directory;
+
+    @Column(name = "size_bytes")
+    private long size;
+
+    @Column(name = "last_modified")
+    private long lastModified;
+
+    @Column(name = "created_at")
+    private long createdAt;
+
+    public ChangeEvent() {} // default constructor for JPA
+
+    public ChangeEvent(String owner, Type type, String path, boolean directory, long size, long lastModified) {
+        this.owner = owner;
+        this.type = type;
+        this.path = path;
+        this.directory = directory;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.createdAt = System.currentTimeMillis();
+    }
+
+    // getters
+    public Long getId() { return id; }
+    public String getOwner() { return owner; }
+    public Type getType() { return type; }
+    public String getPath() { return path; }
+    public boolean isDirectory() { return directory; }
+    public long getSize() { return size; }
+    public long getLastModified() { return lastModified; }
+    public long getCreatedAt() { return createdAt; }
+}
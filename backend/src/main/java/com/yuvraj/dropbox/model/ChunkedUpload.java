@@ -0,0 +1,74 @@
+package com.yuvraj.dropbox.model;
+
+import jakarta.persistence.*;
+
+/**
+ * A resumable upload that hasn't been committed yet. Kept in the database rather than next to the staged
+ * content, so every instance sees the same sessions whichever storage backend holds the parts, and an
+ * interrupted upload can be resumed after a restart. The parts received so far are {@link ChunkedUploadPart} rows.
+ */
+@Entity
+@Table(name = "chunked_upload", indexes = {
+        @Index(name = "ix_chunked_upload_last_activity", columnList = "last_activity")
+})
+public class ChunkedUpload {
+
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    @Column(name = "owner_uuid", nullable = false, length = 36)
+    private String owner;
+
+    // full storage key of the file the upload creates
+    @Column(name = "storage_key", nullable = false, length = 1320)
+    private String key;
+
+    @Column(name = "size_bytes")
+    private long size;
+
+    private long partSize;
+
+    private int partCount;
+
+    @Column(name = "created_at")
+    private long createdAt;
+
+    // the session expires session-ttl-hours after this (creation, the last part received or a commit attempt)
+    @Column(name = "last_activity")
+    private long lastActivity;
+
+    // the backend's id for the multipart upload holding the parts
+    @Column(nullable = false, length = 1024)
+    private String storageUploadId;
+
+    // set while one instance assembles the parts
+    private boolean committing;
+
+    public ChunkedUpload() {} // default constructor for JPA
+
+    public ChunkedUpload(String id, String owner, String key, long size, long partSize, int partCount,
+                         String storageUploadId) {
+        this.id = id;
+        this.owner = owner;
+        this.key = key;
+        this.size = size;
+        this.partSize = partSize;
+        this.partCount = partCount;
+        this.createdAt = System.currentTimeMillis();
+        this.lastActivity = createdAt;
+        this.storageUploadId = storageUploadId;
+    }
+
+    // getters
+    public String getId() { return id; }
+    public String getOwner() { return owner; }
+    public String getKey() { return key; }
+    public long getSize() { return size; }
+    public long getPartSize() { return partSize; }
+    public int getPartCount() { return partCount; }
+    public long getCreatedAt() { return createdAt; }
+    public long getLastActivity() { return lastActivity; }
+    public String getStorageUploadId() { return storageUploadId; }
+    public boolean isCommitting() { return committing; }
+}
@@ -0,0 +1,38 @@
+package com.yuvraj.dropbox.model;
+
+import jakarta.persistence.*;
+
+/**
+ * A part of a {@link ChunkedUpload} that has been written in full. One row per part, inserted as each part
+ * lands, so parts arriving in parallel never update the same row.
+ */
+@Entity
+@Table(name = "chunked_upload_part", indexes = {
+        @Index(name = "ix_chunked_upload_part_upload", columnList = "upload_id, part_number")
+})
+public class ChunkedUploadPart {
+
+    // "<upload id>:<part number>"
+    @Id
+    @Column(length = 48)
+    private String id;
+
+    @Column(name = "upload_id", nullable = false, length = 36)
+    private String uploadId;
+
+    @Column(name = "part_number")
+    private int partNumber;
+
+    public ChunkedUploadPart() {} // default constructor for JPA
+
+    public ChunkedUploadPart(String uploadId, int partNumber) {
+        this.id = uploadId + ":" + partNumber;
+        this.uploadId = uploadId;
+        this.partNumber = partNumber;
+    }
+
+    // getters
+    public String getId() { return id; }
+    public String getUploadId() { return uploadId; }
+    public int getPartNumber() { return partNumber; }
+}
@@ -0,0 +1,68 @@
+package com.yuvraj.dropbox.model;
+
+import jakarta.persistence.*;
+
+/**
+ * One row per file or folder inside a user's folder, so a listing is a single range scan over
+ * (owner, parent path) instead of a stat per child. Mirrors the storage backend; see IndexedStorageBackend.
+ */
+@Entity
+@Table(name = "file_entry", indexes = {
+        @Index(name = "ux_file_entry_path", columnList = "owner_uuid, parent_path, name", unique = true),
+        // keyset pagination when a listing is sorted by size or mtime
+        @Index(name = "ix_file_entry_size", columnList = "owner_uuid, parent_path, size_bytes, name"),
+        @Index(name = "ix_file_entry_mtime", columnList = "owner_uuid, parent_path, last_modified, name")
+})
+public class FileEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "owner_uuid", nullable = false, length = 36)
+    private String owner;
+
+    // path of the containing folder relative to the user's folder, "" at the top level
+    @Column(name = "parent_path", nullable = false, length = 1024)
+    private String parent;
+
+    @Column(nullable = false)
+    private String name;
+
+    private boolean directory;
+
+    @Column(name = "size_bytes")
+    private long size;
+
+    @Column(name = "last_modified")
+    private long lastModified;
+
+    private String etag;
+
+    // when this row was last written; lets a reconciliation scan tell its own stale view from newer writes
+    private long indexedAt;
+
+    public FileEntry() {} // default constructor for JPA
+
+    public FileEntry(String owner, String parent, String name) {
+        this.owner = owner;
+        this.parent = parent;
+        this.name = name;
+    }
+
+    // getters and setters
+    public Long getId() { return id; }
+    public String getOwner() { return owner; }
+    public String getParent() { return parent; }
+    public String getName() { return name; }
+    public boolean isDirectory() { return directory; }
+    public void setDirectory(boolean directory) { this.directory = directory; }
+    public long getSize() { return size; }
+    public void setSize(long size) { this.size = size; }
+    public long getLastModified() { return lastModified; }
+    public void setLastModified(long lastModified) { this.lastModified = lastModified; }
+    public String getEtag() { return etag; }
+    public void setEtag(String etag) { this.etag = etag; }
+    public long getIndexedAt() { return indexedAt; }
+    public void setIndexedAt(long indexedAt) { this.indexedAt = indexedAt; }
+}
@@ -0,0 +1,56 @@
+package com.yuvraj.dropbox.model;
+
+import jakarta.persistence.*;
+
+import java.util.UUID;
+
+/**
+ * An earlier revision of a file, kept when the file was overwritten. Its content is a snapshot at
+ * {@code .versions/<owner>/<id>} in storage; this row remembers which file it belongs to.
+ */
+@Entity
+@Table(name = "file_version", indexes = {
+        @Index(name = "ix_file_version_path", columnList = "owner_uuid, path, created_at"),
+        @Index(name = "ix_file_version_created_at", columnList = "created_at")
+})
+public class FileVersion {
+
+    @Id
+    private String id = UUID.randomUUID().toString();
+
+    @Column(name = "owner_uuid", nullable = false, length = 36)
+    private String owner;
+
+    // path relative to the user's folder
+    @Column(nullable = false, length = 1280)
+    private String path;
+
+    @Column(name = "size_bytes")
+    private long size;
+
+    // when this revision was written
+    @Column(name = "modified_at")
+    private long modifiedAt;
+
+    // when it was replaced by a newer one
+    @Column(name = "created_at")
+    private long createdAt;
+
+    public FileVersion() {} // default constructor for JPA
+
+    public FileVersion(String owner, String path, long size, long modifiedAt) {
+        this.owner = owner;
+        this.path = path;
+        this.size = size;
+        this.modifiedAt = modifiedAt;
+        this.createdAt = System.currentTimeMillis();
+    }
+
+    // getters
+    public String getId() { return id; }
+    public String getOwner() { return owner; }
+    public String getPath() { return path; }
+    public long getSize() { return size; }
+    public long getModifiedAt() { return modifiedAt; }
+    public long getCreatedAt() { return createdAt; }
+}
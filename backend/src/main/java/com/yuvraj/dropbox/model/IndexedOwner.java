@@ -0,0 +1,32 @@
+package com.yuvraj.dropbox.model;
+
+import jakarta.persistence.*;
+
+/**
+ * Marks a user whose {@link FileEntry} rows have been built from the storage backend, and when that last
+ * happened. Kept in the database so a restart (or another instance) serves listings from the index right away
+ * instead of rescanning every user on first touch.
+ */
+@Entity
+@Table(name = "indexed_owner")
+public class IndexedOwner {
+
+    @Id
+    @Column(name = "owner_uuid", length = 36)
+    private String owner;
+
+    // when the last scan that reconciled the rows started
+    @Column(name = "reconciled_at")
+    private long reconciledAt;
+
+    public IndexedOwner() {} // default constructor for JPA
+
+    public IndexedOwner(String owner, long reconciledAt) {
+        this.owner = owner;
+        this.reconciledAt = reconciledAt;
+    }
+
+    // getters
+    public String getOwner() { return owner; }
+    public long getReconciledAt() { return reconciledAt; }
+}
@@ -0,0 +1,49 @@
+package com.yuvraj.dropbox.model;
+
+import jakarta.persistence.*;
+
+/**
+ * A refresh token handed to a client at login. Only a SHA-256 of the token is stored. Each refresh replaces
+ * the token with a new one in the same family; presenting a replaced token again revokes the whole family.
+ */
+@Entity
+@Table(name = "refresh_token", indexes = {
+        @Index(name = "ix_refresh_token_family", columnList = "family"),
+        @Index(name = "ix_refresh_token_expires_at", columnList = "expires_at")
+})
+public class RefreshToken {
+
+    // hex SHA-256 of the token
+    @Id
+    @Column(length = 64)
+    private String id;
+
+    @Column(name = "owner_uuid", nullable = false, length = 36)
+    private String owner;
+
+    // the login it descends from
+    @Column(nullable = false, length = 36)
+    private String family;
+
+    @Column(name = "expires_at")
+    private long expiresAt;
+
+    // set once it has been exchanged for a new token
+    private boolean used;
+
+    public RefreshToken() {} // default constructor for JPA
+
+    public RefreshToken(String id, String owner, String family, long expiresAt) {
+        this.id = id;
+        this.owner = owner;
+        this.family = family;
+        this.expiresAt = expiresAt;
+    }
+
+    // getters
+    public String getId() { return id; }
+    public String getOwner() { return owner; }
+    public String getFamily() { return family; }
+    public long getExpiresAt() { return expiresAt; }
+    public boolean isUsed() { return used; }
+}
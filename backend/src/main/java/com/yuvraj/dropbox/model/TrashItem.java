@@ -0,0 +1,63 @@
+package com.yuvraj.dropbox.model;
+
+import jakarta.persistence.*;
+
+import java.util.UUID;
+
+/**
+ * A deleted file or folder waiting in its owner's trash. The content itself was renamed to
+ * {@code .trash/<owner>/<id>} in storage; this row remembers where it came from.
+ */
+@Entity
+@Table(name = "trash_item", indexes = {
+        @Index(name = "ix_trash_item_owner", columnList = "owner_uuid, deleted_at"),
+        @Index(name = "ix_trash_item_deleted_at", columnList = "deleted_at")
+})
+public class TrashItem {
+
+    @Id
+    private String id = UUID.randomUUID().toString();
+
+    @Column(name = "owner_uuid", nullable = false, length = 36)
+    private String owner;
+
+    // path relative to the user's folder it was deleted from
+    @Column(name = "original_path", nullable = false, length = 1280)
+    private String originalPath;
+
+    private boolean directory;
+
+    @Column(name = "size_bytes")
+    private long size; // files only; folders are not walked on delete
+
+    @Column(name = "deleted_at")
+    private long deletedAt;
+
+    // set once a purge has been scheduled; the item can no longer be restored
+    private boolean purging;
+
+    public TrashItem() {} // default constructor for JPA
+
+    public TrashItem(String owner, String originalPath, boolean directory, long size) {
+        this.owner = owner;
+        this.originalPath = originalPath;
+        this.directory = directory;
+        this.size = size;
+        this.deletedAt = System.currentTimeMillis();
+    }
+
+    // getters and setters
+    public String getId() { return id; }
+    public String getOwner() { return owner; }
+    public String getOriginalPath() { return originalPath; }
+    public boolean isDirectory() { return directory; }
+    public long getSize() { return size; }
+    public long getDeletedAt() { return deletedAt; }
+    public boolean isPurging() { return purging; }
+    public void setPurging(boolean purging) { this.purging = purging; }
+
+    public String getName() {
+        int slash = originalPath.lastIndexOf('/');
+        return slash < 0 ? originalPath : originalPath.substring(slash + 1);
+    }
+}
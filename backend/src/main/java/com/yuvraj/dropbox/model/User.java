@@ -1,21 +1,38 @@
 package com.yuvraj.dropbox.model;
 
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 
 import java.util.UUID;
 
 @Entity
-@Table(name = "app_user") // rename table to avoid reserved keyword
+@Table(name = "app_user", // rename table to avoid reserved keyword
+       // also the index behind login lookups; makes concurrent registrations of one name fail in the database
+       uniqueConstraints = @UniqueConstraint(name = "uk_app_user_username", columnNames = "username"))
 public class User {
 
     @Id
     private String uuid = UUID.randomUUID().toString();
+    @Column(nullable = false)
     private String username;
     private String email;
     private String password;
 
+    // null = dropbox.quota.default-bytes
+    private Long quotaBytes;
+    // kept up to date incrementally (see QuotaService), so usage never needs a walk of the user's folder
+    @Column(nullable = false)
+    private long usedBytes;
+    // files and folders
+    @Column(nullable = false)
+    private long fileCount;
+    // declared sizes of the user's open resumable uploads, held against the quota until they're committed
+    @Column(nullable = false)
+    private long reservedBytes;
+
     public User() {} // default constructor for JPA
 
     // Add this constructor
@@ -33,4 +50,9 @@ public class User {
     public void setEmail(String email) { this.email = email; }
     public String getPassword() { return password; }
     public void setPassword(String password) { this.password = password; }
+    public Long getQuotaBytes() { return quotaBytes; }
+    public void setQuotaBytes(Long quotaBytes) { this.quotaBytes = quotaBytes; }
+    public long getUsedBytes() { return usedBytes; }
+    public long getFileCount() { return fileCount; }
+    public long getReservedBytes() { return reservedBytes; }
 }
@@ -0,0 +1,24 @@
+package com.yuvraj.dropbox.repository;
+
+import com.yuvraj.dropbox.model.ChangeEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface ChangeEventRepository extends JpaRepository<ChangeEvent, Long> {
+
+    List<ChangeEvent> findByOwnerAndIdGreaterThanOrderByIdAsc(String owner, long id, Pageable page);
+
+    Optional<ChangeEvent> findTopByOwnerOrderByIdDesc(String owner);
+
+    @Transactional
+    @Modifying
+    @Query("delete from ChangeEvent e where e.createdAt < :cutoff")
+    int deleteOlderThan(@Param("cutoff") long cutoff);
+}
@@ -0,0 +1,21 @@
+package com.yuvraj.dropbox.repository;
+
+import com.yuvraj.dropbox.model.ChunkedUploadPart;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+public interface ChunkedUploadPartRepository extends JpaRepository<ChunkedUploadPart, String> {
+
+    @Query("select p.partNumber from ChunkedUploadPart p where p.uploadId = :uploadId order by p.partNumber")
+    List<Integer> findPartNumbers(@Param("uploadId") String uploadId);
+
+    @Transactional
+    @Modifying
+    @Query("delete from ChunkedUploadPart p where p.uploadId = :uploadId")
+    int deleteByUpload(@Param("uploadId") String uploadId);
+}
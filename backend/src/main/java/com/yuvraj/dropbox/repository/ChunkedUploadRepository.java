@@ -0,0 +1,41 @@
+package com.yuvraj.dropbox.repository;
+
+import com.yuvraj.dropbox.model.ChunkedUpload;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+public interface ChunkedUploadRepository extends JpaRepository<ChunkedUpload, String> {
+
+    List<ChunkedUpload> findByLastActivityLessThan(long cutoff);
+
+    // what the owner's open uploads should have reserved
+    @Query("select coalesce(sum(u.size), 0) from ChunkedUpload u where u.owner = :owner")
+    long sumSizeByOwner(@Param("owner") String owner);
+
+    @Transactional
+    @Modifying
+    @Query("update ChunkedUpload u set u.lastActivity = :now where u.id = :id")
+    int touch(@Param("id") String id, @Param("now") long now);
+
+    // 1 for exactly one of several concurrent commits of the same upload, on whichever instance
+    @Transactional
+    @Modifying
+    @Query("update ChunkedUpload u set u.committing = true, u.lastActivity = :now where u.id = :id and u.committing = false")
+    int startCommit(@Param("id") String id, @Param("now") long now);
+
+    @Transactional
+    @Modifying
+    @Query("update ChunkedUpload u set u.committing = false where u.id = :id")
+    int endCommit(@Param("id") String id);
+
+    // unlike deleteById, a no-op when another instance got there first
+    @Transactional
+    @Modifying
+    @Query("delete from ChunkedUpload u where u.id = :id")
+    int deleteUpload(@Param("id") String id);
+}
@@ -0,0 +1,58 @@
+package com.yuvraj.dropbox.repository;
+
+import com.yuvraj.dropbox.model.FileEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface FileEntryRepository extends JpaRepository<FileEntry, Long>, FileEntryRepositoryCustom {
+
+    List<FileEntry> findByOwnerAndParentOrderByNameAsc(String owner, String parent);
+
+    Optional<FileEntry> findByOwnerAndParentAndName(String owner, String parent, String name);
+
+    List<FileEntry> findByOwner(String owner);
+
+    interface TreeUsage {
+        long getBytes();
+        long getCount();
+    }
+
+    // Same rows as deleteTree: file bytes and number of rows of the entry and everything below it
+    @Query("select coalesce(sum(case when e.directory = false then e.size else 0 end), 0) as bytes, count(e) as count"
+            + " from FileEntry e where e.owner = :owner and ((e.parent = :parent and e.name = :name)"
+            + " or e.parent = :path or e.parent like :prefix escape '\\')")
+    TreeUsage usageOfTree(@Param("owner") String owner, @Param("parent") String parent, @Param("name") String name,
+                          @Param("path") String path, @Param("prefix") String prefix);
+
+    // The update half of an upsert: 0 if there is no row yet, or if it was written after indexedAt (it is newer)
+    @Transactional
+    @Modifying
+    @Query("update FileEntry e set e.directory = :directory, e.size = :size, e.lastModified = :lastModified,"
+            + " e.etag = :etag, e.indexedAt = :indexedAt"
+            + " where e.owner = :owner and e.parent = :parent and e.name = :name and e.indexedAt <= :indexedAt")
+    int updateEntry(@Param("owner") String owner, @Param("parent") String parent, @Param("name") String name,
+                    @Param("directory") boolean directory, @Param("size") long size,
+                    @Param("lastModified") long lastModified, @Param("etag") String etag,
+                    @Param("indexedAt") long indexedAt);
+
+    // Rows a reconciliation found missing from storage, unless a live write touched them since it started
+    @Transactional
+    @Modifying
+    @Query("delete from FileEntry e where e.id in :ids and e.indexedAt < :before")
+    int deleteStale(@Param("ids") Collection<Long> ids, @Param("before") long before);
+
+    // The entry itself and everything below it; `prefix` is the entry's path plus "/%", LIKE-escaped with '\'
+    @Transactional
+    @Modifying
+    @Query("delete from FileEntry e where e.owner = :owner and ((e.parent = :parent and e.name = :name)"
+            + " or e.parent = :path or e.parent like :prefix escape '\\')")
+    int deleteTree(@Param("owner") String owner, @Param("parent") String parent, @Param("name") String name,
+                   @Param("path") String path, @Param("prefix") String prefix);
+}
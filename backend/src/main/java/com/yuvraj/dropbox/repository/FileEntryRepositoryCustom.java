@@ -0,0 +1,16 @@
+package com.yuvraj.dropbox.repository;
+
+import com.yuvraj.dropbox.model.FileEntry;
+
+import java.util.List;
+
+public interface FileEntryRepositoryCustom {
+
+    /**
+     * Keyset-paginated children of a folder ordered by {@code property} ("name", "size" or "lastModified"),
+     * then name. {@code afterValue}/{@code afterName} are the sort key of the previous page's last row;
+     * a null {@code afterName} starts from the beginning.
+     */
+    List<FileEntry> findPage(String owner, String parent, String property, boolean descending,
+                             Object afterValue, String afterName, int limit);
+}
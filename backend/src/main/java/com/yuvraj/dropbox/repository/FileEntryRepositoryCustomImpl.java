@@ -0,0 +1,49 @@
+package com.yuvraj.dropbox.repository;
+
+import com.yuvraj.dropbox.model.FileEntry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+
+import java.util.List;
+
+public class FileEntryRepositoryCustomImpl implements FileEntryRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<FileEntry> findPage(String owner, String parent, String property, boolean descending,
+                                    Object afterValue, String afterName, int limit) {
+        if (!property.equals("name") && !property.equals("size") && !property.equals("lastModified")) {
+            throw new IllegalArgumentException("Unsupported sort property: " + property);
+        }
+        String cmp = descending ? "<" : ">";
+        String direction = descending ? " desc" : " asc";
+        boolean byName = property.equals("name");
+
+        // Seek past the previous page instead of OFFSET, so deep pages cost the same as the first one
+        StringBuilder jpql = new StringBuilder("select e from FileEntry e where e.owner = :owner and e.parent = :parent");
+        if (afterName != null) {
+            if (byName) {
+                jpql.append(" and e.name ").append(cmp).append(" :afterName");
+            } else {
+                jpql.append(" and (e.").append(property).append(' ').append(cmp).append(" :afterValue")
+                    .append(" or (e.").append(property).append(" = :afterValue and e.name ").append(cmp).append(" :afterName))");
+            }
+        }
+        jpql.append(" order by ");
+        if (!byName) jpql.append("e.").append(property).append(direction).append(", ");
+        jpql.append("e.name").append(direction);
+
+        TypedQuery<FileEntry> query = entityManager.createQuery(jpql.toString(), FileEntry.class)
+                .setParameter("owner", owner)
+                .setParameter("parent", parent)
+                .setMaxResults(limit);
+        if (afterName != null) {
+            query.setParameter("afterName", afterName);
+            if (!byName) query.setParameter("afterValue", afterValue);
+        }
+        return query.getResultList();
+    }
+}
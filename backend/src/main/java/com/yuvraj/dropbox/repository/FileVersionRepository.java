@@ -0,0 +1,19 @@
+package com.yuvraj.dropbox.repository;
+
+import com.yuvraj.dropbox.model.FileVersion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface FileVersionRepository extends JpaRepository<FileVersion, String> {
+
+    List<FileVersion> findByOwnerAndPathOrderByCreatedAtDesc(String owner, String path);
+
+    List<FileVersion> findByCreatedAtBefore(long cutoff);
+
+    // [owner, path] of every file with more than :keep versions
+    @Query("select v.owner, v.path from FileVersion v group by v.owner, v.path having count(v) > :keep")
+    List<Object[]> findPathsWithMoreThan(@Param("keep") long keep);
+}
@@ -0,0 +1,7 @@
+package com.yuvraj.dropbox.repository;
+
+import com.yuvraj.dropbox.model.IndexedOwner;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface IndexedOwnerRepository extends JpaRepository<IndexedOwner, String> {
+}
@@ -0,0 +1,27 @@
+package com.yuvraj.dropbox.repository;
+
+import com.yuvraj.dropbox.model.RefreshToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+public interface RefreshTokenRepository extends JpaRepository<RefreshToken, String> {
+
+    // 1 for exactly one of several concurrent refreshes with the same token
+    @Transactional
+    @Modifying
+    @Query("update RefreshToken t set t.used = true where t.id = :id and t.used = false")
+    int markUsed(@Param("id") String id);
+
+    @Transactional
+    @Modifying
+    @Query("delete from RefreshToken t where t.family = :family")
+    int deleteFamily(@Param("family") String family);
+
+    @Transactional
+    @Modifying
+    @Query("delete from RefreshToken t where t.expiresAt < :cutoff")
+    int deleteExpired(@Param("cutoff") long cutoff);
+}
@@ -0,0 +1,15 @@
+package com.yuvraj.dropbox.repository;
+
+import com.yuvraj.dropbox.model.TrashItem;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface TrashItemRepository extends JpaRepository<TrashItem, String> {
+
+    List<TrashItem> findByOwnerOrderByDeletedAtDesc(String owner);
+
+    List<TrashItem> findByDeletedAtBeforeAndPurgingFalse(long cutoff);
+
+    List<TrashItem> findByPurgingTrue();
+}
@@ -2,7 +2,50 @@ package com.yuvraj.dropbox.repository;
 
 import com.yuvraj.dropbox.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 public interface UserRepository extends JpaRepository<User, String> {
     User findByUsername(String username);
+
+    // Applied in the database, so concurrent uploads and deletes never lose each other's updates
+    @Transactional
+    @Modifying
+    @Query("update User u set u.usedBytes = u.usedBytes + :bytes, u.fileCount = u.fileCount + :files where u.uuid = :uuid")
+    int addUsage(@Param("uuid") String uuid, @Param("bytes") long bytes, @Param("files") long files);
+
+    // 0 (and nothing added) if the bytes don't fit next to what is used and reserved; checked and added in one
+    // statement, so two uploads can't both squeeze into the last of a quota
+    @Transactional
+    @Modifying
+    @Query("update User u set u.usedBytes = u.usedBytes + :bytes, u.fileCount = u.fileCount + :files where u.uuid = :uuid"
+            + " and u.usedBytes + u.reservedBytes + :bytes <= coalesce(u.quotaBytes, :defaultQuota)")
+    int addUsageWithinQuota(@Param("uuid") String uuid, @Param("bytes") long bytes, @Param("files") long files,
+                            @Param("defaultQuota") long defaultQuota);
+
+    @Transactional
+    @Modifying
+    @Query("update User u set u.reservedBytes = u.reservedBytes + :bytes where u.uuid = :uuid"
+            + " and u.usedBytes + u.reservedBytes + :bytes <= coalesce(u.quotaBytes, :defaultQuota)")
+    int reserveWithinQuota(@Param("uuid") String uuid, @Param("bytes") long bytes, @Param("defaultQuota") long defaultQuota);
+
+    @Transactional
+    @Modifying
+    @Query("update User u set u.reservedBytes = u.reservedBytes + :bytes where u.uuid = :uuid")
+    int addReserved(@Param("uuid") String uuid, @Param("bytes") long bytes);
+
+    // turns a reservation into usage
+    @Transactional
+    @Modifying
+    @Query("update User u set u.reservedBytes = u.reservedBytes - :reserved, u.usedBytes = u.usedBytes + :bytes,"
+            + " u.fileCount = u.fileCount + :files where u.uuid = :uuid")
+    int settleReservation(@Param("uuid") String uuid, @Param("reserved") long reserved, @Param("bytes") long bytes,
+                          @Param("files") long files);
+
+    @Transactional
+    @Modifying
+    @Query("update User u set u.password = :password where u.uuid = :uuid")
+    int updatePassword(@Param("uuid") String uuid, @Param("password") String password);
 }
@@ -0,0 +1,35 @@
+package com.yuvraj.dropbox.security;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * The JSON error body for requests a filter refuses before they reach a controller, in the shape
+ * GlobalExceptionHandler gives everything else; headers of the exception (Retry-After) are copied.
+ */
+final class FilterErrorResponse {
+
+	private FilterErrorResponse() {
+	}
+
+	static void write(HttpServletResponse response, ResponseStatusException e, boolean refusingBody) throws IOException {
+		HttpStatus status = HttpStatus.valueOf(e.getStatusCode().value());
+		response.setContentType("application/json");
+		response.setStatus(status.value());
+		e.getHeaders().forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+		// don't keep the connection to drain a body we're refusing
+		if (refusingBody) response.setHeader("Connection", "close");
+		PrintWriter writer = response.getWriter();
+		writer.write("{\"status\":" + status.value() + ",\"error\":\"" + status.getReasonPhrase() + "\",\"message\":\""
+				+ escape(e.getReason()) + "\"}");
+		writer.flush();
+	}
+
+	private static String escape(String s) {
+		return s == null ? "" : s.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+}
@@ -1,6 +1,7 @@
 package com.yuvraj.dropbox.security;
 
 import com.yuvraj.dropbox.auth.JwtUtil;
+import com.yuvraj.dropbox.metrics.FileMetrics;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -15,6 +16,14 @@ import java.io.IOException;
 import java.util.Collections;
 
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
+
+	private final WebAuthenticationDetailsSource detailsSource = new WebAuthenticationDetailsSource();
+	private final FileMetrics metrics;
+
+	public JwtAuthenticationFilter(FileMetrics metrics) {
+		this.metrics = metrics;
+	}
+
 	@Override
 	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
 			throws ServletException, IOException {
@@ -24,18 +33,20 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
 		if (authHeader != null && authHeader.startsWith("Bearer ")) {
 			token = authHeader.substring(7);
+			long start = System.nanoTime();
 			try {
-				uuid = JwtUtil.validateTokenAndGetUUID(token);
+				uuid = JwtUtil.validateTokenAndGetUUID(token); // cached after the first request with this token
 			} catch (Exception e) {
 				// Invalid token, let the entry point handle
 			}
+			metrics.recordJwt(System.nanoTime() - start, uuid != null);
 		}
 
 		if (uuid != null && SecurityContextHolder.getContext().getAuthentication() == null) {
 			User principal = new User(uuid, "", Collections.emptyList());
 			UsernamePasswordAuthenticationToken authentication =
 					new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
-			authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+			authentication.setDetails(detailsSource.buildDetails(request));
 			SecurityContextHolder.getContext().setAuthentication(authentication);
 		}
 
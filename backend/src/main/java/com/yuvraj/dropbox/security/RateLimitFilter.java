@@ -0,0 +1,59 @@
+package com.yuvraj.dropbox.security;
+
+import com.yuvraj.dropbox.exception.RetryLaterException;
+import com.yuvraj.dropbox.service.RateLimitService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Per-user request rate, and for transfers the user's bandwidth backlog, checked right after authentication:
+ * before any handler work and before an upload body is parsed. Over the limit is a 429 with Retry-After.
+ */
+public class RateLimitFilter extends OncePerRequestFilter {
+
+	private final RateLimitService rateLimits;
+
+	public RateLimitFilter(RateLimitService rateLimits) {
+		this.rateLimits = rateLimits;
+	}
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		return !request.getServletPath().startsWith("/files/");
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+		if (auth != null && auth.getPrincipal() instanceof UserDetails principal) {
+			String path = request.getServletPath();
+			boolean upload = isUpload(request.getMethod(), path);
+			try {
+				rateLimits.checkRequest(principal.getUsername());
+				if (upload) {
+					rateLimits.checkBandwidth(principal.getUsername(), true);
+				} else if (path.startsWith("/files/download/")) {
+					rateLimits.checkBandwidth(principal.getUsername(), false);
+				}
+			} catch (RetryLaterException e) {
+				FilterErrorResponse.write(response, e, upload);
+				return;
+			}
+		}
+		filterChain.doFilter(request, response);
+	}
+
+	private static boolean isUpload(String method, String path) {
+		return ("POST".equals(method) && (path.equals("/files/upload") || path.startsWith("/files/upload/") || path.startsWith("/files/delta/")))
+				|| ("PUT".equals(method) && path.startsWith("/files/uploads/"));
+	}
+}
@@ -0,0 +1,50 @@
+package com.yuvraj.dropbox.security;
+
+import com.yuvraj.dropbox.service.QuotaService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+
+/**
+ * Turns away multipart uploads that can't fit in the user's quota from their Content-Length alone, before
+ * the multipart body is parsed (and spooled to disk). The controller checks the exact file sizes again.
+ */
+public class UploadQuotaFilter extends OncePerRequestFilter {
+
+	private final QuotaService quotaService;
+
+	public UploadQuotaFilter(QuotaService quotaService) {
+		this.quotaService = quotaService;
+	}
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		String path = request.getServletPath();
+		return !"POST".equals(request.getMethod())
+				|| !(path.equals("/files/upload") || path.startsWith("/files/upload/"));
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+		long length = request.getContentLengthLong();
+		if (length > 0 && auth != null && auth.getPrincipal() instanceof UserDetails principal) {
+			try {
+				quotaService.checkQuota(principal.getUsername(), length);
+			} catch (ResponseStatusException e) {
+				FilterErrorResponse.write(response, e, true);
+				return;
+			}
+		}
+		filterChain.doFilter(request, response);
+	}
+}
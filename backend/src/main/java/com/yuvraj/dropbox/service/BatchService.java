@@ -0,0 +1,272 @@
+package com.yuvraj.dropbox.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yuvraj.dropbox.dto.BatchItemResult;
+import com.yuvraj.dropbox.model.TrashItem;
+import com.yuvraj.dropbox.storage.StorageBackend;
+import com.yuvraj.dropbox.storage.StorageBackend.StorageEntry;
+import com.yuvraj.dropbox.storage.StorageBackend.Usage;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Moves, copies, renames and deletes of many items in one request. Operations run in parallel on a fixed pool
+ * shared by all batches, except that an operation waits for every earlier one in the same batch whose paths
+ * overlap its own (same path, or one inside the other), so "rename a, then move a/x" behaves as written.
+ *
+ * Each operation is checked and recorded (quota, change journal, trash) exactly like its single-item endpoint;
+ * one failing doesn't stop the others. Results are streamed back in completion order as they finish.
+ */
+@Service
+public class BatchService {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchService.class);
+
+    public static final int MAX_OPERATIONS = 1000;
+
+    @Autowired
+    private StorageBackend storage;
+
+    @Autowired
+    private QuotaService quotaService;
+
+    @Autowired
+    private ChangeJournalService changeJournal;
+
+    @Autowired
+    private TrashService trashService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private RateLimitService rateLimits;
+
+    @Value("${dropbox.batch.parallelism:8}")
+    private int parallelism;
+
+    private ExecutorService workers;
+
+    public enum Op {
+        MOVE, COPY, RENAME, DELETE;
+
+        public static Optional<Op> parse(String value) {
+            if (value == null) return Optional.empty();
+            try {
+                return Optional.of(valueOf(value.toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                return Optional.empty();
+            }
+        }
+    }
+
+    /** An operation with its keys resolved; {@code toKey} is null for deletes. */
+    public record Operation(int index, Op op, String fromKey, String toKey) {}
+
+    @PostConstruct
+    public void start() {
+        workers = Executors.newFixedThreadPool(Math.max(1, parallelism));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Start every operation and stream {"results": [...], "succeeded": n, "failed": n}, each result written as
+     * soon as its operation finishes. Operations already started carry on if the client goes away.
+     */
+    public ResponseEntity<StreamingResponseBody> run(String userRoot, List<Operation> operations) {
+        BlockingQueue<BatchItemResult> finished = new LinkedBlockingQueue<>();
+        List<CompletableFuture<Void>> scheduled = new ArrayList<>(operations.size());
+        for (int i = 0; i < operations.size(); i++) {
+            Operation op = operations.get(i);
+            List<CompletableFuture<Void>> before = new ArrayList<>();
+            for (int j = 0; j < i; j++) {
+                if (overlaps(operations.get(j), op)) before.add(scheduled.get(j));
+            }
+            CompletableFuture<Void> task = CompletableFuture.allOf(before.toArray(CompletableFuture[]::new))
+                    .thenRunAsync(() -> finished.add(execute(userRoot, op)), workers);
+            // execute() never throws, so this only fires when the pool refused the task (shutting down)
+            task.whenComplete((ignored, e) -> {
+                if (e != null) finished.add(failure(userRoot, op, HttpStatus.SERVICE_UNAVAILABLE, "Server is shutting down"));
+            });
+            scheduled.add(task);
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> {
+                    JsonGenerator json = objectMapper.getFactory().createGenerator(out);
+                    json.writeStartObject();
+                    json.writeArrayFieldStart("results");
+                    int failed = 0;
+                    for (int i = 0; i < operations.size(); i++) {
+                        BatchItemResult result = take(finished);
+                        if (result.getStatus() >= 300) failed++;
+                        json.writeObject(result);
+                        // results that finished together go out in one write
+                        if (finished.isEmpty()) json.flush();
+                    }
+                    json.writeEndArray();
+                    json.writeNumberField("succeeded", operations.size() - failed);
+                    json.writeNumberField("failed", failed);
+                    json.writeEndObject();
+                    json.flush();
+                });
+    }
+
+    private static BatchItemResult take(BlockingQueue<BatchItemResult> finished) throws IOException {
+        try {
+            return finished.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for batch results");
+        }
+    }
+
+    private static boolean overlaps(Operation a, Operation b) {
+        return overlaps(a.fromKey(), b.fromKey()) || overlaps(a.fromKey(), b.toKey())
+                || overlaps(a.toKey(), b.fromKey()) || overlaps(a.toKey(), b.toKey());
+    }
+
+    private static boolean overlaps(String a, String b) {
+        if (a == null || b == null) return false;
+        return isWithin(a, b) || isWithin(b, a);
+    }
+
+    private static boolean isWithin(String key, String folderKey) {
+        return key.equals(folderKey) || key.startsWith(folderKey + "/");
+    }
+
+    /* ------------------ operations ------------------ */
+
+    private BatchItemResult execute(String userRoot, Operation op) {
+        BatchItemResult result = describe(userRoot, op);
+        try {
+            switch (op.op()) {
+                case MOVE, RENAME -> move(userRoot, op.fromKey(), op.toKey());
+                case COPY -> copy(userRoot, op.fromKey(), op.toKey());
+                case DELETE -> result.setTrashId(delete(userRoot, op.fromKey()));
+            }
+            result.setStatus(HttpStatus.OK.value());
+        } catch (ResponseStatusException e) {
+            result.setStatus(e.getStatusCode().value());
+            result.setError(e.getReason());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Batch {} of {} failed", op.op(), op.fromKey(), e);
+            result.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
+            result.setError("Operation failed");
+        }
+        return result;
+    }
+
+    private void move(String userRoot, String fromKey, String toKey) throws IOException {
+        existing(fromKey);
+        checkDestination(userRoot, fromKey, toKey);
+        int created = quotaService.missingFolders(userRoot, parentOf(toKey));
+        // one atomic rename on the local filesystem, whatever is below a folder
+        storage.move(fromKey, toKey);
+        quotaService.recordAdded(userRoot, 0, created);
+        changeJournal.recordMove(userRoot, fromKey, existing(toKey));
+    }
+
+    private void copy(String userRoot, String fromKey, String toKey) throws IOException {
+        StorageEntry source = existing(fromKey);
+        checkDestination(userRoot, fromKey, toKey);
+        // a folder copy walks and rewrites the whole tree
+        try (RateLimitService.Permit ignored = source.directory()
+                ? rateLimits.acquireExpensive("folder copies") : null) {
+            Usage usage = quotaService.usageOf(fromKey);
+            long files = usage.count() + quotaService.missingFolders(userRoot, parentOf(toKey));
+            quotaService.claim(userRoot, usage.bytes(), files);
+            try {
+                storage.copy(fromKey, toKey);
+            } catch (IOException | RuntimeException e) {
+                quotaService.recordAdded(userRoot, -usage.bytes(), -files);
+                throw e;
+            }
+        }
+        changeJournal.recordCopy(userRoot, existing(toKey));
+    }
+
+    private String delete(String userRoot, String key) throws IOException {
+        StorageEntry entry = existing(key);
+        TrashItem item;
+        try (RateLimitService.Permit ignored = entry.directory()
+                ? rateLimits.acquireExpensive("folder deletes") : null) {
+            item = trashService.moveToTrash(userRoot, key, entry);
+        }
+        changeJournal.recordDelete(userRoot, key, entry.directory());
+        return item.getId();
+    }
+
+    private StorageEntry existing(String key) throws IOException {
+        return storage.stat(key)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "File or folder not found"));
+    }
+
+    private void checkDestination(String userRoot, String fromKey, String toKey) throws IOException {
+        if (isWithin(toKey, fromKey)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Destination is inside the source");
+        }
+        if (storage.stat(toKey).isPresent()) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Destination already exists");
+        }
+        // the nearest existing ancestor must be a folder
+        String parent = parentOf(toKey);
+        while (parent.length() > userRoot.length()) {
+            Optional<StorageEntry> entry = storage.stat(parent);
+            if (entry.isPresent()) {
+                if (!entry.get().directory()) {
+                    throw new ResponseStatusException(HttpStatus.CONFLICT, "Destination folder is a file");
+                }
+                return;
+            }
+            parent = parentOf(parent);
+        }
+    }
+
+    private static String parentOf(String key) {
+        return key.substring(0, key.lastIndexOf('/'));
+    }
+
+    private static BatchItemResult describe(String userRoot, Operation op) {
+        BatchItemResult result = new BatchItemResult();
+        result.setIndex(op.index());
+        result.setOp(op.op().name().toLowerCase(Locale.ROOT));
+        result.setPath(op.fromKey().substring(userRoot.length() + 1));
+        if (op.toKey() != null) result.setTo(op.toKey().substring(userRoot.length() + 1));
+        return result;
+    }
+
+    private static BatchItemResult failure(String userRoot, Operation op, HttpStatus status, String error) {
+        BatchItemResult result = describe(userRoot, op);
+        result.setStatus(status.value());
+        result.setError(error);
+        return result;
+    }
+}
@@ -0,0 +1,244 @@
+package com.yuvraj.dropbox.service;
+
+import com.yuvraj.dropbox.dto.ChangeEventInfo;
+import com.yuvraj.dropbox.dto.ChangesPage;
+import com.yuvraj.dropbox.model.ChangeEvent;
+import com.yuvraj.dropbox.repository.ChangeEventRepository;
+import com.yuvraj.dropbox.storage.StorageBackend.StorageEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Per-user, append-only journal of uploads, mkdirs, deletes, restores, moves and copies, so sync clients can ask "what changed
+ * since X" instead of re-listing their whole tree.
+ *
+ * A client bootstraps by taking {@link #latestCursor} first, then listing the tree, then replaying changes from
+ * that cursor (events that the listing already reflects are harmless to apply again). After that it long-polls
+ * {@link #poll}: the request is parked until the user's next change or the timeout, without holding a thread.
+ * Events only carry their own path; the parent folders of an upload exist implicitly, and a restored, moved or
+ * copied folder arrives with everything in it.
+ *
+ * Cursors are opaque. Besides the journal position they record when they were issued: events are pruned after
+ * the retention period, so a cursor older than that gets 410 and the client must bootstrap again.
+ */
+@Service
+public class ChangeJournalService {
+
+    private static final Logger log = LoggerFactory.getLogger(ChangeJournalService.class);
+
+    public static final int MAX_PAGE_SIZE = 2000;
+    private static final int DEFAULT_PAGE_SIZE = 500;
+    public static final int MAX_WAIT_SECONDS = 120;
+
+    @Autowired
+    private ChangeEventRepository changeEventRepository;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${dropbox.changes.retention-days:30}")
+    private long retentionDays;
+
+    // Appends for one user are serialized so their ids commit in order; otherwise a reader could see id n+1
+    // before n is visible and move its cursor past n for good
+    private final ReentrantLock[] appendLocks = new ReentrantLock[64];
+    // parked long-polls by user
+    private final Map<String, Set<Waiter>> waiters = new ConcurrentHashMap<>();
+
+    record Cursor(long position, long issuedAt) {}
+
+    private record Waiter(DeferredResult<ChangesPage> result, long position, int limit) {}
+
+    public ChangeJournalService() {
+        for (int i = 0; i < appendLocks.length; i++) appendLocks[i] = new ReentrantLock();
+    }
+
+    /* ------------------ recording ------------------ */
+
+    public void recordUpload(String userRoot, StorageEntry entry) {
+        record(userRoot, ChangeEvent.Type.UPLOAD, entry);
+    }
+
+    public void recordMkdir(String userRoot, StorageEntry entry) {
+        record(userRoot, ChangeEvent.Type.MKDIR, entry);
+    }
+
+    public void recordRestore(String userRoot, StorageEntry entry) {
+        record(userRoot, ChangeEvent.Type.RESTORE, entry);
+    }
+
+    public void recordMove(String userRoot, String fromKey, StorageEntry moved) {
+        recordDelete(userRoot, fromKey, moved.directory());
+        record(userRoot, ChangeEvent.Type.MOVE, moved);
+    }
+
+    public void recordCopy(String userRoot, StorageEntry copy) {
+        record(userRoot, ChangeEvent.Type.COPY, copy);
+    }
+
+    public void recordDelete(String userRoot, String key, boolean directory) {
+        append(new ChangeEvent(userRoot, ChangeEvent.Type.DELETE, relative(userRoot, key), directory, 0, 0));
+    }
+
+    private void record(String userRoot, ChangeEvent.Type type, StorageEntry entry) {
+        append(new ChangeEvent(userRoot, type, relative(userRoot, entry.key()), entry.directory(),
+                entry.directory() ? 0 : entry.size(), entry.lastModified()));
+    }
+
+    private static String relative(String userRoot, String key) {
+        return key.substring(userRoot.length() + 1);
+    }
+
+    private void append(ChangeEvent event) {
+        ReentrantLock lock = appendLocks[Math.floorMod(event.getOwner().hashCode(), appendLocks.length)];
+        lock.lock();
+        try {
+            changeEventRepository.save(event);
+        } finally {
+            lock.unlock();
+        }
+        // every change to a user's tree comes through here; derived state (tree totals, search) listens for it
+        eventPublisher.publishEvent(event);
+        wakeWaiters(event.getOwner());
+    }
+
+    /* ------------------ reading ------------------ */
+
+    /** Cursor at the current end of the user's journal. */
+    public String latestCursor(String userRoot) {
+        long position = changeEventRepository.findTopByOwnerOrderByIdDesc(userRoot).map(ChangeEvent::getId).orElse(0L);
+        return encodeCursor(position, System.currentTimeMillis());
+    }
+
+    /**
+     * Changes after {@code cursor}. If there are none yet, waits up to {@code waitSeconds} for the next one
+     * (0 answers immediately).
+     */
+    public DeferredResult<ChangesPage> poll(String userRoot, String cursor, Integer limit, int waitSeconds) {
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        if (waitSeconds < 0 || waitSeconds > MAX_WAIT_SECONDS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "wait must be between 0 and " + MAX_WAIT_SECONDS);
+        }
+        long position = decodeCursor(cursor).position();
+        DeferredResult<ChangesPage> result = new DeferredResult<>(TimeUnit.SECONDS.toMillis(waitSeconds) + 1000);
+
+        ChangesPage page = page(userRoot, position, pageSize);
+        if (!page.getChanges().isEmpty() || waitSeconds == 0) {
+            result.setResult(page);
+            return result;
+        }
+
+        Waiter waiter = new Waiter(result, position, pageSize);
+        Set<Waiter> parked = waiters.computeIfAbsent(userRoot, k -> ConcurrentHashMap.newKeySet());
+        parked.add(waiter);
+        result.onTimeout(() -> result.setResult(page));
+        result.onCompletion(() -> parked.remove(waiter));
+        // an event appended between the first read and parking would otherwise wait out the whole timeout
+        ChangesPage recheck = page(userRoot, position, pageSize);
+        if (!recheck.getChanges().isEmpty()) result.setResult(recheck);
+        return result;
+    }
+
+    private void wakeWaiters(String owner) {
+        Set<Waiter> parked = waiters.get(owner);
+        if (parked == null || parked.isEmpty()) return;
+        for (Waiter waiter : parked) {
+            if (waiter.result().isSetOrExpired()) continue;
+            try {
+                waiter.result().setResult(page(owner, waiter.position(), waiter.limit()));
+            } catch (RuntimeException e) {
+                waiter.result().setErrorResult(e);
+            }
+        }
+    }
+
+    private ChangesPage page(String owner, long position, int limit) {
+        // one extra row says whether there is more without a count query
+        List<ChangeEvent> rows = changeEventRepository.findByOwnerAndIdGreaterThanOrderByIdAsc(
+                owner, position, PageRequest.of(0, limit + 1));
+        List<ChangeEvent> events = rows.size() > limit ? rows.subList(0, limit) : rows;
+        ChangesPage page = new ChangesPage();
+        page.setChanges(events.stream().map(ChangeJournalService::describe).toList());
+        boolean hasMore = rows.size() > limit;
+        long newPosition = events.isEmpty() ? position : events.get(events.size() - 1).getId();
+        // while events are still pending the cursor is only as fresh as the oldest of them, so sitting on it
+        // can't outlive their retention
+        long issuedAt = hasMore ? rows.get(limit).getCreatedAt() : System.currentTimeMillis();
+        page.setCursor(encodeCursor(newPosition, issuedAt));
+        page.setHasMore(hasMore);
+        return page;
+    }
+
+    /* ------------------ retention ------------------ */
+
+    @Scheduled(fixedDelayString = "${dropbox.changes.prune-interval-ms:3600000}")
+    public void prune() {
+        int removed = changeEventRepository.deleteOlderThan(System.currentTimeMillis() - retentionMillis());
+        if (removed > 0) log.info("Pruned {} change journal events", removed);
+        waiters.values().removeIf(Set::isEmpty);
+    }
+
+    private long retentionMillis() {
+        return TimeUnit.DAYS.toMillis(retentionDays);
+    }
+
+    /* ------------------ cursors ------------------ */
+
+    // position \n issued-at; a cursor is re-issued on every response
+    static String encodeCursor(long position, long issuedAt) {
+        String raw = position + "\n" + issuedAt;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    Cursor decodeCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Missing cursor; get one from /files/changes/latest");
+        }
+        Cursor decoded;
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\n");
+            decoded = new Cursor(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
+        // events after an older cursor may already be pruned; syncing from it could silently miss changes
+        if (decoded.issuedAt() < System.currentTimeMillis() - retentionMillis()) {
+            throw new ResponseStatusException(HttpStatus.GONE, "Cursor expired; list the tree again and take a new cursor");
+        }
+        return decoded;
+    }
+
+    private static ChangeEventInfo describe(ChangeEvent event) {
+        ChangeEventInfo info = new ChangeEventInfo();
+        boolean deleted = event.getType() == ChangeEvent.Type.DELETE;
+        info.setEvent(event.getType().name().toLowerCase(Locale.ROOT));
+        info.setPath(event.getPath());
+        info.setType(event.isDirectory() ? "folder" : "file");
+        info.setSize(event.isDirectory() || deleted ? null : event.getSize());
+        info.setLastModified(deleted ? null : event.getLastModified());
+        info.setTimestamp(event.getCreatedAt());
+        return info;
+    }
+}
@@ -0,0 +1,380 @@
+package com.yuvraj.dropbox.service;
+
+import com.yuvraj.dropbox.dto.UploadSessionInfo;
+import com.yuvraj.dropbox.model.ChunkedUpload;
+import com.yuvraj.dropbox.model.ChunkedUploadPart;
+import com.yuvraj.dropbox.repository.ChunkedUploadPartRepository;
+import com.yuvraj.dropbox.repository.ChunkedUploadRepository;
+import com.yuvraj.dropbox.storage.StorageBackend;
+import com.yuvraj.dropbox.storage.StorageBackend.StorageEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Resumable uploads on top of the storage backend's multipart support: the local backend reserves a
+ * staging file of the final size and writes parts positionally, the S3 backend maps sessions onto native
+ * multipart uploads. Either way parts can arrive in any order and in parallel, and commit makes the file
+ * appear atomically. The declared size is reserved against the owner's quota from start to commit or expiry,
+ * so open sessions can't stage more than the quota allows.
+ *
+ * Session bookkeeping lives in the database ({@link ChunkedUpload} and a row per received part), not beside the
+ * staged content, so it is shared by every instance and an interrupted upload can be resumed after a restart.
+ * Only the count of part writes in flight is kept per instance.
+ */
+@Service
+public class ChunkedUploadService {
+
+    private static final Logger log = LoggerFactory.getLogger(ChunkedUploadService.class);
+
+    private static final long MIN_PART_SIZE = 1L << 20;   // 1 MiB, except for the last part
+    private static final long MAX_PART_SIZE = 1L << 30;   // 1 GiB
+    private static final int MAX_PARTS = 10_000;
+
+    @Value("${dropbox.upload.chunked.part-size:8388608}")
+    private long defaultPartSize;
+
+    @Value("${dropbox.upload.chunked.session-ttl-hours:24}")
+    private long sessionTtlHours;
+
+    @Autowired
+    private StorageBackend storage;
+
+    @Autowired
+    private ChunkedUploadRepository uploadRepository;
+
+    @Autowired
+    private ChunkedUploadPartRepository partRepository;
+
+    @Autowired
+    private QuotaService quotaService;
+
+    // this instance's handle on each session it has served, for counting part writes in flight
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    public static class UploadSession {
+        private final String uploadId;
+        private final String userRoot;
+        private final String key;
+        private final long size;
+        private final long partSize;
+        private final int partCount;
+        private volatile long lastActivity;
+        private final String storageUploadId;
+        // guards committing and writing, so a commit never starts while a part is still being written
+        private final ReentrantLock lock = new ReentrantLock();
+        private boolean committing;
+        private int writing;
+        // as of the last lookup: another instance is committing the upload
+        private volatile boolean committingElsewhere;
+
+        UploadSession(ChunkedUpload row) {
+            this.uploadId = row.getId();
+            this.userRoot = row.getOwner();
+            this.key = row.getKey();
+            this.size = row.getSize();
+            this.partSize = row.getPartSize();
+            this.partCount = row.getPartCount();
+            this.lastActivity = row.getLastActivity();
+            this.storageUploadId = row.getStorageUploadId();
+        }
+
+        public String getUploadId() { return uploadId; }
+        public String getUserRoot() { return userRoot; }
+        public String getKey() { return key; }
+        public long getSize() { return size; }
+    }
+
+    /* ------------------ session lifecycle ------------------ */
+
+    public UploadSession create(String userRoot, String key, long size, Long requestedPartSize) {
+        if (size < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid size");
+        }
+        long minPartSize = Math.max(MIN_PART_SIZE, storage.minimumPartSize());
+        long partSize = Math.max(requestedPartSize != null ? requestedPartSize : defaultPartSize, minPartSize);
+        if (requestedPartSize != null && (requestedPartSize < minPartSize || requestedPartSize > MAX_PART_SIZE)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "partSize must be between " + minPartSize + " and " + MAX_PART_SIZE + " bytes");
+        }
+        if ((size + partSize - 1) / partSize > MAX_PARTS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Too many parts; use a larger partSize");
+        }
+        try {
+            if (storage.stat(key).isPresent()) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "File already exists");
+            }
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to read file metadata", e);
+        }
+
+        int partCount = (int) Math.max(1, (size + partSize - 1) / partSize);
+        quotaService.reserve(userRoot, size);
+        String storageUploadId;
+        try {
+            storageUploadId = storage.startMultipart(key, size);
+        } catch (IOException | RuntimeException e) {
+            quotaService.release(userRoot, size);
+            if (e instanceof RuntimeException re) throw re;
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to create upload session", e);
+        }
+        ChunkedUpload row = new ChunkedUpload(UUID.randomUUID().toString(), userRoot, key, size, partSize, partCount,
+                storageUploadId);
+        try {
+            uploadRepository.save(row);
+        } catch (RuntimeException e) {
+            quotaService.release(userRoot, size);
+            try {
+                storage.abortMultipart(key, storageUploadId);
+            } catch (IOException ex) {
+                log.warn("Failed to abort upload of {}", key, ex);
+            }
+            throw e;
+        }
+        UploadSession session = new UploadSession(row);
+        sessions.put(row.getId(), session);
+        return session;
+    }
+
+    public UploadSession get(String userRoot, String uploadId) {
+        ChunkedUpload row = uploadRepository.findById(uploadId).orElse(null);
+        if (row == null || !row.getOwner().equals(userRoot)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Upload session not found");
+        }
+        // Created outside the map: computeIfAbsent would hold a bin lock (a monitor, which pins a virtual
+        // thread to its carrier) while the handle is built
+        UploadSession session = sessions.get(uploadId);
+        if (session == null) {
+            UploadSession created = new UploadSession(row);
+            UploadSession raced = sessions.putIfAbsent(uploadId, created);
+            session = raced != null ? raced : created;
+        }
+        session.lastActivity = row.getLastActivity();
+        session.committingElsewhere = row.isCommitting();
+        return session;
+    }
+
+    /**
+     * Write part {@code partNumber} (1-based) from the request body. Parts may arrive in any order and in
+     * parallel; re-sending a part simply overwrites it, so clients can retry blindly after a dropped connection.
+     */
+    public long writePart(UploadSession session, int partNumber, InputStream body, long contentLength) {
+        if (partNumber < 1 || partNumber > session.partCount) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Part number must be between 1 and " + session.partCount);
+        }
+        long offset = (partNumber - 1) * session.partSize;
+        long expected = Math.min(session.partSize, session.size - offset);
+        if (contentLength >= 0 && contentLength != expected) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Part " + partNumber + " must be " + expected + " bytes");
+        }
+        session.lock.lock();
+        try {
+            if (session.committing || session.committingElsewhere) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "Upload is being committed");
+            }
+            session.writing++;
+        } finally {
+            session.lock.unlock();
+        }
+        PartBody part = new PartBody(body);
+        try {
+            storage.writePart(session.key, session.storageUploadId, partNumber, offset, part, expected);
+            markReceived(session, partNumber);
+        } catch (IOException e) {
+            // the client's fault only if its body broke off or had the wrong length; anything else is ours
+            if (part.failed || (part.ended && part.count < expected) || part.count > expected) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Part " + partNumber + " must be " + expected + " bytes");
+            }
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to write part " + partNumber, e);
+        } finally {
+            session.lock.lock();
+            try {
+                session.writing--;
+            } finally {
+                session.lock.unlock();
+            }
+        }
+        return expected;
+    }
+
+    /**
+     * Assemble the parts into the target file, which appears atomically, and count its bytes against the quota
+     * in place of the reservation. Returns its metadata. 409 while a
+     * part is still being written: a part that is overwritten as it is assembled could end up half old, half new.
+     */
+    public StorageEntry commit(UploadSession session) {
+        session.lock.lock();
+        try {
+            if (session.committing) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "Upload is already being committed");
+            }
+            if (session.writing > 0) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "Parts are still being written");
+            }
+            List<Integer> missing = missingParts(session);
+            if (!missing.isEmpty()) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "Missing parts: " + abbreviate(missing));
+            }
+            // settles a race with a commit of the same upload on another instance
+            if (uploadRepository.startCommit(session.uploadId, System.currentTimeMillis()) == 0) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "Upload is already being committed");
+            }
+            session.committing = true;
+        } finally {
+            session.lock.unlock();
+        }
+        StorageEntry entry;
+        try {
+            if (storage.stat(session.key).isPresent()) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "File already exists");
+            }
+            entry = storage.completeMultipart(session.key, session.storageUploadId, session.partCount);
+        } catch (IOException e) {
+            releaseCommit(session);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to commit upload", e);
+        } catch (RuntimeException e) {
+            releaseCommit(session);
+            throw e;
+        }
+        if (deleteSession(session.uploadId)) {
+            quotaService.settle(session.userRoot, session.size, entry.size(), 0);
+        } else {
+            // expired while it was being committed; the reservation has already been released
+            quotaService.recordAdded(session.userRoot, entry.size(), 0);
+        }
+        return entry;
+    }
+
+    public void abort(UploadSession session) {
+        abortQuietly(session.uploadId, session.userRoot, session.key, session.size, session.storageUploadId);
+    }
+
+    public UploadSessionInfo describe(UploadSession session) {
+        UploadSessionInfo info = new UploadSessionInfo();
+        info.setUploadId(session.uploadId);
+        info.setPath(session.key.substring(session.userRoot.length() + 1));
+        info.setSize(session.size);
+        info.setPartSize(session.partSize);
+        info.setPartCount(session.partCount);
+        info.setReceivedParts(partRepository.findPartNumbers(session.uploadId));
+        info.setExpiresAt(session.lastActivity + TimeUnit.HOURS.toMillis(sessionTtlHours));
+        return info;
+    }
+
+    // Drop sessions (and their staged parts) that were never committed and have received no part for the TTL
+    @Scheduled(fixedDelayString = "${dropbox.upload.chunked.purge-interval-ms:3600000}")
+    public void purgeExpiredSessions() {
+        long cutoff = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(sessionTtlHours);
+        for (ChunkedUpload row : uploadRepository.findByLastActivityLessThan(cutoff)) {
+            log.info("Purging expired upload session {}", row.getId());
+            abortQuietly(row.getId(), row.getOwner(), row.getKey(), row.getSize(), row.getStorageUploadId());
+        }
+        // handles on sessions another instance committed, aborted or purged
+        Set<String> live = new HashSet<>();
+        uploadRepository.findAllById(sessions.keySet()).forEach(row -> live.add(row.getId()));
+        sessions.keySet().retainAll(live);
+    }
+
+    /* ------------------ helpers ------------------ */
+
+    private void releaseCommit(UploadSession session) {
+        session.lock.lock();
+        try {
+            uploadRepository.endCommit(session.uploadId);
+            session.committing = false;
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    private void markReceived(UploadSession session, int partNumber) {
+        long now = System.currentTimeMillis();
+        // A row per part, so concurrent parts never update the same row
+        try {
+            partRepository.save(new ChunkedUploadPart(session.uploadId, partNumber));
+        } catch (DataIntegrityViolationException e) {
+            // a retry of the same part recorded it first
+        }
+        uploadRepository.touch(session.uploadId, now);
+        session.lastActivity = now;
+    }
+
+    private List<Integer> missingParts(UploadSession session) {
+        Set<Integer> received = new HashSet<>(partRepository.findPartNumbers(session.uploadId));
+        List<Integer> missing = new ArrayList<>();
+        for (int part = 1; part <= session.partCount; part++) {
+            if (!received.contains(part)) missing.add(part);
+        }
+        return missing;
+    }
+
+    private static String abbreviate(List<Integer> parts) {
+        return parts.size() <= 20 ? parts.toString() : parts.subList(0, 20) + " and " + (parts.size() - 20) + " more";
+    }
+
+    // A part's request body, noting how much of it was read and whether it broke off or ended
+    private static class PartBody extends FilterInputStream {
+        long count;
+        boolean ended;
+        boolean failed;
+
+        PartBody(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n;
+            try {
+                n = in.read(b, off, len);
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+            if (n < 0) ended = true;
+            else count += n;
+            return n;
+        }
+    }
+
+    private void abortQuietly(String uploadId, String owner, String key, long size, String storageUploadId) {
+        try {
+            storage.abortMultipart(key, storageUploadId);
+        } catch (IOException e) {
+            log.warn("Failed to abort upload {}", uploadId, e);
+        }
+        if (deleteSession(uploadId)) quotaService.release(owner, size);
+    }
+
+    // true for the one caller that removed the row, which settles or releases the session's reservation
+    private boolean deleteSession(String uploadId) {
+        sessions.remove(uploadId);
+        partRepository.deleteByUpload(uploadId);
+        return uploadRepository.deleteUpload(uploadId) == 1;
+    }
+}
@@ -0,0 +1,271 @@
+package com.yuvraj.dropbox.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.yuvraj.dropbox.storage.StorageBackend;
+import com.yuvraj.dropbox.storage.StorageBackend.StorageEntry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * rsync-style updates of an existing file: the client fetches the block signatures of the version it has, works
+ * out which parts of its new version already exist on the server, and uploads only the rest.
+ *
+ * Signatures: for each {@code blockSize} block of the file (the last one may be shorter) a weak rolling checksum
+ * (rsync's: {@code a = sum of bytes, b = sum of (len - i) * byte[i]}, both mod 2^16, sent as {@code a | b << 16})
+ * and a strong one (first 16 bytes of SHA-256, hex). The block size is raised as needed to keep a file under
+ * {@link #MAX_BLOCKS} blocks, so clients must use the {@code blockSize} in the response. Signatures are streamed
+ * as they are computed; only small ones are kept for the client's retry.
+ *
+ * Delta: a binary stream of big-endian instructions, applied in order to produce the new file:
+ * <pre>
+ *   'C' offset:long length:long   copy bytes [offset, offset + length) of the current version
+ *   'L' length:int bytes...       literal bytes (at most 16 MiB per instruction)
+ *   'E'                           end of delta
+ * </pre>
+ * The new version is assembled as it streams in (nothing is buffered in memory) and written through
+ * {@link StorageBackend#write}, which lands it in a temporary file or upload and swaps it in atomically.
+ */
+@Service
+public class DeltaUploadService {
+
+    public static final int MIN_BLOCK_SIZE = 1024;
+    public static final int MAX_BLOCK_SIZE = 1024 * 1024;
+    private static final int MAX_LITERAL = 16 * 1024 * 1024;
+    private static final int STRONG_BYTES = 16;
+    // about 20 MiB of signature JSON at most; a 100 GiB file gets 128 KiB blocks or larger
+    public static final int MAX_BLOCKS = 1 << 20;
+    private static final int MAX_CACHED_BLOCKS = 1 << 16;
+
+    @Autowired
+    private StorageBackend storage;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // a client typically asks for the same signatures again when it retries; ~20 bytes per block, small files only
+    private final Cache<String, Signature> signatures = Caffeine.newBuilder()
+            .maximumWeight(64L * 1024 * 1024)
+            .weigher((String key, Signature sig) -> sig.weak().length * (4 + STRONG_BYTES))
+            .build();
+
+    private record Signature(int[] weak, byte[] strong) {}
+
+    // thrown while applying a delta for malformed or out-of-range instructions
+    private static class InvalidDeltaException extends IOException {
+        InvalidDeltaException(String message) { super(message); }
+    }
+
+    /** rsync's rule of thumb: about sqrt(size), rounded to a power of two within [1 KiB, 1 MiB]. */
+    public static int defaultBlockSize(long fileSize) {
+        long target = (long) Math.sqrt((double) fileSize);
+        int size = MIN_BLOCK_SIZE;
+        while (size < target && size < MAX_BLOCK_SIZE) size <<= 1;
+        return size;
+    }
+
+    /** {@code requested} doubled until the file has at most {@link #MAX_BLOCKS} blocks. */
+    public static int effectiveBlockSize(long fileSize, int requested) {
+        int size = requested;
+        while ((fileSize + size - 1) / size > MAX_BLOCKS && size < (1 << 30)) size <<= 1;
+        return size;
+    }
+
+    /* ------------------ signatures ------------------ */
+
+    /**
+     * {"size": ..., "etag": "...", "blockSize": ..., "blocks": [{"weak": ..., "strong": "..."}, ...]}, where
+     * blockSize may be larger than {@code requestedBlockSize} (see {@link #effectiveBlockSize}).
+     */
+    public void writeSignature(StorageEntry entry, int requestedBlockSize, OutputStream out) throws IOException {
+        int blockSize = effectiveBlockSize(entry.size(), requestedBlockSize);
+        JsonGenerator json = objectMapper.getFactory().createGenerator(out);
+        json.writeStartObject();
+        json.writeNumberField("size", entry.size());
+        json.writeStringField("etag", entry.etag());
+        json.writeNumberField("blockSize", blockSize);
+        json.writeArrayFieldStart("blocks");
+
+        String cacheKey = entry.key() + "\n" + entry.etag() + "\n" + blockSize;
+        Signature cached = signatures.getIfPresent(cacheKey);
+        if (cached != null) {
+            for (int i = 0; i < cached.weak().length; i++) writeBlock(json, cached.weak()[i], cached.strong(), i * STRONG_BYTES);
+        } else {
+            int blocks = (int) ((entry.size() + blockSize - 1) / blockSize);
+            Signature sig = blocks <= MAX_CACHED_BLOCKS ? new Signature(new int[blocks], new byte[blocks * STRONG_BYTES]) : null;
+            MessageDigest sha256 = sha256();
+            byte[] block = new byte[blockSize];
+            byte[] strong = new byte[STRONG_BYTES];
+            try (InputStream in = storage.read(entry.key(), 0, Long.MAX_VALUE)) {
+                for (int i = 0; i < blocks; i++) {
+                    int len = in.readNBytes(block, 0, blockSize);
+                    if (len == 0) throw new IOException("File shrank while computing signatures");
+                    int weak = weakChecksum(block, len);
+                    sha256.update(block, 0, len);
+                    System.arraycopy(sha256.digest(), 0, strong, 0, STRONG_BYTES);
+                    writeBlock(json, weak, strong, 0);
+                    if (sig != null) {
+                        sig.weak()[i] = weak;
+                        System.arraycopy(strong, 0, sig.strong(), i * STRONG_BYTES, STRONG_BYTES);
+                    }
+                }
+            }
+            if (sig != null) signatures.put(cacheKey, sig);
+        }
+        json.writeEndArray();
+        json.writeEndObject();
+        json.flush();
+    }
+
+    private static void writeBlock(JsonGenerator json, int weak, byte[] strong, int offset) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField("weak", Integer.toUnsignedLong(weak));
+        json.writeStringField("strong", HexFormat.of().formatHex(strong, offset, offset + STRONG_BYTES));
+        json.writeEndObject();
+    }
+
+    static int weakChecksum(byte[] data, int len) {
+        int a = 0;
+        int b = 0;
+        for (int i = 0; i < len; i++) {
+            int v = data[i] & 0xff;
+            a += v;
+            b += (len - i) * v;
+        }
+        return (a & 0xffff) | (b << 16);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /* ------------------ applying a delta ------------------ */
+
+    /**
+     * Replace {@code base} with the file described by {@code delta}, which must come to exactly {@code newSize}
+     * bytes. The current version stays intact (and readable) until the new one is complete. Copied blocks are
+     * read from {@code source}, a snapshot of base's content that no concurrent write to base can change.
+     */
+    public StorageEntry apply(StorageEntry base, String source, InputStream delta, long newSize) {
+        try (DeltaInputStream assembled = new DeltaInputStream(base, source, delta, newSize)) {
+            return storage.write(base.key(), assembled, newSize);
+        } catch (IOException | RuntimeException e) {
+            // backends may wrap what our stream threw
+            for (Throwable t = e; t != null; t = t.getCause()) {
+                if (t instanceof InvalidDeltaException invalid) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid delta: " + invalid.getMessage());
+                }
+            }
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to apply delta", e);
+        }
+    }
+
+    // The new file's bytes, produced instruction by instruction as the storage backend reads them. Runs of
+    // copies from consecutive offsets reuse one open read of the base. A delta that doesn't come to exactly
+    // newSize bytes fails the read before the last byte is handed over, so the backend never commits it.
+    private class DeltaInputStream extends InputStream {
+        private final StorageEntry base;
+        private final String source;
+        private final DataInputStream delta;
+        private final long newSize;
+        private long produced;
+        private InputStream baseIn;
+        private long basePosition;
+        private InputStream current; // base or delta, whichever the current instruction reads from
+        private long remaining;      // bytes left in the current instruction
+        private boolean ended;
+
+        DeltaInputStream(StorageEntry base, String source, InputStream delta, long newSize) {
+            this.base = base;
+            this.source = source;
+            this.delta = new DataInputStream(delta);
+            this.newSize = newSize;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (produced == newSize) return -1;
+            while (remaining == 0) {
+                if (ended || !next()) throw new InvalidDeltaException("delta is shorter than the declared size");
+            }
+            int n = current.read(b, off, (int) Math.min(Math.min(len, remaining), newSize - produced));
+            if (n < 0) throw new InvalidDeltaException(current == baseIn ? "base file changed" : "truncated literal");
+            remaining -= n;
+            produced += n;
+            if (current == baseIn) basePosition += n;
+            if (produced == newSize) verifyEnd();
+            return n;
+        }
+
+        // Decode the next instruction; false at 'E'
+        private boolean next() throws IOException {
+            int op;
+            try {
+                op = delta.readUnsignedByte();
+            } catch (EOFException e) {
+                throw new InvalidDeltaException("missing end instruction");
+            }
+            switch (op) {
+                case 'C' -> {
+                    long offset = delta.readLong();
+                    long length = delta.readLong();
+                    if (offset < 0 || length < 0 || offset > base.size() || length > base.size() - offset) {
+                        throw new InvalidDeltaException("copy outside the current version");
+                    }
+                    if (baseIn == null || basePosition != offset) {
+                        if (baseIn != null) baseIn.close();
+                        baseIn = storage.read(source, offset, Long.MAX_VALUE);
+                        basePosition = offset;
+                    }
+                    current = baseIn;
+                    remaining = length;
+                }
+                case 'L' -> {
+                    int length = delta.readInt();
+                    if (length < 0 || length > MAX_LITERAL) throw new InvalidDeltaException("bad literal length");
+                    current = delta;
+                    remaining = length;
+                }
+                case 'E' -> ended = true;
+                default -> throw new InvalidDeltaException("unknown instruction " + op);
+            }
+            return !ended;
+        }
+
+        private void verifyEnd() throws IOException {
+            while (!ended) {
+                if (remaining > 0 || next()) throw new InvalidDeltaException("delta is longer than the declared size");
+            }
+            if (delta.read() >= 0) throw new InvalidDeltaException("data after end instruction");
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (baseIn != null) baseIn.close();
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package com.yuvraj.dropbox.service;
+
+import com.yuvraj.dropbox.metrics.FileMetrics;
+import com.yuvraj.dropbox.storage.StorageBackend;
+import io.micrometer.common.KeyValues;
+import com.yuvraj.dropbox.storage.StorageBackend.StorageEntry;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Serves single files from the {@link StorageBackend} with HTTP validators (strong ETag, Last-Modified), conditional
+ * requests (304 / 412) and byte ranges (206, including multipart/byteranges).
+ */
+@Service
+public class FileDownloadService {
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    // Request attributes of Tomcat's sendfile support (see org.apache.catalina.Globals)
+    private static final String SENDFILE_SUPPORTED_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    @Value("${dropbox.download.sendfile.enabled:true}")
+    private boolean sendfileEnabled;
+
+    // Below this size a plain buffered copy is cheaper than handing the file to the poller
+    @Value("${dropbox.download.sendfile.min-size:49152}")
+    private long sendfileMinSize;
+
+    @Autowired
+    private StorageBackend storage;
+
+    @Autowired
+    private FileMetrics metrics;
+
+    @Autowired
+    private RateLimitService rateLimits;
+
+    // Revalidate on every use; a 304 costs one stat and no body
+    private static final String CACHE_REVALIDATE = "private, no-cache";
+    // Used when the client pins the exact version with ?v=<etag>, so the bytes can never change under that URL
+    private static final String CACHE_IMMUTABLE = "private, max-age=31536000, immutable";
+
+    // A byte range [start, end] (both inclusive) of the file
+    record Range(long start, long end) {
+        long length() { return end - start + 1; }
+    }
+
+    public ResponseEntity<StreamingResponseBody> serveFile(String userRoot, HttpServletRequest request, StorageEntry file,
+                                                           String contentType, String contentDisposition) {
+        String key = file.key();
+        long length = file.size();
+        long lastModified = file.lastModified();
+        String etag = file.etag();
+
+        HttpHeaders headers = new HttpHeaders();
+        if (etag != null) headers.setETag(etag);
+        headers.setLastModified(lastModified);
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        headers.set(HttpHeaders.CACHE_CONTROL, etag != null && etag.equals(quote(request.getParameter("v"))) ? CACHE_IMMUTABLE : CACHE_REVALIDATE);
+
+        HttpStatus preconditionStatus = evaluatePreconditions(request, etag, lastModified);
+        if (preconditionStatus != null) {
+            return ResponseEntity.status(preconditionStatus).headers(headers).build();
+        }
+
+        headers.set(HttpHeaders.CONTENT_DISPOSITION, contentDisposition);
+        List<Range> ranges = ifRangeMatches(request, etag, lastModified)
+                ? parseRanges(request.getHeader(HttpHeaders.RANGE), length)
+                : null;
+
+        if (ranges == null) {
+            headers.set(HttpHeaders.CONTENT_TYPE, contentType);
+            headers.setContentLength(length);
+            if (trySendfile(userRoot, request, key, 0, length)) {
+                metrics.recordBytes(FileMetrics.OUT, userRoot, length);
+                return ResponseEntity.ok().headers(headers).build();
+            }
+            return ResponseEntity.ok().headers(headers)
+                    .body(metrics.download(userRoot, "dropbox.download", KeyValues.of("kind", "full"),
+                            out -> copyRange(userRoot, key, 0, length, out)));
+        }
+        if (ranges.isEmpty()) {
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE).headers(headers).build();
+        }
+        if (ranges.size() == 1) {
+            Range range = ranges.get(0);
+            headers.set(HttpHeaders.CONTENT_TYPE, contentType);
+            headers.set(HttpHeaders.CONTENT_RANGE, contentRange(range, length));
+            headers.setContentLength(range.length());
+            if (trySendfile(userRoot, request, key, range.start(), range.length())) {
+                metrics.recordBytes(FileMetrics.OUT, userRoot, range.length());
+                return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(headers).build();
+            }
+            return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(headers)
+                    .body(metrics.download(userRoot, "dropbox.download", KeyValues.of("kind", "range"),
+                            out -> copyRange(userRoot, key, range.start(), range.length(), out)));
+        }
+
+        // multipart/byteranges: precompute the part headers so Content-Length is exact
+        String boundary = UUID.randomUUID().toString();
+        List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+        long total = 0;
+        for (Range range : ranges) {
+            byte[] partHeader = ("\r\n--" + boundary + "\r\n"
+                    + HttpHeaders.CONTENT_TYPE + ": " + contentType + "\r\n"
+                    + HttpHeaders.CONTENT_RANGE + ": " + contentRange(range, length) + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(partHeader);
+            total += partHeader.length + range.length();
+        }
+        byte[] closing = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        total += closing.length;
+
+        headers.set(HttpHeaders.CONTENT_TYPE, "multipart/byteranges; boundary=" + boundary);
+        headers.setContentLength(total);
+        return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(headers)
+                .body(metrics.download(userRoot, "dropbox.download", KeyValues.of("kind", "multirange"), out -> {
+                    for (int i = 0; i < ranges.size(); i++) {
+                        out.write(partHeaders.get(i));
+                        copyRange(userRoot, key, ranges.get(i).start(), ranges.get(i).length(), out);
+                    }
+                    out.write(closing);
+                }));
+    }
+
+    /* ------------------ zero-copy ------------------ */
+
+    /**
+     * Hand [position, position + count) to Tomcat's sendfile, so the kernel copies page cache straight to
+     * the socket and the bytes never enter the JVM. The controller then returns a body-less response;
+     * Tomcat writes the file after the headers are committed. Not used for HEAD, tiny files, content that
+     * isn't a plain local file (object store, dedup manifests) or when the connector doesn't support it
+     * (e.g. compression enabled), in which case the caller streams the body. Since the write happens outside
+     * the application, such a response counts toward bytes out in full and isn't in the download timer.
+     */
+    private boolean trySendfile(String userRoot, HttpServletRequest request, String key, long position, long count) {
+        if (!sendfileEnabled || count < sendfileMinSize || !"GET".equals(request.getMethod())) return false;
+        if (!Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTR))) return false;
+        // only when the backend keeps this key's exact bytes in a local file
+        Optional<Path> file = storage.localPath(key);
+        if (file.isEmpty()) return false;
+        // a user behind their download rate gets the throttled copy instead
+        if (!rateLimits.tryConsumeDownload(userRoot, count)) return false;
+        request.setAttribute(SENDFILE_FILENAME_ATTR, file.get().toAbsolutePath().toString());
+        request.setAttribute(SENDFILE_START_ATTR, position);
+        request.setAttribute(SENDFILE_END_ATTR, position + count); // exclusive
+        return true;
+    }
+
+    /* ------------------ conditional requests (RFC 9110 section 13.2.2) ------------------ */
+
+    // Returns 304/412 when a precondition short-circuits the request, null when the body should be sent
+    private HttpStatus evaluatePreconditions(HttpServletRequest request, String etag, long lastModified) {
+        boolean getOrHead = "GET".equals(request.getMethod()) || "HEAD".equals(request.getMethod());
+
+        String ifMatch = request.getHeader(HttpHeaders.IF_MATCH);
+        if (ifMatch != null) {
+            if (!etagListMatches(ifMatch, etag, false)) return HttpStatus.PRECONDITION_FAILED;
+        } else {
+            long ifUnmodifiedSince = dateHeader(request, HttpHeaders.IF_UNMODIFIED_SINCE);
+            if (ifUnmodifiedSince >= 0 && lastModified / 1000 > ifUnmodifiedSince / 1000) {
+                return HttpStatus.PRECONDITION_FAILED;
+            }
+        }
+
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            if (etagListMatches(ifNoneMatch, etag, true)) {
+                return getOrHead ? HttpStatus.NOT_MODIFIED : HttpStatus.PRECONDITION_FAILED;
+            }
+        } else if (getOrHead) {
+            long ifModifiedSince = dateHeader(request, HttpHeaders.IF_MODIFIED_SINCE);
+            if (ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000) {
+                return HttpStatus.NOT_MODIFIED;
+            }
+        }
+        return null;
+    }
+
+    // If-Range: an entity tag must match strongly, a date must equal Last-Modified exactly
+    private boolean ifRangeMatches(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) return true;
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(etag);
+        }
+        long date = dateHeader(request, HttpHeaders.IF_RANGE);
+        return date >= 0 && date / 1000 == lastModified / 1000;
+    }
+
+    private static boolean etagListMatches(String header, String etag, boolean weakComparison) {
+        for (String candidate : header.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*")) return true;
+            if (candidate.startsWith("W/")) {
+                if (!weakComparison) continue;
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    private static long dateHeader(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1; // unparseable dates are ignored, as the RFC requires
+        }
+    }
+
+    private static String quote(String value) {
+        return value == null ? null : "\"" + value + "\"";
+    }
+
+    /* ------------------ ranges ------------------ */
+
+    /**
+     * Parse a Range header. Returns null when the header is absent or malformed (serve the full body),
+     * an empty list when no range is satisfiable (416), otherwise the sorted, coalesced ranges.
+     */
+    static List<Range> parseRanges(String header, long length) {
+        if (header == null) return null;
+        List<HttpRange> httpRanges;
+        try {
+            httpRanges = HttpRange.parseRanges(header);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (httpRanges.isEmpty()) return null;
+
+        List<Range> ranges = new ArrayList<>(httpRanges.size());
+        for (HttpRange httpRange : httpRanges) {
+            try {
+                long start = httpRange.getRangeStart(length);
+                long end = httpRange.getRangeEnd(length);
+                // a suffix range of an empty file comes out as [0, -1]: nothing in it can be served
+                if (end >= start) ranges.add(new Range(start, end));
+            } catch (IllegalArgumentException unsatisfiable) {
+                // e.g. first-byte-pos beyond the end of the file; other ranges may still be served
+            }
+        }
+        ranges.sort(Comparator.comparingLong(Range::start));
+
+        // Coalesce overlapping or adjacent ranges so a request can't make us send the same bytes repeatedly
+        List<Range> merged = new ArrayList<>(ranges.size());
+        for (Range range : ranges) {
+            Range last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && range.start() <= last.end() + 1) {
+                merged.set(merged.size() - 1, new Range(last.start(), Math.max(last.end(), range.end())));
+            } else {
+                merged.add(range);
+            }
+        }
+        return merged;
+    }
+
+    private static String contentRange(Range range, long length) {
+        return "bytes " + range.start() + "-" + range.end() + "/" + length;
+    }
+
+    // Copy [position, position + count) of the file to the response, at most at the user's download rate
+    private void copyRange(String userRoot, String key, long position, long count, OutputStream out) throws IOException {
+        try (InputStream in = storage.read(key, position, count)) {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            long remaining = count;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) break; // file shrank while being served
+                rateLimits.consumeDownload(userRoot, read);
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+    }
+}
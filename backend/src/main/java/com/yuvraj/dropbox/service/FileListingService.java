@@ -0,0 +1,201 @@
+package com.yuvraj.dropbox.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yuvraj.dropbox.storage.StorageBackend;
+import com.yuvraj.dropbox.storage.StorageBackend.SortField;
+import com.yuvraj.dropbox.storage.StorageBackend.StorageEntry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Folder listings, written to the response as they are read so no request ever holds a whole folder in memory.
+ *
+ * Without {@code limit} or {@code cursor} the response is the plain JSON array of every child (what the UI has
+ * always used), fetched from storage a page at a time. With them it is one page:
+ * {@code {"items": [...], "nextCursor": "..."}}, where {@code nextCursor} is null on the last page.
+ * Cursors are opaque keyset positions, so a page costs the same however deep it is and concurrent inserts
+ * never shift entries between pages.
+ */
+@Service
+public class FileListingService {
+
+    public static final int MAX_PAGE_SIZE = 1000;
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    // how much of a full (unpaginated) listing is fetched per round trip to storage
+    private static final int STREAM_BATCH_SIZE = 1000;
+
+    private static final Set<String> ALL_FIELDS = Set.of("name", "type", "path", "size", "lastModified");
+
+    @Autowired
+    private StorageBackend storage;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // Decoded cursor: the sort it was issued for plus the last entry of the previous page
+    record Cursor(SortField sort, boolean descending, StorageEntry after) {}
+
+    public ResponseEntity<StreamingResponseBody> list(String userRoot, StorageEntry target, Integer limit,
+                                                      String cursor, String sort, String order, String fields) {
+        SortField sortField = parseSort(sort);
+        boolean descending = parseOrder(order);
+        Set<String> projection = parseFields(fields);
+        boolean paged = limit != null || cursor != null;
+
+        if (!target.directory()) {
+            // If target is a file, return info for that single file
+            List<StorageEntry> single = List.of(target);
+            return json(paged
+                    ? out -> writePage(out, userRoot, single, null, projection)
+                    : out -> writeArray(out, userRoot, target.key(), single, false, sortField, descending, projection));
+        }
+
+        if (!paged) {
+            // target is a directory -> stream every child; the first batch is read up front so errors still get a status
+            List<StorageEntry> first = fetch(target.key(), sortField, descending, null, STREAM_BATCH_SIZE);
+            return json(out -> writeArray(out, userRoot, target.key(), first, true, sortField, descending, projection));
+        }
+
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        StorageEntry after = null;
+        if (cursor != null) {
+            Cursor decoded = decodeCursor(cursor, target.key());
+            if (decoded.sort() != sortField || decoded.descending() != descending) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cursor was issued for a different sort order");
+            }
+            after = decoded.after();
+        }
+        // one extra row tells us whether another page exists without a count query
+        List<StorageEntry> rows = fetch(target.key(), sortField, descending, after, pageSize + 1);
+        List<StorageEntry> items = rows.size() > pageSize ? rows.subList(0, pageSize) : rows;
+        String nextCursor = rows.size() > pageSize
+                ? encodeCursor(sortField, descending, items.get(items.size() - 1))
+                : null;
+        return json(out -> writePage(out, userRoot, items, nextCursor, projection));
+    }
+
+    /* ------------------ serialization ------------------ */
+
+    private static ResponseEntity<StreamingResponseBody> json(StreamingResponseBody body) {
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    private void writeArray(OutputStream out, String userRoot, String folderKey, List<StorageEntry> first,
+                            boolean more, SortField sort, boolean descending, Set<String> projection) throws IOException {
+        JsonGenerator json = objectMapper.getFactory().createGenerator(out);
+        json.writeStartArray();
+        List<StorageEntry> batch = first;
+        while (true) {
+            for (StorageEntry entry : batch) writeEntry(json, userRoot, entry, projection);
+            if (!more || batch.size() < STREAM_BATCH_SIZE) break;
+            json.flush();
+            batch = storage.listPage(folderKey, sort, descending, batch.get(batch.size() - 1), STREAM_BATCH_SIZE);
+        }
+        json.writeEndArray();
+        // flush, not close: the servlet stream belongs to the container
+        json.flush();
+    }
+
+    private void writePage(OutputStream out, String userRoot, List<StorageEntry> items, String nextCursor,
+                           Set<String> projection) throws IOException {
+        JsonGenerator json = objectMapper.getFactory().createGenerator(out);
+        json.writeStartObject();
+        json.writeArrayFieldStart("items");
+        for (StorageEntry entry : items) writeEntry(json, userRoot, entry, projection);
+        json.writeEndArray();
+        json.writeStringField("nextCursor", nextCursor);
+        json.writeEndObject();
+        json.flush();
+    }
+
+    // Same shape as FileController.FileInfo, minus the fields the client didn't ask for
+    private static void writeEntry(JsonGenerator json, String userRoot, StorageEntry entry, Set<String> projection)
+            throws IOException {
+        json.writeStartObject();
+        if (projection.contains("name")) json.writeStringField("name", entry.name());
+        if (projection.contains("type")) json.writeStringField("type", entry.directory() ? "folder" : "file");
+        if (projection.contains("path")) json.writeStringField("path", entry.key().substring(userRoot.length() + 1));
+        if (projection.contains("size")) {
+            if (entry.directory()) json.writeNullField("size");
+            else json.writeNumberField("size", entry.size());
+        }
+        if (projection.contains("lastModified")) json.writeNumberField("lastModified", entry.lastModified());
+        json.writeEndObject();
+    }
+
+    /* ------------------ parameters ------------------ */
+
+    private List<StorageEntry> fetch(String folderKey, SortField sort, boolean descending, StorageEntry after, int limit) {
+        try {
+            return storage.listPage(folderKey, sort, descending, after, limit);
+        } catch (IOException | RuntimeException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to list directory", e);
+        }
+    }
+
+    private static SortField parseSort(String sort) {
+        if (sort == null || sort.isBlank()) return SortField.NAME;
+        return switch (sort.toLowerCase(Locale.ROOT)) {
+            case "name" -> SortField.NAME;
+            case "size" -> SortField.SIZE;
+            case "mtime", "lastmodified" -> SortField.MODIFIED;
+            default -> throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "sort must be name, size or mtime");
+        };
+    }
+
+    private static boolean parseOrder(String order) {
+        if (order == null || order.isBlank() || order.equalsIgnoreCase("asc")) return false;
+        if (order.equalsIgnoreCase("desc")) return true;
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "order must be asc or desc");
+    }
+
+    private static Set<String> parseFields(String fields) {
+        if (fields == null || fields.isBlank()) return ALL_FIELDS;
+        Set<String> projection = new HashSet<>();
+        for (String field : fields.split(",")) {
+            String f = field.trim();
+            if (!ALL_FIELDS.contains(f)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown field: " + f);
+            }
+            projection.add(f);
+        }
+        return projection;
+    }
+
+    // sort \n order \n size \n mtime \n name; names can't contain '/' but may contain newlines, so name goes last
+    static String encodeCursor(SortField sort, boolean descending, StorageEntry last) {
+        String raw = sort.name() + "\n" + (descending ? "desc" : "asc") + "\n" + last.size() + "\n"
+                + last.lastModified() + "\n" + last.name();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Cursor decodeCursor(String cursor, String folderKey) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\n", 5);
+            StorageEntry after = new StorageEntry(folderKey + "/" + parts[4], false,
+                    Long.parseLong(parts[2]), Long.parseLong(parts[3]), null);
+            return new Cursor(SortField.valueOf(parts[0]), parts[1].equals("desc"), after);
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
+    }
+}
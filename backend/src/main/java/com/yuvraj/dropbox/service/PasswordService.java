@@ -0,0 +1,103 @@
+package com.yuvraj.dropbox.service;
+
+import com.yuvraj.dropbox.exception.RetryLaterException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * BCrypt hashing and verification on a small dedicated pool with a bounded queue. A hash takes tens to hundreds
+ * of milliseconds of CPU by design, so a login storm (say, a wave of expiring tokens) queues here instead of
+ * tying up request threads and cores that file transfers need; past the queue, logins get 503 with Retry-After.
+ *
+ * Hashes made with another cost, and passwords stored before hashing was introduced, are reported by
+ * {@link #verify} with a fresh hash to store in their place.
+ */
+@Service
+public class PasswordService {
+
+    private static final Pattern BCRYPT = Pattern.compile("\\$2[aby]?\\$(\\d\\d)\\$[./0-9A-Za-z]{53}");
+
+    // log2 of the BCrypt rounds; each step doubles the time per hash
+    @Value("${dropbox.auth.password.cost:12}")
+    private int cost;
+
+    @Value("${dropbox.auth.password.threads:2}")
+    private int threads;
+
+    @Value("${dropbox.auth.password.queue-size:64}")
+    private int queueSize;
+
+    private BCryptPasswordEncoder encoder;
+    private ThreadPoolExecutor pool;
+    // checked against for unknown users, so they take as long to reject as a wrong password
+    private String dummyHash;
+
+    /** Whether a password matched, and if so a new hash to store when the stored one is outdated (else null). */
+    public record Verification(boolean matches, String rehashed) {}
+
+    @PostConstruct
+    public void start() {
+        encoder = new BCryptPasswordEncoder(cost);
+        pool = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)));
+        dummyHash = encoder.encode(UUID.randomUUID().toString());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    public CompletableFuture<String> hash(String raw) {
+        return submit(() -> encoder.encode(raw));
+    }
+
+    /** Check {@code raw} against {@code stored} (null for an unknown user, which never matches). */
+    public CompletableFuture<Verification> verify(String raw, String stored) {
+        return submit(() -> {
+            if (stored == null) {
+                encoder.matches(raw, dummyHash);
+                return new Verification(false, null);
+            }
+            boolean matches = matches(raw, stored);
+            return new Verification(matches, matches && needsRehash(stored) ? encoder.encode(raw) : null);
+        });
+    }
+
+    private boolean matches(String raw, String stored) {
+        if (!BCRYPT.matcher(stored).matches()) {
+            // stored in plain text before passwords were hashed
+            return MessageDigest.isEqual(raw.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+        }
+        return encoder.matches(raw, stored);
+    }
+
+    private boolean needsRehash(String stored) {
+        Matcher m = BCRYPT.matcher(stored);
+        return !m.matches() || Integer.parseInt(m.group(1)) != cost;
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> work) {
+        try {
+            return CompletableFuture.supplyAsync(work, pool);
+        } catch (RejectedExecutionException e) {
+            throw new RetryLaterException(HttpStatus.SERVICE_UNAVAILABLE, "Too many logins in progress", 1);
+        }
+    }
+}
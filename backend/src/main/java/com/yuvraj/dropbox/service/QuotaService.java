@@ -0,0 +1,210 @@
+package com.yuvraj.dropbox.service;
+
+import com.yuvraj.dropbox.dto.UsageInfo;
+import com.yuvraj.dropbox.model.User;
+import com.yuvraj.dropbox.repository.ChunkedUploadRepository;
+import com.yuvraj.dropbox.repository.UserRepository;
+import com.yuvraj.dropbox.storage.StorageBackend;
+import com.yuvraj.dropbox.storage.StorageBackend.StorageEntry;
+import com.yuvraj.dropbox.storage.StorageBackend.Usage;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * Per-user storage quotas. Used bytes and the file count live on the user row and are adjusted in place by every
+ * upload, mkdir, delete and restore, so checking a quota or showing usage is a primary-key lookup. Files in the
+ * trash don't count. Writes claim their bytes before they start, checked and counted in one statement, and
+ * resumable uploads reserve their declared size for as long as they are open, so concurrent uploads can't
+ * overshoot a quota between them. {@link #reconcile()} periodically recomputes every user's usage from storage
+ * and corrects whatever drift crept in (crashes mid-operation, changes made directly on the backend).
+ */
+@Service
+public class QuotaService {
+
+    private static final Logger log = LoggerFactory.getLogger(QuotaService.class);
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ChunkedUploadRepository chunkedUploadRepository;
+
+    @Autowired
+    private StorageBackend storage;
+
+    @Value("${dropbox.quota.default-bytes:10737418240}")
+    private long defaultQuotaBytes;
+
+    @Value("${dropbox.quota.reconcile.parallelism:4}")
+    private int parallelism;
+
+    private ExecutorService reconcileWorkers;
+
+    @PostConstruct
+    public void start() {
+        reconcileWorkers = Executors.newFixedThreadPool(Math.max(1, parallelism));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reconcileWorkers.shutdownNow();
+    }
+
+    private User user(String userRoot) {
+        return userRepository.findById(userRoot)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found"));
+    }
+
+    private long quotaOf(User user) {
+        return user.getQuotaBytes() != null ? user.getQuotaBytes() : defaultQuotaBytes;
+    }
+
+    public UsageInfo usage(String userRoot) {
+        User user = user(userRoot);
+        UsageInfo info = new UsageInfo();
+        info.setUsedBytes(user.getUsedBytes());
+        info.setFileCount(user.getFileCount());
+        info.setQuotaBytes(quotaOf(user));
+        info.setAvailableBytes(available(user));
+        return info;
+    }
+
+    private long available(User user) {
+        return Math.max(0, quotaOf(user) - user.getUsedBytes() - user.getReservedBytes());
+    }
+
+    private ResponseStatusException quotaExceeded(User user) {
+        return new ResponseStatusException(HttpStatus.INSUFFICIENT_STORAGE,
+                "Storage quota exceeded (" + available(user) + " bytes available)");
+    }
+
+    /** Reject (507) early if {@code incomingBytes} more would not fit. Counts nothing; see {@link #claim}. */
+    public void checkQuota(String userRoot, long incomingBytes) {
+        User user = user(userRoot);
+        if (incomingBytes > 0 && user.getUsedBytes() + user.getReservedBytes() + incomingBytes > quotaOf(user)) {
+            throw quotaExceeded(user);
+        }
+    }
+
+    /**
+     * Count {@code bytes} and {@code files} before they are written; 507, with nothing counted, if the bytes
+     * don't fit. If the write then fails, give them back with {@link #recordAdded(String, long, long)}.
+     */
+    public void claim(String userRoot, long bytes, long files) {
+        if (bytes <= 0) {
+            recordAdded(userRoot, bytes, files);
+        } else if (userRepository.addUsageWithinQuota(userRoot, bytes, files, defaultQuotaBytes) == 0) {
+            throw quotaExceeded(user(userRoot));
+        }
+    }
+
+    /** Hold {@code bytes} of the quota for a resumable upload; 507 if they don't fit. */
+    public void reserve(String userRoot, long bytes) {
+        if (bytes > 0 && userRepository.reserveWithinQuota(userRoot, bytes, defaultQuotaBytes) == 0) {
+            throw quotaExceeded(user(userRoot));
+        }
+    }
+
+    /** Give back a reservation whose upload was aborted or expired. */
+    public void release(String userRoot, long bytes) {
+        if (bytes != 0) userRepository.addReserved(userRoot, -bytes);
+    }
+
+    /** A reservation of {@code reserved} bytes was committed as {@code bytes} in {@code files} new files and folders. */
+    public void settle(String userRoot, long reserved, long bytes, long files) {
+        userRepository.settleReservation(userRoot, reserved, bytes, files);
+    }
+
+    public void recordAdded(String userRoot, long bytes, long files) {
+        if (bytes != 0 || files != 0) userRepository.addUsage(userRoot, bytes, files);
+    }
+
+    public void recordAdded(String userRoot, Usage usage) {
+        recordAdded(userRoot, usage.bytes(), usage.count());
+    }
+
+    public void recordRemoved(String userRoot, Usage usage) {
+        recordAdded(userRoot, -usage.bytes(), -usage.count());
+    }
+
+    /** Usage of a key that is about to be removed or was just added. */
+    public Usage usageOf(String key) {
+        try {
+            return storage.usage(key);
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to read file metadata", e);
+        }
+    }
+
+    /** How many folders {@code mkdirs(folderKey)} would create (the key and its missing ancestors). */
+    public int missingFolders(String userRoot, String folderKey) {
+        int missing = 0;
+        String key = folderKey;
+        try {
+            while (key.length() > userRoot.length() && storage.stat(key).isEmpty()) {
+                missing++;
+                key = key.substring(0, key.lastIndexOf('/'));
+            }
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to read file metadata", e);
+        }
+        return missing;
+    }
+
+    /* ------------------ reconciliation ------------------ */
+
+    /** Recompute every user's usage from storage, several users at a time, and fix any drift. */
+    @Scheduled(initialDelayString = "${dropbox.quota.reconcile-interval-ms:21600000}",
+               fixedDelayString = "${dropbox.quota.reconcile-interval-ms:21600000}")
+    public void reconcile() {
+        List<CompletableFuture<Void>> runs = userRepository.findAll().stream()
+                .map(user -> CompletableFuture.runAsync(() -> reconcile(user.getUuid()), reconcileWorkers))
+                .toList();
+        CompletableFuture.allOf(runs.toArray(new CompletableFuture[0])).join();
+    }
+
+    // The correction is applied as a delta against the counters read before the walk, so uploads and deletes
+    // that land while the walk runs aren't wiped out (one that the walk also saw is off until the next pass)
+    private void reconcile(String uuid) {
+        try {
+            User before = userRepository.findById(uuid).orElse(null);
+            if (before == null) return;
+            long bytes = 0;
+            long files = 0;
+            try (Stream<StorageEntry> walk = storage.walk(uuid)) {
+                for (StorageEntry e : (Iterable<StorageEntry>) walk::iterator) {
+                    files++;
+                    if (!e.directory()) bytes += e.size();
+                }
+            }
+            long bytesDrift = bytes - before.getUsedBytes();
+            long filesDrift = files - before.getFileCount();
+            if (bytesDrift != 0 || filesDrift != 0) {
+                log.info("Usage of {} was off by {} bytes / {} files; corrected", uuid, bytesDrift, filesDrift);
+                userRepository.addUsage(uuid, bytesDrift, filesDrift);
+            }
+            long reservedDrift = chunkedUploadRepository.sumSizeByOwner(uuid) - before.getReservedBytes();
+            if (reservedDrift != 0) {
+                log.info("Reservations of {} were off by {} bytes; corrected", uuid, reservedDrift);
+                userRepository.addReserved(uuid, reservedDrift);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Usage reconciliation of {} failed", uuid, e);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.yuvraj.dropbox.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.yuvraj.dropbox.exception.RetryLaterException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Admission control, so one heavy user can't take the disk and network from everyone else:
+ * <ul>
+ *   <li>requests per second per user (429 with Retry-After past the burst);</li>
+ *   <li>upload and download bytes per second per user, shaped in the copy loops. A user whose transfers are more
+ *       than max-bandwidth-wait-seconds behind their allowance gets 429 for new ones;</li>
+ *   <li>a global cap on concurrent expensive operations (folder ZIPs, folder deletes, tree walks).</li>
+ * </ul>
+ * Buckets are lock-free ({@link TokenBucket}); checking one is a cache hit and a CAS.
+ */
+@Service
+public class RateLimitService {
+
+    @Value("${dropbox.ratelimit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${dropbox.ratelimit.requests-per-second:50}")
+    private double requestsPerSecond;
+
+    @Value("${dropbox.ratelimit.requests-burst:200}")
+    private long requestsBurst;
+
+    @Value("${dropbox.ratelimit.download-bytes-per-second:52428800}")
+    private long downloadBytesPerSecond;
+
+    @Value("${dropbox.ratelimit.upload-bytes-per-second:52428800}")
+    private long uploadBytesPerSecond;
+
+    @Value("${dropbox.ratelimit.bandwidth-burst-bytes:16777216}")
+    private long bandwidthBurstBytes;
+
+    @Value("${dropbox.ratelimit.max-bandwidth-wait-seconds:10}")
+    private long maxBandwidthWaitSeconds;
+
+    @Value("${dropbox.ratelimit.expensive.max-concurrent:8}")
+    private int maxExpensive;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // An idle user's buckets refill within seconds, so dropping them after a few idle minutes loses nothing
+    private final Cache<String, UserLimits> users = Caffeine.newBuilder()
+            .maximumSize(100_000)
+            .expireAfterAccess(Duration.ofMinutes(5))
+            .build();
+
+    private Semaphore expensive;
+
+    private record UserLimits(TokenBucket requests, TokenBucket download, TokenBucket upload) {}
+
+    /** A held slot for an expensive operation; closing it more than once is harmless. */
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static final Permit NO_PERMIT = () -> {};
+
+    @PostConstruct
+    public void init() {
+        expensive = new Semaphore(Math.max(1, maxExpensive));
+        Gauge.builder("dropbox.ratelimit.expensive.active", expensive, s -> Math.max(1, maxExpensive) - s.availablePermits())
+                .register(meterRegistry);
+    }
+
+    private UserLimits limits(String uuid) {
+        return users.get(uuid, u -> new UserLimits(
+                new TokenBucket(requestsPerSecond, requestsBurst),
+                new TokenBucket(downloadBytesPerSecond, bandwidthBurstBytes),
+                new TokenBucket(uploadBytesPerSecond, bandwidthBurstBytes)));
+    }
+
+    /** Count one request against the user's rate; 429 if they're over it. */
+    public void checkRequest(String uuid) {
+        if (!enabled) return;
+        long wait = limits(uuid).requests().tryAcquire(1);
+        if (wait > 0) throw tooMany("requests", "Too many requests", wait);
+    }
+
+    /** 429 if the user's earlier uploads (or downloads) are already too far behind their bandwidth allowance. */
+    public void checkBandwidth(String uuid, boolean upload) {
+        if (!enabled) return;
+        UserLimits limits = limits(uuid);
+        long over = (upload ? limits.upload() : limits.download()).debtNanos() - TimeUnit.SECONDS.toNanos(maxBandwidthWaitSeconds);
+        if (over > 0) {
+            throw tooMany(upload ? "upload" : "download",
+                    (upload ? "Upload" : "Download") + " bandwidth limit reached", over);
+        }
+    }
+
+    /** Take one of the global slots for expensive operations, or 429 if all are in use. */
+    public Permit acquireExpensive(String what) {
+        if (!enabled) return NO_PERMIT;
+        if (!expensive.tryAcquire()) {
+            throw tooMany("expensive", "Too many " + what + " in progress", TimeUnit.SECONDS.toNanos(2));
+        }
+        AtomicBoolean released = new AtomicBoolean();
+        return () -> {
+            if (released.compareAndSet(false, true)) expensive.release();
+        };
+    }
+
+    /* ------------------ bandwidth ------------------ */
+
+    /** Charge {@code bytes} sent to the user, sleeping until they fit in the download rate. */
+    public void consumeDownload(String uuid, long bytes) throws InterruptedIOException {
+        if (!enabled || bytes <= 0) return;
+        pause(limits(uuid).download().reserve(bytes));
+    }
+
+    /**
+     * Charge a transfer the application won't see byte by byte (sendfile), but only if the user isn't behind
+     * their download rate; the whole size goes on their bucket, so following transfers pay for it.
+     */
+    public boolean tryConsumeDownload(String uuid, long bytes) {
+        if (!enabled) return true;
+        TokenBucket bucket = limits(uuid).download();
+        if (bucket.debtNanos() > 0) return false;
+        bucket.reserve(bytes);
+        return true;
+    }
+
+    public OutputStream throttleDownload(String uuid, OutputStream out) {
+        if (!enabled) return out;
+        TokenBucket bucket = limits(uuid).download();
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                pause(bucket.reserve(1));
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                pause(bucket.reserve(len));
+                out.write(b, off, len);
+            }
+        };
+    }
+
+    /** The upload body read no faster than the user's upload rate. */
+    public InputStream throttleUpload(String uuid, InputStream in) {
+        if (!enabled) return in;
+        TokenBucket bucket = limits(uuid).upload();
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = in.read();
+                if (b >= 0) pause(bucket.reserve(1));
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = in.read(b, off, len);
+                if (n > 0) pause(bucket.reserve(n));
+                return n;
+            }
+        };
+    }
+
+    private static void pause(long nanos) throws InterruptedIOException {
+        if (nanos <= 0) return;
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while throttled");
+        }
+    }
+
+    private RetryLaterException tooMany(String limit, String reason, long waitNanos) {
+        Counter.builder("dropbox.ratelimit.rejected").tag("limit", limit).register(meterRegistry).increment();
+        long seconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999));
+        return new RetryLaterException(HttpStatus.TOO_MANY_REQUESTS, reason, seconds);
+    }
+}
@@ -0,0 +1,95 @@
+package com.yuvraj.dropbox.service;
+
+import com.yuvraj.dropbox.model.RefreshToken;
+import com.yuvraj.dropbox.repository.RefreshTokenRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-lived refresh tokens, exchanged at POST /auth/refresh for a new access token without the password (so no
+ * password hash on the hourly renewal). Every exchange rotates the refresh token; a token that comes back after
+ * it was exchanged has been copied, so its whole family (everything issued since that login) is revoked.
+ */
+@Service
+public class RefreshTokenService {
+
+    @Autowired
+    private RefreshTokenRepository refreshTokenRepository;
+
+    @Value("${dropbox.auth.refresh-token.ttl-days:30}")
+    private long ttlDays;
+
+    private final SecureRandom random = new SecureRandom();
+
+    /** A token to hand to the client, and the user it belongs to. */
+    public record Issued(String uuid, String token, long expiresInSeconds) {}
+
+    /** A new token, starting a family, for a password login. */
+    public Issued issue(String uuid) {
+        return issue(uuid, UUID.randomUUID().toString());
+    }
+
+    private Issued issue(String uuid, String family) {
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        long ttl = TimeUnit.DAYS.toMillis(ttlDays);
+        refreshTokenRepository.save(new RefreshToken(digest(token), uuid, family, System.currentTimeMillis() + ttl));
+        return new Issued(uuid, token, ttl / 1000);
+    }
+
+    /** Exchange a token for its successor; 401 if it is unknown, expired or was already exchanged. */
+    public Issued rotate(String token) {
+        RefreshToken current = find(token);
+        if (current == null || current.getExpiresAt() < System.currentTimeMillis()) {
+            throw invalid();
+        }
+        if (refreshTokenRepository.markUsed(current.getId()) == 0) {
+            refreshTokenRepository.deleteFamily(current.getFamily());
+            throw invalid();
+        }
+        return issue(current.getOwner(), current.getFamily());
+    }
+
+    /** Log out: the token and every token of its family stop working. Unknown tokens are ignored. */
+    public void revoke(String token) {
+        RefreshToken current = find(token);
+        if (current != null) refreshTokenRepository.deleteFamily(current.getFamily());
+    }
+
+    @Scheduled(initialDelayString = "${dropbox.auth.refresh-token.cleanup-interval-ms:3600000}",
+               fixedDelayString = "${dropbox.auth.refresh-token.cleanup-interval-ms:3600000}")
+    public void deleteExpired() {
+        refreshTokenRepository.deleteExpired(System.currentTimeMillis());
+    }
+
+    private RefreshToken find(String token) {
+        if (token == null || token.isBlank()) return null;
+        return refreshTokenRepository.findById(digest(token)).orElse(null);
+    }
+
+    private static ResponseStatusException invalid() {
+        return new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid or expired refresh token");
+    }
+
+    private static String digest(String token) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,391 @@
+package com.yuvraj.dropbox.service;
+
+import com.yuvraj.dropbox.dto.SearchHit;
+import com.yuvraj.dropbox.dto.SearchResults;
+import com.yuvraj.dropbox.model.ChangeEvent;
+import com.yuvraj.dropbox.storage.StorageBackend;
+import com.yuvraj.dropbox.storage.StorageBackend.StorageEntry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.ControlledRealTimeReopenThread;
+import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.store.FSDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Filename, path and content search over every user's files, backed by one embedded Lucene index in which each
+ * document carries its owner and every query is filtered to the caller's documents.
+ *
+ * The index follows the change journal: each change is applied on a single indexer thread, off the request path,
+ * and becomes searchable within about a second (near-real-time reopen). Names and paths are split on anything
+ * that isn't a letter or digit, so "q3_report-final.pdf" matches "report" and "pdf"; the first 1 MiB of text-like
+ * files is indexed as content.
+ *
+ * The index is rebuilt from storage in the background when it is empty at startup (first run, or the directory
+ * was removed), when the previous run did not shut down cleanly (uncommitted updates were lost), and when the
+ * indexer fell so far behind that updates were dropped. A rebuild re-stamps every live document and then deletes
+ * the rest, so it also removes documents of files deleted while updates were being lost.
+ */
+@Service
+public class SearchService {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchService.class);
+
+    public static final int MAX_PAGE_SIZE = 100;
+    public static final int MAX_OFFSET = 10_000;
+    private static final int DEFAULT_PAGE_SIZE = 20;
+
+    // indexed fields
+    private static final String ID = "id";              // storage key, for updates and deletes
+    private static final String OWNER = "owner";
+    private static final String NAME = "name";          // name split into words
+    private static final String NAME_EXACT = "name_exact";
+    private static final String PATH_WORDS = "path";    // folder names along the path
+    private static final String CONTENT = "content";
+    private static final String PASS = "pass";          // the rebuild that last wrote the document
+    // stored fields
+    private static final String STORED_PATH = "stored_path";
+    private static final String STORED_DIRECTORY = "stored_dir";
+    private static final String STORED_SIZE = "stored_size";
+    private static final String STORED_MODIFIED = "stored_mtime";
+
+    // present while the index is open; found at startup, it means the last run crashed
+    private static final String OPEN_MARKER = "dropbox.open";
+
+    private static final Set<String> TEXT_TYPES = Set.of("application/json", "application/xml", "application/javascript",
+            "application/x-sh", "application/sql", "application/x-yaml", "application/yaml");
+
+    @Autowired
+    private StorageBackend storage;
+
+    @Value("${dropbox.search.index-dir:search-index}")
+    private String indexDir;
+
+    @Value("${dropbox.search.max-content-bytes:1048576}")
+    private int maxContentBytes;
+
+    private final Analyzer analyzer = new StandardAnalyzer();
+    private IndexWriter writer;
+    private SearcherManager searcherManager;
+    private ControlledRealTimeReopenThread<IndexSearcher> reopenThread;
+    // set when updates were dropped; the next commit() queues a rebuild
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    // one thread keeps updates in journal order; when it falls far behind, updates are dropped (never applied out
+    // of order by another thread) and the index is rebuilt once there is room
+    private final ExecutorService indexer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(10_000), (task, pool) -> dirty.set(true));
+    // only touched on the indexer thread
+    private String pass = "";
+
+    @PostConstruct
+    public void start() throws IOException {
+        IndexWriterConfig config = new IndexWriterConfig(analyzer)
+                .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND)
+                .setRAMBufferSizeMB(64);
+        Path dir = Paths.get(indexDir);
+        writer = new IndexWriter(FSDirectory.open(dir), config);
+        boolean unclean = Files.exists(dir.resolve(OPEN_MARKER));
+        if (!unclean) Files.createFile(dir.resolve(OPEN_MARKER));
+        searcherManager = new SearcherManager(writer, null);
+        // changes become visible within a second without reopening per update
+        reopenThread = new ControlledRealTimeReopenThread<>(writer, searcherManager, 1.0, 0.1);
+        reopenThread.setDaemon(true);
+        reopenThread.setName("search-reopen");
+        reopenThread.start();
+        if (unclean) log.warn("Search index was not closed cleanly; rebuilding it");
+        if (unclean || writer.getDocStats().numDocs == 0) indexer.execute(this::rebuild);
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        indexer.shutdown();
+        try {
+            indexer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        reopenThread.close();
+        searcherManager.close();
+        writer.close(); // commits
+        Files.deleteIfExists(Paths.get(indexDir).resolve(OPEN_MARKER));
+    }
+
+    // Not durable until committed; what a crash loses is put right by the rebuild at the next startup
+    @Scheduled(fixedDelayString = "${dropbox.search.commit-interval-ms:10000}")
+    public void commit() {
+        try {
+            if (writer.hasUncommittedChanges()) writer.commit();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Search index commit failed", e);
+        }
+        if (dirty.compareAndSet(true, false)) {
+            log.warn("Search index updates were dropped; rebuilding it");
+            indexer.execute(this::rebuild); // sets dirty again if there is still no room
+        }
+    }
+
+    /* ------------------ indexing ------------------ */
+
+    @EventListener
+    public void onChange(ChangeEvent event) {
+        String key = event.getOwner() + "/" + event.getPath();
+        indexer.execute(() -> {
+            try {
+                switch (event.getType()) {
+                    case DELETE -> deleteTree(key);
+                    case UPLOAD, MKDIR -> storage.stat(key).ifPresent(this::index);
+                    case RESTORE, MOVE, COPY -> indexTree(key);
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warn("Failed to update search index for {}", key, e);
+            }
+        });
+    }
+
+    private void deleteTree(String key) throws IOException {
+        writer.deleteDocuments(new Term(ID, key));
+        writer.deleteDocuments(new PrefixQuery(new Term(ID, key + "/")));
+    }
+
+    private void indexTree(String key) throws IOException {
+        Optional<StorageEntry> root = storage.stat(key);
+        if (root.isEmpty()) return;
+        index(root.get());
+        if (!root.get().directory()) return;
+        try (Stream<StorageEntry> walk = storage.walk(key)) {
+            walk.forEach(this::index);
+        }
+    }
+
+    // Full rebuild from storage; user folders are the non-dot folders at the root. Runs on the indexer thread, so
+    // updates queue behind it and are applied afterwards in order.
+    private void rebuild() {
+        long started = System.currentTimeMillis();
+        pass = UUID.randomUUID().toString();
+        try (Stream<StorageEntry> roots = storage.list("")) {
+            List<String> owners = roots.filter(e -> e.directory() && !e.name().startsWith("."))
+                    .map(StorageEntry::key).toList();
+            for (String owner : owners) {
+                try (Stream<StorageEntry> walk = storage.walk(owner)) {
+                    walk.forEach(this::index);
+                }
+            }
+            // whatever this pass didn't see is gone from storage
+            writer.deleteDocuments(new BooleanQuery.Builder()
+                    .add(new MatchAllDocsQuery(), Occur.MUST)
+                    .add(new TermQuery(new Term(PASS, pass)), Occur.MUST_NOT)
+                    .build());
+            writer.commit();
+            log.info("Search index rebuilt for {} users in {} ms", owners.size(), System.currentTimeMillis() - started);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Search index rebuild failed", e);
+        }
+    }
+
+    private void index(StorageEntry entry) {
+        int slash = entry.key().indexOf('/');
+        if (slash < 0) return; // a user folder itself
+        String owner = entry.key().substring(0, slash);
+        String path = entry.key().substring(slash + 1);
+        String parent = path.contains("/") ? path.substring(0, path.lastIndexOf('/')) : "";
+
+        Document doc = new Document();
+        doc.add(new StringField(ID, entry.key(), Field.Store.NO));
+        doc.add(new StringField(OWNER, owner, Field.Store.NO));
+        doc.add(new StringField(PASS, pass, Field.Store.NO));
+        doc.add(new TextField(NAME, words(entry.name()), Field.Store.NO));
+        doc.add(new StringField(NAME_EXACT, entry.name().toLowerCase(Locale.ROOT), Field.Store.NO));
+        doc.add(new TextField(PATH_WORDS, words(parent), Field.Store.NO));
+        doc.add(new StoredField(STORED_PATH, path));
+        doc.add(new StoredField(STORED_DIRECTORY, entry.directory() ? 1 : 0));
+        doc.add(new StoredField(STORED_SIZE, entry.size()));
+        doc.add(new StoredField(STORED_MODIFIED, entry.lastModified()));
+        if (!entry.directory() && isText(entry.name())) {
+            String content = readText(entry);
+            if (content != null) doc.add(new TextField(CONTENT, content, Field.Store.NO));
+        }
+        try {
+            writer.updateDocument(new Term(ID, entry.key()), doc);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static boolean isText(String name) {
+        String type = MediaTypeFactory.getMediaType(name).map(MediaType::toString).orElse("");
+        return type.startsWith("text/") || TEXT_TYPES.contains(type);
+    }
+
+    private String readText(StorageEntry entry) {
+        try (InputStream in = storage.read(entry.key(), 0, Math.min(entry.size(), maxContentBytes))) {
+            return StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                    .decode(ByteBuffer.wrap(in.readAllBytes()))
+                    .toString();
+        } catch (IOException e) {
+            log.debug("Could not read {} for indexing: {}", entry.key(), e.toString());
+            return null;
+        }
+    }
+
+    // File and folder names: every run of letters/digits is a word
+    private static String words(String s) {
+        return s.replaceAll("[^\\p{L}\\p{N}]+", " ");
+    }
+
+    /* ------------------ querying ------------------ */
+
+    /**
+     * Files and folders of {@code userRoot} matching every word of {@code q} in their name (exactly, as a prefix
+     * or within an edit or two), the names of the folders they are in, or their text.
+     */
+    public SearchResults search(String userRoot, String q, Integer limit, Integer offset) {
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        int start = offset == null ? 0 : offset;
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        if (start < 0 || start > MAX_OFFSET) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "offset must be between 0 and " + MAX_OFFSET);
+        }
+        List<String> terms = q == null ? List.of() : analyze(words(q));
+        if (terms.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Query must contain a letter or digit");
+        }
+
+        IndexSearcher searcher;
+        try {
+            searcher = searcherManager.acquire();
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Search failed", e);
+        }
+        try {
+            TopDocs top = searcher.search(query(userRoot, q, terms), start + pageSize);
+            StoredFields stored = searcher.storedFields();
+            List<SearchHit> items = new ArrayList<>();
+            for (int i = start; i < top.scoreDocs.length; i++) {
+                ScoreDoc hit = top.scoreDocs[i];
+                items.add(describe(stored.document(hit.doc), hit.score));
+            }
+            SearchResults results = new SearchResults();
+            results.setItems(items);
+            results.setTotal(top.totalHits.value);
+            results.setTotalIsExact(top.totalHits.relation == TotalHits.Relation.EQUAL_TO);
+            boolean more = top.totalHits.value > start + pageSize && start + pageSize <= MAX_OFFSET;
+            results.setNextOffset(more ? start + pageSize : null);
+            return results;
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Search failed", e);
+        } finally {
+            try {
+                searcherManager.release(searcher);
+            } catch (IOException e) {
+                log.warn("Failed to release searcher", e);
+            }
+        }
+    }
+
+    private Query query(String owner, String q, List<String> terms) {
+        BooleanQuery.Builder all = new BooleanQuery.Builder();
+        all.add(new TermQuery(new Term(OWNER, owner)), Occur.FILTER);
+        for (String term : terms) {
+            BooleanQuery.Builder any = new BooleanQuery.Builder();
+            any.add(new BoostQuery(new TermQuery(new Term(NAME, term)), 8), Occur.SHOULD);
+            // very short prefixes expand to too many terms to be useful
+            if (term.length() >= 2) any.add(new BoostQuery(new PrefixQuery(new Term(NAME, term)), 4), Occur.SHOULD);
+            if (term.length() >= 4) {
+                any.add(new BoostQuery(new FuzzyQuery(new Term(NAME, term), term.length() >= 8 ? 2 : 1), 2), Occur.SHOULD);
+            }
+            any.add(new TermQuery(new Term(PATH_WORDS, term)), Occur.SHOULD);
+            any.add(new BoostQuery(new TermQuery(new Term(CONTENT, term)), 0.5f), Occur.SHOULD);
+            all.add(any.build(), Occur.MUST);
+        }
+        // the whole query typed as a file name ranks that file first
+        all.add(new BoostQuery(new TermQuery(new Term(NAME_EXACT, q.trim().toLowerCase(Locale.ROOT))), 20), Occur.SHOULD);
+        return all.build();
+    }
+
+    private List<String> analyze(String text) {
+        List<String> terms = new ArrayList<>();
+        try (TokenStream tokens = analyzer.tokenStream(NAME, text)) {
+            CharTermAttribute term = tokens.addAttribute(CharTermAttribute.class);
+            tokens.reset();
+            while (tokens.incrementToken()) terms.add(term.toString());
+            tokens.end();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return terms;
+    }
+
+    private static SearchHit describe(Document doc, float score) {
+        String path = doc.get(STORED_PATH);
+        boolean directory = doc.getField(STORED_DIRECTORY).numericValue().intValue() == 1;
+        SearchHit hit = new SearchHit();
+        hit.setName(path.substring(path.lastIndexOf('/') + 1));
+        hit.setType(directory ? "folder" : "file");
+        hit.setPath(path);
+        hit.setSize(directory ? null : doc.getField(STORED_SIZE).numericValue().longValue());
+        hit.setLastModified(doc.getField(STORED_MODIFIED).numericValue().longValue());
+        hit.setScore(score);
+        return hit;
+    }
+}
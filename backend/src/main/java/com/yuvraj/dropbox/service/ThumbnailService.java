@@ -0,0 +1,470 @@
+package com.yuvraj.dropbox.service;
+
+import com.yuvraj.dropbox.exception.RetryLaterException;
+import com.yuvraj.dropbox.storage.StorageBackend;
+import com.yuvraj.dropbox.storage.StorageBackend.StorageEntry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.encryption.InvalidPasswordException;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.imageio.IIOException;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * JPEG thumbnails of images and PDFs (first page) at a few fixed sizes, so grid views don't pull full originals.
+ *
+ * The source is decoded once per version and every size is written from that decode. Work runs on a small
+ * bounded pool: uploads queue it in the background, a request for a missing thumbnail waits for it, and
+ * concurrent requests for the same file share one generation. Results live in a size-bounded disk cache
+ * keyed by the file's etag, size and mtime (not its path, so moves and restores keep their thumbnails);
+ * least recently served files are evicted first. A version that can't be thumbnailed gets a marker in the
+ * same cache, so it is answered with 415 without being downloaded and decoded again.
+ */
+@Service
+public class ThumbnailService {
+
+    private static final Logger log = LoggerFactory.getLogger(ThumbnailService.class);
+
+    public enum Size {
+        SMALL(128), MEDIUM(256), LARGE(1024);
+
+        public final int pixels;
+
+        Size(int pixels) { this.pixels = pixels; }
+
+        public static Size parse(String value) {
+            try {
+                return valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "size must be small, medium or large");
+            }
+        }
+    }
+
+    private static final Set<String> IMAGE_TYPES = Set.of("image/jpeg", "image/png", "image/gif", "image/bmp");
+    // decode at up to twice the largest size so the final downscale has something to average
+    private static final int DECODE_PIXELS = Size.LARGE.pixels * 2;
+    // hits refresh the LRU timestamp at most this often, so a hot thumbnail isn't a metadata write per request
+    private static final long TOUCH_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    @Autowired
+    private StorageBackend storage;
+
+    @Value("${dropbox.thumbnails.cache-dir:thumbnail-cache}")
+    private String cacheDir;
+
+    @Value("${dropbox.thumbnails.cache-max-bytes:536870912}")
+    private long maxCacheBytes;
+
+    @Value("${dropbox.thumbnails.workers:2}")
+    private int workers;
+
+    @Value("${dropbox.thumbnails.queue-size:100}")
+    private int queueSize;
+
+    // larger sources get no thumbnail (decoding them would take seconds and a lot of memory)
+    @Value("${dropbox.thumbnails.max-source-bytes:104857600}")
+    private long maxSourceBytes;
+
+    @Value("${dropbox.thumbnails.wait-timeout-ms:30000}")
+    private long waitTimeoutMillis;
+
+    private Path cacheRoot;
+    private ThreadPoolExecutor pool;
+    // one generation per file version; everyone asking for it meanwhile waits on the same future
+    private final Map<String, CompletableFuture<Void>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong cacheBytes = new AtomicLong();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    // thrown inside a generation when the file can't be thumbnailed; remembered, so never retried
+    private static class UnsupportedSourceException extends IOException {
+        UnsupportedSourceException(String message) { super(message); }
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        cacheRoot = Paths.get(cacheDir).toAbsolutePath().normalize();
+        Files.createDirectories(cacheRoot);
+        pool = new ThreadPoolExecutor(Math.max(1, workers), Math.max(1, workers), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)));
+        long total = 0;
+        try (Stream<Path> files = Files.walk(cacheRoot)) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                if (file.getFileName().toString().endsWith(".tmp")) Files.deleteIfExists(file); // interrupted write
+                else total += Files.size(file);
+            }
+        }
+        cacheBytes.set(total);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    public static boolean supports(StorageEntry entry) {
+        return !entry.directory() && mediaType(entry) != null;
+    }
+
+    private static String mediaType(StorageEntry entry) {
+        String type = MediaTypeFactory.getMediaType(entry.name()).map(MediaType::toString).orElse("");
+        if (IMAGE_TYPES.contains(type) || type.equals("application/pdf")) return type;
+        return null;
+    }
+
+    /** Validator for the thumbnail of this version of the file. */
+    public String etag(StorageEntry entry, Size size) {
+        return "\"t" + size.pixels + "-" + versionHash(entry) + "\"";
+    }
+
+    /** Thumbnail bytes (JPEG), generating them first if needed. */
+    public byte[] get(StorageEntry entry, Size size) {
+        if (!supports(entry)) {
+            throw new ResponseStatusException(HttpStatus.UNSUPPORTED_MEDIA_TYPE, "No thumbnail for this file type");
+        }
+        String version = versionHash(entry);
+        Path file = cachePath(version, size);
+        byte[] cached = readCached(file);
+        if (cached != null) return cached;
+        String unsupported = unsupportedReason(version);
+        if (unsupported != null) throw new ResponseStatusException(HttpStatus.UNSUPPORTED_MEDIA_TYPE, unsupported);
+
+        try {
+            generate(entry, version).get(waitTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            throw busy();
+        } catch (TimeoutException e) {
+            throw new RetryLaterException(HttpStatus.SERVICE_UNAVAILABLE, "Thumbnail is still being generated", 2);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RejectedExecutionException) throw busy();
+            if (e.getCause() instanceof UnsupportedSourceException) {
+                throw new ResponseStatusException(HttpStatus.UNSUPPORTED_MEDIA_TYPE, e.getCause().getMessage());
+            }
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to generate thumbnail", e.getCause());
+        }
+        byte[] generated = readCached(file);
+        if (generated == null) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to generate thumbnail");
+        }
+        return generated;
+    }
+
+    private static RetryLaterException busy() {
+        return new RetryLaterException(HttpStatus.SERVICE_UNAVAILABLE, "Thumbnail queue is full", 5);
+    }
+
+    /** Queue generation for a freshly uploaded file; dropped if the pool is saturated. */
+    public void generateAsync(StorageEntry entry) {
+        if (!supports(entry)) return;
+        try {
+            generate(entry, versionHash(entry));
+        } catch (RejectedExecutionException e) {
+            log.debug("Thumbnail queue full, {} will be generated on first request", entry.key());
+        }
+    }
+
+    private CompletableFuture<Void> generate(StorageEntry entry, String version) {
+        CompletableFuture<Void> created = new CompletableFuture<>();
+        CompletableFuture<Void> existing = inFlight.putIfAbsent(version, created);
+        if (existing != null) return existing;
+        try {
+            pool.execute(() -> {
+                try {
+                    writeThumbnails(entry, version);
+                    created.complete(null);
+                } catch (Throwable t) {
+                    if (t instanceof UnsupportedSourceException) rememberUnsupported(version, t.getMessage());
+                    else log.warn("Thumbnail of {} failed", entry.key(), t);
+                    created.completeExceptionally(t);
+                } finally {
+                    inFlight.remove(version, created);
+                }
+                evictIfNeeded();
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(version, created);
+            created.completeExceptionally(e);
+            throw e;
+        }
+        return created;
+    }
+
+    /* ------------------ generation ------------------ */
+
+    private void writeThumbnails(StorageEntry entry, String version) throws IOException {
+        if (allCached(version)) return; // finished by an earlier generation we raced with
+        String unsupported = unsupportedReason(version);
+        if (unsupported != null) throw new UnsupportedSourceException(unsupported);
+        if (entry.size() > maxSourceBytes) {
+            throw new UnsupportedSourceException("File is too large for a thumbnail");
+        }
+        BufferedImage source;
+        try {
+            source = mediaType(entry).equals("application/pdf") ? renderPdf(entry) : decodeImage(entry);
+        } catch (IIOException | InvalidPasswordException e) {
+            // corrupt or exotic (CMYK, encrypted) sources: nothing to show, and no point retrying
+            throw new UnsupportedSourceException("Cannot render a thumbnail of this file");
+        }
+        // largest first, each size scaled from the previous one
+        BufferedImage current = source;
+        for (int i = Size.values().length - 1; i >= 0; i--) {
+            Size size = Size.values()[i];
+            current = scale(current, size.pixels);
+            store(cachePath(version, size), encodeJpeg(current));
+        }
+    }
+
+    private boolean allCached(String version) {
+        for (Size size : Size.values()) {
+            if (!Files.exists(cachePath(version, size))) return false;
+        }
+        return true;
+    }
+
+    private BufferedImage decodeImage(StorageEntry entry) throws IOException {
+        Optional<Path> local = storage.localPath(entry.key());
+        try (InputStream in = local.isPresent() ? null : storage.read(entry.key(), 0, Long.MAX_VALUE);
+             ImageInputStream iis = local.isPresent()
+                     ? ImageIO.createImageInputStream(local.get().toFile())
+                     : ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> readers = iis == null ? null : ImageIO.getImageReaders(iis);
+            if (readers == null || !readers.hasNext()) throw new UnsupportedSourceException("Unreadable image");
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                int longest = Math.max(reader.getWidth(0), reader.getHeight(0));
+                // subsample while decoding so a 50-megapixel photo never becomes a 200 MB raster
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, longest / DECODE_PIXELS);
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private BufferedImage renderPdf(StorageEntry entry) throws IOException {
+        Optional<Path> local = storage.localPath(entry.key());
+        PDDocument doc;
+        if (local.isPresent()) {
+            doc = Loader.loadPDF(local.get().toFile());
+        } else {
+            try (InputStream in = storage.read(entry.key(), 0, Long.MAX_VALUE)) {
+                doc = Loader.loadPDF(new RandomAccessReadBuffer(in));
+            }
+        }
+        try (doc) {
+            if (doc.getNumberOfPages() == 0) throw new UnsupportedSourceException("PDF has no pages");
+            PDRectangle box = doc.getPage(0).getCropBox();
+            float scale = DECODE_PIXELS / Math.max(box.getWidth(), box.getHeight());
+            return new PDFRenderer(doc).renderImage(0, scale, ImageType.RGB);
+        }
+    }
+
+    // Fit inside pixels x pixels (never upscaled); halves step by step so large reductions don't alias
+    private static BufferedImage scale(BufferedImage source, int pixels) {
+        int longest = Math.max(source.getWidth(), source.getHeight());
+        double factor = Math.min(1.0, (double) pixels / longest);
+        int targetW = Math.max(1, (int) Math.round(source.getWidth() * factor));
+        int targetH = Math.max(1, (int) Math.round(source.getHeight() * factor));
+        BufferedImage current = source;
+        do {
+            int w = Math.max(targetW, current.getWidth() / 2);
+            int h = Math.max(targetH, current.getHeight() / 2);
+            current = draw(current, w, h);
+        } while (current.getWidth() > targetW || current.getHeight() > targetH);
+        return current;
+    }
+
+    // Also flattens transparency onto white, since the output is JPEG
+    private static BufferedImage draw(BufferedImage source, int w, int h) {
+        BufferedImage out = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = out.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, w, h);
+            g.drawImage(source, 0, 0, w, h, null);
+        } finally {
+            g.dispose();
+        }
+        return out;
+    }
+
+    private static byte[] encodeJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(bytes)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(0.8f);
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+
+    /* ------------------ disk cache ------------------ */
+
+    // Everything that identifies the content version; the etag alone is null on some backends
+    private static String versionHash(StorageEntry entry) {
+        String version = (entry.etag() != null ? entry.etag() : entry.key()) + "|" + entry.size() + "|" + entry.lastModified();
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(version.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Path cachePath(String version, Size size) {
+        return cacheRoot.resolve(version.substring(0, 2)).resolve(version + "-" + size.pixels + ".jpg");
+    }
+
+    private Path unsupportedPath(String version) {
+        return cacheRoot.resolve(version.substring(0, 2)).resolve(version + ".unsupported");
+    }
+
+    // Why this version has no thumbnail, if an earlier generation found out; null otherwise
+    private String unsupportedReason(String version) {
+        byte[] reason = readCached(unsupportedPath(version));
+        return reason == null ? null : new String(reason, StandardCharsets.UTF_8);
+    }
+
+    private void rememberUnsupported(String version, String reason) {
+        Path marker = unsupportedPath(version);
+        if (Files.exists(marker)) return;
+        try {
+            store(marker, reason.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            log.warn("Failed to record that {} has no thumbnail", version, e);
+        }
+    }
+
+    private byte[] readCached(Path file) {
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            long now = System.currentTimeMillis();
+            if (now - Files.getLastModifiedTime(file).toMillis() > TOUCH_INTERVAL_MILLIS) {
+                Files.setLastModifiedTime(file, FileTime.fromMillis(now));
+            }
+            return bytes;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            log.warn("Unreadable cached thumbnail {}", file, e);
+            return null;
+        }
+    }
+
+    private void store(Path file, byte[] bytes) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + "." + Thread.currentThread().threadId() + ".tmp");
+        Files.write(tmp, bytes);
+        // a regenerated thumbnail replaces the old one, whose bytes leave the cache
+        long replaced;
+        try {
+            replaced = Files.size(file);
+        } catch (NoSuchFileException e) {
+            replaced = 0;
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        cacheBytes.addAndGet(bytes.length - replaced);
+    }
+
+    // Drop least recently served thumbnails until the cache is back under 90% of its limit
+    private void evictIfNeeded() {
+        if (cacheBytes.get() <= maxCacheBytes || !evicting.compareAndSet(false, true)) return;
+        record Cached(Path file, long lastUsed, long size) {}
+        try {
+            List<Cached> files = new ArrayList<>();
+            long total = 0;
+            try (Stream<Path> walk = Files.walk(cacheRoot)) {
+                for (Path file : (Iterable<Path>) walk::iterator) {
+                    if (file.getFileName().toString().endsWith(".tmp")) continue;
+                    BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                    if (!attrs.isRegularFile()) continue;
+                    files.add(new Cached(file, attrs.lastModifiedTime().toMillis(), attrs.size()));
+                    total += attrs.size();
+                }
+            }
+            files.sort(Comparator.comparingLong(Cached::lastUsed));
+            long target = maxCacheBytes / 10 * 9;
+            for (Cached cached : files) {
+                if (total <= target) break;
+                if (Files.deleteIfExists(cached.file())) total -= cached.size();
+            }
+            cacheBytes.set(total);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Thumbnail cache eviction failed", e);
+        } finally {
+            evicting.set(false);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.yuvraj.dropbox.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free token bucket refilled at {@code rate} tokens per second up to {@code capacity}. The whole state is
+ * one timestamp, the moment the bucket will be full again (GCRA), updated with a CAS; taking n tokens moves it n
+ * token-intervals forward, and it may not run more than a full bucket ahead of now.
+ */
+public final class TokenBucket {
+
+    private final double nanosPerToken;
+    private final long capacityNanos;
+    private final AtomicLong fullAt;
+
+    public TokenBucket(double ratePerSecond, long capacity) {
+        if (ratePerSecond <= 0 || capacity <= 0) throw new IllegalArgumentException("rate and capacity must be positive");
+        this.nanosPerToken = 1_000_000_000.0 / ratePerSecond;
+        this.capacityNanos = cost(capacity);
+        this.fullAt = new AtomicLong(System.nanoTime());
+    }
+
+    private long cost(long tokens) {
+        return (long) Math.min(Long.MAX_VALUE / 4.0, tokens * nanosPerToken);
+    }
+
+    /** Take {@code tokens} if the bucket holds them; returns 0 on success, else how many nanoseconds until it would. */
+    public long tryAcquire(long tokens) {
+        long cost = cost(tokens);
+        while (true) {
+            long now = System.nanoTime();
+            long current = fullAt.get();
+            long next = Math.max(current - now, 0) + now + cost;
+            long over = next - now - capacityNanos;
+            if (over > 0) return over;
+            if (fullAt.compareAndSet(current, next)) return 0;
+        }
+    }
+
+    /**
+     * Take {@code tokens} whether or not the bucket holds them, going into debt; returns how many nanoseconds the
+     * caller should wait before using them (0 if it had them). Callers that all wait get the configured rate.
+     */
+    public long reserve(long tokens) {
+        long cost = cost(tokens);
+        while (true) {
+            long now = System.nanoTime();
+            long current = fullAt.get();
+            long next = Math.max(current - now, 0) + now + cost;
+            if (fullAt.compareAndSet(current, next)) return Math.max(0, next - now - capacityNanos);
+        }
+    }
+
+    /** How long until the bucket is out of debt, in nanoseconds (0 if it has tokens now). */
+    public long debtNanos() {
+        return Math.max(0, fullAt.get() - System.nanoTime() - capacityNanos);
+    }
+}
@@ -0,0 +1,321 @@
+package com.yuvraj.dropbox.service;
+
+import com.yuvraj.dropbox.dto.PurgeJobInfo;
+import com.yuvraj.dropbox.dto.TrashItemInfo;
+import com.yuvraj.dropbox.model.TrashItem;
+import com.yuvraj.dropbox.repository.TrashItemRepository;
+import com.yuvraj.dropbox.storage.StorageBackend;
+import com.yuvraj.dropbox.storage.StorageBackend.StorageEntry;
+import com.yuvraj.dropbox.storage.StorageBackend.Usage;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Delete is a single rename into {@code .trash/<user>/<id>}, so it costs the same for one file or a million.
+ * Items can be restored until they are purged: explicitly (empty trash / delete permanently) or by the
+ * retention job. Purges run in the background as jobs whose progress can be polled; each one deletes files
+ * with bounded parallelism and a deletes-per-second cap so it never starves foreground I/O.
+ */
+@Service
+public class TrashService {
+
+    private static final Logger log = LoggerFactory.getLogger(TrashService.class);
+
+    public static final String TRASH_FOLDER = ".trash";
+    // finished jobs stay queryable this long
+    private static final long JOB_RETENTION_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    @Autowired
+    private StorageBackend storage;
+
+    @Autowired
+    private TrashItemRepository trashItemRepository;
+
+    @Autowired
+    private QuotaService quotaService;
+
+    @Value("${dropbox.trash.retention-days:30}")
+    private long retentionDays;
+
+    @Value("${dropbox.trash.purge.parallelism:4}")
+    private int parallelism;
+
+    // 0 = unlimited
+    @Value("${dropbox.trash.purge.max-deletes-per-second:500}")
+    private int maxDeletesPerSecond;
+
+    // jobs run one at a time; each fans its deletes out over the worker pool
+    private final ExecutorService jobRunner = Executors.newSingleThreadExecutor();
+    private ExecutorService deleteWorkers;
+
+    private final Map<String, PurgeJob> jobs = new ConcurrentHashMap<>();
+    private final Set<String> itemsInJobs = ConcurrentHashMap.newKeySet();
+    // next free slot of the deletes-per-second pacer (System.nanoTime() scale)
+    private final AtomicLong nextDeleteSlot = new AtomicLong();
+
+    public static class PurgeJob {
+        private final String id = UUID.randomUUID().toString();
+        private final String owner;
+        private final List<TrashItem> items;
+        private volatile String status = "QUEUED";
+        private final AtomicInteger itemsPurged = new AtomicInteger();
+        private final AtomicLong filesDeleted = new AtomicLong();
+        private final AtomicLong bytesDeleted = new AtomicLong();
+        private volatile Long startedAt;
+        private volatile Long finishedAt;
+        private volatile String error;
+
+        PurgeJob(String owner, List<TrashItem> items) {
+            this.owner = owner;
+            this.items = items;
+        }
+
+        public String getId() { return id; }
+    }
+
+    @PostConstruct
+    public void start() {
+        deleteWorkers = Executors.newFixedThreadPool(Math.max(1, parallelism));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobRunner.shutdownNow();
+        deleteWorkers.shutdownNow();
+    }
+
+    private static String trashKey(TrashItem item) {
+        return TRASH_FOLDER + "/" + item.getOwner() + "/" + item.getId();
+    }
+
+    /* ------------------ trash / restore ------------------ */
+
+    /** Move {@code key} (inside {@code userRoot}) to the trash. Trashed files no longer count against the quota. */
+    public TrashItem moveToTrash(String userRoot, String key, StorageEntry entry) {
+        TrashItem item = new TrashItem(userRoot, key.substring(userRoot.length() + 1), entry.directory(),
+                entry.directory() ? 0 : entry.size());
+        Usage usage = quotaService.usageOf(key);
+        try {
+            storage.move(key, trashKey(item));
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to delete", e);
+        }
+        quotaService.recordRemoved(userRoot, usage);
+        return trashItemRepository.save(item);
+    }
+
+    public List<TrashItemInfo> list(String userRoot) {
+        return trashItemRepository.findByOwnerOrderByDeletedAtDesc(userRoot).stream()
+                .map(this::describe)
+                .collect(Collectors.toList());
+    }
+
+    /** Move an item back to where it was deleted from; returns its restored key. */
+    public String restore(String userRoot, String id) {
+        TrashItem item = get(userRoot, id);
+        if (item.isPurging()) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Item is being purged");
+        }
+        String target = userRoot + "/" + item.getOriginalPath();
+        try {
+            if (storage.stat(target).isPresent()) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "A file or folder already exists at " + item.getOriginalPath());
+            }
+            Usage usage = storage.usage(trashKey(item));
+            long files = usage.count() + quotaService.missingFolders(userRoot, target.substring(0, target.lastIndexOf('/')));
+            quotaService.claim(userRoot, usage.bytes(), files);
+            try {
+                storage.move(trashKey(item), target);
+            } catch (IOException | RuntimeException e) {
+                quotaService.recordAdded(userRoot, -usage.bytes(), -files);
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to restore", e);
+        }
+        trashItemRepository.delete(item);
+        return target;
+    }
+
+    private TrashItem get(String userRoot, String id) {
+        return trashItemRepository.findById(id)
+                .filter(item -> item.getOwner().equals(userRoot))
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Trash item not found"));
+    }
+
+    /* ------------------ purge jobs ------------------ */
+
+    /** Permanently delete one item, or the whole trash when {@code id} is null. */
+    public PurgeJobInfo purge(String userRoot, String id) {
+        List<TrashItem> items = id != null
+                ? List.of(get(userRoot, id))
+                : trashItemRepository.findByOwnerOrderByDeletedAtDesc(userRoot);
+        return describe(submit(userRoot, items));
+    }
+
+    public PurgeJobInfo jobStatus(String userRoot, String jobId) {
+        PurgeJob job = jobs.get(jobId);
+        if (job == null || !job.owner.equals(userRoot)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Job not found");
+        }
+        return describe(job);
+    }
+
+    private PurgeJob submit(String owner, List<TrashItem> candidates) {
+        List<TrashItem> items = new ArrayList<>();
+        for (TrashItem item : candidates) {
+            if (!itemsInJobs.add(item.getId())) continue; // already queued
+            item.setPurging(true);
+            items.add(trashItemRepository.save(item));
+        }
+        PurgeJob job = new PurgeJob(owner, items);
+        jobs.put(job.id, job);
+        jobRunner.submit(() -> run(job));
+        return job;
+    }
+
+    // Queue items past retention, plus items whose purge was interrupted by a restart
+    @Scheduled(initialDelayString = "${dropbox.trash.purge.interval-ms:3600000}",
+               fixedDelayString = "${dropbox.trash.purge.interval-ms:3600000}")
+    public void purgeExpired() {
+        long cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retentionDays);
+        List<TrashItem> due = new ArrayList<>(trashItemRepository.findByDeletedAtBeforeAndPurgingFalse(cutoff));
+        trashItemRepository.findByPurgingTrue().stream()
+                .filter(item -> !itemsInJobs.contains(item.getId()))
+                .forEach(due::add);
+        due.stream()
+                .collect(Collectors.groupingBy(TrashItem::getOwner))
+                .forEach(this::submit);
+
+        long jobCutoff = System.currentTimeMillis() - JOB_RETENTION_MILLIS;
+        jobs.values().removeIf(job -> job.finishedAt != null && job.finishedAt < jobCutoff);
+    }
+
+    private void run(PurgeJob job) {
+        job.startedAt = System.currentTimeMillis();
+        job.status = "RUNNING";
+        try {
+            for (TrashItem item : job.items) {
+                deleteTree(trashKey(item), job);
+                trashItemRepository.delete(item);
+                itemsInJobs.remove(item.getId());
+                job.itemsPurged.incrementAndGet();
+            }
+            job.status = "DONE";
+        } catch (Exception e) {
+            log.warn("Purge job {} failed", job.id, e);
+            job.error = e.getMessage();
+            job.status = "FAILED";
+            // whatever is left is retried by the next scheduled pass
+            job.items.forEach(item -> itemsInJobs.remove(item.getId()));
+        } finally {
+            job.finishedAt = System.currentTimeMillis();
+        }
+    }
+
+    // Files are deleted in parallel (bounded in-flight, paced); the emptied folders go in one final delete
+    private void deleteTree(String key, PurgeJob job) throws IOException, InterruptedException {
+        Optional<StorageEntry> root = storage.stat(key);
+        if (root.isEmpty()) return;
+        if (!root.get().directory()) {
+            pace();
+            storage.delete(key);
+            job.filesDeleted.incrementAndGet();
+            job.bytesDeleted.addAndGet(root.get().size());
+            return;
+        }
+
+        int maxInFlight = Math.max(1, parallelism) * 4;
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        try (Stream<StorageEntry> walk = storage.walk(key)) {
+            for (StorageEntry file : (Iterable<StorageEntry>) walk::iterator) {
+                if (file.directory()) continue;
+                if (failure.get() != null) break;
+                pace();
+                inFlight.acquire();
+                deleteWorkers.submit(() -> {
+                    try {
+                        storage.delete(file.key());
+                        job.filesDeleted.incrementAndGet();
+                        job.bytesDeleted.addAndGet(file.size());
+                    } catch (Exception e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        } finally {
+            inFlight.acquire(maxInFlight); // wait for the stragglers
+            inFlight.release(maxInFlight);
+        }
+        if (failure.get() != null) throw new IOException("Failed to purge " + key, failure.get());
+        storage.delete(key);
+    }
+
+    // Lock-free pacer: each delete claims the next 1/rate slot and sleeps until it comes round
+    private void pace() throws InterruptedException {
+        if (maxDeletesPerSecond <= 0) return;
+        long interval = TimeUnit.SECONDS.toNanos(1) / maxDeletesPerSecond;
+        long now = System.nanoTime();
+        long slot = Math.max(nextDeleteSlot.getAndUpdate(prev -> Math.max(prev, now) + interval), now);
+        long wait = slot - now;
+        if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+    }
+
+    /* ------------------ DTOs ------------------ */
+
+    private TrashItemInfo describe(TrashItem item) {
+        TrashItemInfo info = new TrashItemInfo();
+        info.setId(item.getId());
+        info.setName(item.getName());
+        info.setType(item.isDirectory() ? "folder" : "file");
+        info.setOriginalPath(item.getOriginalPath());
+        info.setSize(item.isDirectory() ? null : item.getSize());
+        info.setDeletedAt(item.getDeletedAt());
+        info.setPurgeAt(item.getDeletedAt() + TimeUnit.DAYS.toMillis(retentionDays));
+        info.setPurging(item.isPurging());
+        return info;
+    }
+
+    private static PurgeJobInfo describe(PurgeJob job) {
+        PurgeJobInfo info = new PurgeJobInfo();
+        info.setJobId(job.id);
+        info.setStatus(job.status);
+        info.setItems(job.items.size());
+        info.setItemsPurged(job.itemsPurged.get());
+        info.setFilesDeleted(job.filesDeleted.get());
+        info.setBytesDeleted(job.bytesDeleted.get());
+        info.setStartedAt(job.startedAt);
+        info.setFinishedAt(job.finishedAt);
+        info.setError(job.error);
+        return info;
+    }
+}
@@ -0,0 +1,244 @@
+package com.yuvraj.dropbox.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.yuvraj.dropbox.model.ChangeEvent;
+import com.yuvraj.dropbox.storage.StorageBackend;
+import com.yuvraj.dropbox.storage.StorageBackend.SortField;
+import com.yuvraj.dropbox.storage.StorageBackend.StorageEntry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Recursive listings with folder sizes. Each folder's totals (bytes, files, folders below it) are computed by a
+ * fork-join traversal that lists sibling folders in parallel, and cached per folder. A change anywhere drops the
+ * cached totals of that path and its ancestors only, so after an upload the next tree request re-lists just the
+ * changed chain and reuses every untouched sibling subtree.
+ *
+ * A streamed tree takes the totals of every folder it will show in one traversal, before the response starts,
+ * so the controller's expensive-operation permit covers all of the walking.
+ */
+@Service
+public class TreeService {
+
+    public static final int MAX_DEPTH = 20;
+    private static final int LIST_BATCH_SIZE = 1000;
+
+    @Autowired
+    private StorageBackend storage;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${dropbox.tree.parallelism:8}")
+    private int parallelism;
+
+    @Value("${dropbox.tree.cache-size:100000}")
+    private long cacheSize;
+
+    private ForkJoinPool pool;
+    private Cache<String, FolderStats> stats;
+    // per owner, bumped on every invalidation of their files; a traversal that overlapped one doesn't cache
+    // what it computed
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    /** Totals of everything below a folder. */
+    public record FolderStats(long bytes, long files, long folders) {}
+
+    private static final FolderStats EMPTY = new FolderStats(0, 0, 0);
+
+    @PostConstruct
+    public void start() {
+        // listing is I/O bound, so the pool is sized for storage round trips rather than cores
+        pool = new ForkJoinPool(Math.max(1, parallelism));
+        stats = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                // bounds staleness from changes made behind the API's back (picked up by index reconciliation)
+                .expireAfterWrite(Duration.ofMinutes(30))
+                .build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    @EventListener
+    public void onChange(ChangeEvent event) {
+        invalidate(event.getOwner() + "/" + event.getPath());
+    }
+
+    /** Forget cached totals of {@code key} and every folder above it. */
+    public void invalidate(String key) {
+        generation(key).incrementAndGet();
+        String k = key;
+        while (true) {
+            stats.invalidate(k);
+            int slash = k.lastIndexOf('/');
+            if (slash < 0) break;
+            k = k.substring(0, slash);
+        }
+    }
+
+    private AtomicLong generation(String key) {
+        int slash = key.indexOf('/');
+        return generations.computeIfAbsent(slash < 0 ? key : key.substring(0, slash), owner -> new AtomicLong());
+    }
+
+    public FolderStats stats(String folderKey) {
+        FolderStats cached = stats.getIfPresent(folderKey);
+        if (cached != null) return cached;
+        return walk(folderKey, 0, null);
+    }
+
+    // Totals of the folder and of every folder up to `depth` levels below it, keyed by folder key
+    private Map<String, FolderStats> statsDown(String folderKey, int depth) {
+        Map<String, FolderStats> totals = new ConcurrentHashMap<>();
+        walk(folderKey, depth, totals);
+        return totals;
+    }
+
+    private FolderStats walk(String folderKey, int levels, Map<String, FolderStats> totals) {
+        AtomicLong generation = generation(folderKey);
+        try {
+            return pool.invoke(new StatsTask(folderKey, generation, generation.get(), levels, totals));
+        } catch (UncheckedIOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to walk folder", e.getCause());
+        }
+    }
+
+    // Cached totals are used as they are, except within `levels` of the start, where a streamed tree needs
+    // every folder's totals and so the children are visited too. Folders down to level 0 go into `totals`;
+    // those below it (levels -1) are only summed.
+    private class StatsTask extends RecursiveTask<FolderStats> {
+        private final String folderKey;
+        private final AtomicLong generation;
+        private final long startGeneration;
+        private final int levels;
+        private final Map<String, FolderStats> totals;
+
+        StatsTask(String folderKey, AtomicLong generation, long startGeneration, int levels, Map<String, FolderStats> totals) {
+            this.folderKey = folderKey;
+            this.generation = generation;
+            this.startGeneration = startGeneration;
+            this.levels = levels;
+            this.totals = totals;
+        }
+
+        @Override
+        protected FolderStats compute() {
+            FolderStats cached = stats.getIfPresent(folderKey);
+            if (cached != null && levels <= 0) {
+                if (totals != null && levels == 0) totals.put(folderKey, cached);
+                return cached;
+            }
+            long bytes = 0;
+            long files = 0;
+            long folders = 0;
+            List<StatsTask> subfolders = new ArrayList<>();
+            try (Stream<StorageEntry> children = storage.list(folderKey)) {
+                for (StorageEntry child : (Iterable<StorageEntry>) children::iterator) {
+                    if (child.directory()) {
+                        folders++;
+                        subfolders.add(new StatsTask(child.key(), generation, startGeneration, Math.max(-1, levels - 1), totals));
+                    } else {
+                        files++;
+                        bytes += child.size();
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            for (StatsTask task : invokeAll(subfolders)) {
+                FolderStats sub = task.join();
+                bytes += sub.bytes();
+                files += sub.files();
+                folders += sub.folders();
+            }
+            FolderStats result = new FolderStats(bytes, files, folders);
+            if (generation.get() == startGeneration) stats.put(folderKey, result);
+            if (totals != null && levels >= 0) totals.put(folderKey, result);
+            return result;
+        }
+    }
+
+    /* ------------------ streamed tree ------------------ */
+
+    /**
+     * {@code target} and its descendants down to {@code depth} levels, children sorted by name. Folders carry
+     * their aggregated size and counts; folders at the depth limit have no "children".
+     */
+    public ResponseEntity<StreamingResponseBody> tree(String userRoot, StorageEntry target, int depth) {
+        if (depth < 0 || depth > MAX_DEPTH) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "depth must be between 0 and " + MAX_DEPTH);
+        }
+        // every total the response shows, computed up front: failures still get a proper status, and the caller's
+        // permit is still held
+        Map<String, FolderStats> totals = target.directory() ? statsDown(target.key(), depth) : Map.of();
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> writeTree(out, userRoot, target, depth, totals));
+    }
+
+    private void writeTree(OutputStream out, String userRoot, StorageEntry root, int depth,
+                           Map<String, FolderStats> totals) throws IOException {
+        JsonGenerator json = objectMapper.getFactory().createGenerator(out);
+        writeNode(json, userRoot, root, depth, totals);
+        json.flush();
+    }
+
+    private void writeNode(JsonGenerator json, String userRoot, StorageEntry entry, int depth,
+                           Map<String, FolderStats> totals) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("name", entry.key().equals(userRoot) ? "" : entry.name());
+        json.writeStringField("type", entry.directory() ? "folder" : "file");
+        json.writeStringField("path", entry.key().equals(userRoot) ? "" : entry.key().substring(userRoot.length() + 1));
+        json.writeNumberField("lastModified", entry.lastModified());
+        if (!entry.directory()) {
+            json.writeNumberField("size", entry.size());
+            json.writeEndObject();
+            return;
+        }
+        // a folder missing here was created after the totals were taken; the next request counts it
+        FolderStats folder = totals.getOrDefault(entry.key(), EMPTY);
+        json.writeNumberField("size", folder.bytes());
+        json.writeNumberField("fileCount", folder.files());
+        json.writeNumberField("folderCount", folder.folders());
+        if (depth > 0) {
+            json.writeArrayFieldStart("children");
+            List<StorageEntry> batch = storage.listPage(entry.key(), SortField.NAME, false, null, LIST_BATCH_SIZE);
+            while (true) {
+                for (StorageEntry child : batch) writeNode(json, userRoot, child, depth - 1, totals);
+                if (batch.size() < LIST_BATCH_SIZE) break;
+                json.flush();
+                batch = storage.listPage(entry.key(), SortField.NAME, false, batch.get(batch.size() - 1), LIST_BATCH_SIZE);
+            }
+            json.writeEndArray();
+        }
+        json.writeEndObject();
+    }
+}
@@ -0,0 +1,144 @@
+package com.yuvraj.dropbox.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.yuvraj.dropbox.model.User;
+import com.yuvraj.dropbox.repository.UserRepository;
+import com.yuvraj.dropbox.storage.StorageBackend;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Accounts: registration and login. Credentials are cached in front of app_user, so a returning user's login
+ * costs no query. Only what login needs is cached, not the User row, whose usage counters change with every
+ * upload. Concurrent registrations of one name are settled by the unique index on username.
+ *
+ * Passwords are hashed and checked on {@link PasswordService}'s pool; both operations return futures, so the
+ * request thread is released while the hash runs. Database work after a hash runs on the application task
+ * executor, never on the hashing threads.
+ */
+@Service
+public class UserService {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private StorageBackend storage;
+
+    @Autowired
+    private PasswordService passwordService;
+
+    @Autowired
+    @Qualifier("applicationTaskExecutor")
+    private Executor taskExecutor;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${dropbox.users.cache.max-size:100000}")
+    private long cacheMaxSize;
+
+    @Value("${dropbox.users.cache.ttl-minutes:10}")
+    private long cacheTtlMinutes;
+
+    private Cache<String, Credentials> credentials;
+
+    /** What login needs of a user. */
+    public record Credentials(String uuid, String username, String password) {}
+
+    @PostConstruct
+    public void init() {
+        credentials = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(Duration.ofMinutes(cacheTtlMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, credentials, "users");
+    }
+
+    public Optional<Credentials> findCredentials(String username) {
+        if (username == null) return Optional.empty();
+        Credentials cached = credentials.getIfPresent(username);
+        if (cached != null) return Optional.of(cached);
+        // queried outside the cache, so no virtual thread is pinned in a compute while JDBC blocks
+        User user = userRepository.findByUsername(username);
+        if (user == null) {
+            // unknown names aren't cached, so a user can log in right after registering
+            return Optional.empty();
+        }
+        Credentials loaded = new Credentials(user.getUuid(), user.getUsername(), user.getPassword());
+        credentials.put(username, loaded);
+        return Optional.of(loaded);
+    }
+
+    /** Create an account and its folder; 409 if the name is taken, even by a registration running at the same time. */
+    public CompletableFuture<User> register(String username, String password, String email) {
+        if (username == null || username.isBlank() || password == null || password.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Missing required fields");
+        }
+        // saves hashing for a name that is plainly taken; the unique index catches the rest
+        if (findCredentials(username).isPresent()) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Username already exists");
+        }
+        return passwordService.hash(password).thenApplyAsync(hash -> create(username, hash, email), taskExecutor);
+    }
+
+    private User create(String username, String passwordHash, String email) {
+        User user = new User(username, passwordHash, email);
+        try {
+            userRepository.saveAndFlush(user);
+        } catch (DataIntegrityViolationException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Username already exists");
+        }
+        try {
+            storage.mkdirs(user.getUuid());
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to create user folder", e);
+        }
+        return user;
+    }
+
+    /**
+     * The user's credentials if {@code password} is theirs. A stored hash with outdated parameters (or a password
+     * stored before hashing) is replaced on the way.
+     */
+    public CompletableFuture<Credentials> authenticate(String username, String password) {
+        if (password == null) password = "";
+        Credentials user = findCredentials(username).orElse(null);
+        return passwordService.verify(password, user == null ? null : user.password())
+                .thenApplyAsync(result -> {
+                    if (!result.matches()) throw new RuntimeException("Invalid username or password");
+                    if (result.rehashed() != null) {
+                        userRepository.updatePassword(user.uuid(), result.rehashed());
+                        evict(user.username());
+                    }
+                    return user;
+                }, taskExecutor);
+    }
+
+    /** The account a token was issued to; 401 if it no longer exists. */
+    public User get(String uuid) {
+        return userRepository.findById(uuid)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unknown user"));
+    }
+
+    /** Drop a user's cached credentials; call after changing their password. */
+    public void evict(String username) {
+        credentials.invalidate(username);
+    }
+}
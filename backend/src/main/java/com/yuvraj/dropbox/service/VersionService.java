@@ -0,0 +1,208 @@
+package com.yuvraj.dropbox.service;
+
+import com.yuvraj.dropbox.dto.FileVersionInfo;
+import com.yuvraj.dropbox.model.FileVersion;
+import com.yuvraj.dropbox.repository.FileVersionRepository;
+import com.yuvraj.dropbox.storage.StorageBackend;
+import com.yuvraj.dropbox.storage.StorageBackend.StorageEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Earlier revisions of files. Just before a file is replaced (upload with overwrite, delta update, restoring a
+ * version) its current content is snapshotted under {@code .versions/<user>/<id>}; it becomes a version once the
+ * replacement has been written, and is deleted if the write fails, so a failed write leaves no history behind. Keeping it is a
+ * snapshot, not a copy: a hard link on the local filesystem, a server-side copy on S3, and with dedup on a
+ * manifest over the same chunks, so a new revision only takes space for the blocks that changed. The current
+ * revision stays an ordinary file at its key and is downloaded exactly as before.
+ *
+ * History is per path. A compactor keeps the newest keep-versions of each file and drops versions older than
+ * keep-days. Versions don't count against the quota (like the trash).
+ */
+@Service
+public class VersionService {
+
+    private static final Logger log = LoggerFactory.getLogger(VersionService.class);
+
+    public static final String VERSIONS_FOLDER = ".versions";
+
+    @Autowired
+    private StorageBackend storage;
+
+    @Autowired
+    private FileVersionRepository fileVersionRepository;
+
+    @Autowired
+    private QuotaService quotaService;
+
+    @Value("${dropbox.versions.enabled:true}")
+    private boolean enabled;
+
+    @Value("${dropbox.versions.keep-versions:10}")
+    private int keepVersions;
+
+    @Value("${dropbox.versions.keep-days:30}")
+    private long keepDays;
+
+    private static String versionKey(FileVersion version) {
+        return VERSIONS_FOLDER + "/" + version.getOwner() + "/" + version.getId();
+    }
+
+    /** The content a write is about to replace, not yet listed as a version (and never, if not versioned). */
+    public record Snapshot(FileVersion version, String key, boolean versioned) {}
+
+    /**
+     * Snapshot {@code current} (a file inside {@code userRoot}) just before replacing it; null when versions are
+     * off. Hand it to {@link #keep} once the replacement is written, or to {@link #discard} if that failed.
+     */
+    public Snapshot snapshot(String userRoot, StorageEntry current) {
+        return enabled ? pin(userRoot, current) : null;
+    }
+
+    /**
+     * A snapshot taken whether or not versions are on, for a write that reads the old content while replacing
+     * it; null for a folder. {@link #keep} lists it as a version only when versions are on.
+     */
+    public Snapshot pin(String userRoot, StorageEntry current) {
+        if (current.directory()) return null;
+        FileVersion version = new FileVersion(userRoot, current.key().substring(userRoot.length() + 1),
+                current.size(), current.lastModified());
+        String key = versionKey(version);
+        try {
+            storage.snapshot(current.key(), key);
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to keep the previous version", e);
+        }
+        return new Snapshot(version, key, enabled);
+    }
+
+    /** List a snapshot as a version; the write that replaced its file has succeeded. */
+    public void keep(Snapshot snapshot) {
+        if (snapshot == null) return;
+        if (snapshot.versioned()) {
+            fileVersionRepository.save(snapshot.version());
+        } else {
+            discard(snapshot);
+        }
+    }
+
+    /** Drop a snapshot whose replacing write failed (the file still has that content), or one not versioned. */
+    public void discard(Snapshot snapshot) {
+        if (snapshot == null) return;
+        try {
+            storage.delete(snapshot.key());
+        } catch (IOException e) {
+            log.warn("Failed to remove snapshot {}", snapshot.key(), e);
+        }
+    }
+
+    /** Versions of the file at {@code path} (relative to the user's folder), newest first. */
+    public List<FileVersionInfo> list(String userRoot, String path) {
+        return fileVersionRepository.findByOwnerAndPathOrderByCreatedAtDesc(userRoot, path).stream()
+                .map(this::describe)
+                .collect(Collectors.toList());
+    }
+
+    public FileVersion get(String userRoot, String id) {
+        return fileVersionRepository.findById(id)
+                .filter(version -> version.getOwner().equals(userRoot))
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Version not found"));
+    }
+
+    /** The stored content of a version, for downloading it. */
+    public StorageEntry content(FileVersion version) {
+        try {
+            return storage.stat(versionKey(version))
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Version not found"));
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to read version", e);
+        }
+    }
+
+    /**
+     * Make a version the current content of its file again (recreating the file if it was deleted since). What
+     * is there now becomes a version once the restore is written, so a restore can be undone; the restored version
+     * stays too.
+     */
+    public StorageEntry restore(String userRoot, String id) {
+        FileVersion version = get(userRoot, id);
+        String key = userRoot + "/" + version.getPath();
+        try {
+            Optional<StorageEntry> current = storage.stat(key);
+            if (current.isPresent() && current.get().directory()) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "A folder exists at " + version.getPath());
+            }
+            long addedBytes = version.getSize() - current.map(StorageEntry::size).orElse(0L);
+            int addedFiles = current.isPresent() ? 0 : 1 + quotaService.missingFolders(userRoot, key.substring(0, key.lastIndexOf('/')));
+            quotaService.claim(userRoot, addedBytes, addedFiles);
+            Snapshot previous = current.isPresent() ? snapshot(userRoot, current.get()) : null;
+            StorageEntry restored;
+            try (InputStream in = storage.read(versionKey(version), 0, Long.MAX_VALUE)) {
+                restored = storage.write(key, in, version.getSize());
+            } catch (IOException | RuntimeException e) {
+                discard(previous);
+                quotaService.recordAdded(userRoot, -addedBytes, -addedFiles);
+                throw e;
+            }
+            keep(previous);
+            return restored;
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to restore version", e);
+        }
+    }
+
+    /* ------------------ retention ------------------ */
+
+    // Drop versions past keep-days, then all but the newest keep-versions of each file
+    @Scheduled(initialDelayString = "${dropbox.versions.compact-interval-ms:3600000}",
+               fixedDelayString = "${dropbox.versions.compact-interval-ms:3600000}")
+    public void compact() {
+        long cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(keepDays);
+        List<FileVersion> expired = new ArrayList<>(fileVersionRepository.findByCreatedAtBefore(cutoff));
+        for (Object[] row : fileVersionRepository.findPathsWithMoreThan(Math.max(0, keepVersions))) {
+            fileVersionRepository.findByOwnerAndPathOrderByCreatedAtDesc((String) row[0], (String) row[1]).stream()
+                    .skip(Math.max(0, keepVersions))
+                    .filter(version -> version.getCreatedAt() >= cutoff) // already in expired
+                    .forEach(expired::add);
+        }
+        int removed = 0;
+        for (FileVersion version : expired) {
+            try {
+                storage.delete(versionKey(version));
+                fileVersionRepository.delete(version);
+                removed++;
+            } catch (IOException e) {
+                // retried by the next pass
+                log.warn("Failed to remove version {}", version.getId(), e);
+            }
+        }
+        if (removed > 0) log.info("Removed {} old file versions", removed);
+    }
+
+    /* ------------------ DTOs ------------------ */
+
+    private FileVersionInfo describe(FileVersion version) {
+        FileVersionInfo info = new FileVersionInfo();
+        info.setId(version.getId());
+        info.setPath(version.getPath());
+        info.setSize(version.getSize());
+        info.setLastModified(version.getModifiedAt());
+        info.setReplacedAt(version.getCreatedAt());
+        info.setExpiresAt(version.getCreatedAt() + TimeUnit.DAYS.toMillis(keepDays));
+        return info;
+    }
+}
@@ -0,0 +1,480 @@
+package com.yuvraj.dropbox.storage;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed chunk store behind {@link DedupStorageBackend}.
+ *
+ * Files are split with {@link FastCdcChunker}; each chunk is stored once in the underlying backend under
+ * {@code .chunks/<first two hex digits>/<sha256>} and the user's file is replaced by a {@link ChunkManifest}.
+ * Identical content, whether uploaded by one user twice or by many users, costs its chunks only once.
+ *
+ * Every file outside .chunks and .staging is a manifest; nothing in a file's bytes says so, so a user's upload
+ * can never be taken for one. Files written before dedup was enabled are chunked in place once, by
+ * {@link #migratePlainFiles()}, before the store is used.
+ *
+ * Reference counts (distinct manifests per chunk) are kept in memory and updated on store/release, for the
+ * metrics only; whether a chunk exists is always asked of storage. The manifests are the source of truth: the
+ * periodic GC pass re-marks every manifest, rebuilds the counts and sweeps chunks nobody references. Chunks of
+ * uploads still in flight are pinned, and chunks referenced by uploads that finished while the pass was running
+ * are remembered; the sweep re-checks both under the chunk's lock, so it never deletes a chunk an upload has
+ * just found in place.
+ */
+public class BlockStore {
+
+    private static final Logger log = LoggerFactory.getLogger(BlockStore.class);
+
+    static final String CHUNKS_FOLDER = ".chunks";
+    static final String STAGING_FOLDER = ".staging";
+    // present once every plain file has been chunked
+    private static final String MIGRATED_MARKER = CHUNKS_FOLDER + "/.migrated";
+    // the file a migration is converting and the SHA-256 of the manifest it is about to write there
+    private static final String MIGRATION_PROGRESS = CHUNKS_FOLDER + "/.migrating";
+
+    @Value("${dropbox.storage.dedup.gc-grace-minutes:60}")
+    private long gcGraceMinutes;
+
+    private final StorageBackend base;
+    private final FastCdcChunker chunker = new FastCdcChunker();
+    private final Map<String, Integer> refCounts = new ConcurrentHashMap<>();
+    private final Map<String, Integer> pins = new ConcurrentHashMap<>();
+    private final Set<String> referencedDuringGc = ConcurrentHashMap.newKeySet();
+    private final AtomicLong logicalBytes = new AtomicLong();
+    private final AtomicLong physicalBytes = new AtomicLong();
+    private final AtomicBoolean gcRunning = new AtomicBoolean();
+    // a writer's check for a pinned chunk and the sweep's re-check before deleting it never interleave
+    private final ReentrantLock[] chunkLocks = new ReentrantLock[64];
+
+    public BlockStore(StorageBackend base, MeterRegistry meterRegistry) {
+        this.base = base;
+        for (int i = 0; i < chunkLocks.length; i++) chunkLocks[i] = new ReentrantLock();
+        Gauge.builder("dropbox.dedup.logical.bytes", logicalBytes, AtomicLong::get)
+                .description("Bytes of user files stored as chunk manifests").baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("dropbox.dedup.physical.bytes", physicalBytes, AtomicLong::get)
+                .description("Bytes of unique chunks").baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("dropbox.dedup.chunks", refCounts, Map::size)
+                .description("Referenced unique chunks").register(meterRegistry);
+        Gauge.builder("dropbox.dedup.ratio", this, BlockStore::dedupRatio)
+                .description("Logical bytes / physical bytes").register(meterRegistry);
+    }
+
+    public double dedupRatio() {
+        long physical = physicalBytes.get();
+        return physical == 0 ? 1.0 : (double) logicalBytes.get() / physical;
+    }
+
+    static String chunkKey(String hash) {
+        return CHUNKS_FOLDER + "/" + hash.substring(0, 2) + "/" + hash;
+    }
+
+    /* ------------------ write path ------------------ */
+
+    /**
+     * Chunk the stream into the store and atomically write its manifest at {@code key}
+     * (replacing whatever is there). A {@code length} of -1 means unknown; otherwise the stream must match it.
+     */
+    public void store(InputStream in, String key, long length) throws IOException {
+        store(in, key, length, false);
+    }
+
+    private void store(InputStream in, String key, long length, boolean migrating) throws IOException {
+        List<ChunkManifest.Chunk> chunks = new ArrayList<>();
+        Set<String> pinned = new HashSet<>();
+        MessageDigest digest = sha256();
+        try {
+            chunker.split(in, (buffer, offset, count) -> {
+                digest.update(buffer, offset, count);
+                String hash = HexFormat.of().formatHex(digest.digest());
+                if (pinned.add(hash)) pins.merge(hash, 1, Integer::sum);
+                writeChunkIfAbsent(hash, buffer, offset, count);
+                chunks.add(new ChunkManifest.Chunk(hash, count));
+            });
+            ChunkManifest manifest = new ChunkManifest(chunks);
+            if (length >= 0 && manifest.getSize() != length) {
+                throw new IOException("Expected " + length + " bytes but received " + manifest.getSize());
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream(ChunkManifest.HEADER_SIZE + chunks.size() * ChunkManifest.ENTRY_SIZE);
+            manifest.write(out);
+            byte[] bytes = out.toByteArray();
+            if (migrating) {
+                String progress = key + "\n" + HexFormat.of().formatHex(sha256().digest(bytes));
+                byte[] record = progress.getBytes(StandardCharsets.UTF_8);
+                base.write(MIGRATION_PROGRESS, new ByteArrayInputStream(record), record.length);
+            }
+            base.write(key, new ByteArrayInputStream(bytes), bytes.length);
+
+            for (String hash : pinned) refCounts.merge(hash, 1, Integer::sum);
+            logicalBytes.addAndGet(manifest.getSize());
+            if (gcRunning.get()) referencedDuringGc.addAll(pinned);
+        } finally {
+            for (String hash : pinned) pins.computeIfPresent(hash, (h, n) -> n > 1 ? n - 1 : null);
+        }
+    }
+
+    /**
+     * Chunk the plain file at {@code from} (e.g. a committed multipart upload in staging) into a manifest at
+     * {@code key}. The plain file is left for the caller to delete.
+     */
+    public void ingest(String from, String key) throws IOException {
+        StorageBackend.StorageEntry entry = base.stat(from).orElseThrow(() -> new IOException("Missing upload: " + from));
+        try (InputStream in = base.read(from, 0, Long.MAX_VALUE)) {
+            store(in, key, entry.size());
+        }
+    }
+
+    /**
+     * The manifest at {@code key}, or null if there is none. Read before a write replaces it, so its
+     * references can be released once the new manifest is in place.
+     */
+    public ChunkManifest currentManifest(String key) {
+        try {
+            Optional<StorageBackend.StorageEntry> entry = base.stat(key);
+            return entry.isPresent() && isManifest(entry.get()) ? readManifest(entry.get()) : null;
+        } catch (IOException e) {
+            // counts are rebuilt by the next GC pass
+            log.warn("Failed to read the manifest at {}", key, e);
+            return null;
+        }
+    }
+
+    /**
+     * Drop the references held by a manifest that is about to be deleted. Folders are ignored.
+     */
+    public void release(StorageBackend.StorageEntry entry) {
+        if (!isManifest(entry)) return;
+        try {
+            release(readManifest(entry));
+        } catch (IOException e) {
+            // counts are rebuilt by the next GC pass
+            log.warn("Failed to release chunks of {}", entry.key(), e);
+        }
+    }
+
+    /** Drop the references held by a manifest that has been replaced. */
+    public void release(ChunkManifest manifest) {
+        for (String hash : distinctHashes(manifest)) {
+            refCounts.computeIfPresent(hash, (h, n) -> n > 1 ? n - 1 : null);
+        }
+        logicalBytes.addAndGet(-manifest.getSize());
+    }
+
+    /**
+     * Add the references held by manifests just copied to {@code key} (a file or a folder); their chunks are
+     * already stored.
+     */
+    public void retain(String key) throws IOException {
+        Optional<StorageBackend.StorageEntry> entry = base.stat(key);
+        if (entry.isEmpty()) return;
+        if (!entry.get().directory()) {
+            retainManifest(entry.get());
+            return;
+        }
+        try (Stream<StorageBackend.StorageEntry> files = base.walk(key)) {
+            for (StorageBackend.StorageEntry file : (Iterable<StorageBackend.StorageEntry>) files::iterator) {
+                retainManifest(file);
+            }
+        }
+    }
+
+    private void retainManifest(StorageBackend.StorageEntry entry) throws IOException {
+        if (!isManifest(entry)) return;
+        ChunkManifest manifest = readManifest(entry);
+        Set<String> hashes = distinctHashes(manifest);
+        for (String hash : hashes) refCounts.merge(hash, 1, Integer::sum);
+        logicalBytes.addAndGet(manifest.getSize());
+        if (gcRunning.get()) referencedDuringGc.addAll(hashes);
+    }
+
+    /**
+     * Called around a move of manifests at {@code key}: a GC pass that is marking could walk the destination
+     * before they arrive and the source after they leave, so while one runs their chunks are kept explicitly.
+     */
+    public void protectDuringGc(String key) throws IOException {
+        if (!gcRunning.get()) return;
+        Optional<StorageBackend.StorageEntry> entry = base.stat(key);
+        if (entry.isEmpty()) return;
+        if (!entry.get().directory()) {
+            if (isManifest(entry.get())) referencedDuringGc.addAll(distinctHashes(readManifest(entry.get())));
+            return;
+        }
+        try (Stream<StorageBackend.StorageEntry> files = base.walk(key)) {
+            for (StorageBackend.StorageEntry file : (Iterable<StorageBackend.StorageEntry>) files::iterator) {
+                if (isManifest(file)) referencedDuringGc.addAll(distinctHashes(readManifest(file)));
+            }
+        }
+    }
+
+    /* ------------------ migration ------------------ */
+
+    /**
+     * Chunk every file written before dedup was enabled; a no-op once it has completed. Must run before the store
+     * serves anything. Files are converted in key order, so an interrupted run skips what it already did; the one
+     * file it was converting is a manifest if its bytes hash to the recorded manifest digest.
+     */
+    public void migratePlainFiles() throws IOException {
+        if (base.stat(MIGRATED_MARKER).isPresent()) return;
+        String resumeKey = null;
+        String resumeDigest = null;
+        if (base.stat(MIGRATION_PROGRESS).isPresent()) {
+            try (InputStream in = base.read(MIGRATION_PROGRESS, 0, Long.MAX_VALUE)) {
+                String[] progress = new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\n", 2);
+                resumeKey = progress[0];
+                resumeDigest = progress[1];
+            }
+        }
+        List<String> files = new ArrayList<>();
+        for (String folder : liveFolders()) {
+            try (Stream<StorageBackend.StorageEntry> walk = base.walk(folder)) {
+                walk.filter(e -> !e.directory()).forEach(e -> files.add(e.key()));
+            }
+        }
+        Collections.sort(files);
+        int converted = 0;
+        for (String key : files) {
+            if (resumeKey != null) {
+                int order = key.compareTo(resumeKey);
+                if (order < 0 || (order == 0 && resumeDigest.equals(digestOf(key)))) continue;
+            }
+            try (InputStream in = base.read(key, 0, Long.MAX_VALUE)) {
+                store(in, key, -1, true);
+            }
+            converted++;
+        }
+        base.write(MIGRATED_MARKER, InputStream.nullInputStream(), 0);
+        base.delete(MIGRATION_PROGRESS);
+        if (converted > 0) log.info("Chunked {} files written before dedup was enabled", converted);
+    }
+
+    private String digestOf(String key) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream in = base.read(key, 0, Long.MAX_VALUE)) {
+            byte[] buffer = new byte[8192];
+            for (int n; (n = in.read(buffer)) > 0; ) digest.update(buffer, 0, n);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private ReentrantLock chunkLock(String hash) {
+        return chunkLocks[Math.floorMod(hash.hashCode(), chunkLocks.length)];
+    }
+
+    // The caller has pinned `hash`. Always asks storage: reference counts drift, so they can't vouch that a
+    // chunk is still there, and a sweep that already checked the pin deletes under the same lock.
+    private void writeChunkIfAbsent(String hash, byte[] buffer, int offset, int length) throws IOException {
+        String key = chunkKey(hash);
+        ReentrantLock lock = chunkLock(hash);
+        lock.lock();
+        try {
+            if (base.stat(key).isPresent()) return;
+            // identical content, so losing a race with another writer of the same chunk is harmless
+            base.write(key, new ByteArrayInputStream(buffer, offset, length), length);
+        } finally {
+            lock.unlock();
+        }
+        physicalBytes.addAndGet(length);
+    }
+
+    // Delete an unreferenced chunk unless a writer pinned it since the mark; false if it was kept
+    private boolean sweep(StorageBackend.StorageEntry chunk) throws IOException {
+        String hash = chunk.name();
+        ReentrantLock lock = chunkLock(hash);
+        lock.lock();
+        try {
+            if (pins.containsKey(hash) || referencedDuringGc.contains(hash)) return false;
+            base.delete(chunk.key());
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* ------------------ read path ------------------ */
+
+    // `entry` is an entry of a live folder; decided by where it is, never by what it contains
+    public boolean isManifest(StorageBackend.StorageEntry entry) {
+        return !entry.directory();
+    }
+
+    /** Logical size recorded in a manifest's header. */
+    public long logicalSize(String key) throws IOException {
+        try (InputStream in = base.read(key, 0, ChunkManifest.HEADER_SIZE)) {
+            return ChunkManifest.readSize(in);
+        }
+    }
+
+    public ChunkManifest readManifest(StorageBackend.StorageEntry entry) throws IOException {
+        try (InputStream in = base.read(entry.key(), 0, Long.MAX_VALUE)) {
+            return ChunkManifest.read(new BufferedInputStream(in), entry.size());
+        }
+    }
+
+    /** Stream {@code length} bytes of the logical content of the manifest {@code entry} starting at {@code position}. */
+    public InputStream open(StorageBackend.StorageEntry entry, long position, long length) throws IOException {
+        return new ManifestInputStream(readManifest(entry), position, length);
+    }
+
+    // Reads a manifest's chunks in order, starting mid-chunk for ranged reads
+    private class ManifestInputStream extends InputStream {
+        private final ChunkManifest manifest;
+        private long remaining;
+        private int chunkIndex;
+        private long skipInChunk;
+        private InputStream current;
+
+        ManifestInputStream(ChunkManifest manifest, long position, long length) {
+            this.manifest = manifest;
+            this.remaining = Math.max(0, Math.min(length, manifest.getSize() - position));
+            if (remaining > 0) {
+                this.chunkIndex = manifest.chunkIndexAt(position);
+                this.skipInChunk = position - manifest.offsetOf(chunkIndex);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            while (remaining > 0) {
+                if (current == null) {
+                    ChunkManifest.Chunk chunk = manifest.getChunks().get(chunkIndex);
+                    current = base.read(chunkKey(chunk.hash()), skipInChunk, chunk.length() - skipInChunk);
+                    skipInChunk = 0;
+                }
+                int read = current.read(b, off, (int) Math.min(len, remaining));
+                if (read > 0) {
+                    remaining -= read;
+                    return read;
+                }
+                current.close();
+                current = null;
+                chunkIndex++;
+                if (chunkIndex >= manifest.getChunks().size()) {
+                    throw new IOException("Chunk data shorter than manifest");
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (current != null) current.close();
+        }
+    }
+
+    /* ------------------ garbage collection ------------------ */
+
+    /**
+     * Mark every chunk referenced by a manifest outside .chunks and .staging, then sweep unreferenced chunks
+     * older than the grace period. Also resynchronises the reference counts and the dedup metrics.
+     */
+    @Scheduled(initialDelayString = "${dropbox.storage.dedup.gc-initial-delay-ms:60000}",
+               fixedDelayString = "${dropbox.storage.dedup.gc-interval-ms:21600000}")
+    public void collectGarbage() {
+        if (!gcRunning.compareAndSet(false, true)) return;
+        referencedDuringGc.clear();
+        try {
+            Map<String, Integer> marked = new HashMap<>();
+            long logical = markLiveFolders(marked);
+
+            long cutoff = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(gcGraceMinutes);
+            long physical = 0;
+            long freed = 0;
+            int removed = 0;
+            try (Stream<StorageBackend.StorageEntry> chunks = base.walk(CHUNKS_FOLDER)) {
+                for (StorageBackend.StorageEntry chunk : (Iterable<StorageBackend.StorageEntry>) chunks::iterator) {
+                    if (chunk.directory() || chunk.name().startsWith(".")) continue; // migration bookkeeping
+                    String hash = chunk.name();
+                    if (marked.containsKey(hash) || chunk.lastModified() >= cutoff || !sweep(chunk)) {
+                        physical += chunk.size();
+                    } else {
+                        freed += chunk.size();
+                        removed++;
+                    }
+                }
+            }
+
+            // Not atomic with concurrent store/release; any drift is corrected by the next pass
+            refCounts.clear();
+            refCounts.putAll(marked);
+            logicalBytes.set(logical);
+            physicalBytes.set(physical);
+            log.info("Chunk GC: {} chunks referenced, {} removed ({} bytes), dedup ratio {}",
+                    marked.size(), removed, freed, String.format("%.2f", dedupRatio()));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Chunk GC failed", e);
+        } finally {
+            gcRunning.set(false);
+        }
+    }
+
+    // Counts references from every manifest in every live folder; returns their total logical size
+    private long markLiveFolders(Map<String, Integer> marked) throws IOException {
+        long logical = 0;
+        for (String folder : liveFolders()) {
+            try (Stream<StorageBackend.StorageEntry> files = base.walk(folder)) {
+                for (StorageBackend.StorageEntry file : (Iterable<StorageBackend.StorageEntry>) files::iterator) {
+                    if (!isManifest(file)) continue;
+                    try {
+                        ChunkManifest manifest = readManifest(file);
+                        for (String hash : distinctHashes(manifest)) marked.merge(hash, 1, Integer::sum);
+                        logical += manifest.getSize();
+                    } catch (IOException e) {
+                        log.warn("Unreadable manifest {}", file.key(), e);
+                    }
+                }
+            }
+        }
+        return logical;
+    }
+
+    private List<String> liveFolders() throws IOException {
+        List<String> folders = new ArrayList<>();
+        try (Stream<StorageBackend.StorageEntry> roots = base.list("")) {
+            // everything but the chunks themselves and upload staging can hold manifests: user folders, but
+            // also internal areas such as .trash whose content must survive until it is purged
+            roots.filter(e -> e.directory() && !e.name().equals(CHUNKS_FOLDER) && !e.name().equals(STAGING_FOLDER))
+                    .forEach(e -> folders.add(e.key()));
+        }
+        return folders;
+    }
+
+    private static Set<String> distinctHashes(ChunkManifest manifest) {
+        Set<String> hashes = new HashSet<>();
+        for (ChunkManifest.Chunk chunk : manifest.getChunks()) hashes.add(chunk.hash());
+        return hashes;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
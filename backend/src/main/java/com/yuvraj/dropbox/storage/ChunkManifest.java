@@ -0,0 +1,106 @@
+package com.yuvraj.dropbox.storage;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * The on-disk form of a deduplicated file: its logical size and the ordered list of chunks
+ * (SHA-256 + length) that make it up.
+ *
+ * Layout: 8-byte magic, long logical size, int chunk count, then per chunk a 32-byte hash and an int length.
+ */
+public class ChunkManifest {
+
+    public static final byte[] MAGIC = "DBXMAN01".getBytes(StandardCharsets.US_ASCII);
+    public static final int HEADER_SIZE = MAGIC.length + 8 + 4;
+    public static final int ENTRY_SIZE = 32 + 4;
+
+    public record Chunk(String hash, int length) {}
+
+    private final long size;
+    private final List<Chunk> chunks;
+    private final long[] offsets; // offsets[i] = logical position of chunk i
+
+    public ChunkManifest(List<Chunk> chunks) {
+        this.chunks = Collections.unmodifiableList(new ArrayList<>(chunks));
+        this.offsets = new long[chunks.size()];
+        long position = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            offsets[i] = position;
+            position += chunks.get(i).length();
+        }
+        this.size = position;
+    }
+
+    public long getSize() { return size; }
+    public List<Chunk> getChunks() { return chunks; }
+
+    // Index of the chunk containing logical position `position`
+    public int chunkIndexAt(long position) {
+        int index = Arrays.binarySearch(offsets, position);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    public long offsetOf(int chunkIndex) {
+        return offsets[chunkIndex];
+    }
+
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(MAGIC);
+        data.writeLong(size);
+        data.writeInt(chunks.size());
+        HexFormat hex = HexFormat.of();
+        for (Chunk chunk : chunks) {
+            data.write(hex.parseHex(chunk.hash()));
+            data.writeInt(chunk.length());
+        }
+        data.flush();
+    }
+
+    /** Decode a manifest of {@code fileSize} bytes; the chunk count must agree with it before anything is allocated. */
+    public static ChunkManifest read(InputStream in, long fileSize) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (!hasMagic(data)) throw new IOException("Not a chunk manifest");
+        long size = data.readLong();
+        int count = data.readInt();
+        if (count < 0 || fileSize < HEADER_SIZE || (fileSize - HEADER_SIZE) % ENTRY_SIZE != 0
+                || count != (fileSize - HEADER_SIZE) / ENTRY_SIZE) {
+            throw new IOException("Corrupt chunk manifest");
+        }
+        List<Chunk> chunks = new ArrayList<>(count);
+        HexFormat hex = HexFormat.of();
+        byte[] hash = new byte[32];
+        for (int i = 0; i < count; i++) {
+            data.readFully(hash);
+            int length = data.readInt();
+            if (length <= 0) throw new IOException("Corrupt chunk manifest");
+            chunks.add(new Chunk(hex.formatHex(hash), length));
+        }
+        ChunkManifest manifest = new ChunkManifest(chunks);
+        if (manifest.getSize() != size) throw new IOException("Corrupt chunk manifest");
+        return manifest;
+    }
+
+    // Reads the logical size from the header without decoding the chunk list
+    public static long readSize(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (!hasMagic(data)) throw new IOException("Not a chunk manifest");
+        return data.readLong();
+    }
+
+    private static boolean hasMagic(DataInputStream data) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        int read = data.readNBytes(magic, 0, magic.length);
+        return read == MAGIC.length && Arrays.equals(magic, MAGIC);
+    }
+}
@@ -0,0 +1,611 @@
+package com.yuvraj.dropbox.storage;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.luben.zstd.Zstd;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Stores compressible files zstd-compressed and presents their original content (and size) to callers.
+ *
+ * A compressed file is a run of independently compressed frames of {@code frameSize} bytes of content each, so a
+ * read at any offset (a Range request, a delta copy) starts decompressing at the frame containing it instead of
+ * at the beginning of the file. Layout:
+ * <pre>
+ *   header   "DBXZST01" frameSize:int
+ *   frames   one zstd frame per frameSize bytes of content (the last one may be shorter)
+ *   trailer  compressedLength:int per frame, logicalSize:long, frameCount:int, "DBXZIDX1"
+ * </pre>
+ * Whether a file is worth it is decided as it is written: types that are compressed already (images, video,
+ * audio, archives) are stored as they are, and so is anything whose first frame doesn't shrink by at least
+ * {@code minRatio}. Content stored as it is gets an 8-byte "DBXRAW01" trailer, so it can still be sent
+ * verbatim from offset 0.
+ *
+ * Every stored file ends in one of the two trailers, written by this class after the user's bytes, so no upload
+ * can pass for a compressed file. Files written before compression was enabled are wrapped once, by
+ * {@link #wrapLegacyFiles()}, before the backend is used. The frame size is fixed once files are stored.
+ */
+public class CompressingStorageBackend extends DelegatingStorageBackend {
+
+    private static final byte[] MAGIC = "DBXZST01".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TRAILER_MAGIC = "DBXZIDX1".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] RAW_TRAILER = "DBXRAW01".getBytes(StandardCharsets.US_ASCII);
+    private static final int HEADER_SIZE = MAGIC.length + 4;
+    private static final int TRAILER_SIZE = 8 + 4 + TRAILER_MAGIC.length;
+    // smaller files aren't worth a header, a frame index and a decompression on every read
+    private static final int MIN_SIZE = 4096;
+
+    static final String COMPRESSION_FOLDER = ".compression";
+    // present once every file written before compression was enabled has been wrapped
+    private static final String WRAPPED_MARKER = COMPRESSION_FOLDER + "/.wrapped";
+    // the file being wrapped and the SHA-256 of its content before wrapping
+    private static final String WRAP_PROGRESS = COMPRESSION_FOLDER + "/.wrapping";
+
+    private static final List<String> PRECOMPRESSED_PREFIXES = List.of("image/", "video/", "audio/",
+            "application/vnd.openxmlformats-officedocument.", "application/vnd.oasis.opendocument.");
+    private static final Set<String> PRECOMPRESSED_TYPES = Set.of("application/zip", "application/gzip",
+            "application/x-gzip", "application/x-bzip2", "application/x-xz", "application/x-7z-compressed",
+            "application/x-rar-compressed", "application/zstd", "application/java-archive", "application/pdf",
+            "application/epub+zip");
+
+    private final int level;
+    private final int frameSize;
+    private final double minRatio;
+
+    // frame offsets of compressed files by key and etag (a rewrite changes the etag); RAW for the others
+    private final Cache<String, FrameIndex> indexes = Caffeine.newBuilder()
+            .maximumWeight(32L * 1024 * 1024)
+            .weigher((String key, FrameIndex index) -> 64 + index.offsets().length * 8)
+            .build();
+
+    private final Counter compressedFiles;
+    private final Counter storedFiles;
+    private final Counter logicalBytes;
+    private final Counter physicalBytes;
+    private final Counter savedBytes;
+
+    // Where each frame starts in the stored file; offsets[frameCount] is where the trailer starts
+    private record FrameIndex(int frameSize, long logicalSize, long[] offsets) {
+        int frameCount() {
+            return offsets.length - 1;
+        }
+    }
+
+    private static final FrameIndex RAW = new FrameIndex(0, -1, new long[0]);
+
+    private static final Logger log = LoggerFactory.getLogger(CompressingStorageBackend.class);
+
+    public CompressingStorageBackend(StorageBackend delegate, int level, int frameSize, double minRatio,
+                                     MeterRegistry meterRegistry) {
+        super(delegate);
+        this.level = level;
+        this.frameSize = frameSize;
+        this.minRatio = minRatio;
+        compressedFiles = Counter.builder("dropbox.compression.files").tag("outcome", "compressed")
+                .description("Files considered for compression").register(meterRegistry);
+        storedFiles = Counter.builder("dropbox.compression.files").tag("outcome", "stored")
+                .description("Files considered for compression").register(meterRegistry);
+        logicalBytes = Counter.builder("dropbox.compression.logical.bytes").baseUnit("bytes")
+                .description("Content bytes of files written compressed").register(meterRegistry);
+        physicalBytes = Counter.builder("dropbox.compression.physical.bytes").baseUnit("bytes")
+                .description("Stored bytes of files written compressed").register(meterRegistry);
+        savedBytes = Counter.builder("dropbox.compression.saved.bytes").baseUnit("bytes")
+                .description("Storage saved by compressing files on write").register(meterRegistry);
+    }
+
+    /**
+     * Give every file written before compression was enabled its trailer; resumes where an interrupted run
+     * stopped. Files compressed by an earlier version (valid containers with this frame size) are kept as they are.
+     */
+    public void wrapLegacyFiles() throws IOException {
+        if (delegate.stat(WRAPPED_MARKER).isPresent()) return;
+        String resumeKey = null;
+        String resumeEtag = null;
+        if (delegate.stat(WRAP_PROGRESS).isPresent()) {
+            try (InputStream in = delegate.read(WRAP_PROGRESS, 0, Long.MAX_VALUE)) {
+                String[] progress = new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\n", 2);
+                resumeKey = progress[0];
+                resumeEtag = progress[1];
+            }
+        }
+        List<StorageEntry> files = new ArrayList<>();
+        for (String folder : liveFolders()) {
+            try (Stream<StorageEntry> walk = delegate.walk(folder)) {
+                walk.filter(e -> !e.directory()).forEach(files::add);
+            }
+        }
+        files.sort(Comparator.comparing(StorageEntry::key));
+        int wrapped = 0;
+        for (StorageEntry file : files) {
+            if (resumeKey != null) {
+                int order = file.key().compareTo(resumeKey);
+                // the file the last run was rewriting has a new etag if the rewrite landed
+                if (order < 0 || (order == 0 && !resumeEtag.equals(file.etag()))) continue;
+            }
+            if (isCompressedContainer(file)) continue;
+            byte[] progress = (file.key() + "\n" + file.etag()).getBytes(StandardCharsets.UTF_8);
+            delegate.write(WRAP_PROGRESS, new ByteArrayInputStream(progress), progress.length);
+            try (InputStream in = delegate.read(file.key(), 0, Long.MAX_VALUE)) {
+                write(file.key(), in, file.size());
+            }
+            wrapped++;
+        }
+        delegate.write(WRAPPED_MARKER, InputStream.nullInputStream(), 0);
+        delegate.delete(WRAP_PROGRESS);
+        if (wrapped > 0) log.info("Wrapped {} files written before compression was enabled", wrapped);
+    }
+
+    // Only a file that passes every check of readFrameIndex; one compressed with another frame size stops the
+    // migration rather than be wrapped as content
+    private boolean isCompressedContainer(StorageEntry file) throws IOException {
+        if (file.size() < HEADER_SIZE + TRAILER_SIZE) return false;
+        try {
+            return readFrameIndex(file) != RAW;
+        } catch (FrameSizeMismatchException e) {
+            throw e;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private List<String> liveFolders() throws IOException {
+        List<String> folders = new ArrayList<>();
+        try (Stream<StorageEntry> roots = delegate.list("")) {
+            // user folders, but also internal areas such as .trash whose content is read back later
+            roots.filter(e -> e.directory() && !e.name().equals(COMPRESSION_FOLDER) && !e.name().equals(".staging"))
+                    .forEach(e -> folders.add(e.key()));
+        }
+        return folders;
+    }
+
+    /* ------------------ logical view ------------------ */
+
+    // How a stored file is laid out: RAW, or the frames of a compressed file; null for folders
+    private FrameIndex frameIndex(StorageEntry raw) throws IOException {
+        if (raw.directory()) return null;
+        String cacheKey = raw.key() + "\n" + raw.etag();
+        FrameIndex index = indexes.getIfPresent(cacheKey);
+        if (index == null) {
+            index = readFrameIndex(raw);
+            indexes.put(cacheKey, index);
+        }
+        return index;
+    }
+
+    private FrameIndex readFrameIndex(StorageEntry raw) throws IOException {
+        if (raw.size() < RAW_TRAILER.length) throw corrupt(raw);
+        byte[] tail;
+        try (InputStream in = delegate.read(raw.key(), raw.size() - RAW_TRAILER.length, RAW_TRAILER.length)) {
+            tail = in.readNBytes(RAW_TRAILER.length);
+        }
+        if (Arrays.equals(tail, RAW_TRAILER)) return RAW;
+        if (!Arrays.equals(tail, TRAILER_MAGIC) || raw.size() < HEADER_SIZE + TRAILER_SIZE) throw corrupt(raw);
+
+        try (DataInputStream in = new DataInputStream(delegate.read(raw.key(), 0, HEADER_SIZE))) {
+            if (!Arrays.equals(in.readNBytes(MAGIC.length), MAGIC)) throw corrupt(raw);
+            int storedFrameSize = in.readInt();
+            if (storedFrameSize != frameSize) {
+                throw new FrameSizeMismatchException(raw.key() + " was compressed with frames of " + storedFrameSize
+                        + " bytes; dropbox.storage.compression.frame-size is " + frameSize);
+            }
+        }
+        long logicalSize;
+        int frameCount;
+        try (DataInputStream in = new DataInputStream(delegate.read(raw.key(), raw.size() - TRAILER_SIZE, TRAILER_SIZE))) {
+            logicalSize = in.readLong();
+            frameCount = in.readInt();
+        }
+        long trailerStart = raw.size() - TRAILER_SIZE - 4L * frameCount;
+        if (logicalSize < 0 || frameCount < 0 || trailerStart < HEADER_SIZE
+                || frameCount != (logicalSize + frameSize - 1) / frameSize) {
+            throw corrupt(raw);
+        }
+        long[] offsets = new long[frameCount + 1];
+        offsets[0] = HEADER_SIZE;
+        int maxCompressed = (int) Zstd.compressBound(frameSize);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                delegate.read(raw.key(), trailerStart, 4L * frameCount)))) {
+            for (int i = 0; i < frameCount; i++) {
+                int compressedLength = in.readInt();
+                if (compressedLength <= 0 || compressedLength > maxCompressed) throw corrupt(raw);
+                offsets[i + 1] = offsets[i] + compressedLength;
+            }
+        }
+        if (offsets[frameCount] != trailerStart) throw corrupt(raw);
+        return new FrameIndex(frameSize, logicalSize, offsets);
+    }
+
+    private static class FrameSizeMismatchException extends IOException {
+        FrameSizeMismatchException(String message) {
+            super(message);
+        }
+    }
+
+    private static IOException corrupt(StorageEntry raw) {
+        return new IOException("Corrupt stored file " + raw.key());
+    }
+
+    // Report the content size of stored files; `raw` must be the delegate's entry
+    private StorageEntry logical(StorageEntry raw) {
+        try {
+            FrameIndex index = frameIndex(raw);
+            if (index == null) return raw;
+            return raw.withSize(index == RAW ? raw.size() - RAW_TRAILER.length : index.logicalSize());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Optional<StorageEntry> stat(String key) throws IOException {
+        Optional<StorageEntry> raw = delegate.stat(key);
+        return raw.isPresent() ? Optional.of(logical(raw.get())) : raw;
+    }
+
+    @Override
+    public Stream<StorageEntry> list(String folderKey) throws IOException {
+        return delegate.list(folderKey).map(this::logical);
+    }
+
+    @Override
+    public List<StorageEntry> listPage(String folderKey, SortField sort, boolean descending,
+                                       StorageEntry after, int limit) throws IOException {
+        // the delegate only knows stored sizes, so it can't order by size for us
+        return StorageBackend.sortedPage(list(folderKey), sort, descending, after, limit);
+    }
+
+    @Override
+    public Stream<StorageEntry> walk(String folderKey) throws IOException {
+        return delegate.walk(folderKey).map(this::logical);
+    }
+
+    @Override
+    public Optional<Path> localPath(String key) {
+        // a compressed file's bytes on disk are not its content, so it can't be sent verbatim; a raw one's are,
+        // up to the trailer, which callers never reach since they read at most the logical size
+        try {
+            Optional<StorageEntry> raw = delegate.stat(key);
+            if (raw.isPresent() && frameIndex(raw.get()) != RAW) return Optional.empty();
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+        return delegate.localPath(key);
+    }
+
+    /* ------------------ reads ------------------ */
+
+    @Override
+    public InputStream read(String key, long position, long length) throws IOException {
+        Optional<StorageEntry> raw = delegate.stat(key);
+        FrameIndex index = raw.isPresent() ? frameIndex(raw.get()) : null;
+        if (index == null) return delegate.read(key, position, length);
+        if (index == RAW) {
+            long logicalSize = raw.get().size() - RAW_TRAILER.length;
+            return delegate.read(key, position, Math.max(0, Math.min(length, logicalSize - position)));
+        }
+        InputStream in = new FrameInputStream(key, index, position);
+        return length == Long.MAX_VALUE ? in : new BoundedInputStream(in, length);
+    }
+
+    // Content from `position` on: decompresses the frame containing it, then each following frame in turn,
+    // reading the stored file sequentially from that frame's offset
+    private class FrameInputStream extends InputStream {
+        private final FrameIndex index;
+        private final InputStream stored;
+        private final byte[] compressed;
+        private final byte[] buffer;
+        private int frame;
+        private int bufferPos;
+        private int bufferLen;
+
+        FrameInputStream(String key, FrameIndex index, long position) throws IOException {
+            this.index = index;
+            this.frame = (int) Math.min(position / index.frameSize(), index.frameCount());
+            long[] offsets = index.offsets();
+            int frameCount = index.frameCount();
+            this.stored = frame == frameCount ? InputStream.nullInputStream()
+                    : delegate.read(key, offsets[frame], offsets[frameCount] - offsets[frame]);
+            this.compressed = new byte[(int) Zstd.compressBound(index.frameSize())];
+            this.buffer = new byte[index.frameSize()];
+            if (fill()) bufferPos = (int) Math.min(position - (long) (frame - 1) * index.frameSize(), bufferLen);
+        }
+
+        private boolean fill() throws IOException {
+            if (frame >= index.frameCount()) return false;
+            int compressedLength = (int) (index.offsets()[frame + 1] - index.offsets()[frame]);
+            if (stored.readNBytes(compressed, 0, compressedLength) != compressedLength) {
+                throw new EOFException("Compressed file is truncated");
+            }
+            long n = Zstd.decompressByteArray(buffer, 0, buffer.length, compressed, 0, compressedLength);
+            long expected = Math.min(index.frameSize(), index.logicalSize() - (long) frame * index.frameSize());
+            if (Zstd.isError(n) || n != expected) throw new IOException("Corrupt compressed frame " + frame);
+            bufferPos = 0;
+            bufferLen = (int) n;
+            frame++;
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            while (bufferPos >= bufferLen) {
+                if (!fill()) return -1;
+            }
+            int n = Math.min(len, bufferLen - bufferPos);
+            System.arraycopy(buffer, bufferPos, b, off, n);
+            bufferPos += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            stored.close();
+        }
+    }
+
+    /* ------------------ writes ------------------ */
+
+    @Override
+    public StorageEntry write(String key, InputStream in, long length) throws IOException {
+        if (!isCandidate(key, length)) return writeRaw(key, in, length);
+        byte[] first = in.readNBytes(frameSize);
+        byte[] sample = compressSample(first);
+        if (sample == null) {
+            storedFiles.increment();
+            return writeRaw(key, new SequenceInputStream(new ByteArrayInputStream(first), in), length);
+        }
+        return writeCompressed(key, first, sample, in, length);
+    }
+
+    private StorageEntry writeRaw(String key, InputStream in, long length) throws IOException {
+        StorageEntry raw = delegate.write(key, new Trailed(in, length), length < 0 ? -1 : length + RAW_TRAILER.length);
+        indexes.put(raw.key() + "\n" + raw.etag(), RAW);
+        return raw.withSize(raw.size() - RAW_TRAILER.length);
+    }
+
+    /* ------------------ multipart: the last part carries the raw trailer ------------------ */
+
+    // The upload id handed out is "<size>:<delegate's upload id>", so writePart can tell the last part
+    private static long uploadSize(String uploadId) {
+        return Long.parseLong(uploadId.substring(0, uploadId.indexOf(':')));
+    }
+
+    private static String delegateId(String uploadId) {
+        return uploadId.substring(uploadId.indexOf(':') + 1);
+    }
+
+    @Override
+    public String startMultipart(String key, long size) throws IOException {
+        return size + ":" + delegate.startMultipart(key, size + RAW_TRAILER.length);
+    }
+
+    @Override
+    public void writePart(String key, String uploadId, int partNumber, long offset, InputStream in, long length) throws IOException {
+        if (offset + length == uploadSize(uploadId)) {
+            delegate.writePart(key, delegateId(uploadId), partNumber, offset, new Trailed(in, length), length + RAW_TRAILER.length);
+        } else {
+            delegate.writePart(key, delegateId(uploadId), partNumber, offset, in, length);
+        }
+    }
+
+    @Override
+    public StorageEntry completeMultipart(String key, String uploadId, int partCount) throws IOException {
+        if (uploadSize(uploadId) == 0) {
+            // no parts, so nothing carried the trailer
+            delegate.abortMultipart(key, delegateId(uploadId));
+            return writeRaw(key, InputStream.nullInputStream(), 0);
+        }
+        StorageEntry raw = delegate.completeMultipart(key, delegateId(uploadId), partCount);
+        StorageEntry entry = logical(raw);
+        if (!isCandidate(key, entry.size())) {
+            storedFiles.increment();
+            return entry;
+        }
+        // parts are assembled as they came; if the content compresses, rewrite it in place
+        try (InputStream in = read(key, 0, Long.MAX_VALUE)) {
+            byte[] first = in.readNBytes(frameSize);
+            byte[] sample = compressSample(first);
+            if (sample == null) {
+                storedFiles.increment();
+                return entry;
+            }
+            return writeCompressed(key, first, sample, in, entry.size());
+        }
+    }
+
+    @Override
+    public void abortMultipart(String key, String uploadId) throws IOException {
+        delegate.abortMultipart(key, delegateId(uploadId));
+    }
+
+    private boolean isCandidate(String key, long length) {
+        if (length >= 0 && length < MIN_SIZE) return false;
+        String type = MediaTypeFactory.getMediaType(key).map(MediaType::toString).orElse("");
+        if (type.equals("image/svg+xml")) return true; // text, despite the prefix
+        return !PRECOMPRESSED_TYPES.contains(type) && PRECOMPRESSED_PREFIXES.stream().noneMatch(type::startsWith);
+    }
+
+    // The compressed first frame, or null when the content is too small or doesn't compress well enough
+    private byte[] compressSample(byte[] first) {
+        if (first.length < MIN_SIZE) return null;
+        byte[] compressed = new byte[(int) Zstd.compressBound(first.length)];
+        int n = compress(first, first.length, compressed);
+        return (double) first.length / n < minRatio ? null : Arrays.copyOf(compressed, n);
+    }
+
+    private int compress(byte[] src, int length, byte[] dst) {
+        long n = Zstd.compressByteArray(dst, 0, dst.length, src, 0, length, level);
+        if (Zstd.isError(n)) throw new IllegalStateException("zstd: " + Zstd.getErrorName(n));
+        return (int) n;
+    }
+
+    private StorageEntry writeCompressed(String key, byte[] first, byte[] firstCompressed, InputStream rest,
+                                         long length) throws IOException {
+        CompressedStream stream = new CompressedStream(first.length, firstCompressed, rest, length);
+        StorageEntry raw = delegate.write(key, stream, -1);
+        long logicalSize = stream.logicalSize();
+        indexes.put(raw.key() + "\n" + raw.etag(), stream.frameIndex());
+        compressedFiles.increment();
+        logicalBytes.increment(logicalSize);
+        physicalBytes.increment(raw.size());
+        savedBytes.increment(Math.max(0, logicalSize - raw.size()));
+        return raw.withSize(logicalSize);
+    }
+
+    // Content followed by the raw trailer. With a known length the content is cut there and must end there, so
+    // whatever the caller sends, the stored file ends with our trailer.
+    private static class Trailed extends InputStream {
+        private final InputStream content;
+        private final boolean bounded;
+        private long remaining;
+        private int trailerPos = -1; // -1 until the content is done
+
+        Trailed(InputStream content, long length) {
+            this.content = content;
+            this.bounded = length >= 0;
+            this.remaining = bounded ? length : Long.MAX_VALUE;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (trailerPos < 0) {
+                if (remaining > 0) {
+                    int n = content.read(b, off, (int) Math.min(len, remaining));
+                    if (n > 0) {
+                        if (bounded) remaining -= n;
+                        return n;
+                    }
+                    // a known length that came up short is left short; the backend rejects the write
+                    if (bounded) return -1;
+                } else if (content.read() >= 0) {
+                    throw new IOException("Content is longer than declared");
+                }
+                trailerPos = 0;
+            }
+            if (trailerPos == RAW_TRAILER.length) return -1;
+            int n = Math.min(len, RAW_TRAILER.length - trailerPos);
+            System.arraycopy(RAW_TRAILER, trailerPos, b, off, n);
+            trailerPos += n;
+            return n;
+        }
+    }
+
+    // The stored form of a file, compressed frame by frame as the backend reads it
+    private class CompressedStream extends InputStream {
+        private final InputStream source;
+        private final long declaredLength;
+        private final byte[] frameBuffer = new byte[frameSize];
+        private final byte[] compressBuffer = new byte[(int) Zstd.compressBound(frameSize)];
+        private int[] frameLengths = new int[16];
+        private int frameCount;
+        private long logicalSize;
+        private byte[] pending;
+        private int pendingPos;
+        private int pendingLen;
+        private boolean done;
+
+        CompressedStream(int firstLength, byte[] firstCompressed, InputStream source, long declaredLength) {
+            this.source = source;
+            this.declaredLength = declaredLength;
+            addFrame(firstLength, firstCompressed.length);
+            pending = ByteBuffer.allocate(HEADER_SIZE + firstCompressed.length)
+                    .put(MAGIC).putInt(frameSize).put(firstCompressed).array();
+            pendingLen = pending.length;
+        }
+
+        private void addFrame(int length, int compressedLength) {
+            if (frameCount == frameLengths.length) frameLengths = Arrays.copyOf(frameLengths, frameCount * 2);
+            frameLengths[frameCount++] = compressedLength;
+            logicalSize += length;
+        }
+
+        private boolean next() throws IOException {
+            if (done) return false;
+            int n = source.readNBytes(frameBuffer, 0, frameSize);
+            if (n > 0) {
+                int compressedLength = compress(frameBuffer, n, compressBuffer);
+                addFrame(n, compressedLength);
+                pending = compressBuffer;
+                pendingPos = 0;
+                pendingLen = compressedLength;
+                return true;
+            }
+            if (declaredLength >= 0 && logicalSize != declaredLength) {
+                throw new IOException("Expected " + declaredLength + " bytes but received " + logicalSize);
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(4 * frameCount + TRAILER_SIZE);
+            for (int i = 0; i < frameCount; i++) trailer.putInt(frameLengths[i]);
+            pending = trailer.putLong(logicalSize).putInt(frameCount).put(TRAILER_MAGIC).array();
+            pendingPos = 0;
+            pendingLen = pending.length;
+            done = true;
+            return true;
+        }
+
+        long logicalSize() {
+            return logicalSize;
+        }
+
+        FrameIndex frameIndex() {
+            long[] offsets = new long[frameCount + 1];
+            offsets[0] = HEADER_SIZE;
+            for (int i = 0; i < frameCount; i++) offsets[i + 1] = offsets[i] + frameLengths[i];
+            return new FrameIndex(frameSize, logicalSize, offsets);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            while (pendingPos >= pendingLen) {
+                if (!next()) return -1;
+            }
+            int n = Math.min(len, pendingLen - pendingPos);
+            System.arraycopy(pending, pendingPos, b, off, n);
+            pendingPos += n;
+            return n;
+        }
+    }
+}
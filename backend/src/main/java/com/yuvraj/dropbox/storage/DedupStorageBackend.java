@@ -0,0 +1,161 @@
+package com.yuvraj.dropbox.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Stores file content as chunk manifests (see {@link BlockStore}) and presents their logical content
+ * to callers. Every file below this layer is a manifest: writes and completed uploads are always chunked.
+ */
+public class DedupStorageBackend extends DelegatingStorageBackend {
+
+    private final BlockStore blockStore;
+
+    public DedupStorageBackend(StorageBackend delegate, BlockStore blockStore) {
+        super(delegate);
+        this.blockStore = blockStore;
+    }
+
+    // Report the logical size for manifests; `raw` must be the delegate's entry
+    private StorageEntry logical(StorageEntry raw) {
+        if (!blockStore.isManifest(raw)) return raw;
+        try {
+            return raw.withSize(blockStore.logicalSize(raw.key()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Optional<StorageEntry> stat(String key) throws IOException {
+        Optional<StorageEntry> raw = delegate.stat(key);
+        return raw.isPresent() ? Optional.of(logical(raw.get())) : raw;
+    }
+
+    @Override
+    public Stream<StorageEntry> list(String folderKey) throws IOException {
+        return delegate.list(folderKey).map(this::logical);
+    }
+
+    @Override
+    public List<StorageEntry> listPage(String folderKey, SortField sort, boolean descending,
+                                       StorageEntry after, int limit) throws IOException {
+        // the delegate only knows manifest sizes, so it can't order by size for us
+        return StorageBackend.sortedPage(list(folderKey), sort, descending, after, limit);
+    }
+
+    @Override
+    public Stream<StorageEntry> walk(String folderKey) throws IOException {
+        return delegate.walk(folderKey).map(this::logical);
+    }
+
+    @Override
+    public InputStream read(String key, long position, long length) throws IOException {
+        Optional<StorageEntry> raw = delegate.stat(key);
+        if (raw.isPresent() && blockStore.isManifest(raw.get())) {
+            return blockStore.open(raw.get(), position, length);
+        }
+        return delegate.read(key, position, length);
+    }
+
+    @Override
+    public StorageEntry write(String key, InputStream in, long length) throws IOException {
+        // the old manifest is read before it is overwritten, but only released once the new one is in place
+        ChunkManifest previous = blockStore.currentManifest(key);
+        blockStore.store(in, key, length);
+        if (previous != null) blockStore.release(previous);
+        return stat(key).orElseThrow(() -> new IOException("File vanished after write: " + key));
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Optional<StorageEntry> raw = delegate.stat(key);
+        if (raw.isEmpty()) return;
+        if (raw.get().directory()) {
+            List<StorageEntry> files = new ArrayList<>();
+            try (Stream<StorageEntry> walk = delegate.walk(key)) {
+                walk.filter(e -> !e.directory()).forEach(files::add);
+            }
+            files.forEach(blockStore::release);
+        } else {
+            blockStore.release(raw.get());
+        }
+        delegate.delete(key);
+    }
+
+    @Override
+    public void move(String fromKey, String toKey) throws IOException {
+        // manifests move as they are; the chunks they reference stay put
+        blockStore.protectDuringGc(fromKey);
+        delegate.move(fromKey, toKey);
+        blockStore.protectDuringGc(toKey);
+    }
+
+    @Override
+    public void copy(String fromKey, String toKey) throws IOException {
+        // a copy is more manifests over the same chunks; no content is read or chunked again
+        blockStore.protectDuringGc(fromKey);
+        delegate.copy(fromKey, toKey);
+        blockStore.retain(toKey);
+    }
+
+    @Override
+    public void snapshot(String fromKey, String toKey) throws IOException {
+        // a manifest copy already shares every chunk; a hard link to it would not be counted by retain/release
+        copy(fromKey, toKey);
+    }
+
+    @Override
+    public Optional<Path> localPath(String key) {
+        // a manifest's bytes on disk are not the file's content, so it can't be sent verbatim
+        return Optional.empty();
+    }
+
+    /* ------------------ multipart: assembled in staging, then chunked to the key ------------------ */
+
+    // The upload id handed out is "<staging name>:<delegate's upload id>"; the raw upload never sits at the key
+    private static String stagingKey(String uploadId) {
+        return BlockStore.STAGING_FOLDER + "/" + UUID.fromString(uploadId.substring(0, uploadId.indexOf(':'))) + ".upload";
+    }
+
+    private static String delegateId(String uploadId) {
+        return uploadId.substring(uploadId.indexOf(':') + 1);
+    }
+
+    @Override
+    public String startMultipart(String key, long size) throws IOException {
+        String name = UUID.randomUUID().toString();
+        return name + ":" + delegate.startMultipart(BlockStore.STAGING_FOLDER + "/" + name + ".upload", size);
+    }
+
+    @Override
+    public void writePart(String key, String uploadId, int partNumber, long offset, InputStream in, long length) throws IOException {
+        delegate.writePart(stagingKey(uploadId), delegateId(uploadId), partNumber, offset, in, length);
+    }
+
+    @Override
+    public StorageEntry completeMultipart(String key, String uploadId, int partCount) throws IOException {
+        String staged = stagingKey(uploadId);
+        delegate.completeMultipart(staged, delegateId(uploadId), partCount);
+        try {
+            ChunkManifest previous = blockStore.currentManifest(key);
+            blockStore.ingest(staged, key);
+            if (previous != null) blockStore.release(previous);
+        } finally {
+            delegate.delete(staged);
+        }
+        return stat(key).orElseThrow(() -> new IOException("File vanished after upload: " + key));
+    }
+
+    @Override
+    public void abortMultipart(String key, String uploadId) throws IOException {
+        delegate.abortMultipart(stagingKey(uploadId), delegateId(uploadId));
+    }
+}
@@ -0,0 +1,106 @@
+package com.yuvraj.dropbox.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Base for backends that transform content on its way to another backend; forwards everything by default.
+ */
+public abstract class DelegatingStorageBackend implements StorageBackend {
+
+    protected final StorageBackend delegate;
+
+    protected DelegatingStorageBackend(StorageBackend delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Optional<StorageEntry> stat(String key) throws IOException {
+        return delegate.stat(key);
+    }
+
+    @Override
+    public Stream<StorageEntry> list(String folderKey) throws IOException {
+        return delegate.list(folderKey);
+    }
+
+    @Override
+    public List<StorageEntry> listPage(String folderKey, SortField sort, boolean descending,
+                                       StorageEntry after, int limit) throws IOException {
+        return delegate.listPage(folderKey, sort, descending, after, limit);
+    }
+
+    @Override
+    public Stream<StorageEntry> walk(String folderKey) throws IOException {
+        return delegate.walk(folderKey);
+    }
+
+    @Override
+    public InputStream read(String key, long position, long length) throws IOException {
+        return delegate.read(key, position, length);
+    }
+
+    @Override
+    public StorageEntry write(String key, InputStream in, long length) throws IOException {
+        return delegate.write(key, in, length);
+    }
+
+    @Override
+    public void mkdirs(String key) throws IOException {
+        delegate.mkdirs(key);
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        delegate.delete(key);
+    }
+
+    @Override
+    public void move(String fromKey, String toKey) throws IOException {
+        delegate.move(fromKey, toKey);
+    }
+
+    @Override
+    public void copy(String fromKey, String toKey) throws IOException {
+        delegate.copy(fromKey, toKey);
+    }
+
+    @Override
+    public void snapshot(String fromKey, String toKey) throws IOException {
+        delegate.snapshot(fromKey, toKey);
+    }
+
+    @Override
+    public Optional<Path> localPath(String key) {
+        return delegate.localPath(key);
+    }
+
+    @Override
+    public long minimumPartSize() {
+        return delegate.minimumPartSize();
+    }
+
+    @Override
+    public String startMultipart(String key, long size) throws IOException {
+        return delegate.startMultipart(key, size);
+    }
+
+    @Override
+    public void writePart(String key, String uploadId, int partNumber, long offset, InputStream in, long length) throws IOException {
+        delegate.writePart(key, uploadId, partNumber, offset, in, length);
+    }
+
+    @Override
+    public StorageEntry completeMultipart(String key, String uploadId, int partCount) throws IOException {
+        return delegate.completeMultipart(key, uploadId, partCount);
+    }
+
+    @Override
+    public void abortMultipart(String key, String uploadId) throws IOException {
+        delegate.abortMultipart(key, uploadId);
+    }
+}
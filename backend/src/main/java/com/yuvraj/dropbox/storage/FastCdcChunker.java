@@ -0,0 +1,84 @@
+package com.yuvraj.dropbox.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.SplittableRandom;
+
+/**
+ * Content-defined chunking (FastCDC, Xia et al. 2016) with normalized chunking.
+ *
+ * Boundaries depend only on the bytes around them, so an insertion near the start of a file shifts
+ * one or two chunk boundaries instead of every fixed-size block after it.
+ */
+public class FastCdcChunker {
+
+    public static final int MIN_SIZE = 16 * 1024;
+    public static final int AVG_SIZE = 64 * 1024;
+    public static final int MAX_SIZE = 256 * 1024;
+
+    // Normalization level 2: a stricter mask before AVG_SIZE, a looser one after it.
+    // The gear hash shifts left, so the top bits cover the last 64 bytes of input.
+    private static final long MASK_S = -1L << (64 - 18);
+    private static final long MASK_L = -1L << (64 - 14);
+
+    // Fixed seed: chunk boundaries (and therefore dedup hits) must be stable across restarts
+    private static final long[] GEAR = new long[256];
+    static {
+        SplittableRandom random = new SplittableRandom(0x5eed_cdc_2016L);
+        for (int i = 0; i < GEAR.length; i++) GEAR[i] = random.nextLong();
+    }
+
+    @FunctionalInterface
+    public interface ChunkConsumer {
+        void accept(byte[] buffer, int offset, int length) throws IOException;
+    }
+
+    /**
+     * Split the stream into chunks. The consumer must copy or consume the bytes before returning,
+     * the buffer is reused.
+     */
+    public void split(InputStream in, ChunkConsumer consumer) throws IOException {
+        byte[] buffer = new byte[MAX_SIZE * 2];
+        int start = 0;
+        int end = 0;
+        boolean eof = false;
+        while (true) {
+            if (!eof && end - start < MAX_SIZE) {
+                // compact and refill so a full MAX_SIZE window is available when possible
+                if (start > 0) {
+                    System.arraycopy(buffer, start, buffer, 0, end - start);
+                    end -= start;
+                    start = 0;
+                }
+                while (end < buffer.length) {
+                    int read = in.read(buffer, end, buffer.length - end);
+                    if (read < 0) { eof = true; break; }
+                    end += read;
+                }
+            }
+            int available = end - start;
+            if (available == 0) return;
+            int cut = cutPoint(buffer, start, available);
+            consumer.accept(buffer, start, cut);
+            start += cut;
+        }
+    }
+
+    // Length of the next chunk starting at offset, given `length` bytes are available
+    static int cutPoint(byte[] buffer, int offset, int length) {
+        if (length <= MIN_SIZE) return length;
+        int limit = Math.min(length, MAX_SIZE);
+        int normal = Math.min(limit, AVG_SIZE);
+        long fingerprint = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i++) {
+            fingerprint = (fingerprint << 1) + GEAR[buffer[offset + i] & 0xff];
+            if ((fingerprint & MASK_S) == 0) return i;
+        }
+        for (; i < limit; i++) {
+            fingerprint = (fingerprint << 1) + GEAR[buffer[offset + i] & 0xff];
+            if ((fingerprint & MASK_L) == 0) return i;
+        }
+        return limit;
+    }
+}
@@ -0,0 +1,442 @@
+package com.yuvraj.dropbox.storage;
+
+import com.yuvraj.dropbox.model.FileEntry;
+import com.yuvraj.dropbox.model.IndexedOwner;
+import com.yuvraj.dropbox.repository.FileEntryRepository;
+import com.yuvraj.dropbox.repository.IndexedOwnerRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Answers {@code list} and {@code stat} for user folders from the {@link FileEntry} table instead of the
+ * backend, so listing a folder is one indexed query rather than a stat (or a LIST page) per child.
+ *
+ * Every write, mkdir, delete, move and completed upload that goes through this class updates the index, with
+ * upserts, so concurrent updates of one path never overwrite each other with a stale copy. A user's rows are
+ * built from the backend the first time the user is ever touched; an {@link IndexedOwner} row records that, so
+ * after a restart the index is served at once and an owner whose last scan is older than the reconcile interval
+ * is rescanned in the background. {@link #reconcile()} periodically rescans every user folder to pick up changes
+ * made behind our back. Internal dot-folders (.chunks, .staging, ...) and the storage root are never indexed.
+ */
+public class IndexedStorageBackend extends DelegatingStorageBackend {
+
+    private static final Logger log = LoggerFactory.getLogger(IndexedStorageBackend.class);
+
+    private static final int BATCH_SIZE = 500;
+
+    private final FileEntryRepository repository;
+    private final IndexedOwnerRepository indexedOwnerRepository;
+    private final long staleAfterMs;
+    // owners whose marker this instance has seen, so only the first touch after startup reads it
+    private final Set<String> indexedOwners = ConcurrentHashMap.newKeySet();
+    // one per owner, so one user's first-touch scan never waits for another's (or for the scheduled pass)
+    private final Map<String, ReentrantLock> reconcileLocks = new ConcurrentHashMap<>();
+    // owners queued for or in a background rescan
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    private final ExecutorService refresher = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "index-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public IndexedStorageBackend(StorageBackend delegate, FileEntryRepository repository,
+                                 IndexedOwnerRepository indexedOwnerRepository, long staleAfterMs) {
+        super(delegate);
+        this.repository = repository;
+        this.indexedOwnerRepository = indexedOwnerRepository;
+        this.staleAfterMs = staleAfterMs;
+    }
+
+    // A key inside a user folder, split into its index columns
+    private record IndexKey(String owner, String parent, String name) {
+        String path() {
+            return parent.isEmpty() ? name : parent + "/" + name;
+        }
+    }
+
+    // null for keys that aren't indexed: the root, dot-folders and the user folders themselves
+    private static IndexKey indexKey(String key) {
+        if (key == null || key.startsWith(".")) return null;
+        int first = key.indexOf('/');
+        if (first <= 0) return null;
+        int last = key.lastIndexOf('/');
+        return new IndexKey(key.substring(0, first),
+                last == first ? "" : key.substring(first + 1, last),
+                key.substring(last + 1));
+    }
+
+    private static StorageEntry toStorageEntry(FileEntry row) {
+        String key = row.getOwner() + "/" + (row.getParent().isEmpty() ? "" : row.getParent() + "/") + row.getName();
+        return new StorageEntry(key, row.isDirectory(), row.getSize(), row.getLastModified(), row.getEtag());
+    }
+
+    private static FileEntry newRow(IndexKey ik, StorageEntry entry, long indexedAt) {
+        FileEntry row = new FileEntry(ik.owner(), ik.parent(), ik.name());
+        row.setDirectory(entry.directory());
+        row.setSize(entry.size());
+        row.setLastModified(entry.lastModified());
+        row.setEtag(entry.etag());
+        row.setIndexedAt(indexedAt);
+        return row;
+    }
+
+    private int update(IndexKey ik, StorageEntry entry, long indexedAt) {
+        return repository.updateEntry(ik.owner(), ik.parent(), ik.name(), entry.directory(), entry.size(),
+                entry.lastModified(), entry.etag(), indexedAt);
+    }
+
+    /* ------------------ reads ------------------ */
+
+    @Override
+    public Optional<StorageEntry> stat(String key) throws IOException {
+        IndexKey ik = indexKey(key);
+        if (ik == null) return delegate.stat(key);
+        ensureIndexed(ik.owner());
+        Optional<FileEntry> row = repository.findByOwnerAndParentAndName(ik.owner(), ik.parent(), ik.name());
+        if (row.isPresent()) return row.map(IndexedStorageBackend::toStorageEntry);
+        // Not indexed; it may have appeared since the last reconciliation
+        Optional<StorageEntry> entry = delegate.stat(key);
+        entry.ifPresent(this::index);
+        return entry;
+    }
+
+    @Override
+    public Stream<StorageEntry> list(String folderKey) throws IOException {
+        if (folderKey == null || folderKey.isEmpty() || folderKey.startsWith(".")) {
+            return delegate.list(folderKey);
+        }
+        int slash = folderKey.indexOf('/');
+        String owner = slash < 0 ? folderKey : folderKey.substring(0, slash);
+        String parent = slash < 0 ? "" : folderKey.substring(slash + 1);
+        ensureIndexed(owner);
+        return repository.findByOwnerAndParentOrderByNameAsc(owner, parent).stream()
+                .map(IndexedStorageBackend::toStorageEntry);
+    }
+
+    @Override
+    public List<StorageEntry> listPage(String folderKey, SortField sort, boolean descending,
+                                       StorageEntry after, int limit) throws IOException {
+        if (folderKey == null || folderKey.isEmpty() || folderKey.startsWith(".")) {
+            return delegate.listPage(folderKey, sort, descending, after, limit);
+        }
+        int slash = folderKey.indexOf('/');
+        String owner = slash < 0 ? folderKey : folderKey.substring(0, slash);
+        String parent = slash < 0 ? "" : folderKey.substring(slash + 1);
+        ensureIndexed(owner);
+        String property = switch (sort) {
+            case NAME -> "name";
+            case SIZE -> "size";
+            case MODIFIED -> "lastModified";
+        };
+        Object afterValue = after == null ? null : switch (sort) {
+            case NAME -> after.name();
+            case SIZE -> after.size();
+            case MODIFIED -> after.lastModified();
+        };
+        return repository.findPage(owner, parent, property, descending, afterValue,
+                        after == null ? null : after.name(), limit).stream()
+                .map(IndexedStorageBackend::toStorageEntry)
+                .toList();
+    }
+
+    /* ------------------ writes keep the index in step ------------------ */
+
+    @Override
+    public StorageEntry write(String key, InputStream in, long length) throws IOException {
+        StorageEntry entry = delegate.write(key, in, length);
+        indexWithParents(entry);
+        return entry;
+    }
+
+    @Override
+    public void mkdirs(String key) throws IOException {
+        delegate.mkdirs(key);
+        if (indexKey(key) != null) {
+            Optional<StorageEntry> entry = delegate.stat(key);
+            if (entry.isPresent()) indexWithParents(entry.get());
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        delegate.delete(key);
+        IndexKey ik = indexKey(key);
+        if (ik == null) {
+            // a whole user folder (or the root) went away; rebuild on next use
+            if (key != null && !key.isEmpty() && !key.contains("/")) {
+                indexedOwners.remove(key);
+                indexedOwnerRepository.deleteById(key);
+            }
+            return;
+        }
+        deleteRows(ik);
+        refreshParent(ik);
+    }
+
+    @Override
+    public void move(String fromKey, String toKey) throws IOException {
+        delegate.move(fromKey, toKey);
+        IndexKey from = indexKey(fromKey);
+        if (from != null) {
+            deleteRows(from);
+            refreshParent(from);
+        }
+        indexTree(toKey);
+    }
+
+    @Override
+    public void copy(String fromKey, String toKey) throws IOException {
+        delegate.copy(fromKey, toKey);
+        indexTree(toKey);
+    }
+
+    // A file or folder that just appeared at key, with everything below it
+    private void indexTree(String key) throws IOException {
+        if (indexKey(key) == null) return;
+        Optional<StorageEntry> added = delegate.stat(key);
+        if (added.isEmpty()) return;
+        indexWithParents(added.get());
+        if (added.get().directory()) {
+            try (Stream<StorageEntry> walk = delegate.walk(key)) {
+                walk.forEach(this::index);
+            }
+        }
+    }
+
+    // One aggregate over the index instead of walking the subtree
+    @Override
+    public Usage usage(String key) throws IOException {
+        IndexKey ik = indexKey(key);
+        if (ik == null) return super.usage(key);
+        ensureIndexed(ik.owner());
+        String path = ik.path();
+        FileEntryRepository.TreeUsage usage =
+                repository.usageOfTree(ik.owner(), ik.parent(), ik.name(), path, escapeLike(path) + "/%");
+        return new Usage(usage.getBytes(), usage.getCount());
+    }
+
+    private void deleteRows(IndexKey ik) {
+        String path = ik.path();
+        repository.deleteTree(ik.owner(), ik.parent(), ik.name(), path, escapeLike(path) + "/%");
+    }
+
+    @Override
+    public StorageEntry completeMultipart(String key, String uploadId, int partCount) throws IOException {
+        StorageEntry entry = delegate.completeMultipart(key, uploadId, partCount);
+        indexWithParents(entry);
+        return entry;
+    }
+
+    private void indexWithParents(StorageEntry entry) throws IOException {
+        IndexKey ik = indexKey(entry.key());
+        if (ik == null) return;
+        index(entry);
+        // ancestors may have been created implicitly; the direct parent's mtime changed in any case
+        refreshParent(ik);
+        String parent = ik.parent();
+        while (parent.contains("/")) {
+            parent = parent.substring(0, parent.lastIndexOf('/'));
+            IndexKey ancestor = indexKey(ik.owner() + "/" + parent);
+            if (repository.findByOwnerAndParentAndName(ancestor.owner(), ancestor.parent(), ancestor.name()).isPresent()) {
+                break;
+            }
+            delegate.stat(ik.owner() + "/" + parent).ifPresent(this::index);
+        }
+    }
+
+    private void refreshParent(IndexKey ik) throws IOException {
+        if (ik.parent().isEmpty()) return;
+        delegate.stat(ik.owner() + "/" + ik.parent()).ifPresent(this::index);
+    }
+
+    // Upsert: update the row in place, else insert it; if a concurrent writer inserted the same path first,
+    // the insert fails on the unique index and the update is retried against that row
+    private void index(StorageEntry entry) {
+        IndexKey ik = indexKey(entry.key());
+        if (ik == null) return;
+        long now = System.currentTimeMillis();
+        if (update(ik, entry, now) > 0) return;
+        try {
+            repository.save(newRow(ik, entry, now));
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Concurrent index update of {}", entry.key());
+            update(ik, entry, now);
+        }
+    }
+
+    private static String escapeLike(String s) {
+        return s.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    /* ------------------ reconciliation ------------------ */
+
+    private void ensureIndexed(String owner) throws IOException {
+        if (indexedOwners.contains(owner)) return;
+        Optional<IndexedOwner> marker = indexedOwnerRepository.findById(owner);
+        if (marker.isPresent()) {
+            indexedOwners.add(owner);
+            if (marker.get().getReconciledAt() < System.currentTimeMillis() - staleAfterMs) refreshInBackground(owner);
+            return;
+        }
+        // never indexed: there are no rows to serve yet
+        ReentrantLock lock = reconcileLock(owner);
+        lock.lock();
+        try {
+            if (!indexedOwners.contains(owner)) reconcile(owner);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ReentrantLock reconcileLock(String owner) {
+        return reconcileLocks.computeIfAbsent(owner, o -> new ReentrantLock());
+    }
+
+    private void refreshInBackground(String owner) {
+        if (!refreshing.add(owner)) return;
+        refresher.execute(() -> {
+            ReentrantLock lock = reconcileLock(owner);
+            lock.lock();
+            try {
+                reconcile(owner);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Index reconciliation failed for {}", owner, e);
+            } finally {
+                lock.unlock();
+                refreshing.remove(owner);
+            }
+        });
+    }
+
+    /**
+     * Rescan every user folder and bring the index in line with the backend.
+     */
+    @Scheduled(initialDelayString = "${dropbox.storage.index.reconcile-interval-ms:3600000}",
+               fixedDelayString = "${dropbox.storage.index.reconcile-interval-ms:3600000}")
+    public void reconcile() {
+        List<String> owners = new ArrayList<>();
+        try (Stream<StorageEntry> roots = delegate.list("")) {
+            roots.filter(e -> e.directory() && !e.name().startsWith(".")).forEach(e -> owners.add(e.key()));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Index reconciliation failed", e);
+            return;
+        }
+        for (String owner : owners) {
+            ReentrantLock lock = reconcileLock(owner);
+            lock.lock();
+            try {
+                reconcile(owner);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Index reconciliation failed for {}", owner, e);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Diff one user's rows against a walk of their folder. Rows written after the walk started are newer
+    // than what the walk saw, so they are left alone: updates and deletes are conditional on indexedAt.
+    private void reconcile(String owner) throws IOException {
+        long started = System.currentTimeMillis();
+        Map<String, FileEntry> rows = new HashMap<>();
+        for (FileEntry row : repository.findByOwner(owner)) {
+            rows.put(row.getParent() + "/" + row.getName(), row);
+        }
+
+        List<FileEntry> inserts = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        Set<String> parents = new HashSet<>();
+        int added = 0;
+        int updated = 0;
+        try (Stream<StorageEntry> walk = delegate.walk(owner)) {
+            for (StorageEntry entry : (Iterable<StorageEntry>) walk::iterator) {
+                IndexKey ik = indexKey(entry.key());
+                if (ik == null) continue;
+                seen.add(ik.path());
+                if (!ik.parent().isEmpty()) parents.add(ik.parent());
+                FileEntry row = rows.remove(ik.parent() + "/" + ik.name());
+                if (row == null) {
+                    inserts.add(newRow(ik, entry, started));
+                    added++;
+                    if (inserts.size() == BATCH_SIZE) {
+                        insertBatch(inserts);
+                        inserts.clear();
+                    }
+                } else if (!matches(row, entry)) {
+                    updated += update(ik, entry, started);
+                }
+            }
+        }
+        // Object stores can have folders that only exist because objects live below them
+        for (String folder : parents) {
+            for (String path = folder; !seen.contains(path); ) {
+                seen.add(path);
+                IndexKey ik = indexKey(owner + "/" + path);
+                FileEntry row = rows.remove(ik.parent() + "/" + ik.name());
+                if (row == null) {
+                    inserts.add(newRow(ik, new StorageEntry(owner + "/" + path, true, 0, 0, null), started));
+                    added++;
+                }
+                if (ik.parent().isEmpty()) break;
+                path = ik.parent();
+            }
+        }
+        if (!inserts.isEmpty()) insertBatch(inserts);
+
+        List<Long> gone = rows.values().stream().map(FileEntry::getId).toList();
+        int removed = 0;
+        for (int i = 0; i < gone.size(); i += BATCH_SIZE) {
+            removed += repository.deleteStale(gone.subList(i, Math.min(i + BATCH_SIZE, gone.size())), started);
+        }
+
+        indexedOwners.add(owner);
+        try {
+            indexedOwnerRepository.save(new IndexedOwner(owner, started));
+        } catch (DataIntegrityViolationException e) {
+            // another instance marked the owner at the same moment
+        }
+        if (added + updated + removed > 0) {
+            log.info("Index of {} reconciled: {} added, {} updated, {} removed", owner, added, updated, removed);
+        }
+    }
+
+    private void insertBatch(List<FileEntry> batch) {
+        try {
+            repository.saveAll(batch);
+        } catch (DataIntegrityViolationException e) {
+            // raced with a live write; insert one by one so the rest still lands
+            for (FileEntry row : batch) {
+                try {
+                    repository.save(row);
+                } catch (DataIntegrityViolationException ignored) {
+                    // the live write wins
+                }
+            }
+        }
+    }
+
+    private static boolean matches(FileEntry row, StorageEntry entry) {
+        return row.isDirectory() == entry.directory()
+                && row.getSize() == entry.size()
+                && row.getLastModified() == entry.lastModified()
+                && Objects.equals(row.getEtag(), entry.etag());
+    }
+}
@@ -0,0 +1,265 @@
+package com.yuvraj.dropbox.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Keys map one-to-one onto files and folders under the upload dir. Writes go to {@code .staging} first
+ * and are renamed into place, so readers never observe a half-written file.
+ */
+public class LocalStorageBackend implements StorageBackend {
+
+    private final Path root;
+    private final Path staging;
+
+    public LocalStorageBackend(Path root) {
+        this.root = root.normalize();
+        this.staging = this.root.resolve(".staging");
+    }
+
+    private Path resolve(String key) {
+        Path path = (key == null || key.isEmpty()) ? root : root.resolve(key).normalize();
+        if (!path.startsWith(root)) {
+            throw new IllegalArgumentException("Key escapes storage root: " + key);
+        }
+        return path;
+    }
+
+    private String keyOf(Path path) {
+        return root.relativize(path).toString().replace('\\', '/');
+    }
+
+    private StorageEntry toEntry(Path path, BasicFileAttributes attrs) {
+        return new StorageEntry(keyOf(path), attrs.isDirectory(),
+                attrs.isDirectory() ? 0 : attrs.size(),
+                attrs.lastModifiedTime().toMillis(),
+                attrs.isDirectory() ? null : etag(attrs));
+    }
+
+    // Null when the path vanished between listing and stat
+    private StorageEntry toEntryOrNull(Path path) {
+        try {
+            return toEntry(path, Files.readAttributes(path, BasicFileAttributes.class));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Strong validator built from size, mtime (microseconds) and the file key (device + inode on Unix),
+     * so an in-place rewrite or a replace-by-rename both produce a new tag.
+     */
+    static String etag(BasicFileAttributes attrs) {
+        StringBuilder sb = new StringBuilder("\"")
+                .append(Long.toHexString(attrs.size()))
+                .append('-')
+                .append(Long.toHexString(attrs.lastModifiedTime().to(TimeUnit.MICROSECONDS)));
+        Object fileKey = attrs.fileKey();
+        if (fileKey != null) {
+            sb.append('-').append(Integer.toHexString(fileKey.hashCode()));
+        }
+        return sb.append('"').toString();
+    }
+
+    @Override
+    public Optional<StorageEntry> stat(String key) throws IOException {
+        Path path = resolve(key);
+        try {
+            return Optional.of(toEntry(path, Files.readAttributes(path, BasicFileAttributes.class)));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public Stream<StorageEntry> list(String folderKey) throws IOException {
+        // one stat per child instead of separate isDirectory/size/getLastModifiedTime calls
+        return Files.list(resolve(folderKey)).map(this::toEntryOrNull).filter(Objects::nonNull);
+    }
+
+    @Override
+    public Stream<StorageEntry> walk(String folderKey) throws IOException {
+        Path folder = resolve(folderKey);
+        return Files.walk(folder).filter(p -> !p.equals(folder)).map(this::toEntryOrNull).filter(Objects::nonNull);
+    }
+
+    @Override
+    public InputStream read(String key, long position, long length) throws IOException {
+        FileChannel channel = FileChannel.open(resolve(key), StandardOpenOption.READ);
+        channel.position(position);
+        InputStream in = Channels.newInputStream(channel);
+        return length == Long.MAX_VALUE ? in : new BoundedInputStream(in, length);
+    }
+
+    @Override
+    public StorageEntry write(String key, InputStream in, long length) throws IOException {
+        Path target = resolve(key);
+        Files.createDirectories(staging);
+        Path tmp = staging.resolve(UUID.randomUUID() + ".tmp");
+        try {
+            long copied = Files.copy(in, tmp);
+            if (length >= 0 && copied != length) {
+                throw new IOException("Expected " + length + " bytes but received " + copied);
+            }
+            Files.createDirectories(target.getParent());
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return toEntry(target, Files.readAttributes(target, BasicFileAttributes.class));
+    }
+
+    @Override
+    public void mkdirs(String key) throws IOException {
+        Files.createDirectories(resolve(key));
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Path target = resolve(key);
+        if (!Files.isDirectory(target, LinkOption.NOFOLLOW_LINKS)) {
+            Files.deleteIfExists(target);
+            return;
+        }
+        // post-order walk: no need to collect and sort every path first
+        Files.walkFileTree(target, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.deleteIfExists(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                if (exc != null) throw exc;
+                Files.deleteIfExists(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Override
+    public void move(String fromKey, String toKey) throws IOException {
+        Path target = resolve(toKey);
+        Files.createDirectories(target.getParent());
+        // one rename(2) however many files are below a folder
+        Files.move(resolve(fromKey), target, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public void copy(String fromKey, String toKey) throws IOException {
+        Path source = resolve(fromKey);
+        Path target = resolve(toKey);
+        Files.createDirectories(staging);
+        // built under .staging and renamed into place, so even a folder appears all at once
+        Path tmp = staging.resolve(UUID.randomUUID() + ".tmp");
+        try {
+            Files.walkFileTree(source, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    Files.createDirectory(tmp.resolve(source.relativize(dir).toString()));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    // copied in the kernel (copy_file_range), which shares extents on reflink filesystems (btrfs, XFS)
+                    Files.copy(file, tmp.resolve(source.relativize(file).toString()));
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            Files.createDirectories(target.getParent());
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            delete(keyOf(tmp));
+            throw e;
+        }
+    }
+
+    @Override
+    public void snapshot(String fromKey, String toKey) throws IOException {
+        Path source = resolve(fromKey);
+        Path target = resolve(toKey);
+        if (Files.isDirectory(source)) {
+            copy(fromKey, toKey);
+            return;
+        }
+        Files.createDirectories(target.getParent());
+        try {
+            // a hard link: every write replaces the file with a new inode, so the old one never changes under it
+            Files.createLink(target, source);
+        } catch (UnsupportedOperationException e) {
+            copy(fromKey, toKey);
+        }
+    }
+
+    @Override
+    public Optional<Path> localPath(String key) {
+        return Optional.of(resolve(key));
+    }
+
+    /* ------------------ multipart: one preallocated staging file, positional part writes ------------------ */
+
+    private Path stagingFile(String uploadId) {
+        UUID.fromString(uploadId); // ids are UUIDs; anything else could escape the staging folder
+        return staging.resolve(uploadId + ".data");
+    }
+
+    @Override
+    public String startMultipart(String key, long size) throws IOException {
+        String uploadId = UUID.randomUUID().toString();
+        Files.createDirectories(staging);
+        // Reserve the full length up front; parts are then pure positional writes, never appends
+        try (RandomAccessFile raf = new RandomAccessFile(stagingFile(uploadId).toFile(), "rw")) {
+            raf.setLength(size);
+        }
+        return uploadId;
+    }
+
+    @Override
+    public void writePart(String key, String uploadId, int partNumber, long offset, InputStream in, long length) throws IOException {
+        try (FileChannel channel = FileChannel.open(stagingFile(uploadId), StandardOpenOption.WRITE)) {
+            ReadableByteChannel source = Channels.newChannel(in);
+            long written = 0;
+            while (written < length) {
+                long n = channel.transferFrom(source, offset + written, length - written);
+                if (n <= 0) break; // client stopped sending
+                written += n;
+            }
+            if (written != length || in.read() != -1) {
+                throw new IOException("Part " + partNumber + " must be " + length + " bytes");
+            }
+        }
+    }
+
+    @Override
+    public StorageEntry completeMultipart(String key, String uploadId, int partCount) throws IOException {
+        Path data = stagingFile(uploadId);
+        Path target = resolve(key);
+        try (FileChannel channel = FileChannel.open(data, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.createDirectories(target.getParent());
+        Files.move(data, target, StandardCopyOption.ATOMIC_MOVE);
+        return toEntry(target, Files.readAttributes(target, BasicFileAttributes.class));
+    }
+
+    @Override
+    public void abortMultipart(String key, String uploadId) throws IOException {
+        Files.deleteIfExists(stagingFile(uploadId));
+    }
+}
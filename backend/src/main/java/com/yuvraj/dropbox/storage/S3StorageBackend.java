@@ -0,0 +1,334 @@
+package com.yuvraj.dropbox.storage;
+
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Object-store backend speaking the S3 API (AWS, MinIO, ...).
+ *
+ * Folders are zero-byte marker objects whose key ends in '/'; listing uses the '/' delimiter, so
+ * folders that only exist implicitly (because objects live below them) show up too. Reads are ranged
+ * GETs streamed straight from the HTTP response; large writes are multipart uploads fed one part
+ * buffer at a time.
+ */
+public class S3StorageBackend implements StorageBackend {
+
+    // S3 rejects parts smaller than 5 MiB (except the last one)
+    private static final long S3_MIN_PART_SIZE = 5L * 1024 * 1024;
+    private static final int DELETE_BATCH_SIZE = 1000;
+    // CopyObject handles objects up to 5 GiB; beyond that copies go part by part
+    private static final long MAX_SINGLE_COPY_SIZE = 5L * 1024 * 1024 * 1024;
+    private static final long COPY_PART_SIZE = 512L * 1024 * 1024;
+
+    private final S3Client s3;
+    private final String bucket;
+    private final int writePartSize;
+
+    public S3StorageBackend(S3Client s3, String bucket, int writePartSize) {
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.writePartSize = (int) Math.max(writePartSize, S3_MIN_PART_SIZE);
+    }
+
+    private static String folderPrefix(String key) {
+        return (key == null || key.isEmpty()) ? "" : key + "/";
+    }
+
+    private static StorageEntry fileEntry(S3Object object) {
+        return new StorageEntry(object.key(), false, object.size(), object.lastModified().toEpochMilli(), object.eTag());
+    }
+
+    private static StorageEntry folderEntry(String prefix) {
+        return new StorageEntry(prefix.substring(0, prefix.length() - 1), true, 0, 0, null);
+    }
+
+    private static IOException wrap(SdkException e) {
+        return new IOException(e.getMessage(), e);
+    }
+
+    @Override
+    public Optional<StorageEntry> stat(String key) throws IOException {
+        if (key == null || key.isEmpty()) {
+            return Optional.of(new StorageEntry("", true, 0, 0, null));
+        }
+        try {
+            HeadObjectResponse head = s3.headObject(HeadObjectRequest.builder().bucket(bucket).key(key).build());
+            return Optional.of(new StorageEntry(key, false, head.contentLength(),
+                    head.lastModified().toEpochMilli(), head.eTag()));
+        } catch (NoSuchKeyException e) {
+            // not a file; maybe a folder
+        } catch (S3Exception e) {
+            if (e.statusCode() != 404) throw wrap(e);
+        } catch (SdkException e) {
+            throw wrap(e);
+        }
+        try {
+            ListObjectsV2Response page = s3.listObjectsV2(ListObjectsV2Request.builder()
+                    .bucket(bucket).prefix(folderPrefix(key)).maxKeys(1).build());
+            if (page.keyCount() != null && page.keyCount() > 0) {
+                S3Object first = page.contents().get(0);
+                return Optional.of(new StorageEntry(key, true, 0, first.lastModified().toEpochMilli(), null));
+            }
+            return Optional.empty();
+        } catch (SdkException e) {
+            throw wrap(e);
+        }
+    }
+
+    @Override
+    public Stream<StorageEntry> list(String folderKey) throws IOException {
+        String prefix = folderPrefix(folderKey);
+        try {
+            // pages are fetched lazily as the stream is consumed
+            return s3.listObjectsV2Paginator(ListObjectsV2Request.builder()
+                            .bucket(bucket).prefix(prefix).delimiter("/").build())
+                    .stream()
+                    .flatMap(page -> Stream.concat(
+                            page.commonPrefixes().stream().map(p -> folderEntry(p.prefix())),
+                            page.contents().stream()
+                                    .filter(o -> !o.key().equals(prefix)) // the folder's own marker
+                                    .map(S3StorageBackend::fileEntry)));
+        } catch (SdkException e) {
+            throw wrap(e);
+        }
+    }
+
+    @Override
+    public Stream<StorageEntry> walk(String folderKey) throws IOException {
+        String prefix = folderPrefix(folderKey);
+        try {
+            return s3.listObjectsV2Paginator(ListObjectsV2Request.builder().bucket(bucket).prefix(prefix).build())
+                    .contents().stream()
+                    .filter(o -> !o.key().equals(prefix))
+                    .map(o -> o.key().endsWith("/") ? folderEntry(o.key()) : fileEntry(o));
+        } catch (SdkException e) {
+            throw wrap(e);
+        }
+    }
+
+    @Override
+    public InputStream read(String key, long position, long length) throws IOException {
+        if (length == 0) return InputStream.nullInputStream();
+        String range = length == Long.MAX_VALUE
+                ? "bytes=" + position + "-"
+                : "bytes=" + position + "-" + (position + length - 1);
+        try {
+            return s3.getObject(GetObjectRequest.builder().bucket(bucket).key(key).range(range).build());
+        } catch (SdkException e) {
+            throw wrap(e);
+        }
+    }
+
+    @Override
+    public StorageEntry write(String key, InputStream in, long length) throws IOException {
+        try {
+            if (length >= 0 && length <= writePartSize) {
+                s3.putObject(PutObjectRequest.builder().bucket(bucket).key(key).contentLength(length).build(),
+                        RequestBody.fromInputStream(in, length));
+            } else {
+                writeMultipart(key, in);
+            }
+        } catch (SdkException e) {
+            throw wrap(e);
+        }
+        return stat(key).orElseThrow(() -> new IOException("Object vanished after write: " + key));
+    }
+
+    // Unknown or large length: stream through a single reusable part buffer
+    private void writeMultipart(String key, InputStream in) throws IOException {
+        String uploadId = s3.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(bucket).key(key).build()).uploadId();
+        try {
+            List<CompletedPart> parts = new ArrayList<>();
+            byte[] buffer = new byte[writePartSize];
+            int partNumber = 1;
+            while (true) {
+                int filled = in.readNBytes(buffer, 0, buffer.length);
+                if (filled == 0 && partNumber > 1) break;
+                UploadPartResponse response = s3.uploadPart(UploadPartRequest.builder()
+                                .bucket(bucket).key(key).uploadId(uploadId)
+                                .partNumber(partNumber).contentLength((long) filled).build(),
+                        RequestBody.fromInputStream(new ByteArrayInputStream(buffer, 0, filled), filled));
+                parts.add(CompletedPart.builder().partNumber(partNumber).eTag(response.eTag()).build());
+                partNumber++;
+                if (filled < buffer.length) break;
+            }
+            s3.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucket).key(key).uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                    .build());
+        } catch (IOException | RuntimeException e) {
+            s3.abortMultipartUpload(AbortMultipartUploadRequest.builder().bucket(bucket).key(key).uploadId(uploadId).build());
+            throw e;
+        }
+    }
+
+    @Override
+    public void mkdirs(String key) throws IOException {
+        if (key == null || key.isEmpty()) return;
+        try {
+            s3.putObject(PutObjectRequest.builder().bucket(bucket).key(folderPrefix(key)).contentLength(0L).build(),
+                    RequestBody.empty());
+        } catch (SdkException e) {
+            throw wrap(e);
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        try {
+            s3.deleteObject(DeleteObjectRequest.builder().bucket(bucket).key(key).build());
+            List<ObjectIdentifier> batch = new ArrayList<>(DELETE_BATCH_SIZE);
+            for (S3Object object : s3.listObjectsV2Paginator(ListObjectsV2Request.builder()
+                    .bucket(bucket).prefix(folderPrefix(key)).build()).contents()) {
+                batch.add(ObjectIdentifier.builder().key(object.key()).build());
+                if (batch.size() == DELETE_BATCH_SIZE) {
+                    deleteBatch(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) deleteBatch(batch);
+        } catch (SdkException e) {
+            throw wrap(e);
+        }
+    }
+
+    @Override
+    public void move(String fromKey, String toKey) throws IOException {
+        // S3 has no rename: copy server-side (no bytes through us), then delete the source
+        copy(fromKey, toKey);
+        delete(fromKey);
+    }
+
+    @Override
+    public void copy(String fromKey, String toKey) throws IOException {
+        try {
+            Optional<StorageEntry> source = stat(fromKey);
+            if (source.isEmpty()) throw new NoSuchFileException(fromKey);
+            if (!source.get().directory()) {
+                copyObject(fromKey, toKey, source.get().size());
+                return;
+            }
+            String fromPrefix = folderPrefix(fromKey);
+            String toPrefix = folderPrefix(toKey);
+            mkdirs(toKey);
+            for (S3Object object : s3.listObjectsV2Paginator(ListObjectsV2Request.builder()
+                    .bucket(bucket).prefix(fromPrefix).build()).contents()) {
+                if (object.key().equals(fromPrefix)) continue;
+                copyObject(object.key(), toPrefix + object.key().substring(fromPrefix.length()), object.size());
+            }
+        } catch (SdkException e) {
+            throw wrap(e);
+        }
+    }
+
+    private void copyObject(String fromKey, String toKey, long size) {
+        if (size <= MAX_SINGLE_COPY_SIZE) {
+            s3.copyObject(CopyObjectRequest.builder()
+                    .sourceBucket(bucket).sourceKey(fromKey)
+                    .destinationBucket(bucket).destinationKey(toKey).build());
+            return;
+        }
+        String uploadId = s3.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(bucket).key(toKey).build()).uploadId();
+        try {
+            List<CompletedPart> parts = new ArrayList<>();
+            int partNumber = 1;
+            for (long offset = 0; offset < size; offset += COPY_PART_SIZE, partNumber++) {
+                long end = Math.min(offset + COPY_PART_SIZE, size) - 1;
+                UploadPartCopyResponse response = s3.uploadPartCopy(UploadPartCopyRequest.builder()
+                        .sourceBucket(bucket).sourceKey(fromKey)
+                        .destinationBucket(bucket).destinationKey(toKey)
+                        .uploadId(uploadId).partNumber(partNumber)
+                        .copySourceRange("bytes=" + offset + "-" + end).build());
+                parts.add(CompletedPart.builder().partNumber(partNumber).eTag(response.copyPartResult().eTag()).build());
+            }
+            s3.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucket).key(toKey).uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                    .build());
+        } catch (RuntimeException e) {
+            s3.abortMultipartUpload(AbortMultipartUploadRequest.builder().bucket(bucket).key(toKey).uploadId(uploadId).build());
+            throw e;
+        }
+    }
+
+    private void deleteBatch(List<ObjectIdentifier> batch) {
+        s3.deleteObjects(DeleteObjectsRequest.builder().bucket(bucket)
+                .delete(Delete.builder().objects(batch).quiet(true).build()).build());
+    }
+
+    /* ------------------ multipart: native S3 multipart upload ------------------ */
+
+    @Override
+    public long minimumPartSize() {
+        return S3_MIN_PART_SIZE;
+    }
+
+    @Override
+    public String startMultipart(String key, long size) throws IOException {
+        try {
+            return s3.createMultipartUpload(CreateMultipartUploadRequest.builder().bucket(bucket).key(key).build()).uploadId();
+        } catch (SdkException e) {
+            throw wrap(e);
+        }
+    }
+
+    @Override
+    public void writePart(String key, String uploadId, int partNumber, long offset, InputStream in, long length) throws IOException {
+        try {
+            s3.uploadPart(UploadPartRequest.builder()
+                            .bucket(bucket).key(key).uploadId(uploadId)
+                            .partNumber(partNumber).contentLength(length).build(),
+                    RequestBody.fromInputStream(in, length));
+        } catch (SdkException e) {
+            throw wrap(e);
+        }
+    }
+
+    @Override
+    public StorageEntry completeMultipart(String key, String uploadId, int partCount) throws IOException {
+        try {
+            // S3 remembers every part's ETag, so the caller never has to
+            List<CompletedPart> parts = new ArrayList<>();
+            for (Part part : s3.listPartsPaginator(ListPartsRequest.builder()
+                    .bucket(bucket).key(key).uploadId(uploadId).build()).parts()) {
+                parts.add(CompletedPart.builder().partNumber(part.partNumber()).eTag(part.eTag()).build());
+            }
+            if (parts.size() != partCount) {
+                throw new IOException("Expected " + partCount + " parts but the store has " + parts.size());
+            }
+            parts.sort(Comparator.comparing(CompletedPart::partNumber));
+            s3.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucket).key(key).uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                    .build());
+        } catch (SdkException e) {
+            throw wrap(e);
+        }
+        return stat(key).orElseThrow(() -> new IOException("Object vanished after upload: " + key));
+    }
+
+    @Override
+    public void abortMultipart(String key, String uploadId) throws IOException {
+        try {
+            s3.abortMultipartUpload(AbortMultipartUploadRequest.builder().bucket(bucket).key(key).uploadId(uploadId).build());
+        } catch (NoSuchUploadException e) {
+            // already gone
+        } catch (SdkException e) {
+            throw wrap(e);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.yuvraj.dropbox.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Where file content and the folder tree live.
+ *
+ * Keys are '/'-separated paths relative to the storage root, e.g. {@code "<user uuid>/docs/a.txt"};
+ * the empty key is the root. Callers validate keys (no "..", no leading '/') before they get here.
+ * Reads and writes are streams end to end: no implementation may buffer a whole object in memory.
+ */
+public interface StorageBackend {
+
+    /** Metadata of a file or folder. {@code size} is 0 for folders. */
+    record StorageEntry(String key, boolean directory, long size, long lastModified, String etag) {
+        public String name() {
+            int slash = key.lastIndexOf('/');
+            return slash < 0 ? key : key.substring(slash + 1);
+        }
+
+        public StorageEntry withSize(long newSize) {
+            return new StorageEntry(key, directory, newSize, lastModified, etag);
+        }
+    }
+
+    /** What a subtree holds: total bytes of its files and how many files and folders it has (itself included). */
+    record Usage(long bytes, long count) {}
+
+    /** Orders for {@link #listPage}; ties are broken by name. */
+    enum SortField {
+        NAME(Comparator.comparing(StorageEntry::name)),
+        SIZE(Comparator.comparingLong(StorageEntry::size).thenComparing(StorageEntry::name)),
+        MODIFIED(Comparator.comparingLong(StorageEntry::lastModified).thenComparing(StorageEntry::name));
+
+        private final Comparator<StorageEntry> ascending;
+
+        SortField(Comparator<StorageEntry> ascending) {
+            this.ascending = ascending;
+        }
+
+        public Comparator<StorageEntry> comparator(boolean descending) {
+            return descending ? ascending.reversed() : ascending;
+        }
+    }
+
+    Optional<StorageEntry> stat(String key) throws IOException;
+
+    /** Direct children of a folder. The stream must be closed. */
+    Stream<StorageEntry> list(String folderKey) throws IOException;
+
+    /**
+     * Up to {@code limit} children of a folder in the given order, starting after {@code after} (the last
+     * entry of the previous page, or null for the first page). Only its name, size and lastModified are used.
+     */
+    default List<StorageEntry> listPage(String folderKey, SortField sort, boolean descending,
+                                        StorageEntry after, int limit) throws IOException {
+        return sortedPage(list(folderKey), sort, descending, after, limit);
+    }
+
+    /** Page of an unordered listing; closes {@code children}. */
+    static List<StorageEntry> sortedPage(Stream<StorageEntry> children, SortField sort, boolean descending,
+                                         StorageEntry after, int limit) {
+        Comparator<StorageEntry> order = sort.comparator(descending);
+        try (children) {
+            return children
+                    .filter(e -> after == null || order.compare(e, after) > 0)
+                    .sorted(order)
+                    .limit(limit)
+                    .toList();
+        }
+    }
+
+    /** Every file and folder below a folder (not the folder itself). The stream must be closed. */
+    Stream<StorageEntry> walk(String folderKey) throws IOException;
+
+    /** {@link Usage} of a file, or of a folder and everything below it; zero for missing keys. */
+    default Usage usage(String key) throws IOException {
+        Optional<StorageEntry> entry = stat(key);
+        if (entry.isEmpty()) return new Usage(0, 0);
+        if (!entry.get().directory()) return new Usage(entry.get().size(), 1);
+        long bytes = 0;
+        long count = 1;
+        try (Stream<StorageEntry> walk = walk(key)) {
+            for (StorageEntry e : (Iterable<StorageEntry>) walk::iterator) {
+                count++;
+                if (!e.directory()) bytes += e.size();
+            }
+        }
+        return new Usage(bytes, count);
+    }
+
+    /** {@code length} bytes starting at {@code position}; {@code Long.MAX_VALUE} reads to the end. */
+    InputStream read(String key, long position, long length) throws IOException;
+
+    /** Create or atomically replace a file. {@code length} is -1 when unknown. */
+    StorageEntry write(String key, InputStream in, long length) throws IOException;
+
+    void mkdirs(String key) throws IOException;
+
+    /** Delete a file, or a folder and everything below it. Missing keys are ignored. */
+    void delete(String key) throws IOException;
+
+    /**
+     * Rename a file or folder to a key that doesn't exist yet, creating its parent folders. A single atomic
+     * rename where the backend has one (local filesystem); otherwise a copy of everything below it followed by a delete.
+     */
+    void move(String fromKey, String toKey) throws IOException;
+
+    /** Copy a file or folder to a key that doesn't exist yet, creating its parent folders. */
+    void copy(String fromKey, String toKey) throws IOException;
+
+    /**
+     * Copy a file to a key that doesn't exist yet and will never be written again (a kept version), as cheaply
+     * as the backend can: sharing the source's storage instead of duplicating it where that's possible.
+     */
+    default void snapshot(String fromKey, String toKey) throws IOException {
+        copy(fromKey, toKey);
+    }
+
+    /** The file on the local filesystem holding this key's bytes verbatim, if there is one (enables sendfile). */
+    default Optional<Path> localPath(String key) {
+        return Optional.empty();
+    }
+
+    /* ------------------ multipart uploads (parts numbered from 1) ------------------ */
+
+    /** Smallest part size the backend accepts for every part but the last. */
+    default long minimumPartSize() {
+        return 1;
+    }
+
+    /** Start a multipart upload of {@code size} bytes to {@code key}; returns the backend's upload id. */
+    String startMultipart(String key, long size) throws IOException;
+
+    void writePart(String key, String uploadId, int partNumber, long offset, InputStream in, long length) throws IOException;
+
+    /** Assemble the parts into {@code key}; the file appears atomically. */
+    StorageEntry completeMultipart(String key, String uploadId, int partCount) throws IOException;
+
+    void abortMultipart(String key, String uploadId) throws IOException;
+}
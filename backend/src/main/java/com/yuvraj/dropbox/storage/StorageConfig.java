@@ -0,0 +1,133 @@
+package com.yuvraj.dropbox.storage;
+
+import com.yuvraj.dropbox.repository.FileEntryRepository;
+import com.yuvraj.dropbox.repository.IndexedOwnerRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+import software.amazon.awssdk.services.s3.model.CreateBucketRequest;
+import software.amazon.awssdk.services.s3.model.HeadBucketRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchBucketException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Paths;
+
+/**
+ * Wires the storage stack: a base backend ({@code dropbox.storage.backend=local|s3}), optionally wrapped
+ * by the dedup or the compression layer, with the metadata index on top. Everything else injects the primary
+ * {@link StorageBackend}.
+ */
+@Configuration
+public class StorageConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(StorageConfig.class);
+
+    @Bean
+    @ConditionalOnProperty(name = "dropbox.storage.backend", havingValue = "s3")
+    public S3Client s3Client(@Value("${dropbox.storage.s3.endpoint:}") String endpoint,
+                             @Value("${dropbox.storage.s3.region:us-east-1}") String region,
+                             @Value("${dropbox.storage.s3.access-key:}") String accessKey,
+                             @Value("${dropbox.storage.s3.secret-key:}") String secretKey,
+                             @Value("${dropbox.storage.s3.path-style:true}") boolean pathStyle) {
+        S3ClientBuilder builder = S3Client.builder()
+                .region(Region.of(region))
+                .forcePathStyle(pathStyle); // MinIO and most self-hosted stores need path-style URLs
+        if (!endpoint.isBlank()) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        builder.credentialsProvider(accessKey.isBlank()
+                ? DefaultCredentialsProvider.create()
+                : StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey)));
+        return builder.build();
+    }
+
+    @Bean
+    public StorageBackend baseStorageBackend(@Value("${dropbox.storage.backend:local}") String backend,
+                                             @Value("${dropbox.upload.dir}") String uploadDir,
+                                             @Value("${dropbox.storage.s3.bucket:dropbox}") String bucket,
+                                             @Value("${dropbox.storage.s3.part-size:8388608}") int partSize,
+                                             ObjectProvider<S3Client> s3Client) {
+        if ("s3".equals(backend)) {
+            S3Client s3 = s3Client.getObject();
+            ensureBucket(s3, bucket);
+            log.info("Using S3 storage backend, bucket {}", bucket);
+            return new S3StorageBackend(s3, bucket, partSize);
+        }
+        return new LocalStorageBackend(Paths.get(uploadDir));
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "dropbox.storage.dedup.enabled", havingValue = "true")
+    public BlockStore blockStore(@Qualifier("baseStorageBackend") StorageBackend base, MeterRegistry meterRegistry) {
+        BlockStore blockStore = new BlockStore(base, meterRegistry);
+        try {
+            // every file must be a manifest before the first request is served
+            blockStore.migratePlainFiles();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to chunk files written before dedup was enabled", e);
+        }
+        return blockStore;
+    }
+
+    @Bean
+    @Primary
+    public StorageBackend storageBackend(@Qualifier("baseStorageBackend") StorageBackend base,
+                                         ObjectProvider<BlockStore> blockStore,
+                                         FileEntryRepository fileEntryRepository,
+                                         IndexedOwnerRepository indexedOwnerRepository,
+                                         MeterRegistry meterRegistry,
+                                         @Value("${dropbox.storage.index.enabled:true}") boolean indexEnabled,
+                                         @Value("${dropbox.storage.index.reconcile-interval-ms:3600000}") long indexReconcileIntervalMs,
+                                         @Value("${dropbox.storage.compression.enabled:false}") boolean compressionEnabled,
+                                         @Value("${dropbox.storage.compression.level:3}") int compressionLevel,
+                                         @Value("${dropbox.storage.compression.frame-size:262144}") int frameSize,
+                                         @Value("${dropbox.storage.compression.min-ratio:1.2}") double minRatio) {
+        StorageBackend storage = base;
+        BlockStore chunks = blockStore.getIfAvailable();
+        if (chunks != null) {
+            storage = new DedupStorageBackend(storage, chunks);
+            // chunks are written to the base backend directly, so there is nothing for the layer to compress
+            if (compressionEnabled) log.warn("dropbox.storage.compression.enabled is ignored while dedup is enabled");
+        } else if (compressionEnabled) {
+            CompressingStorageBackend compressing =
+                    new CompressingStorageBackend(storage, compressionLevel, frameSize, minRatio, meterRegistry);
+            try {
+                // every file must end in a trailer before the first request is served
+                compressing.wrapLegacyFiles();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to wrap files written before compression was enabled", e);
+            }
+            storage = compressing;
+        }
+        // outermost, so the index records logical sizes
+        if (indexEnabled) {
+            storage = new IndexedStorageBackend(storage, fileEntryRepository, indexedOwnerRepository,
+                    indexReconcileIntervalMs);
+        }
+        return storage;
+    }
+
+    // Convenience for local MinIO / test setups: create the bucket on first start
+    private static void ensureBucket(S3Client s3, String bucket) {
+        try {
+            s3.headBucket(HeadBucketRequest.builder().bucket(bucket).build());
+        } catch (NoSuchBucketException e) {
+            s3.createBucket(CreateBucketRequest.builder().bucket(bucket).build());
+        }
+    }
+}
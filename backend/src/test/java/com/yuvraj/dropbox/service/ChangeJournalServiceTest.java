@@ -0,0 +1,58 @@
+package com.yuvraj.dropbox.service;
+
+import com.yuvraj.dropbox.service.ChangeJournalService.Cursor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ChangeJournalServiceTest {
+
+    private ChangeJournalService journal;
+
+    @BeforeEach
+    void setUp() {
+        journal = new ChangeJournalService();
+        ReflectionTestUtils.setField(journal, "retentionDays", 30L);
+    }
+
+    private HttpStatusCode rejection(String cursor) {
+        return assertThrows(ResponseStatusException.class, () -> journal.decodeCursor(cursor)).getStatusCode();
+    }
+
+    @Test
+    void cursorRoundTripsPositionAndIssueTime() {
+        long now = System.currentTimeMillis();
+        Cursor decoded = journal.decodeCursor(ChangeJournalService.encodeCursor(42, now));
+
+        assertEquals(42, decoded.position());
+        assertEquals(now, decoded.issuedAt());
+    }
+
+    @Test
+    void missingOrMalformedCursorsAreBadRequests() {
+        assertEquals(HttpStatus.BAD_REQUEST, rejection(null));
+        assertEquals(HttpStatus.BAD_REQUEST, rejection(" "));
+        assertEquals(HttpStatus.BAD_REQUEST, rejection("not base64!"));
+        assertEquals(HttpStatus.BAD_REQUEST,
+                rejection(Base64.getUrlEncoder().encodeToString("42".getBytes(StandardCharsets.UTF_8))));
+        assertEquals(HttpStatus.BAD_REQUEST,
+                rejection(Base64.getUrlEncoder().encodeToString("x\n1".getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    void cursorsOlderThanTheRetentionAreGone() {
+        long issuedAt = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(31);
+
+        assertEquals(HttpStatus.GONE, rejection(ChangeJournalService.encodeCursor(42, issuedAt)));
+    }
+}
@@ -0,0 +1,138 @@
+package com.yuvraj.dropbox.service;
+
+import com.yuvraj.dropbox.storage.LocalStorageBackend;
+import com.yuvraj.dropbox.storage.StorageBackend;
+import com.yuvraj.dropbox.storage.StorageBackend.StorageEntry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeltaUploadServiceTest {
+
+    private static final byte[] BASE = "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.US_ASCII);
+
+    @TempDir
+    Path root;
+
+    private StorageBackend storage;
+    private DeltaUploadService service;
+    private StorageEntry base;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        storage = new LocalStorageBackend(root);
+        service = new DeltaUploadService();
+        ReflectionTestUtils.setField(service, "storage", storage);
+        base = storage.write("user/file.txt", new ByteArrayInputStream(BASE), BASE.length);
+    }
+
+    // Builds a delta stream instruction by instruction
+    private static class Delta {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        Delta copy(long offset, long length) throws IOException {
+            out.writeByte('C');
+            out.writeLong(offset);
+            out.writeLong(length);
+            return this;
+        }
+
+        Delta literal(String text) throws IOException {
+            byte[] data = text.getBytes(StandardCharsets.US_ASCII);
+            out.writeByte('L');
+            out.writeInt(data.length);
+            out.write(data);
+            return this;
+        }
+
+        Delta end() throws IOException {
+            out.writeByte('E');
+            return this;
+        }
+
+        InputStream stream() {
+            return new ByteArrayInputStream(bytes.toByteArray());
+        }
+    }
+
+    private byte[] content() throws IOException {
+        try (InputStream in = storage.read("user/file.txt", 0, Long.MAX_VALUE)) {
+            return in.readAllBytes();
+        }
+    }
+
+    private void assertRejected(Delta delta, long newSize) throws IOException {
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> service.apply(base, base.key(), delta.stream(), newSize));
+        assertEquals(HttpStatus.BAD_REQUEST, e.getStatusCode());
+        assertArrayEquals(BASE, content(), "the current version must survive a rejected delta");
+    }
+
+    @Test
+    void copiesAndLiteralsAreAssembledInOrder() throws IOException {
+        // "The quick red fox jumps over the lazy dog!"
+        Delta delta = new Delta().copy(0, 10).literal("red").copy(15, 28).literal("!").end();
+        StorageEntry updated = service.apply(base, base.key(), delta.stream(), 42);
+        assertEquals(42, updated.size());
+        assertEquals("The quick red fox jumps over the lazy dog!", new String(content(), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void copiesMayRepeatAndGoBackwards() throws IOException {
+        Delta delta = new Delta().copy(40, 3).copy(40, 3).copy(4, 5).end();
+        service.apply(base, base.key(), delta.stream(), 11);
+        assertEquals("dogdogquick", new String(content(), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void aDeltaMustComeToExactlyTheDeclaredSize() throws IOException {
+        assertRejected(new Delta().copy(0, 10).end(), 11);
+        assertRejected(new Delta().copy(0, 10).end(), 9);
+        assertRejected(new Delta().copy(0, 10).literal("x").end(), 10);
+    }
+
+    @Test
+    void malformedDeltasAreRejected() throws IOException {
+        assertRejected(new Delta().copy(40, 4).end(), 4);          // past the end of the current version
+        assertRejected(new Delta().copy(-1, 2).end(), 2);
+        assertRejected(new Delta().copy(0, 3), 3);                 // no end instruction
+        Delta trailing = new Delta().copy(0, 3).end().literal("x");
+        assertRejected(trailing, 3);
+        Delta unknown = new Delta();
+        unknown.out.writeByte('X');
+        assertRejected(unknown, 1);
+    }
+
+    @Test
+    void weakChecksumIsRsyncs() {
+        byte[] data = {1, 2, 3};
+        // a = 1 + 2 + 3, b = 3*1 + 2*2 + 1*3
+        assertEquals(6 | (10 << 16), DeltaUploadService.weakChecksum(data, 3));
+    }
+
+    @Test
+    void blockSizeIsRaisedToCapTheBlockCount() {
+        long hundredGiB = 100L * 1024 * 1024 * 1024;
+        int blockSize = DeltaUploadService.effectiveBlockSize(hundredGiB, DeltaUploadService.MIN_BLOCK_SIZE);
+        assertTrue((hundredGiB + blockSize - 1) / blockSize <= DeltaUploadService.MAX_BLOCKS);
+        assertEquals(128 * 1024, blockSize);
+        assertEquals(4096, DeltaUploadService.effectiveBlockSize(1024 * 1024, 4096));
+    }
+}
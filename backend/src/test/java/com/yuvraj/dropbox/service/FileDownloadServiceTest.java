@@ -0,0 +1,51 @@
+package com.yuvraj.dropbox.service;
+
+import com.yuvraj.dropbox.service.FileDownloadService.Range;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileDownloadServiceTest {
+
+    @Test
+    void absentOrMalformedHeaderServesTheWholeFile() {
+        assertNull(FileDownloadService.parseRanges(null, 100));
+        assertNull(FileDownloadService.parseRanges("bytes=abc", 100));
+        assertNull(FileDownloadService.parseRanges("items=0-5", 100));
+    }
+
+    @Test
+    void singleRanges() {
+        assertEquals(List.of(new Range(0, 9)), FileDownloadService.parseRanges("bytes=0-9", 100));
+        assertEquals(List.of(new Range(90, 99)), FileDownloadService.parseRanges("bytes=90-", 100));
+        assertEquals(List.of(new Range(80, 99)), FileDownloadService.parseRanges("bytes=-20", 100));
+        // clamped to the end of the file
+        assertEquals(List.of(new Range(50, 99)), FileDownloadService.parseRanges("bytes=50-500", 100));
+        assertEquals(List.of(new Range(0, 99)), FileDownloadService.parseRanges("bytes=-500", 100));
+    }
+
+    @Test
+    void overlappingAndAdjacentRangesAreCoalesced() {
+        assertEquals(List.of(new Range(0, 29)), FileDownloadService.parseRanges("bytes=10-29,0-9", 100));
+        assertEquals(List.of(new Range(0, 20)), FileDownloadService.parseRanges("bytes=0-20,5-10,0-20", 100));
+        assertEquals(List.of(new Range(0, 9), new Range(50, 59)),
+                FileDownloadService.parseRanges("bytes=50-59,0-9", 100));
+    }
+
+    @Test
+    void unsatisfiableRangesAreDropped() {
+        assertTrue(FileDownloadService.parseRanges("bytes=100-", 100).isEmpty());
+        assertEquals(List.of(new Range(0, 9)), FileDownloadService.parseRanges("bytes=200-300,0-9", 100));
+    }
+
+    @Test
+    void nothingInAnEmptyFileIsSatisfiable() {
+        assertTrue(FileDownloadService.parseRanges("bytes=-10", 0).isEmpty());
+        assertTrue(FileDownloadService.parseRanges("bytes=0-", 0).isEmpty());
+        assertTrue(FileDownloadService.parseRanges("bytes=0-0", 0).isEmpty());
+    }
+}
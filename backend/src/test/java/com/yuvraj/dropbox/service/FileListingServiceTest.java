@@ -0,0 +1,56 @@
+package com.yuvraj.dropbox.service;
+
+import com.yuvraj.dropbox.service.FileListingService.Cursor;
+import com.yuvraj.dropbox.storage.StorageBackend.SortField;
+import com.yuvraj.dropbox.storage.StorageBackend.StorageEntry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FileListingServiceTest {
+
+    private static void assertInvalid(String cursor) {
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> FileListingService.decodeCursor(cursor, "alice/docs"));
+        assertEquals(HttpStatus.BAD_REQUEST, e.getStatusCode());
+    }
+
+    @Test
+    void cursorRoundTripsTheSortAndLastEntry() {
+        StorageEntry last = new StorageEntry("alice/docs/report.pdf", false, 1234, 1700000000000L, "\"etag\"");
+        String cursor = FileListingService.encodeCursor(SortField.SIZE, true, last);
+
+        Cursor decoded = FileListingService.decodeCursor(cursor, "alice/docs");
+
+        assertEquals(SortField.SIZE, decoded.sort());
+        assertEquals(true, decoded.descending());
+        assertEquals("alice/docs/report.pdf", decoded.after().key());
+        assertEquals(1234, decoded.after().size());
+        assertEquals(1700000000000L, decoded.after().lastModified());
+    }
+
+    @Test
+    void namesMayContainNewlines() {
+        StorageEntry last = new StorageEntry("alice/docs/two\nlines", false, 0, 0, null);
+        String cursor = FileListingService.encodeCursor(SortField.NAME, false, last);
+
+        Cursor decoded = FileListingService.decodeCursor(cursor, "alice/docs");
+
+        assertEquals(false, decoded.descending());
+        assertEquals("alice/docs/two\nlines", decoded.after().key());
+    }
+
+    @Test
+    void malformedCursorsAreRejected() {
+        assertInvalid("not base64!");
+        assertInvalid(Base64.getUrlEncoder().encodeToString("NAME\nasc".getBytes(StandardCharsets.UTF_8)));
+        assertInvalid(Base64.getUrlEncoder().encodeToString("COLOR\nasc\n1\n2\nx".getBytes(StandardCharsets.UTF_8)));
+        assertInvalid(Base64.getUrlEncoder().encodeToString("NAME\nasc\nbig\n2\nx".getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,61 @@
+package com.yuvraj.dropbox.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTest {
+
+    // slow enough that no token comes back while a test runs
+    private static final double RATE = 1.0 / 3600;
+
+    @Test
+    void startsFullAndRefusesPastCapacity() {
+        TokenBucket bucket = new TokenBucket(RATE, 10);
+
+        assertEquals(0, bucket.tryAcquire(4));
+        assertEquals(0, bucket.tryAcquire(6));
+        long wait = bucket.tryAcquire(1);
+        assertTrue(wait > TimeUnit.MINUTES.toNanos(59), "waits about one token interval, was " + wait);
+        assertTrue(wait <= TimeUnit.HOURS.toNanos(1));
+        assertEquals(0, bucket.debtNanos());
+    }
+
+    @Test
+    void aRefusedRequestTakesNothing() {
+        TokenBucket bucket = new TokenBucket(RATE, 10);
+
+        assertTrue(bucket.tryAcquire(11) > 0);
+        assertEquals(0, bucket.tryAcquire(10));
+    }
+
+    @Test
+    void reserveGoesIntoDebt() {
+        TokenBucket bucket = new TokenBucket(RATE, 10);
+
+        assertEquals(0, bucket.reserve(10));
+        long wait = bucket.reserve(2);
+        assertTrue(wait > TimeUnit.MINUTES.toNanos(119) && wait <= TimeUnit.HOURS.toNanos(2), "was " + wait);
+        assertTrue(bucket.debtNanos() > TimeUnit.MINUTES.toNanos(119));
+        assertTrue(bucket.tryAcquire(1) > 0);
+    }
+
+    @Test
+    void refillsAtTheRate() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1000, 1);
+
+        assertEquals(0, bucket.tryAcquire(1));
+        Thread.sleep(20);
+        assertEquals(0, bucket.tryAcquire(1));
+    }
+
+    @Test
+    void rateAndCapacityMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 10));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(1, 0));
+    }
+}
@@ -0,0 +1,70 @@
+package com.yuvraj.dropbox.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ChunkManifestTest {
+
+    private static final String A = "a".repeat(64);
+    private static final String B = "b".repeat(64);
+
+    private static byte[] bytes(ChunkManifest manifest) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        manifest.write(out);
+        return out.toByteArray();
+    }
+
+    @Test
+    void roundTrip() throws IOException {
+        ChunkManifest manifest = new ChunkManifest(List.of(new ChunkManifest.Chunk(A, 100), new ChunkManifest.Chunk(B, 50)));
+        byte[] bytes = bytes(manifest);
+        assertEquals(ChunkManifest.HEADER_SIZE + 2 * ChunkManifest.ENTRY_SIZE, bytes.length);
+
+        ChunkManifest read = ChunkManifest.read(new ByteArrayInputStream(bytes), bytes.length);
+        assertEquals(manifest.getChunks(), read.getChunks());
+        assertEquals(150, read.getSize());
+        assertEquals(150, ChunkManifest.readSize(new ByteArrayInputStream(bytes)));
+    }
+
+    @Test
+    void positionsMapToChunks() {
+        ChunkManifest manifest = new ChunkManifest(List.of(new ChunkManifest.Chunk(A, 100), new ChunkManifest.Chunk(B, 50)));
+        assertEquals(0, manifest.chunkIndexAt(0));
+        assertEquals(0, manifest.chunkIndexAt(99));
+        assertEquals(1, manifest.chunkIndexAt(100));
+        assertEquals(1, manifest.chunkIndexAt(149));
+        assertEquals(100, manifest.offsetOf(1));
+    }
+
+    @Test
+    void aCountThatDisagreesWithTheFileSizeIsRejectedBeforeAllocating() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(ChunkManifest.MAGIC);
+        data.writeLong(0);
+        data.writeInt(Integer.MAX_VALUE);
+        byte[] forged = out.toByteArray();
+        assertThrows(IOException.class, () -> ChunkManifest.read(new ByteArrayInputStream(forged), forged.length));
+    }
+
+    @Test
+    void corruptManifestsAreRejected() throws IOException {
+        byte[] bytes = bytes(new ChunkManifest(List.of(new ChunkManifest.Chunk(A, 100))));
+        // truncated
+        assertThrows(IOException.class, () -> ChunkManifest.read(new ByteArrayInputStream(bytes), bytes.length - 1));
+        // recorded size disagrees with the chunks
+        bytes[ChunkManifest.MAGIC.length + 7] = 1;
+        assertThrows(IOException.class, () -> ChunkManifest.read(new ByteArrayInputStream(bytes), bytes.length));
+        // not a manifest at all
+        byte[] plain = "hello world, not a manifest".getBytes();
+        assertThrows(IOException.class, () -> ChunkManifest.read(new ByteArrayInputStream(plain), plain.length));
+    }
+}
@@ -0,0 +1,159 @@
+package com.yuvraj.dropbox.storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static com.yuvraj.dropbox.storage.StorageFixtures.random;
+import static com.yuvraj.dropbox.storage.StorageFixtures.read;
+import static com.yuvraj.dropbox.storage.StorageFixtures.upload;
+import static com.yuvraj.dropbox.storage.StorageFixtures.write;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressingStorageBackendTest {
+
+    private static final int FRAME_SIZE = 16 * 1024;
+
+    @TempDir
+    Path root;
+
+    private static byte[] text(int size) {
+        StringBuilder sb = new StringBuilder();
+        for (int line = 0; sb.length() < size; line++) sb.append("line ").append(line).append(" of a log file\n");
+        return Arrays.copyOf(sb.toString().getBytes(StandardCharsets.US_ASCII), size);
+    }
+
+    private CompressingStorageBackend compressing(StorageBackend base) throws IOException {
+        CompressingStorageBackend storage = new CompressingStorageBackend(base, 3, FRAME_SIZE, 1.2, new SimpleMeterRegistry());
+        storage.wrapLegacyFiles();
+        return storage;
+    }
+
+    @Test
+    void compressedContentRoundTripsAtAnyOffset() throws IOException {
+        CompressingStorageBackend storage = compressing(new LocalStorageBackend(root));
+        byte[] data = text(5 * FRAME_SIZE + 123);
+        write(storage, "alice/log.txt", data);
+
+        assertEquals(data.length, storage.stat("alice/log.txt").orElseThrow().size());
+        assertTrue(Files.size(root.resolve("alice/log.txt")) < data.length);
+        assertTrue(storage.localPath("alice/log.txt").isEmpty());
+        assertArrayEquals(data, read(storage, "alice/log.txt", 0, Long.MAX_VALUE));
+
+        for (int position : new int[]{0, 1, FRAME_SIZE - 1, FRAME_SIZE, 2 * FRAME_SIZE + 5, data.length - 1}) {
+            int length = Math.min(FRAME_SIZE + 10, data.length - position);
+            assertArrayEquals(Arrays.copyOfRange(data, position, position + length),
+                    read(storage, "alice/log.txt", position, length), "at " + position);
+        }
+        assertEquals(0, read(storage, "alice/log.txt", data.length, 10).length);
+    }
+
+    @Test
+    void incompressibleContentIsStoredVerbatimAheadOfTheTrailer() throws IOException {
+        CompressingStorageBackend storage = compressing(new LocalStorageBackend(root));
+        byte[] data = random(3 * FRAME_SIZE, 1);
+        write(storage, "alice/data.bin", data);
+
+        assertEquals(data.length, storage.stat("alice/data.bin").orElseThrow().size());
+        Path stored = storage.localPath("alice/data.bin").orElseThrow();
+        assertArrayEquals(data, Arrays.copyOf(Files.readAllBytes(stored), data.length));
+        assertArrayEquals(data, read(storage, "alice/data.bin", 0, Long.MAX_VALUE));
+        assertArrayEquals(Arrays.copyOfRange(data, 100, 200), read(storage, "alice/data.bin", 100, 100));
+        // never reads into the trailer
+        assertArrayEquals(Arrays.copyOfRange(data, data.length - 4, data.length),
+                read(storage, "alice/data.bin", data.length - 4, 100));
+    }
+
+    @Test
+    void smallAndEmptyFilesRoundTrip() throws IOException {
+        CompressingStorageBackend storage = compressing(new LocalStorageBackend(root));
+        write(storage, "alice/empty.txt", new byte[0]);
+        write(storage, "alice/small.txt", text(100));
+
+        assertEquals(0, storage.stat("alice/empty.txt").orElseThrow().size());
+        assertEquals(0, read(storage, "alice/empty.txt", 0, Long.MAX_VALUE).length);
+        assertArrayEquals(text(100), read(storage, "alice/small.txt", 0, Long.MAX_VALUE));
+    }
+
+    @Test
+    void anUploadedContainerComesBackUnaltered() throws IOException {
+        CompressingStorageBackend storage = compressing(new LocalStorageBackend(root));
+        write(storage, "alice/log.txt", text(4 * FRAME_SIZE));
+        byte[] container = Files.readAllBytes(root.resolve("alice/log.txt"));
+
+        write(storage, "alice/copy.txt", container);
+
+        assertEquals(container.length, storage.stat("alice/copy.txt").orElseThrow().size());
+        assertArrayEquals(container, read(storage, "alice/copy.txt", 0, Long.MAX_VALUE));
+    }
+
+    @Test
+    void aForgedFrameSizeIsRefused() throws IOException {
+        LocalStorageBackend base = new LocalStorageBackend(root);
+        CompressingStorageBackend storage = compressing(base);
+        byte[] forged = ByteBuffer.allocate(12 + 4 + 20)
+                .put("DBXZST01".getBytes(StandardCharsets.US_ASCII)).putInt(Integer.MAX_VALUE)
+                .putInt(16)
+                .putLong(10).putInt(1).put("DBXZIDX1".getBytes(StandardCharsets.US_ASCII))
+                .array();
+        write(base, "alice/forged.txt", forged);
+
+        assertThrows(IOException.class, () -> storage.read("alice/forged.txt", 0, Long.MAX_VALUE));
+    }
+
+    @Test
+    void contentLongerThanDeclaredIsRejected() throws IOException {
+        CompressingStorageBackend storage = compressing(new LocalStorageBackend(root));
+        byte[] data = random(100, 2);
+
+        assertThrows(IOException.class, () -> storage.write("alice/short.bin", new ByteArrayInputStream(data), 50));
+    }
+
+    @Test
+    void multipartUploadsRoundTrip() throws IOException {
+        CompressingStorageBackend storage = compressing(new LocalStorageBackend(root));
+        byte[] text = text(3 * FRAME_SIZE + 17);
+        byte[] data = random(3 * FRAME_SIZE + 17, 3);
+        upload(storage, "alice/log.txt", text, FRAME_SIZE);
+        upload(storage, "alice/data.bin", data, FRAME_SIZE);
+        upload(storage, "alice/empty.txt", new byte[0], FRAME_SIZE);
+
+        assertEquals(text.length, storage.stat("alice/log.txt").orElseThrow().size());
+        assertArrayEquals(text, read(storage, "alice/log.txt", 0, Long.MAX_VALUE));
+        assertArrayEquals(Arrays.copyOfRange(text, FRAME_SIZE - 3, FRAME_SIZE + 3),
+                read(storage, "alice/log.txt", FRAME_SIZE - 3, 6));
+        assertEquals(data.length, storage.stat("alice/data.bin").orElseThrow().size());
+        assertArrayEquals(data, read(storage, "alice/data.bin", 0, Long.MAX_VALUE));
+        assertEquals(0, storage.stat("alice/empty.txt").orElseThrow().size());
+    }
+
+    @Test
+    void filesWrittenBeforeCompressionAreWrapped() throws IOException {
+        LocalStorageBackend base = new LocalStorageBackend(root);
+        byte[] text = text(2 * FRAME_SIZE);
+        // legacy content that happens to end like a stored file
+        byte[] tricky = "notes DBXRAW01".getBytes(StandardCharsets.US_ASCII);
+        write(base, "alice/log.txt", text);
+        write(base, "alice/tricky.txt", tricky);
+
+        CompressingStorageBackend storage = compressing(base);
+
+        assertArrayEquals(text, read(storage, "alice/log.txt", 0, Long.MAX_VALUE));
+        assertEquals(tricky.length, storage.stat("alice/tricky.txt").orElseThrow().size());
+        assertArrayEquals(tricky, read(storage, "alice/tricky.txt", 0, Long.MAX_VALUE));
+        // a second start finds the marker and leaves everything alone
+        compressing(base);
+        assertArrayEquals(tricky, read(storage, "alice/tricky.txt", 0, Long.MAX_VALUE));
+    }
+}
@@ -0,0 +1,101 @@
+package com.yuvraj.dropbox.storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static com.yuvraj.dropbox.storage.StorageFixtures.random;
+import static com.yuvraj.dropbox.storage.StorageFixtures.readAll;
+import static com.yuvraj.dropbox.storage.StorageFixtures.upload;
+import static com.yuvraj.dropbox.storage.StorageFixtures.write;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DedupStorageBackendTest {
+
+    @TempDir
+    Path root;
+
+    private DedupStorageBackend dedup(StorageBackend base) throws IOException {
+        BlockStore blockStore = new BlockStore(base, new SimpleMeterRegistry());
+        blockStore.migratePlainFiles();
+        return new DedupStorageBackend(base, blockStore);
+    }
+
+    @Test
+    void contentRoundTripsAndRangesAreServed() throws IOException {
+        DedupStorageBackend storage = dedup(new LocalStorageBackend(root));
+        byte[] data = random(1024 * 1024 + 7, 1);
+        write(storage, "alice/file.bin", data);
+
+        assertEquals(data.length, storage.stat("alice/file.bin").orElseThrow().size());
+        assertArrayEquals(data, readAll(storage, "alice/file.bin"));
+        try (InputStream in = storage.read("alice/file.bin", 300_000, 100_000)) {
+            byte[] range = new byte[100_000];
+            System.arraycopy(data, 300_000, range, 0, range.length);
+            assertArrayEquals(range, in.readAllBytes());
+        }
+
+        upload(storage, "alice/upload.bin", data, data.length);
+        assertArrayEquals(data, readAll(storage, "alice/upload.bin"));
+    }
+
+    @Test
+    void anUploadedManifestIsStoredAsContentNotFollowed() throws IOException {
+        StorageBackend base = new LocalStorageBackend(root);
+        DedupStorageBackend storage = dedup(base);
+        byte[] secret = "alice's secret".getBytes(StandardCharsets.UTF_8);
+        write(storage, "alice/secret.txt", secret);
+
+        // bob learns (or guesses) the chunk hash and uploads a manifest pointing at it
+        byte[] forged = readAll(base, "alice/secret.txt");
+        write(storage, "bob/forged-write", forged);
+        upload(storage, "bob/forged-upload", forged, forged.length);
+
+        assertArrayEquals(forged, readAll(storage, "bob/forged-write"));
+        assertArrayEquals(forged, readAll(storage, "bob/forged-upload"));
+        assertEquals(forged.length, storage.stat("bob/forged-upload").orElseThrow().size());
+    }
+
+    @Test
+    void plainFilesFromBeforeDedupAreMigratedEvenIfTheyLookLikeManifests() throws IOException {
+        StorageBackend base = new LocalStorageBackend(root);
+        byte[] secret = random(1000, 2);
+        write(dedup(base), "alice/secret.bin", secret);
+        byte[] manifestLike = readAll(base, "alice/secret.bin");
+        byte[] plain = random(200_000, 3);
+
+        // a store that has never been deduplicated
+        Path other = root.resolve("other");
+        StorageBackend legacy = new LocalStorageBackend(other);
+        write(legacy, "bob/looks-like-a-manifest", manifestLike);
+        write(legacy, "bob/plain.bin", plain);
+
+        DedupStorageBackend storage = dedup(legacy);
+        assertArrayEquals(manifestLike, readAll(storage, "bob/looks-like-a-manifest"));
+        assertArrayEquals(plain, readAll(storage, "bob/plain.bin"));
+
+        // a second start finds nothing left to convert
+        storage = dedup(legacy);
+        assertArrayEquals(plain, readAll(storage, "bob/plain.bin"));
+    }
+
+    @Test
+    void aFailedWriteKeepsThePreviousContent() throws IOException {
+        DedupStorageBackend storage = dedup(new LocalStorageBackend(root));
+        byte[] v1 = random(100_000, 4);
+        write(storage, "alice/file.bin", v1);
+
+        byte[] v2 = random(50_000, 5);
+        assertThrows(IOException.class,
+                () -> storage.write("alice/file.bin", new ByteArrayInputStream(v2), v2.length + 1));
+        assertArrayEquals(v1, readAll(storage, "alice/file.bin"));
+    }
+}
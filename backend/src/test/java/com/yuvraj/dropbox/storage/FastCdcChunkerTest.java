@@ -0,0 +1,67 @@
+package com.yuvraj.dropbox.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.yuvraj.dropbox.storage.StorageFixtures.random;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FastCdcChunkerTest {
+
+    private static List<byte[]> split(byte[] data) throws IOException {
+        List<byte[]> chunks = new ArrayList<>();
+        new FastCdcChunker().split(new ByteArrayInputStream(data),
+                (buffer, offset, length) -> chunks.add(Arrays.copyOfRange(buffer, offset, offset + length)));
+        return chunks;
+    }
+
+    @Test
+    void chunksReassembleToTheInputWithinTheSizeBounds() throws IOException {
+        byte[] data = random(3 * 1024 * 1024 + 123, 1);
+        List<byte[]> chunks = split(data);
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        for (int i = 0; i < chunks.size(); i++) {
+            int length = chunks.get(i).length;
+            assertTrue(length <= FastCdcChunker.MAX_SIZE);
+            if (i < chunks.size() - 1) assertTrue(length >= FastCdcChunker.MIN_SIZE);
+            joined.writeBytes(chunks.get(i));
+        }
+        assertArrayEquals(data, joined.toByteArray());
+    }
+
+    @Test
+    void smallAndEmptyInputs() throws IOException {
+        assertEquals(0, split(new byte[0]).size());
+        byte[] small = random(100, 2);
+        List<byte[]> chunks = split(small);
+        assertEquals(1, chunks.size());
+        assertArrayEquals(small, chunks.get(0));
+    }
+
+    @Test
+    void anInsertionOnlyDisturbsTheChunksAroundIt() throws IOException {
+        byte[] original = random(4 * 1024 * 1024, 3);
+        byte[] edited = new byte[original.length + 10];
+        System.arraycopy(original, 0, edited, 0, 1000);
+        System.arraycopy(original, 1000, edited, 1010, original.length - 1000);
+
+        Set<String> before = new HashSet<>();
+        for (byte[] chunk : split(original)) before.add(Arrays.toString(chunk));
+        List<byte[]> after = split(edited);
+        int changed = 0;
+        for (byte[] chunk : after) {
+            if (!before.contains(Arrays.toString(chunk))) changed++;
+        }
+        assertTrue(changed <= 2, changed + " of " + after.size() + " chunks changed");
+    }
+}
@@ -0,0 +1,45 @@
+package com.yuvraj.dropbox.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+// Content and read/write shortcuts shared by the storage backend tests
+final class StorageFixtures {
+
+    private StorageFixtures() {
+    }
+
+    static byte[] random(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    static byte[] read(StorageBackend storage, String key, long position, long length) throws IOException {
+        try (InputStream in = storage.read(key, position, length)) {
+            return in.readAllBytes();
+        }
+    }
+
+    static byte[] readAll(StorageBackend storage, String key) throws IOException {
+        return read(storage, key, 0, Long.MAX_VALUE);
+    }
+
+    static void write(StorageBackend storage, String key, byte[] data) throws IOException {
+        storage.write(key, new ByteArrayInputStream(data), data.length);
+    }
+
+    // A multipart upload in parts of partSize (the last one shorter), sent in order
+    static void upload(StorageBackend storage, String key, byte[] data, int partSize) throws IOException {
+        String uploadId = storage.startMultipart(key, data.length);
+        int partCount = (data.length + partSize - 1) / partSize;
+        for (int i = 0; i < partCount; i++) {
+            int offset = i * partSize;
+            int length = Math.min(partSize, data.length - offset);
+            storage.writePart(key, uploadId, i + 1, offset, new ByteArrayInputStream(data, offset, length), length);
+        }
+        storage.completeMultipart(key, uploadId, partCount);
+    }
+}